@@ -1,10 +1,14 @@
 package com.gateway.config;
 
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
@@ -12,7 +16,16 @@ import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 
 import java.time.Duration;
+import java.util.List;
 
+/**
+ * Single node by default. Setting spring.data.redis.cluster.nodes switches to
+ * Redis Cluster, with the topology refreshed periodically and on redirects.
+ * Key layouts are hash-tagged for cluster mode, see {@link RedisKeys}.
+ * Cluster is the only sharded mode: client-side sharding over independent
+ * nodes is not supported, the Lua scripts and the command batcher expect one
+ * connection that reaches every key.
+ */
 @Configuration
 public class RedisConfig {
 
@@ -25,16 +38,32 @@ public class RedisConfig {
     @Value("${spring.data.redis.timeout:2000}")
     private int timeout;
 
+    @Value("${spring.data.redis.cluster.nodes:}")
+    private List<String> clusterNodes;
+
+    @Value("${spring.data.redis.cluster.max-redirects:3}")
+    private int maxRedirects;
+
+    @Value("${gateway.redis.cluster.topology-refresh-ms:30000}")
+    private long topologyRefreshMillis;
+
+    // Where metrics reads go in cluster mode, e.g. replicaPreferred, replica, upstream
+    @Value("${gateway.redis.metrics.read-from:replicaPreferred}")
+    private String metricsReadFrom;
+
     @Bean
     @Primary
     public ReactiveRedisConnectionFactory reactiveRedisConnectionFactory() {
-        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(host, port);
-
-        LettuceClientConfiguration clientConfig = LettuceClientConfiguration.builder()
-                .commandTimeout(Duration.ofMillis(timeout))
-                .build();
+        return connectionFactory(ReadFrom.UPSTREAM);
+    }
 
-        return new LettuceConnectionFactory(config, clientConfig);
+    /**
+     * Connections for the metrics read endpoints, which can tolerate a
+     * slightly stale replica and so take load off the primaries.
+     */
+    @Bean
+    public LettuceConnectionFactory metricsReadConnectionFactory() {
+        return connectionFactory(ReadFrom.valueOf(metricsReadFrom));
     }
 
     @Bean
@@ -44,4 +73,27 @@ public class RedisConfig {
         RedisSerializationContext<String, String> serializationContext = RedisSerializationContext.string();
         return new ReactiveStringRedisTemplate(connectionFactory, serializationContext);
     }
-}
\ No newline at end of file
+
+    private LettuceConnectionFactory connectionFactory(ReadFrom readFrom) {
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder clientConfig = LettuceClientConfiguration.builder()
+                .commandTimeout(Duration.ofMillis(timeout));
+
+        if (clusterNodes.isEmpty()) {
+            RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(host, port);
+            return new LettuceConnectionFactory(config, clientConfig.build());
+        }
+
+        ClusterTopologyRefreshOptions topologyRefresh = ClusterTopologyRefreshOptions.builder()
+                .enablePeriodicRefresh(Duration.ofMillis(topologyRefreshMillis))
+                .enableAllAdaptiveRefreshTriggers()
+                .build();
+        clientConfig.clientOptions(ClusterClientOptions.builder()
+                        .topologyRefreshOptions(topologyRefresh)
+                        .build())
+                .readFrom(readFrom);
+
+        RedisClusterConfiguration config = new RedisClusterConfiguration(clusterNodes);
+        config.setMaxRedirects(maxRedirects);
+        return new LettuceConnectionFactory(config, clientConfig.build());
+    }
+}
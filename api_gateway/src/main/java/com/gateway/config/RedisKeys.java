@@ -0,0 +1,65 @@
+package com.gateway.config;
+
+/**
+ * Redis key layout. The part in braces is the cluster hash tag: keys sharing
+ * it land on the same slot, so a Lua script or pipeline touching several of
+ * them works in cluster mode.
+ * <ul>
+ * <li>rate limits: {@code rate-limit:{routeId:client}}, plus suffixes for
+ * any further state of the same limiter</li>
+ * <li>hierarchical rate limit quotas: {@code rate-limit:{routeId}:...}, all
+ * levels of a route on the route's slot</li>
+ * <li>metrics: {@code metrics:{serviceId}} with its trends in
+ * {@code metrics:{serviceId}:trends}</li>
+ * <li>live gateway nodes: {@code gateway:nodes}, a sorted set scored by last
+ * heartbeat</li>
+ * <li>distinct counts: {@code unique:{scope:id:dimension}:m:<minute>}, with
+ * {@code :h:<hour>} and {@code :d:<day>} roll-ups, HyperLogLogs counted
+ * together on one slot</li>
+ * </ul>
+ */
+public final class RedisKeys {
+
+    public static final String RATE_LIMIT_PREFIX = "rate-limit:";
+    public static final String METRICS_PREFIX = "metrics:";
+    public static final String GATEWAY_NODES = "gateway:nodes";
+    public static final String UNIQUE_PREFIX = "unique:";
+
+    private RedisKeys() {
+    }
+
+    public static String rateLimit(String routeId, String client) {
+        return RATE_LIMIT_PREFIX + "{" + routeId + ":" + client + "}";
+    }
+
+    public static String rateLimitQuotas(String routeId) {
+        return RATE_LIMIT_PREFIX + "{" + routeId + "}:";
+    }
+
+    public static String metrics(String serviceId) {
+        return METRICS_PREFIX + "{" + serviceId + "}";
+    }
+
+    public static String metricsTrends(String serviceId) {
+        return metrics(serviceId) + ":trends";
+    }
+
+    public static String unique(String scope, String id, String dimension) {
+        return UNIQUE_PREFIX + "{" + scope + ":" + id + ":" + dimension + "}";
+    }
+
+    // Matches the history hashes only, not their trends
+    public static String metricsPattern() {
+        return METRICS_PREFIX + "{*}";
+    }
+
+    /**
+     * The serviceId of a metrics history key, null for any other key.
+     */
+    public static String metricsServiceId(String key) {
+        if (!key.startsWith(METRICS_PREFIX + "{") || !key.endsWith("}")) {
+            return null;
+        }
+        return key.substring(METRICS_PREFIX.length() + 1, key.length() - 1);
+    }
+}
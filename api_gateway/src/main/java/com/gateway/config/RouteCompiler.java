@@ -0,0 +1,497 @@
+package com.gateway.config;
+
+import com.gateway.entity.Route;
+import com.gateway.filter.CircuitBreakerGatewayFilterFactory;
+import com.gateway.filter.CustomRetryGatewayFilterFactory;
+import com.gateway.filter.PathRewriteGatewayFilterFactory;
+import com.gateway.filter.RedisRateLimiterGatewayFilterFactory;
+import com.gateway.filter.ResponseCacheGatewayFilterFactory;
+import com.gateway.filter.SingleFlightGatewayFilterFactory;
+import com.gateway.filter.TimeoutGatewayFilterFactory;
+import com.gateway.model.CircuitBreakerConfig;
+import com.gateway.model.CostRule;
+import com.gateway.model.RateLimiterConfig;
+import com.gateway.model.ResponseCacheConfig;
+import com.gateway.model.RetryConfig;
+import com.gateway.model.SingleFlightConfig;
+import com.gateway.model.TimeoutConfig;
+import com.gateway.model.UpstreamTarget;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.handler.predicate.MethodRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPatternParser;
+import org.springframework.web.util.pattern.PatternParseException;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Turns a stored route into a gateway route with its filter pipeline fully
+ * built. Each version of a route (routeId plus updatedAt) is compiled once and
+ * reused on every refresh until the route changes. The same checks run when a
+ * route is written through the admin API, so bad configs are rejected there
+ * instead of failing at refresh.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RouteCompiler {
+
+    private static final Set<String> HTTP_METHODS = Set.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE",
+            "OPTIONS", "TRACE");
+
+    private final PathRoutePredicateFactory pathPredicateFactory;
+    private final MethodRoutePredicateFactory methodPredicateFactory;
+    private final PathRewriteGatewayFilterFactory pathRewriteFilterFactory;
+    private final CircuitBreakerGatewayFilterFactory circuitBreakerFilterFactory;
+    private final RedisRateLimiterGatewayFilterFactory rateLimiterFilterFactory;
+    private final TimeoutGatewayFilterFactory timeoutFilterFactory;
+    private final CustomRetryGatewayFilterFactory retryFilterFactory;
+    private final ResponseCacheGatewayFilterFactory responseCacheFilterFactory;
+    private final SingleFlightGatewayFilterFactory singleFlightFilterFactory;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, Compiled> compiled = new ConcurrentHashMap<>();
+
+    /**
+     * The compiled route, built now only if this version has not been
+     * compiled before. Routes without updatedAt (written to the database
+     * directly) are reused while their content is unchanged.
+     *
+     * @throws IllegalArgumentException when the route config is invalid
+     */
+    public CompiledRoute compile(Route route) {
+        Compiled cached = compiled.get(route.getRouteId());
+        if (cached != null && (route.getUpdatedAt() != null
+                ? route.getUpdatedAt().equals(cached.route().updatedAt())
+                : cached.source().equals(route))) {
+            return cached.route();
+        }
+
+        long start = System.nanoTime();
+        org.springframework.cloud.gateway.route.Route gatewayRoute = build(route);
+        long compileNanos = System.nanoTime() - start;
+
+        Timer.builder("gateway.route.compile")
+                .description("Time to build a route's predicates and filter pipeline")
+                .tag("route", route.getRouteId())
+                .register(meterRegistry)
+                .record(compileNanos, TimeUnit.NANOSECONDS);
+        log.debug("Compiled route {} ({} filters) in {} us", route.getRouteId(), gatewayRoute.getFilters().size(),
+                TimeUnit.NANOSECONDS.toMicros(compileNanos));
+
+        CompiledRoute result = new CompiledRoute(route.getRouteId(), route.getUpdatedAt(), gatewayRoute,
+                compileNanos);
+        compiled.put(route.getRouteId(), new Compiled(route, result));
+        return result;
+    }
+
+    /**
+     * Checks a route before it is stored by building its pipeline without
+     * caching it.
+     *
+     * @throws IllegalArgumentException listing every problem found
+     */
+    public void validate(Route route) {
+        build(route);
+    }
+
+    // Routes that are gone or disabled must not keep their pipeline alive
+    public void retain(Collection<String> routeIds) {
+        compiled.keySet().retainAll(Set.copyOf(routeIds));
+    }
+
+    private org.springframework.cloud.gateway.route.Route build(Route route) {
+        List<String> errors = new ArrayList<>();
+        checkRoute(route, errors);
+        checkCircuitBreaker(route.getCircuitBreaker(), errors);
+        checkRateLimiter(route.getRateLimiter(), errors);
+        checkTimeout(route.getTimeout(), errors);
+        checkRetry(route.getRetry(), errors);
+        checkResponseCache(route.getResponseCache(), errors);
+        checkSingleFlight(route.getSingleFlight(), errors);
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(String.join("; ", errors));
+        }
+
+        List<GatewayFilter> filters = new ArrayList<>();
+        PathRewriteGatewayFilterFactory.Config pathRewriteConfig = new PathRewriteGatewayFilterFactory.Config();
+        pathRewriteConfig.setStripPrefix(true);
+        pathRewriteConfig.setPrefixSize(1);
+        filters.add(pathRewriteFilterFactory.apply(pathRewriteConfig));
+
+        // Factories parse some values themselves (retry backoff, statuses), report those the same way
+        try {
+            if (route.getCircuitBreaker() != null) {
+                filters.add(circuitBreakerFilterFactory.apply(toCircuitBreakerConfig(route.getCircuitBreaker())));
+            }
+            if (route.getRateLimiter() != null) {
+                filters.add(rateLimiterFilterFactory.apply(toRateLimiterConfig(route.getRateLimiter())));
+            }
+            if (route.getTimeout() != null) {
+                filters.add(timeoutFilterFactory.apply(toTimeoutConfig(route.getTimeout())));
+            }
+            if (route.getRetry() != null) {
+                filters.add(retryFilterFactory.apply(toRetryConfig(route.getRetry())));
+            }
+            if (route.getResponseCache() != null) {
+                filters.add(responseCacheFilterFactory.apply(toResponseCacheConfig(route.getResponseCache())));
+            }
+            if (route.getSingleFlight() != null) {
+                filters.add(singleFlightFilterFactory.apply(toSingleFlightConfig(route.getSingleFlight())));
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid filter config for route " + route.getRouteId() + ": "
+                    + e.getMessage(), e);
+        }
+
+        return org.springframework.cloud.gateway.route.Route.async()
+                .id(route.getRouteId())
+                .uri(URI.create(RouteMetadata.uri(route)))
+                .order(route.getOrder() != null ? route.getOrder() : 0)
+                .predicate(predicate(route))
+                .filters(filters.stream()
+                        .map(filter -> (GatewayFilter) new OrderedGatewayFilter(filter, 0))
+                        .toList())
+                .metadata(RouteMetadata.of(route))
+                .build();
+    }
+
+    private Predicate<ServerWebExchange> predicate(Route route) {
+        Predicate<ServerWebExchange> predicate = pathPredicateFactory.apply(
+                new PathRoutePredicateFactory.Config().setPatterns(List.of(route.getPath())));
+        if (route.getMethod() != null && !route.getMethod().isEmpty()) {
+            MethodRoutePredicateFactory.Config methodConfig = new MethodRoutePredicateFactory.Config();
+            methodConfig.setMethods(HttpMethod.valueOf(route.getMethod().toUpperCase()));
+            predicate = predicate.and(methodPredicateFactory.apply(methodConfig));
+        }
+        return predicate;
+    }
+
+    private void checkRoute(Route route, List<String> errors) {
+        if (isBlank(route.getRouteId())) {
+            errors.add("routeId is required");
+        }
+        if (isBlank(route.getPath())) {
+            errors.add("path is required");
+        } else if (!route.getPath().startsWith("/")) {
+            errors.add("path must start with /");
+        }
+        if (route.getMethod() != null && !route.getMethod().isEmpty()
+                && !HTTP_METHODS.contains(route.getMethod().toUpperCase())) {
+            errors.add("method " + route.getMethod() + " is not an HTTP method");
+        }
+
+        List<UpstreamTarget> targets = route.getTargets() != null ? route.getTargets() : List.of();
+        if (isBlank(route.getUri()) && targets.isEmpty()) {
+            errors.add("uri or targets is required");
+        }
+        if (!isBlank(route.getUri())) {
+            checkUri("uri", route.getUri(), errors);
+        }
+        for (UpstreamTarget target : targets) {
+            if (isBlank(target.getUri())) {
+                errors.add("every target needs a uri");
+            } else {
+                checkUri("target uri", target.getUri(), errors);
+            }
+            if (target.getWeight() != null && target.getWeight() < 0) {
+                errors.add("target weight must not be negative");
+            }
+        }
+    }
+
+    private void checkUri(String field, String value, List<String> errors) {
+        try {
+            if (URI.create(value).getScheme() == null) {
+                errors.add(field + " " + value + " has no scheme");
+            }
+        } catch (IllegalArgumentException e) {
+            errors.add(field + " " + value + " is not a valid URI");
+        }
+    }
+
+    private void checkCircuitBreaker(CircuitBreakerConfig cb, List<String> errors) {
+        if (cb == null) {
+            return;
+        }
+        positive("circuitBreaker.slidingWindowSize", cb.getSlidingWindowSize(), errors);
+        positive("circuitBreaker.permittedCallsInHalfOpenState", cb.getPermittedCallsInHalfOpenState(), errors);
+        if (cb.getFailureRateThreshold() != null
+                && (cb.getFailureRateThreshold() <= 0 || cb.getFailureRateThreshold() > 100)) {
+            errors.add("circuitBreaker.failureRateThreshold must be in (0, 100]");
+        }
+        if (cb.getWaitDurationInOpenState() != null) {
+            try {
+                Duration.parse(cb.getWaitDurationInOpenState());
+            } catch (DateTimeParseException e) {
+                errors.add("circuitBreaker.waitDurationInOpenState must be an ISO-8601 duration like PT10S");
+            }
+        }
+        notNegative("circuitBreaker.lastGoodMaxBytes", cb.getLastGoodMaxBytes(), errors);
+    }
+
+    private void checkRateLimiter(RateLimiterConfig rl, List<String> errors) {
+        if (rl == null) {
+            return;
+        }
+        positive("rateLimiter.replenishRate", rl.getReplenishRate(), errors);
+        positive("rateLimiter.burstCapacity", rl.getBurstCapacity(), errors);
+        positive("rateLimiter.requestedTokens", rl.getRequestedTokens(), errors);
+        if (rl.getBurstCapacity() != null && rl.getRequestedTokens() != null
+                && rl.getRequestedTokens() > rl.getBurstCapacity()) {
+            errors.add("rateLimiter.requestedTokens must not exceed burstCapacity");
+        }
+        // GCRA spaces requests in whole microseconds
+        if (rl.getReplenishRate() != null && rl.getReplenishRate() > 1_000_000) {
+            errors.add("rateLimiter.replenishRate must not exceed 1000000");
+        }
+        positive("rateLimiter.latencyCostMillis", rl.getLatencyCostMillis(), errors);
+        if (rl.getCostRules() != null) {
+            for (CostRule rule : rl.getCostRules()) {
+                checkCostRule(rule, rl.getBurstCapacity(), errors);
+            }
+        }
+        positive("rateLimiter.tenantReplenishRate", rl.getTenantReplenishRate(), errors);
+        positive("rateLimiter.tenantBurstCapacity", rl.getTenantBurstCapacity(), errors);
+        positive("rateLimiter.routeReplenishRate", rl.getRouteReplenishRate(), errors);
+        positive("rateLimiter.routeBurstCapacity", rl.getRouteBurstCapacity(), errors);
+        if ((rl.getTenantBurstCapacity() != null) != (rl.getTenantKeyResolver() != null)) {
+            errors.add("rateLimiter.tenantKeyResolver and tenantBurstCapacity must be set together");
+        }
+        if (rl.getTenantReplenishRate() != null && rl.getTenantBurstCapacity() == null) {
+            errors.add("rateLimiter.tenantReplenishRate needs tenantBurstCapacity");
+        }
+        if (rl.getRouteReplenishRate() != null && rl.getRouteBurstCapacity() == null) {
+            errors.add("rateLimiter.routeReplenishRate needs routeBurstCapacity");
+        }
+    }
+
+    private void checkCostRule(CostRule rule, Integer burstCapacity, List<String> errors) {
+        if (rule == null) {
+            errors.add("rateLimiter.costRules must not contain null");
+            return;
+        }
+        if (rule.getMethod() != null && !rule.getMethod().isBlank()
+                && !HTTP_METHODS.contains(rule.getMethod().trim().toUpperCase())) {
+            errors.add("rateLimiter.costRules method " + rule.getMethod() + " is not an HTTP method");
+        }
+        if (rule.getPath() != null && !rule.getPath().isBlank()) {
+            if (!rule.getPath().startsWith("/")) {
+                errors.add("rateLimiter.costRules path must start with /");
+            } else {
+                try {
+                    PathPatternParser.defaultInstance.parse(rule.getPath());
+                } catch (PatternParseException e) {
+                    errors.add("rateLimiter.costRules path " + rule.getPath() + " is not a valid pattern");
+                }
+            }
+        }
+        positive("rateLimiter.costRules.cost", rule.getCost(), errors);
+        notNegative("rateLimiter.costRules.costPerQueryParam", rule.getCostPerQueryParam(), errors);
+        notNegative("rateLimiter.costRules.costPerKilobyte", rule.getCostPerKilobyte(), errors);
+        if (burstCapacity != null && rule.getCost() != null && rule.getCost() > burstCapacity) {
+            errors.add("rateLimiter.costRules.cost must not exceed burstCapacity");
+        }
+    }
+
+    private void checkTimeout(TimeoutConfig timeout, List<String> errors) {
+        if (timeout != null) {
+            positive("timeout.timeoutSeconds", timeout.getTimeoutSeconds(), errors);
+        }
+    }
+
+    private void checkRetry(RetryConfig retry, List<String> errors) {
+        if (retry == null) {
+            return;
+        }
+        notNegative("retry.maxAttempts", retry.getMaxAttempts(), errors);
+        notNegative("retry.maxBodyBytes", retry.getMaxBodyBytes(), errors);
+        if (retry.getMethods() != null) {
+            for (String method : retry.getMethods().split(",")) {
+                if (!HTTP_METHODS.contains(method.trim().toUpperCase())) {
+                    errors.add("retry.methods contains " + method.trim() + ", not an HTTP method");
+                }
+            }
+        }
+    }
+
+    private void checkResponseCache(ResponseCacheConfig cache, List<String> errors) {
+        if (cache == null) {
+            return;
+        }
+        positive("responseCache.ttlSeconds", cache.getTtlSeconds(), errors);
+        notNegative("responseCache.staleWhileRevalidateSeconds", cache.getStaleWhileRevalidateSeconds(), errors);
+        positive("responseCache.maxBodyBytes", cache.getMaxBodyBytes(), errors);
+    }
+
+    private void checkSingleFlight(SingleFlightConfig singleFlight, List<String> errors) {
+        if (singleFlight == null) {
+            return;
+        }
+        positive("singleFlight.maxFanOut", singleFlight.getMaxFanOut(), errors);
+        positive("singleFlight.maxBodyBytes", singleFlight.getMaxBodyBytes(), errors);
+        positive("singleFlight.waitTimeoutMillis", singleFlight.getWaitTimeoutMillis(), errors);
+    }
+
+    private void positive(String field, Integer value, List<String> errors) {
+        if (value != null && value <= 0) {
+            errors.add(field + " must be positive");
+        }
+    }
+
+    private void notNegative(String field, Integer value, List<String> errors) {
+        if (value != null && value < 0) {
+            errors.add(field + " must not be negative");
+        }
+    }
+
+    private boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    // Unset fields keep the factory config defaults
+    private CircuitBreakerGatewayFilterFactory.Config toCircuitBreakerConfig(CircuitBreakerConfig cb) {
+        CircuitBreakerGatewayFilterFactory.Config config = new CircuitBreakerGatewayFilterFactory.Config();
+        config.setName(cb.getName());
+        config.setFallbackUri(cb.getFallbackUri());
+        if (cb.getSlidingWindowSize() != null) {
+            config.setSlidingWindowSize(cb.getSlidingWindowSize());
+        }
+        if (cb.getFailureRateThreshold() != null) {
+            config.setFailureRateThreshold(cb.getFailureRateThreshold());
+        }
+        if (cb.getWaitDurationInOpenState() != null) {
+            config.setWaitDurationInOpenState(cb.getWaitDurationInOpenState());
+        }
+        if (cb.getPermittedCallsInHalfOpenState() != null) {
+            config.setPermittedCallsInHalfOpenState(cb.getPermittedCallsInHalfOpenState());
+        }
+        if (cb.getAutomaticTransition() != null) {
+            config.setAutomaticTransition(cb.getAutomaticTransition());
+        }
+        if (cb.getServeLastGood() != null) {
+            config.setServeLastGood(cb.getServeLastGood());
+        }
+        if (cb.getLastGoodMaxBytes() != null) {
+            config.setLastGoodMaxBytes(cb.getLastGoodMaxBytes());
+        }
+        return config;
+    }
+
+    private RedisRateLimiterGatewayFilterFactory.Config toRateLimiterConfig(RateLimiterConfig rl) {
+        RedisRateLimiterGatewayFilterFactory.Config config = new RedisRateLimiterGatewayFilterFactory.Config();
+        if (rl.getReplenishRate() != null) {
+            config.setReplenishRate(rl.getReplenishRate());
+        }
+        if (rl.getBurstCapacity() != null) {
+            config.setBurstCapacity(rl.getBurstCapacity());
+        }
+        if (rl.getRequestedTokens() != null) {
+            config.setRequestedTokens(rl.getRequestedTokens());
+        }
+        config.setCostRules(rl.getCostRules());
+        config.setLatencyCostMillis(rl.getLatencyCostMillis());
+        if (rl.getAlgorithm() != null) {
+            config.setAlgorithm(rl.getAlgorithm());
+        }
+        if (rl.getKeyResolver() != null) {
+            config.setKeyResolver(rl.getKeyResolver());
+        }
+        config.setTenantKeyResolver(rl.getTenantKeyResolver());
+        config.setTenantReplenishRate(rl.getTenantReplenishRate());
+        config.setTenantBurstCapacity(rl.getTenantBurstCapacity());
+        config.setRouteReplenishRate(rl.getRouteReplenishRate());
+        config.setRouteBurstCapacity(rl.getRouteBurstCapacity());
+        return config;
+    }
+
+    private TimeoutGatewayFilterFactory.Config toTimeoutConfig(TimeoutConfig timeout) {
+        TimeoutGatewayFilterFactory.Config config = new TimeoutGatewayFilterFactory.Config();
+        if (timeout.getTimeoutSeconds() != null) {
+            config.setTimeout(timeout.getTimeoutSeconds());
+        }
+        if (timeout.getCancelRunningFuture() != null) {
+            config.setCancelRunningFuture(timeout.getCancelRunningFuture());
+        }
+        return config;
+    }
+
+    private CustomRetryGatewayFilterFactory.Config toRetryConfig(RetryConfig retry) {
+        CustomRetryGatewayFilterFactory.Config config = new CustomRetryGatewayFilterFactory.Config();
+        if (retry.getMaxAttempts() != null) {
+            config.setRetries(retry.getMaxAttempts());
+        }
+        config.setBackoff(retry.getBackoffDuration());
+        config.setExceptions(retry.getRetryableExceptions());
+        config.setMethods(retry.getMethods());
+        if (retry.getCacheBody() != null) {
+            config.setCacheBody(retry.getCacheBody());
+        }
+        if (retry.getMaxBodyBytes() != null) {
+            config.setMaxBodyBytes(retry.getMaxBodyBytes());
+        }
+        return config;
+    }
+
+    private ResponseCacheGatewayFilterFactory.Config toResponseCacheConfig(ResponseCacheConfig cache) {
+        ResponseCacheGatewayFilterFactory.Config config = new ResponseCacheGatewayFilterFactory.Config();
+        if (cache.getTtlSeconds() != null) {
+            config.setTtlSeconds(cache.getTtlSeconds());
+        }
+        if (cache.getStaleWhileRevalidateSeconds() != null) {
+            config.setStaleWhileRevalidateSeconds(cache.getStaleWhileRevalidateSeconds());
+        }
+        if (cache.getMaxBodyBytes() != null) {
+            config.setMaxBodyBytes(cache.getMaxBodyBytes());
+        }
+        if (cache.getUseRedis() != null) {
+            config.setUseRedis(cache.getUseRedis());
+        }
+        config.setVaryHeaders(cache.getVaryHeaders());
+        return config;
+    }
+
+    private SingleFlightGatewayFilterFactory.Config toSingleFlightConfig(SingleFlightConfig singleFlight) {
+        SingleFlightGatewayFilterFactory.Config config = new SingleFlightGatewayFilterFactory.Config();
+        if (singleFlight.getMaxFanOut() != null) {
+            config.setMaxFanOut(singleFlight.getMaxFanOut());
+        }
+        if (singleFlight.getMaxBodyBytes() != null) {
+            config.setMaxBodyBytes(singleFlight.getMaxBodyBytes());
+        }
+        if (singleFlight.getWaitTimeoutMillis() != null) {
+            config.setWaitTimeoutMillis(singleFlight.getWaitTimeoutMillis());
+        }
+        config.setVaryHeaders(singleFlight.getVaryHeaders());
+        return config;
+    }
+
+    /**
+     * One compiled version of a stored route.
+     */
+    public record CompiledRoute(String routeId, LocalDateTime updatedAt,
+            org.springframework.cloud.gateway.route.Route route, long compileNanos) {
+    }
+
+    private record Compiled(Route source, CompiledRoute route) {
+    }
+}
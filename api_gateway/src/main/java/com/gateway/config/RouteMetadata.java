@@ -0,0 +1,45 @@
+package com.gateway.config;
+
+import com.gateway.entity.Route;
+import com.gateway.model.UpstreamTarget;
+import com.gateway.service.UpstreamLoadBalancer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gateway route metadata and URI for a stored route, as RouteCompiler puts
+ * them on the compiled route.
+ */
+final class RouteMetadata {
+
+    private RouteMetadata() {
+    }
+
+    static Map<String, Object> of(Route route) {
+        Map<String, Object> metadata = new HashMap<>();
+        if (route.getMetadata() != null) {
+            metadata.putAll(route.getMetadata());
+        }
+        if (route.getTargets() != null && !route.getTargets().isEmpty()) {
+            metadata.put(UpstreamLoadBalancer.TARGETS_KEY, route.getTargets().stream()
+                    .map(target -> Map.<String, Object>of(
+                            "uri", target.getUri(),
+                            "weight", target.getWeight() != null ? target.getWeight() : 1))
+                    .toList());
+        }
+        return metadata;
+    }
+
+    // With a target list the route URI is only a placeholder, the balancer picks the real one
+    static String uri(Route route) {
+        if (route.getUri() == null || route.getUri().isEmpty()) {
+            List<UpstreamTarget> targets = route.getTargets();
+            if (targets != null && !targets.isEmpty()) {
+                return targets.get(0).getUri();
+            }
+        }
+        return route.getUri();
+    }
+}
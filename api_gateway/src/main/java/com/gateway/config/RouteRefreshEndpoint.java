@@ -1,11 +1,10 @@
 package com.gateway.config;
 
+import com.gateway.service.RouteRefreshCoordinator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
-import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
@@ -18,17 +17,20 @@ import java.util.Map;
 @Slf4j
 public class RouteRefreshEndpoint {
 
-    private final ApplicationEventPublisher eventPublisher;
+    private final RouteRefreshCoordinator refreshCoordinator;
 
     @ReadOperation
     public Mono<Map<String, String>> refresh() {
         log.info("Manual refresh of gateway routes triggered");
-        eventPublisher.publishEvent(new RefreshRoutesEvent(this));
-
-        Map<String, String> result = new HashMap<>();
-        result.put("result", "success");
-        result.put("message", "Routes refreshed");
-
-        return Mono.just(result);
+        return refreshCoordinator.requestRefresh("actuator").map(outcome -> {
+            Map<String, String> result = new HashMap<>();
+            result.put("result", outcome == RouteRefreshCoordinator.Outcome.FAILED ? "error" : "success");
+            result.put("message", switch (outcome) {
+                case REFRESHED -> "Routes refreshed";
+                case UNCHANGED -> "Routes unchanged";
+                case FAILED -> "Route refresh failed";
+            });
+            return result;
+        });
     }
 }
\ No newline at end of file
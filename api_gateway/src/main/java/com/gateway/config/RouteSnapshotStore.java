@@ -0,0 +1,188 @@
+package com.gateway.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.entity.Route;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Local copy of the stored routes, written after every successful load from
+ * Mongo and read on boot so the gateway can route before Mongo answers.
+ *
+ * <p>The file is a versioned binary table, read whole on load:
+ * <pre>
+ * header: magic (int) | version (int) | written at, epoch ms (long) | route count (int)
+ *         | body length (int) | CRC32 of body (long)
+ * body:   per route: routeId length (int) | routeId (UTF-8) | route length (int) | route (JSON)
+ * </pre>
+ * A file with a bad magic, an unknown version, a wrong length or a checksum
+ * mismatch is treated as missing. Routes are parsed straight out of the
+ * file's bytes; a few hundred kilobytes gain nothing from mapping them.
+ */
+@Component
+@Slf4j
+public class RouteSnapshotStore {
+
+    static final int MAGIC = 0x47575254; // "GWRT"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 8;
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Path path;
+
+    // Checksum of the body on disk, an unchanged table is not rewritten
+    private volatile long writtenChecksum = -1;
+
+    public RouteSnapshotStore(ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.routes.snapshot.path:data/routes.snapshot}") String path) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.path = Path.of(path);
+    }
+
+    /**
+     * The routes of the last snapshot, empty when there is none or it is
+     * corrupt.
+     */
+    public Optional<List<Route>> load() {
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        try {
+            byte[] file = Files.readAllBytes(path);
+            int size = file.length;
+            if (size < HEADER_BYTES) {
+                return corrupt("unexpected size " + size);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(file);
+
+            if (buffer.getInt() != MAGIC) {
+                return corrupt("not a route snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                return corrupt("unsupported version " + version);
+            }
+            buffer.getLong(); // written at
+            int count = buffer.getInt();
+            int bodyLength = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (bodyLength != size - HEADER_BYTES || count < 0) {
+                return corrupt("body length " + bodyLength + " does not match file size " + size);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(file, HEADER_BYTES, bodyLength);
+            if (crc.getValue() != checksum) {
+                return corrupt("checksum mismatch");
+            }
+
+            List<Route> routes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                skip(buffer); // routeId, only there for tooling
+                int length = buffer.getInt();
+                routes.add(objectMapper.readValue(file, buffer.position(), length, Route.class));
+                buffer.position(buffer.position() + length);
+            }
+            writtenChecksum = checksum;
+
+            long elapsedNanos = System.nanoTime() - start;
+            meterRegistry.timer("gateway.routes.snapshot.load").record(elapsedNanos, TimeUnit.NANOSECONDS);
+            log.info("Loaded route snapshot {} ({} routes, {} bytes) in {} ms", path, count, size,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            return Optional.of(routes);
+        } catch (IOException | RuntimeException e) {
+            return corrupt(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    // Written next to the target and moved over it, readers never see a partial file
+    public void save(List<Route> routes) {
+        try {
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bodyBytes);
+            for (Route route : routes) {
+                byte[] routeId = String.valueOf(route.getRouteId()).getBytes(StandardCharsets.UTF_8);
+                byte[] json = objectMapper.writeValueAsBytes(route);
+                body.writeInt(routeId.length);
+                body.write(routeId);
+                body.writeInt(json.length);
+                body.write(json);
+            }
+            byte[] encoded = bodyBytes.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(encoded);
+            long checksum = crc.getValue();
+            if (checksum == writtenChecksum && Files.isRegularFile(path)) {
+                return;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putLong(System.currentTimeMillis())
+                    .putInt(routes.size())
+                    .putInt(encoded.length)
+                    .putLong(checksum)
+                    .flip();
+
+            Path dir = path.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    ByteBuffer[] buffers = { header, ByteBuffer.wrap(encoded) };
+                    while (buffers[1].hasRemaining()) {
+                        channel.write(buffers);
+                    }
+                    channel.force(true);
+                }
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            writtenChecksum = checksum;
+            log.debug("Wrote route snapshot with {} routes to {}", routes.size(), path);
+        } catch (IOException e) {
+            log.error("Error writing route snapshot {}: {}", path, e.getMessage());
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    private Optional<List<Route>> corrupt(String reason) {
+        log.warn("Ignoring route snapshot {}: {}", path, reason);
+        meterRegistry.counter("gateway.routes.snapshot.corrupt").increment();
+        return Optional.empty();
+    }
+
+    private static void skip(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+}
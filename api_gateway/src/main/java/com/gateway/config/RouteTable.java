@@ -0,0 +1,268 @@
+package com.gateway.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.gateway.entity.Route;
+import com.gateway.repository.RouteRepository;
+import com.gateway.service.GatewayMeters;
+import com.gateway.service.StartupMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stored routes as the gateway sees them. With a usable snapshot the first
+ * load never waits for Mongo: it serves the snapshot and reconciles with Mongo
+ * in the background, refreshing the gateway once Mongo has answered. Without
+ * one (first boot, corrupt file) the first load reads Mongo. Later loads read
+ * Mongo and rewrite the snapshot; when Mongo fails the last-known-good routes
+ * stay in service. Refreshes go through {@link #refresh()}, which only asks
+ * the gateway to reload when the stored routes changed.
+ */
+@Component
+@Slf4j
+public class RouteTable {
+
+    // Sorted properties and map keys, so equal routes serialize to equal bytes
+    private static final ObjectMapper CANONICAL_JSON = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private final RouteRepository routeRepository;
+    private final RouteCompiler routeCompiler;
+    private final RouteSnapshotStore snapshotStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StartupMetrics startupMetrics;
+    private final GatewayMeters gatewayMeters;
+    private final boolean snapshotEnabled;
+    private final Duration maxReconcileBackoff;
+
+    // Routes to serve on the next load instead of reading Mongo
+    private volatile Preloaded preloaded;
+    // Last routes loaded from Mongo or the snapshot, served while Mongo is down
+    private volatile List<Route> lastKnownGood;
+    // Version of the stored routes behind the compiled table, see versionOf
+    private volatile long version;
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+
+    public RouteTable(RouteRepository routeRepository,
+            RouteCompiler routeCompiler,
+            RouteSnapshotStore snapshotStore,
+            ApplicationEventPublisher eventPublisher,
+            StartupMetrics startupMetrics,
+            GatewayMeters gatewayMeters,
+            @Value("${gateway.routes.snapshot.enabled:true}") boolean snapshotEnabled,
+            @Value("${gateway.routes.reconcile.max-backoff-ms:30000}") long maxReconcileBackoffMillis) {
+        this.routeRepository = routeRepository;
+        this.routeCompiler = routeCompiler;
+        this.snapshotStore = snapshotStore;
+        this.eventPublisher = eventPublisher;
+        this.startupMetrics = startupMetrics;
+        this.gatewayMeters = gatewayMeters;
+        this.snapshotEnabled = snapshotEnabled;
+        this.maxReconcileBackoff = Duration.ofMillis(maxReconcileBackoffMillis);
+
+        if (snapshotEnabled) {
+            snapshotStore.load().ifPresentOrElse(snapshot -> {
+                preloaded = new Preloaded(snapshot, "snapshot");
+                lastKnownGood = snapshot;
+            }, () -> log.info("No usable route snapshot at {}, loading routes from Mongo", snapshotStore.getPath()));
+        }
+    }
+
+    /**
+     * Compiled gateway routes for the current stored routes.
+     */
+    public Flux<org.springframework.cloud.gateway.route.Route> getRoutes() {
+        Preloaded current = preloaded;
+        if (current != null) {
+            if ("snapshot".equals(current.source())) {
+                reconcileInBackground();
+            } else {
+                preloaded = null;
+            }
+            return Flux.fromIterable(compileAll(current.routes(), current.source()));
+        }
+        return loadFromMongo()
+                .map(routes -> compileAll(routes, "mongo"))
+                .onErrorResume(e -> {
+                    List<Route> lastGood = lastKnownGood;
+                    reconcileInBackground();
+                    if (lastGood == null) {
+                        log.error("Error loading routes from Mongo and no snapshot to fall back to: {}",
+                                e.getMessage());
+                        return Mono.just(List.of());
+                    }
+                    log.warn("Error loading routes from Mongo, keeping {} last-known-good routes: {}",
+                            lastGood.size(), e.getMessage());
+                    return Mono.just(compileAll(lastGood, "last-known-good"));
+                })
+                .flatMapIterable(routes -> routes);
+    }
+
+    private Mono<List<Route>> loadFromMongo() {
+        return routeRepository.findByEnabled(true)
+                .collectList()
+                .doOnNext(this::remember);
+    }
+
+    private void remember(List<Route> routes) {
+        lastKnownGood = routes;
+        if (snapshotEnabled) {
+            Mono.fromRunnable(() -> snapshotStore.save(routes))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .subscribe();
+        }
+    }
+
+    private void reconcileInBackground() {
+        if (!reconciling.compareAndSet(false, true)) {
+            return;
+        }
+        loadFromMongo()
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(maxReconcileBackoff)
+                        .doBeforeRetry(signal -> log.warn("Mongo not reachable, retrying route load: {}",
+                                signal.failure().getMessage())))
+                .doFinally(signal -> reconciling.set(false))
+                .subscribe(routes -> {
+                    log.info("Reconciled route table with Mongo: {} routes", routes.size());
+                    publishIfChanged(routes);
+                });
+    }
+
+    /**
+     * Reads the stored routes and refreshes the gateway with them, unless
+     * their version matches the routes already compiled. Emits whether a
+     * refresh was published.
+     */
+    public Mono<Boolean> refresh() {
+        return loadFromMongo().map(this::publishIfChanged);
+    }
+
+    /**
+     * Like {@link #refresh()}, reading only the given routes from Mongo and
+     * keeping the others as they are. Falls back to a full refresh before
+     * any routes were loaded.
+     */
+    public Mono<Boolean> refresh(Collection<String> routeIds) {
+        List<Route> current = lastKnownGood;
+        if (current == null) {
+            return refresh();
+        }
+        if (routeIds.isEmpty()) {
+            return Mono.just(false);
+        }
+        return routeRepository.findByRouteIdIn(routeIds)
+                .collectList()
+                .map(changed -> {
+                    Map<String, Route> merged = new LinkedHashMap<>();
+                    for (Route route : current) {
+                        merged.put(route.getRouteId(), route);
+                    }
+                    // Deleted and disabled routes come back missing or disabled
+                    routeIds.forEach(merged::remove);
+                    for (Route route : changed) {
+                        if (route.isEnabled()) {
+                            merged.put(route.getRouteId(), route);
+                        }
+                    }
+                    List<Route> routes = List.copyOf(merged.values());
+                    remember(routes);
+                    return publishIfChanged(routes);
+                });
+    }
+
+    /**
+     * Version of the stored routes the gateway currently serves.
+     */
+    public long version() {
+        return version;
+    }
+
+    private boolean publishIfChanged(List<Route> routes) {
+        long next = versionOf(routes);
+        if (next == version) {
+            log.debug("Stored routes unchanged, skipping refresh");
+            // Mongo agrees with the snapshot, later loads read Mongo again
+            Preloaded current = preloaded;
+            if (current != null && "snapshot".equals(current.source())) {
+                preloaded = null;
+            }
+            return false;
+        }
+        version = next;
+        preloaded = new Preloaded(routes, "mongo");
+        eventPublisher.publishEvent(new RefreshRoutesEvent(this));
+        return true;
+    }
+
+    /**
+     * Version of a set of stored routes, the same on every node holding the
+     * same routes: a SHA-256 of each route's canonical JSON, summed so the
+     * order Mongo returns them in does not matter.
+     */
+    public static long versionOf(List<Route> routes) {
+        long version = routes.size();
+        for (Route route : routes) {
+            version += digest(route);
+        }
+        return version;
+    }
+
+    private static long digest(Route route) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(CANONICAL_JSON.writeValueAsBytes(route));
+            return ByteBuffer.wrap(hash).getLong();
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot compute version of route " + route.getRouteId(), e);
+        }
+    }
+
+    private List<org.springframework.cloud.gateway.route.Route> compileAll(List<Route> routes, String source) {
+        List<String> routeIds = routes.stream().map(Route::getRouteId).toList();
+        routeCompiler.retain(routeIds);
+        gatewayMeters.retain(routeIds);
+
+        List<org.springframework.cloud.gateway.route.Route> compiled = new ArrayList<>(routes.size());
+        for (Route route : routes) {
+            try {
+                compiled.add(routeCompiler.compile(route).route());
+            } catch (IllegalArgumentException e) {
+                // One bad route stored before validation existed must not take the others down
+                log.error("Skipping route {}: {}", route.getRouteId(), e.getMessage());
+            }
+        }
+        version = versionOf(routes);
+        startupMetrics.routesReady(source, compiled.size());
+        log.info("Route loading completed: {} routes from {}", compiled.size(), source);
+        return compiled;
+    }
+
+    private record Preloaded(List<Route> routes, String source) {
+    }
+}
@@ -0,0 +1,22 @@
+package com.gateway.config;
+
+import com.gateway.service.UpstreamHealthService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+@Component
+@Endpoint(id = "upstreams")
+@RequiredArgsConstructor
+public class UpstreamHealthEndpoint {
+
+    private final UpstreamHealthService upstreamHealthService;
+
+    @ReadOperation
+    public Map<String, Object> upstreams() {
+        return upstreamHealthService.snapshot();
+    }
+}
@@ -3,6 +3,8 @@ package com.gateway.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.gateway.controller.LiveMetricsWebSocketHandler;
+import org.springframework.core.Ordered;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.codec.ServerCodecConfigurer;
@@ -10,6 +12,9 @@ import org.springframework.http.codec.json.Jackson2JsonDecoder;
 import org.springframework.http.codec.json.Jackson2JsonEncoder;
 import org.springframework.web.reactive.config.EnableWebFlux;
 import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+
+import java.util.Map;
 
 @Configuration
 @EnableWebFlux
@@ -23,6 +28,13 @@ public class WebFluxConfig implements WebFluxConfigurer {
         return mapper;
     }
 
+    // Ahead of the gateway's route lookup, so no route can shadow the endpoint
+    @Bean
+    public SimpleUrlHandlerMapping liveMetricsWebSocketMapping(LiveMetricsWebSocketHandler handler) {
+        return new SimpleUrlHandlerMapping(Map.of(LiveMetricsWebSocketHandler.PATH, handler),
+                Ordered.HIGHEST_PRECEDENCE);
+    }
+
     @Override
     public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
         ObjectMapper mapper = objectMapper();
@@ -2,15 +2,19 @@ package com.gateway.controller;
 
 import com.gateway.entity.ApiMetric;
 import com.gateway.service.ApiMetricsService;
+import com.gateway.service.UniqueClientsService;
+import com.gateway.service.topk.TopKService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -53,13 +57,85 @@ public class ApiMetricsController {
         return apiMetricsService.getServiceInteractions(startDate, endDate);
     }
 
+    // source is auto, sketch (this node's memory) or mongo (gateway-wide), each row says which answered
     @GetMapping("/top-endpoints")
-    public Flux<Map<String, Object>> getTopEndpoints(
+    public Mono<ResponseEntity<List<Map<String, Object>>>> getTopEndpoints(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "auto") String source) {
+
+        ApiMetricsService.EndpointSource parsed = parse(ApiMetricsService.EndpointSource.class, source);
+        if (parsed == null) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return apiMetricsService.getTopEndpoints(startDate, endDate, limit, parsed)
+                .collectList()
+                .map(ResponseEntity::ok);
+    }
+
+    // endpoints, clients, user-agents or service-pairs over the last minutes or between two dates,
+    // from this node's memory
+    @GetMapping("/top/{dimension}")
+    public Mono<ResponseEntity<Map<String, Object>>> getTopK(@PathVariable String dimension,
+            @RequestParam(defaultValue = "60") int minutes,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
             @RequestParam(defaultValue = "10") int limit) {
 
-        return apiMetricsService.getTopEndpoints(startDate, endDate, limit);
+        TopKService.Dimension parsed = parse(TopKService.Dimension.class, dimension);
+        if (parsed == null) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return apiMetricsService.getTopK(parsed, minutes, startDate, endDate, limit)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // Distinct clients or user-agents of routes/{routeId} or services/{service}, gateway-wide from Redis
+    @GetMapping("/unique/{scope}/{id}")
+    public Mono<ResponseEntity<Map<String, Object>>> getUniqueCount(@PathVariable String scope,
+            @PathVariable String id,
+            @RequestParam(defaultValue = "clients") String dimension,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+
+        UniqueClientsService.Scope parsedScope = uniqueScope(scope);
+        UniqueClientsService.Dimension parsedDimension = parse(UniqueClientsService.Dimension.class, dimension);
+        if (parsedScope == null || parsedDimension == null) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return apiMetricsService.getUniqueCount(parsedScope, id, parsedDimension, startDate, endDate)
+                .map(ResponseEntity::ok)
+                .onErrorResume(e -> {
+                    log.warn("Error counting distinct {} of {} {}: {}", dimension, scope, id, e.getMessage());
+                    return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+                });
+    }
+
+    @GetMapping("/unique/{scope}/{id}/series")
+    public Mono<ResponseEntity<List<Map<String, Object>>>> getUniqueSeries(@PathVariable String scope,
+            @PathVariable String id,
+            @RequestParam(defaultValue = "clients") String dimension,
+            @RequestParam(defaultValue = "hour") String granularity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+
+        UniqueClientsService.Scope parsedScope = uniqueScope(scope);
+        UniqueClientsService.Dimension parsedDimension = parse(UniqueClientsService.Dimension.class, dimension);
+        UniqueClientsService.Granularity parsedGranularity = parse(UniqueClientsService.Granularity.class,
+                granularity);
+        if (parsedScope == null || parsedDimension == null || parsedGranularity == null) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return apiMetricsService.getUniqueSeries(parsedScope, id, parsedDimension, parsedGranularity,
+                        startDate, endDate)
+                .collectList()
+                .map(ResponseEntity::ok)
+                .onErrorResume(e -> {
+                    log.warn("Error counting distinct {} of {} {}: {}", dimension, scope, id, e.getMessage());
+                    return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+                });
     }
 
     @GetMapping("/{id}")
@@ -78,4 +154,21 @@ public class ApiMetricsController {
     public Flux<ApiMetric> getMetricsByService(@PathVariable String serviceName) {
         return apiMetricsService.getMetricsByService(serviceName);
     }
-}
\ No newline at end of file
+
+    private static UniqueClientsService.Scope uniqueScope(String scope) {
+        return switch (scope) {
+            case "routes" -> UniqueClientsService.Scope.ROUTE;
+            case "services" -> UniqueClientsService.Scope.SERVICE;
+            default -> null;
+        };
+    }
+
+    // user-agents for USER_AGENTS, null for anything else
+    private static <E extends Enum<E>> E parse(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.gateway.controller;
 
+import com.gateway.service.FallbackResponseRegistry;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -13,25 +15,33 @@ import java.util.HashMap;
 import java.util.Map;
 
 @RestController
+@RequiredArgsConstructor
 @Slf4j
 public class FallbackController {
 
+    private final FallbackResponseRegistry fallbackRegistry;
+
     @GetMapping("/fallback/{service}")
-    public Mono<ResponseEntity<Map<String, Object>>> serviceFallback(
+    public Mono<ResponseEntity<?>> serviceFallback(
             @PathVariable String service,
             @RequestParam(required = false) String error) {
 
         log.warn("Fallback triggered for service: {}, error: {}", service, error);
 
+        if (error == null || error.isEmpty()) {
+            // Same serialized body the circuit breaker writes in-process
+            FallbackResponseRegistry.FallbackResponse fallback = fallbackRegistry.forService(service);
+            return Mono.just(ResponseEntity.status(fallback.status())
+                    .headers(fallback.headers())
+                    .body(fallback.bytes()));
+        }
+
         Map<String, Object> response = new HashMap<>();
         response.put("status", "error");
         response.put("message", "Service temporarily unavailable");
         response.put("service", service);
-
-        if (error != null && !error.isEmpty()) {
-            response.put("error", error);
-        }
+        response.put("error", error);
 
         return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response));
     }
-}
\ No newline at end of file
+}
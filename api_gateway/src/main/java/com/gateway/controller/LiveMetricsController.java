@@ -0,0 +1,33 @@
+package com.gateway.controller;
+
+import com.gateway.service.LiveMetricsService;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.Set;
+
+/**
+ * Server-sent events with a JSON snapshot of every route's live metrics
+ * each second, for dashboards that would otherwise poll Redis or Mongo.
+ * {@code ?routes=a,b} narrows it to some routes.
+ */
+@RestController
+public class LiveMetricsController {
+
+    private final LiveMetricsService liveMetricsService;
+
+    public LiveMetricsController(LiveMetricsService liveMetricsService) {
+        this.liveMetricsService = liveMetricsService;
+    }
+
+    @GetMapping(value = "/metrics/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> stream(@RequestParam(required = false) Set<String> routes) {
+        // String data goes out as is, already serialized
+        return liveMetricsService.streamJson(routes)
+                .map(json -> ServerSentEvent.builder(json).event("metrics").build());
+    }
+}
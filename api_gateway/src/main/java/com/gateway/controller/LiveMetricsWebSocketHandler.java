@@ -0,0 +1,50 @@
+package com.gateway.controller;
+
+import com.gateway.service.LiveMetricsService;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The live metrics stream over a WebSocket, one JSON snapshot per text
+ * message. {@code ?routes=a,b} narrows it to some routes, as for the SSE
+ * endpoint.
+ */
+@Component
+public class LiveMetricsWebSocketHandler implements WebSocketHandler {
+
+    public static final String PATH = "/metrics/ws";
+
+    private final LiveMetricsService liveMetricsService;
+
+    public LiveMetricsWebSocketHandler(LiveMetricsService liveMetricsService) {
+        this.liveMetricsService = liveMetricsService;
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        // Inbound frames carry nothing, draining them notices the client closing
+        Mono<Void> closed = session.receive().then();
+        Mono<Void> sent = session.send(liveMetricsService.streamJson(routes(session)).map(session::textMessage));
+        return Mono.firstWithSignal(sent, closed);
+    }
+
+    private static Set<String> routes(WebSocketSession session) {
+        List<String> values = UriComponentsBuilder.fromUri(session.getHandshakeInfo().getUri())
+                .build()
+                .getQueryParams()
+                .getOrDefault("routes", List.of());
+        return values.stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .filter(route -> !route.isEmpty())
+                .collect(Collectors.toSet());
+    }
+}
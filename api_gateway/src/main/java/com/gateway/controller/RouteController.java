@@ -2,15 +2,18 @@ package com.gateway.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import com.gateway.dto.BulkRouteResult;
 import com.gateway.dto.RouteDTO;
 import com.gateway.entity.Route;
 import com.gateway.service.RouteService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -87,6 +90,22 @@ public class RouteController {
         return routeService.searchRoutes(path, method);
     }
 
+    // JSON array or streamed NDJSON (application/x-ndjson), upserted by routeId with a single refresh
+    @PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public Mono<ResponseEntity<BulkRouteResult>> upsertRoutes(@RequestBody Flux<Route> routes) {
+        // Rejected only when nothing was written, a partial import is reported in the result
+        return routeService.upsertRoutes(routes)
+                .map(result -> ResponseEntity
+                        .status(result.getErrors().isEmpty() || result.isPartial() ? HttpStatus.OK
+                                : HttpStatus.BAD_REQUEST)
+                        .body(result));
+    }
+
+    @DeleteMapping("/bulk")
+    public Mono<BulkRouteResult> deleteRoutes(@RequestBody List<String> routeIds) {
+        return routeService.deleteRoutes(routeIds);
+    }
+
     @PostMapping("/refresh")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public Mono<Void> refreshRoutes() {
@@ -0,0 +1,30 @@
+package com.gateway.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk route write. Processing stops at the first batch that
+ * fails validation or writing; batches before it stay written. A batch that
+ * fails validation writes nothing, one that fails writing keeps the routes
+ * before the failing one unless batches run in transactions.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkRouteResult {
+    private int batches;
+    private int inserted;
+    private int updated;
+    private int deleted;
+    // Some routes were written before processing stopped on an error
+    private boolean partial;
+    @Builder.Default
+    private List<String> errors = new ArrayList<>();
+}
@@ -2,14 +2,18 @@ package com.gateway.dto;
 
 import com.gateway.model.CircuitBreakerConfig;
 import com.gateway.model.RateLimiterConfig;
+import com.gateway.model.ResponseCacheConfig;
+import com.gateway.model.SingleFlightConfig;
 import com.gateway.model.RetryConfig;
 import com.gateway.model.TimeoutConfig;
+import com.gateway.model.UpstreamTarget;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Data
@@ -22,6 +26,7 @@ public class RouteDTO {
     private String path;
     private String method;
     private String uri;
+    private List<UpstreamTarget> targets; // weighted upstreams, balanced client-side
     private Integer order;
     private Map<String, Object> metadata;
     private Map<String, String> filters;
@@ -32,6 +37,8 @@ public class RouteDTO {
     private RateLimiterConfig rateLimiter;
     private TimeoutConfig timeout;
     private RetryConfig retry;
+    private ResponseCacheConfig responseCache;
+    private SingleFlightConfig singleFlight;
 
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
@@ -16,7 +16,8 @@ public class ApiMetric {
     private long duration; // Response time in milliseconds
     private String routeId; // Route identifier
     private String method; // HTTP method (GET, POST, etc.)
-    private String path; // Request path
+    private String path; // Request path, as the client sent it
+    private String pathTemplate; // The path with ids replaced, e.g. /users/{id}, what aggregations group by
     private String interactionType; // "USER_TO_APP" or "APP_TO_APP"
     private int statusCode; // HTTP status code
     private String queryParameters; // Request query parameters
@@ -2,8 +2,11 @@ package com.gateway.entity;
 
 import com.gateway.model.CircuitBreakerConfig;
 import com.gateway.model.RateLimiterConfig;
+import com.gateway.model.ResponseCacheConfig;
+import com.gateway.model.SingleFlightConfig;
 import com.gateway.model.RetryConfig;
 import com.gateway.model.TimeoutConfig;
+import com.gateway.model.UpstreamTarget;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -12,6 +15,7 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Data
@@ -27,6 +31,7 @@ public class Route {
     private String path;
     private String method;
     private String uri;
+    private List<UpstreamTarget> targets; // weighted upstreams, balanced client-side
     private Integer order;
     private Map<String, Object> metadata;
     private Map<String, String> filters;
@@ -37,6 +42,8 @@ public class Route {
     private RateLimiterConfig rateLimiter;
     private TimeoutConfig timeout;
     private RetryConfig retry;
+    private ResponseCacheConfig responseCache;
+    private SingleFlightConfig singleFlight;
 
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
@@ -1,9 +1,12 @@
 package com.gateway.filter;
 
+import com.gateway.service.FallbackResponseRegistry;
 import lombok.extern.slf4j.Slf4j;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreaker;
 import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
@@ -12,17 +15,23 @@ import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFac
 import org.springframework.cloud.gateway.route.Route;
 import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
-import org.springframework.http.HttpStatus;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.net.URI;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 
 @Component("CircuitBreaker") // <-- Add this name
 @Slf4j
@@ -32,14 +41,17 @@ public class CircuitBreakerGatewayFilterFactory
 
     private ReactiveResilience4JCircuitBreakerFactory circuitBreakerFactory;
     private CircuitBreakerRegistry circuitBreakerRegistry;
+    private FallbackResponseRegistry fallbackRegistry;
 
     @Autowired
     public CircuitBreakerGatewayFilterFactory(
             ReactiveResilience4JCircuitBreakerFactory circuitBreakerFactory,
-            CircuitBreakerRegistry circuitBreakerRegistry) {
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            FallbackResponseRegistry fallbackRegistry) {
         super(Config.class);
         this.circuitBreakerFactory = circuitBreakerFactory;
         this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.fallbackRegistry = fallbackRegistry;
     }
 
     @Override
@@ -56,19 +68,42 @@ public class CircuitBreakerGatewayFilterFactory
 
             configureCircuitBreaker(cbName, config);
 
+            // Remember good GET responses so an open breaker can serve them, never per-user ones
+            ServerHttpRequest request = exchange.getRequest();
+            String lastGoodKey = Boolean.TRUE.equals(config.getServeLastGood()) && request.getMethod() == HttpMethod.GET
+                    && !RequestKeys.hasCredentials(request, List.of())
+                    ? RequestKeys.of(routeId, request, List.of()) : null;
+
+            // Open breaker: answer right here, without building the chain or the reactive breaker
+            if (isOpen(cbName)) {
+                log.debug("Circuit breaker {} is open", cbName);
+                return handleFallback(exchange, routeId, lastGoodKey, null, config.getFallbackUri());
+            }
+
             // Get ReactiveCircuitBreaker instead of CircuitBreaker
             ReactiveResilience4JCircuitBreaker reactiveCircuitBreaker = (ReactiveResilience4JCircuitBreaker) circuitBreakerFactory
                     .create(cbName);
 
+            ServerWebExchange routedExchange = lastGoodKey == null ? exchange
+                    : exchange.mutate()
+                            .response(new LastGoodRecorder(exchange.getResponse(), lastGoodKey,
+                                    config.getLastGoodMaxBytes()))
+                            .build();
+
             // Execute with the reactive circuit breaker
             return reactiveCircuitBreaker.run(
-                    chain.filter(exchange).onErrorResume(t -> {
+                    Mono.defer(() -> chain.filter(routedExchange)).onErrorResume(t -> {
                         log.error("Error during request execution: {}", t.getMessage());
-                        return handleFallback(exchange, t, config.getFallbackUri());
+                        return handleFallback(exchange, routeId, lastGoodKey, t, config.getFallbackUri());
                     }),
                     throwable -> {
-                        log.error("Circuit breaker triggered: {}", throwable.getMessage());
-                        return handleFallback(exchange, throwable, config.getFallbackUri());
+                        // Every request hits this while the breaker is open, keep it cheap
+                        if (throwable instanceof CallNotPermittedException) {
+                            log.debug("Circuit breaker {} is open", cbName);
+                        } else {
+                            log.error("Circuit breaker triggered: {}", throwable.getMessage());
+                        }
+                        return handleFallback(exchange, routeId, lastGoodKey, throwable, config.getFallbackUri());
                     });
         };
     }
@@ -103,35 +138,90 @@ public class CircuitBreakerGatewayFilterFactory
         }
     }
 
-    private Mono<Void> handleFallback(ServerWebExchange exchange, Throwable throwable, String fallbackUri) {
-        if (fallbackUri != null) {
-            URI uri = exchange.getRequest().getURI();
-            String query = uri.getQuery() == null ? "" : "?" + uri.getQuery();
-            String path = fallbackUri + query;
-
-            log.info("Redirecting to fallback: {}", path);
+    // A permit granted here means the breaker just moved to half-open, the call proper asks again
+    private boolean isOpen(String cbName) {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.find(cbName).orElse(null);
+        if (circuitBreaker == null) {
+            return false;
+        }
+        CircuitBreaker.State state = circuitBreaker.getState();
+        if (state != CircuitBreaker.State.OPEN && state != CircuitBreaker.State.FORCED_OPEN) {
+            return false;
+        }
+        if (circuitBreaker.tryAcquirePermission()) {
+            circuitBreaker.releasePermission();
+            return false;
+        }
+        return true;
+    }
 
-            // Create a new request with the fallback path
-            ServerHttpRequest request = exchange.getRequest().mutate()
-                    .path(path)
-                    .build();
+    private Mono<Void> handleFallback(ServerWebExchange exchange, String routeId, String lastGoodKey,
+            Throwable throwable, String fallbackUri) {
+        ServerHttpResponse response = exchange.getResponse();
+        if (response.isCommitted() && throwable != null) {
+            // Part of the upstream response already went out, nothing to replace it with
+            return Mono.error(throwable);
+        }
 
-            // Create a new exchange with the modified request
-            ServerWebExchange modifiedExchange = exchange.mutate()
-                    .request(request)
-                    .build();
+        if (lastGoodKey != null) {
+            FallbackResponseRegistry.FallbackResponse lastGood = fallbackRegistry.lastGood(lastGoodKey);
+            if (lastGood != null) {
+                return fallbackRegistry.write(response, lastGood, routeId, "last_good");
+            }
+        }
 
-            // Return a 503 Service Unavailable status to indicate circuit breaker
-            // activation
-            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        // Precomputed fallback written in-process, no dispatch to FallbackController
+        return fallbackRegistry.write(response, fallbackRegistry.forFallbackUri(fallbackUri), routeId, "static");
+    }
 
-            // Redirect to the fallback endpoint
-            return exchange.getResponse().setComplete();
+    /**
+     * Copies successful responses up to a size limit into the last-good store.
+     */
+    private class LastGoodRecorder extends ServerHttpResponseDecorator {
+        private final String key;
+        private final int maxBytes;
+
+        LastGoodRecorder(ServerHttpResponse delegate, String key, int maxBytes) {
+            super(delegate);
+            this.key = key;
+            this.maxBytes = maxBytes;
         }
 
-        // If no fallback URI is provided, just return a 503 error
-        exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
-        return exchange.getResponse().setComplete();
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatusCode status = getStatusCode();
+            if (status == null || !status.is2xxSuccessful() || getHeaders().containsKey(HttpHeaders.SET_COOKIE)
+                    || getHeaders().getContentLength() > maxBytes) {
+                return super.writeWith(body);
+            }
+
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            boolean[] overflow = { false };
+            Flux<? extends DataBuffer> tee = Flux.from(body)
+                    .doOnNext(buffer -> {
+                        if (overflow[0]) {
+                            return;
+                        }
+                        if (copy.size() + buffer.readableByteCount() > maxBytes) {
+                            overflow[0] = true;
+                            return;
+                        }
+                        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                            while (iterator.hasNext()) {
+                                ByteBuffer byteBuffer = iterator.next();
+                                byte[] bytes = new byte[byteBuffer.remaining()];
+                                byteBuffer.get(bytes);
+                                copy.writeBytes(bytes);
+                            }
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (!overflow[0]) {
+                            fallbackRegistry.putLastGood(key, status, getHeaders(), copy.toByteArray());
+                        }
+                    });
+            return super.writeWith(tee);
+        }
     }
 
     @Override
@@ -147,6 +237,8 @@ public class CircuitBreakerGatewayFilterFactory
         private Integer permittedCallsInHalfOpenState = 10;
         private String fallbackUri;
         private Boolean automaticTransition = true;
+        private Boolean serveLastGood = false; // serve the last good GET response while the breaker is open
+        private Integer lastGoodMaxBytes = 65536;
 
         // Getters and setters
         public String getName() {
@@ -204,5 +296,21 @@ public class CircuitBreakerGatewayFilterFactory
         public void setAutomaticTransition(Boolean automaticTransition) {
             this.automaticTransition = automaticTransition;
         }
+
+        public Boolean getServeLastGood() {
+            return serveLastGood;
+        }
+
+        public void setServeLastGood(Boolean serveLastGood) {
+            this.serveLastGood = serveLastGood;
+        }
+
+        public Integer getLastGoodMaxBytes() {
+            return lastGoodMaxBytes;
+        }
+
+        public void setLastGoodMaxBytes(Integer lastGoodMaxBytes) {
+            this.lastGoodMaxBytes = lastGoodMaxBytes;
+        }
     }
 }
\ No newline at end of file
@@ -1,22 +1,54 @@
 package com.gateway.filter;
 
+import com.gateway.service.RequestBodyBufferService;
+import com.gateway.service.RetryBudgetService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.retry.Backoff;
+import reactor.retry.BackoffDelay;
+import reactor.retry.Repeat;
+import reactor.retry.Retry;
 
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class CustomRetryGatewayFilterFactory extends RetryGatewayFilterFactory {
 
+    private static final long DEFAULT_FIRST_BACKOFF_MS = 50;
+    private static final double DEFAULT_BACKOFF_FACTOR = 3.0;
+    private static final long DEFAULT_MAX_BACKOFF_MS = 5000;
+
+    // Set when a request's body can't be replayed, so it must not be retried
+    public static final String RETRY_DISABLED_ATTR = CustomRetryGatewayFilterFactory.class.getName() + ".retryDisabled";
+
+    private final RetryBudgetService retryBudgetService;
+    private final RequestBodyBufferService bodyBufferService;
+
+    public CustomRetryGatewayFilterFactory(RetryBudgetService retryBudgetService,
+            RequestBodyBufferService bodyBufferService) {
+        this.retryBudgetService = retryBudgetService;
+        this.bodyBufferService = bodyBufferService;
+    }
+
     @Override
     public List<String> shortcutFieldOrder() {
         return Arrays.asList("retries", "backoff", "methods", "exceptions", "statuses");
@@ -29,19 +61,8 @@ public class CustomRetryGatewayFilterFactory extends RetryGatewayFilterFactory {
         // Set retry attempts
         retryConfig.setRetries(config.getRetries());
 
-        // Configure backoff if specified
-        if (config.getBackoff() != null && !config.getBackoff().isEmpty()) {
-            String[] parts = config.getBackoff().split(",");
-            if (parts.length >= 2) {
-                long firstBackoff = Long.parseLong(parts[0].trim());
-                // Create durations for min and max
-                Duration firstBackoffDuration = Duration.ofMillis(firstBackoff);
-                Duration maxBackoff = Duration.ofSeconds(30);
-
-                // Use fixed backoff with max duration
-                retryConfig.setBackoff(firstBackoffDuration, maxBackoff, 3, true);
-            }
-        }
+        // Backoff format: "firstBackoff,factor[,maxBackoff]" in milliseconds
+        Backoff backoff = decorrelatedJitterBackoff(config.getBackoff());
 
         // Set methods to retry
         if (config.getMethods() != null && !config.getMethods().isEmpty()) {
@@ -73,7 +94,7 @@ public class CustomRetryGatewayFilterFactory extends RetryGatewayFilterFactory {
         if (config.getStatuses() != null && !config.getStatuses().isEmpty()) {
             Set<HttpStatus> statuses = Arrays.stream(config.getStatuses().split(","))
                     .map(String::trim)
-                    .map(HttpStatus::valueOf)
+                    .map(this::parseStatus)
                     .collect(Collectors.toSet());
 
             HttpStatus[] statusesArray = statuses.toArray(new HttpStatus[0]);
@@ -83,14 +104,206 @@ public class CustomRetryGatewayFilterFactory extends RetryGatewayFilterFactory {
             retryConfig.setSeries();
         }
 
+        retryConfig.validate();
         log.info("Creating retry filter with config: {}", retryConfig);
 
+        // Build the retry filter once per route, not per request. No route id is
+        // passed so the parent does not enable unbounded body caching for the
+        // route; bodies are cached below under a size and memory limit instead.
+        GatewayFilter retryFilter = apply((String) null,
+                buildStatusRepeat(retryConfig, backoff),
+                buildExceptionRetry(retryConfig, backoff));
+
         return (exchange, chain) -> {
-            // Wrap the chain filter call to add retry logging
-            return super.apply(retryConfig)
-                    .filter(exchange, chain)
-                    .doOnError(e -> log.error("Retry attempt failed: {}", e.getMessage()));
+            // Every first attempt earns retry budget for the route and upstream
+            retryBudgetService.recordRequest(routeId(exchange), upstream(exchange));
+
+            Mono<Void> result = hasBody(exchange.getRequest())
+                    ? filterWithCachedBody(exchange, chain, retryFilter, config)
+                    : retryFilter.filter(exchange, chain);
+
+            return result.doOnError(e -> log.error("Retry attempt failed: {}", e.getMessage()));
+        };
+    }
+
+    /**
+     * Retains the request body so it can be replayed on retry. Netty buffers are
+     * kept as a single reference-counted buffer and each attempt gets a retained
+     * slice, so nothing is copied. Bodies that are too large, of unknown length
+     * or over the global buffer cap are streamed once with retry disabled.
+     */
+    private Mono<Void> filterWithCachedBody(ServerWebExchange exchange, GatewayFilterChain chain,
+            GatewayFilter retryFilter, Config config) {
+        long contentLength = exchange.getRequest().getHeaders().getContentLength();
+
+        String skipReason = null;
+        if (!Boolean.TRUE.equals(config.getCacheBody())) {
+            skipReason = "disabled";
+        } else if (contentLength < 0) {
+            skipReason = "unknown_length";
+        } else if (contentLength > config.getMaxBodyBytes()) {
+            skipReason = "too_large";
+        } else if (!bodyBufferService.tryReserve(contentLength)) {
+            skipReason = "memory_cap";
+        }
+
+        if (skipReason != null) {
+            log.debug("Retry disabled for request body ({}): {}", skipReason, exchange.getRequest().getPath());
+            bodyBufferService.recordRetryDisabled(routeId(exchange), skipReason);
+            exchange.getAttributes().put(RETRY_DISABLED_ATTR, true);
+            return retryFilter.filter(exchange, chain);
+        }
+
+        // Released before completion is signalled downstream, doFinally would run after it
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                ServerWebExchangeUtils.clearCachedRequestBody(exchange);
+                bodyBufferService.release(contentLength);
+            }
         };
+        return ServerWebExchangeUtils.cacheRequestBody(exchange,
+                request -> retryFilter.filter(exchange.mutate().request(request).build(), chain))
+                .doOnTerminate(release)
+                .doOnCancel(release);
+    }
+
+    private boolean hasBody(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        return headers.getContentLength() > 0 || headers.containsKey(HttpHeaders.TRANSFER_ENCODING);
+    }
+
+    private Repeat<ServerWebExchange> buildStatusRepeat(RetryConfig retryConfig, Backoff backoff) {
+        if (retryConfig.getStatuses().isEmpty() && retryConfig.getSeries().isEmpty()) {
+            return null;
+        }
+
+        return Repeat.<ServerWebExchange>onlyIf(context -> {
+            ServerWebExchange exchange = context.applicationContext();
+            if (exceedsMaxIterations(exchange, retryConfig) || !isRetryableMethod(exchange, retryConfig)) {
+                return false;
+            }
+
+            HttpStatusCode statusCode = exchange.getResponse().getStatusCode();
+            if (!isRetryableStatus(statusCode, retryConfig)) {
+                return false;
+            }
+
+            return acquireRetry(exchange);
+        })
+                .doOnRepeat(context -> ServerWebExchangeUtils.reset(context.applicationContext()))
+                .backoff(backoff);
+    }
+
+    private Retry<ServerWebExchange> buildExceptionRetry(RetryConfig retryConfig, Backoff backoff) {
+        if (retryConfig.getExceptions().isEmpty()) {
+            return null;
+        }
+
+        return Retry.<ServerWebExchange>onlyIf(context -> {
+            ServerWebExchange exchange = context.applicationContext();
+            if (exceedsMaxIterations(exchange, retryConfig) || !isRetryableMethod(exchange, retryConfig)) {
+                return false;
+            }
+
+            Throwable exception = context.exception();
+            boolean retryableException = retryConfig.getExceptions().stream()
+                    .anyMatch(type -> type.isInstance(exception)
+                            || (exception != null && type.isInstance(exception.getCause())));
+            if (!retryableException) {
+                return false;
+            }
+
+            return acquireRetry(exchange);
+        })
+                .doOnRetry(context -> ServerWebExchangeUtils.reset(context.applicationContext()))
+                .retryMax(retryConfig.getRetries())
+                .backoff(backoff);
+    }
+
+    private boolean isRetryableMethod(ServerWebExchange exchange, RetryConfig retryConfig) {
+        if (exchange.getAttributeOrDefault(RETRY_DISABLED_ATTR, false)) {
+            return false;
+        }
+        return retryConfig.getMethods().contains(exchange.getRequest().getMethod());
+    }
+
+    private boolean isRetryableStatus(HttpStatusCode statusCode, RetryConfig retryConfig) {
+        if (statusCode == null) {
+            return false;
+        }
+        if (retryConfig.getStatuses().contains(statusCode)) {
+            return true;
+        }
+        return statusCode instanceof HttpStatus httpStatus
+                && retryConfig.getSeries().contains(httpStatus.series());
+    }
+
+    // Only called once a retry is otherwise warranted, so tokens are not spent on
+    // responses that would never have been retried
+    private boolean acquireRetry(ServerWebExchange exchange) {
+        return retryBudgetService.tryAcquireRetry(routeId(exchange), upstream(exchange));
+    }
+
+    private String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : "unknown";
+    }
+
+    private String upstream(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null || route.getUri() == null) {
+            return "unknown";
+        }
+        String authority = route.getUri().getAuthority();
+        return authority != null ? authority : route.getUri().toString();
+    }
+
+    /**
+     * Decorrelated jitter: each delay is random between the first backoff and
+     * {@code factor} times the previous delay, capped at the max backoff. This
+     * spreads out retries from many clients instead of synchronising them.
+     */
+    static Backoff decorrelatedJitterBackoff(String backoffSpec) {
+        long firstBackoffMs = DEFAULT_FIRST_BACKOFF_MS;
+        double factor = DEFAULT_BACKOFF_FACTOR;
+        long maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+
+        if (backoffSpec != null && !backoffSpec.isEmpty()) {
+            String[] parts = backoffSpec.split(",");
+            firstBackoffMs = Long.parseLong(parts[0].trim());
+            if (parts.length >= 2) {
+                factor = Double.parseDouble(parts[1].trim());
+            }
+            if (parts.length >= 3) {
+                maxBackoffMs = Long.parseLong(parts[2].trim());
+            }
+        }
+
+        if (firstBackoffMs <= 0 || factor < 1 || maxBackoffMs < firstBackoffMs) {
+            throw new IllegalArgumentException("Invalid retry backoff: " + backoffSpec);
+        }
+
+        Duration firstBackoff = Duration.ofMillis(firstBackoffMs);
+        Duration maxBackoff = Duration.ofMillis(maxBackoffMs);
+        long base = firstBackoffMs;
+        double multiplier = factor;
+        long cap = maxBackoffMs;
+
+        return context -> {
+            Duration previous = context.backoff();
+            long previousMs = previous == null || previous.isZero() ? base : previous.toMillis();
+            long upper = Math.min(cap, (long) (previousMs * multiplier));
+            long delay = upper > base ? ThreadLocalRandom.current().nextLong(base, upper + 1) : base;
+            return new BackoffDelay(firstBackoff, maxBackoff, Duration.ofMillis(delay));
+        };
+    }
+
+    // Accepts numeric codes ("503") as well as names ("SERVICE_UNAVAILABLE")
+    private HttpStatus parseStatus(String status) {
+        return Character.isDigit(status.charAt(0))
+                ? HttpStatus.valueOf(Integer.parseInt(status))
+                : HttpStatus.valueOf(status);
     }
 
     @SuppressWarnings("unchecked")
@@ -106,10 +319,12 @@ public class CustomRetryGatewayFilterFactory extends RetryGatewayFilterFactory {
     // Inner config class to accept configuration options
     public static class Config {
         private Integer retries = 3;
-        private String backoff; // format: "firstBackoff,factor" e.g. "100,1.5"
+        private String backoff; // format: "firstBackoff,factor[,maxBackoff]" e.g. "100,1.5,2000"
         private String methods; // comma-separated list of HTTP methods
         private String exceptions; // comma-separated list of exception class names
         private String statuses; // comma-separated list of HTTP status codes
+        private Boolean cacheBody = false; // retain request bodies so they can be replayed
+        private Integer maxBodyBytes = 65536; // larger bodies are sent once, without retry
 
         public Integer getRetries() {
             return retries;
@@ -150,5 +365,21 @@ public class CustomRetryGatewayFilterFactory extends RetryGatewayFilterFactory {
         public void setStatuses(String statuses) {
             this.statuses = statuses;
         }
+
+        public Boolean getCacheBody() {
+            return cacheBody;
+        }
+
+        public void setCacheBody(Boolean cacheBody) {
+            this.cacheBody = cacheBody;
+        }
+
+        public Integer getMaxBodyBytes() {
+            return maxBodyBytes;
+        }
+
+        public void setMaxBodyBytes(Integer maxBodyBytes) {
+            this.maxBodyBytes = maxBodyBytes;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.gateway.filter;
+
+import com.gateway.service.StartupMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reports time-to-first-routed-request; after the first one this is a single
+ * flag check.
+ */
+@Component
+@RequiredArgsConstructor
+public class FirstRoutedRequestFilter implements GlobalFilter, Ordered {
+
+    private final StartupMetrics startupMetrics;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (startupMetrics.isFirstRequestRecorded()) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange).doOnSuccess(v -> {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            startupMetrics.firstRoutedRequest(route != null ? route.getId() : "unknown");
+        });
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
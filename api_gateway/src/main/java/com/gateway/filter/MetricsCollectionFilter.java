@@ -2,39 +2,55 @@ package com.gateway.filter;
 
 import com.gateway.entity.ApiMetric;
 import com.gateway.service.ApiMetricsService;
+import com.gateway.service.GatewayMeters;
+import com.gateway.service.LiveMetricsService;
+import com.gateway.service.PathNormalizer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.cloud.gateway.route.Route;
 import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.util.Objects;
+import java.util.Set;
 
 @Component
 @Slf4j
 public class MetricsCollectionFilter implements GlobalFilter, Ordered {
 
     private final ApiMetricsService metricsService;
+    private final LiveMetricsService liveMetricsService;
+    private final GatewayMeters gatewayMeters;
+    private final PathNormalizer pathNormalizer;
 
-    public MetricsCollectionFilter(ApiMetricsService metricsService) {
+    public MetricsCollectionFilter(ApiMetricsService metricsService, LiveMetricsService liveMetricsService,
+            GatewayMeters gatewayMeters, PathNormalizer pathNormalizer) {
         this.metricsService = metricsService;
+        this.liveMetricsService = liveMetricsService;
+        this.gatewayMeters = gatewayMeters;
+        this.pathNormalizer = pathNormalizer;
     }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
 
         return chain.filter(exchange)
                 .doFinally(signalType -> {
                     try {
                         // Calculate duration
                         long duration = System.currentTimeMillis() - startTime;
+                        recordMeters(exchange, signalType, System.nanoTime() - startNanos);
 
                         // Create and save metric
                         ApiMetric metric = createMetric(exchange, duration);
@@ -46,6 +62,19 @@ public class MetricsCollectionFilter implements GlobalFilter, Ordered {
                 });
     }
 
+    // Before anything that could throw on an odd request, these are what Prometheus and the live view see
+    private void recordMeters(ServerWebExchange exchange, SignalType signalType, long latencyNanos) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String routeId = route != null ? route.getId() : "unknown";
+        HttpStatusCode status = signalType == SignalType.ON_ERROR ? null : exchange.getResponse().getStatusCode();
+        boolean appToApp = GatewayMeters.APP_TO_APP.equals(determineInteractionType(exchange.getRequest()));
+        gatewayMeters.record(routeId, status, signalType == SignalType.CANCEL, appToApp, latencyNanos);
+        if (signalType != SignalType.CANCEL) {
+            liveMetricsService.record(routeId, latencyNanos,
+                    status == null || status.is5xxServerError());
+        }
+    }
+
     private ApiMetric createMetric(ServerWebExchange exchange, long duration) {
         ServerHttpRequest request = exchange.getRequest();
         Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
@@ -53,7 +82,9 @@ public class MetricsCollectionFilter implements GlobalFilter, Ordered {
         ApiMetric metric = new ApiMetric();
         metric.setTimestamp(LocalDateTime.now());
         metric.setDuration(duration);
-        metric.setPath(request.getPath().toString());
+        String path = originalPath(exchange);
+        metric.setPath(path);
+        metric.setPathTemplate(pathNormalizer.template(path, matchedPattern(exchange, route)));
         metric.setMethod(request.getMethod().name());
 
         // Set route information
@@ -67,6 +98,7 @@ public class MetricsCollectionFilter implements GlobalFilter, Ordered {
         metric.setUserAgent(request.getHeaders().getFirst("User-Agent"));
 
         // Set interaction type
+        metric.setFromService(request.getHeaders().getFirst("X-Service-Name"));
         metric.setInteractionType(determineInteractionType(request));
 
         // Set query parameters
@@ -83,6 +115,24 @@ public class MetricsCollectionFilter implements GlobalFilter, Ordered {
         return metric;
     }
 
+    // Route filters may have rewritten the path by now
+    private static String originalPath(ServerWebExchange exchange) {
+        Set<URI> originalUrls = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR);
+        if (originalUrls != null && !originalUrls.isEmpty()) {
+            return originalUrls.iterator().next().getRawPath();
+        }
+        return exchange.getRequest().getPath().value();
+    }
+
+    // Route lookup tries several routes' predicates, the pattern only counts if it was this route's
+    private static String matchedPattern(ServerWebExchange exchange, Route route) {
+        if (route == null || !route.getId().equals(
+                exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_PREDICATE_MATCHED_PATH_ROUTE_ID_ATTR))) {
+            return null;
+        }
+        return exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_PREDICATE_MATCHED_PATH_ATTR);
+    }
+
     private String extractServiceName(String uri) {
         if (uri == null)
             return "unknown";
@@ -100,12 +150,13 @@ public class MetricsCollectionFilter implements GlobalFilter, Ordered {
     private String determineInteractionType(ServerHttpRequest request) {
         // Check for custom service name header
         String serviceName = request.getHeaders().getFirst("X-Service-Name");
-        return serviceName != null ? "APP_TO_APP" : "USER_TO_APP";
+        return serviceName != null ? GatewayMeters.APP_TO_APP : GatewayMeters.USER_TO_APP;
     }
 
     @Override
     public int getOrder() {
-        // Should run after other filters but before the request is sent to the service
-        return Ordered.LOWEST_PRECEDENCE - 1;
+        // Outside every route filter, so each client request is counted once with the status it got,
+        // whether a limiter, the cache, a fallback or the upstream answered it, however often it was retried
+        return Ordered.HIGHEST_PRECEDENCE;
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.gateway.filter;
 
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
 
@@ -45,6 +46,8 @@ public class PathRewriteGatewayFilterFactory
                 newPath = path;
             }
 
+            // Metrics report the path the client asked for
+            ServerWebExchangeUtils.addOriginalRequestUrl(exchange, request.getURI());
             ServerHttpRequest newRequest = request.mutate()
                     .path(newPath)
                     .build();
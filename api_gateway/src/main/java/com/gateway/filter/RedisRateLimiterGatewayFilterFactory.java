@@ -1,5 +1,17 @@
 package com.gateway.filter;
 
+import com.gateway.model.CostRule;
+import com.gateway.model.RateLimitAlgorithm;
+import com.gateway.service.RateLimitFallbackService;
+import com.gateway.service.ratelimit.Quota;
+import com.gateway.service.ratelimit.RateLimit;
+import com.gateway.service.ratelimit.RateLimitKeyResolvers;
+import com.gateway.service.ratelimit.RateLimitPolicy;
+import com.gateway.service.ratelimit.RequestCost;
+import com.gateway.service.ratelimit.ScriptedRateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
@@ -8,8 +20,6 @@ import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
 import org.springframework.cloud.gateway.route.Route;
 import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
-import org.springframework.data.redis.connection.ReactiveRedisConnection;
-import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
@@ -17,6 +27,9 @@ import reactor.core.publisher.Mono;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
 
 @Component("RedisRateLimiter")
 @Slf4j
@@ -24,76 +37,148 @@ public class RedisRateLimiterGatewayFilterFactory
         extends AbstractGatewayFilterFactory<RedisRateLimiterGatewayFilterFactory.Config>
         implements Ordered {
 
-    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ScriptedRateLimiter globalLimiter;
+    private final RateLimitFallbackService fallbackService;
+    private final RateLimitKeyResolvers keyResolvers;
+    private final MeterRegistry meterRegistry;
 
     @Autowired
-    public RedisRateLimiterGatewayFilterFactory(ReactiveStringRedisTemplate redisTemplate) {
+    public RedisRateLimiterGatewayFilterFactory(ScriptedRateLimiter globalLimiter,
+            RateLimitFallbackService fallbackService,
+            RateLimitKeyResolvers keyResolvers,
+            MeterRegistry meterRegistry) {
         super(Config.class);
-        this.redisTemplate = redisTemplate;
+        this.globalLimiter = globalLimiter;
+        this.fallbackService = fallbackService;
+        this.keyResolvers = keyResolvers;
+        this.meterRegistry = meterRegistry;
     }
 
     @Override
     public List<String> shortcutFieldOrder() {
-        return Arrays.asList("replenishRate", "burstCapacity", "requestedTokens");
+        return Arrays.asList("replenishRate", "burstCapacity", "requestedTokens", "algorithm");
     }
 
     @Override
     public GatewayFilter apply(Config config) {
+        KeyResolver clientResolver = keyResolvers.get(config.getKeyResolver());
+        KeyResolver tenantResolver = config.getTenantKeyResolver() != null
+                ? keyResolvers.get(config.getTenantKeyResolver()) : null;
+        RateLimitAlgorithm algorithm = config.getAlgorithm();
+        RateLimit clientLimit = new RateLimit(algorithm, config.getReplenishRate(), config.getBurstCapacity());
+        RateLimit tenantLimit = level(algorithm, config.getTenantReplenishRate(), config.getTenantBurstCapacity());
+        RateLimit routeLimit = level(algorithm, config.getRouteReplenishRate(), config.getRouteBurstCapacity());
+        int maxCost = Stream.of(clientLimit, tenantLimit, routeLimit)
+                .filter(Objects::nonNull)
+                .mapToInt(RateLimit::burstCapacity)
+                .min()
+                .orElseThrow();
+        RequestCost requestCost = new RequestCost(config.getCostRules(), config.getRequestedTokens(),
+                config.getLatencyCostMillis(), maxCost);
+        // Key prefixes and meters per route, built on a route's first request
+        ConcurrentMap<String, RateLimitPolicy> policies = new ConcurrentHashMap<>();
+        ConcurrentMap<String, RouteMeters> meters = new ConcurrentHashMap<>();
+
         return (exchange, chain) -> {
             Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
             String routeId = route != null ? route.getId() : "unknown";
+            RateLimitPolicy policy = policies.computeIfAbsent(routeId,
+                    id -> new RateLimitPolicy(id, clientLimit, tenantLimit, routeLimit));
+
+            RouteMeters routeMeters = meters.computeIfAbsent(routeId, this::routeMeters);
+            int cost = requestCost.cost(exchange.getRequest());
+            routeMeters.cost().record(cost);
 
-            log.debug("Applying rate limiter for route: {}", routeId);
+            log.debug("Applying rate limiter for route: {} (cost {})", routeId, cost);
 
-            // Fix: Use execute() and convert Flux to Mono using next()
-            return redisTemplate.execute(connection -> connection.ping())
-                    .next() // Convert Flux to Mono by taking the first element
-                    .defaultIfEmpty("FAILED")
-                    .flatMap(pong -> {
-                        if (!"PONG".equals(pong)) {
-                            // Log but allow request if Redis is unavailable
-                            log.warn("Redis unavailable for rate limiting - allowing request");
+            // Requests without the configured client key are counted by address
+            Mono<String> client = clientResolver.resolve(exchange)
+                    .switchIfEmpty(Mono.fromSupplier(() -> String.valueOf(keyResolvers.clientIp(exchange))));
+            Mono<String> tenant = tenantResolver != null
+                    ? tenantResolver.resolve(exchange).defaultIfEmpty("") : Mono.just("");
+
+            return Mono.zip(client, tenant)
+                    .map(keys -> policy.quotas(keys.getT1(), keys.getT2().isEmpty() ? null : keys.getT2()))
+                    .flatMap(quotas -> isAllowed(quotas, cost))
+                    .flatMap(allowed -> {
+                        (allowed ? routeMeters.allowed() : routeMeters.rejected()).increment();
+                        if (!allowed) {
+                            exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                            return exchange.getResponse().setComplete();
+                        }
+                        // Otherwise proceed with request
+                        if (!requestCost.learnsFromLatency()) {
                             return chain.filter(exchange);
                         }
-
-                        // Create rate limiter key based on route ID and path
-                        String clientIp = Objects.requireNonNull(exchange.getRequest().getRemoteAddress())
-                                .getAddress().getHostAddress();
-                        String key = "rate-limit:" + routeId + ":" + clientIp;
-
-                        // Simple token bucket algorithm using Redis
-                        return redisTemplate.opsForValue().increment(key)
-                                .flatMap(count -> {
-                                    // Set key expiration for first request
-                                    if (count == 1) {
-                                        return redisTemplate.expire(key, java.time.Duration.ofSeconds(1))
-                                                .then(Mono.just(count));
-                                    }
-                                    return Mono.just(count);
-                                })
-                                .flatMap(count -> {
-                                    log.debug("Rate limit count for {}: {}", key, count);
-
-                                    // If count exceeds burst capacity, reject
-                                    if (count > config.getBurstCapacity()) {
-                                        log.debug("Rate limit exceeded for {}: {} > {}",
-                                                key, count, config.getBurstCapacity());
-                                        exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
-                                        return exchange.getResponse().setComplete();
-                                    }
-
-                                    // Otherwise proceed with request
-                                    return chain.filter(exchange);
-                                })
-                                .onErrorResume(e -> {
-                                    log.error("Error in rate limiting: {}", e.getMessage());
-                                    // Allow request on error
-                                    return chain.filter(exchange);
-                                });
+                        // Failures count too, a timing out path is as expensive as a slow one
+                        long start = System.nanoTime();
+                        return chain.filter(exchange).doOnTerminate(() -> requestCost.recordLatency(
+                                exchange.getRequest(), System.nanoTime() - start));
                     });
         };
     }
 
+    private RouteMeters routeMeters(String routeId) {
+        DistributionSummary cost = DistributionSummary.builder("gateway.rate-limit.cost")
+                .description("Tokens each request took from the route's quotas")
+                .tag("route", routeId)
+                .serviceLevelObjectives(1, 2, 5, 10, 20, 50, 100)
+                .register(meterRegistry);
+        return new RouteMeters(cost, decisions(routeId, "allowed"), decisions(routeId, "rejected"));
+    }
+
+    private Counter decisions(String routeId, String outcome) {
+        return Counter.builder("gateway.rate-limit.decisions")
+                .description("Rate limit decisions, wherever the limit was enforced")
+                .tag("route", routeId)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record RouteMeters(DistributionSummary cost, Counter allowed, Counter rejected) {
+    }
+
+    // A tenant or route quota is on when its burst capacity is set, its rate defaults to that
+    private static RateLimit level(RateLimitAlgorithm algorithm, Integer replenishRate, Integer burstCapacity) {
+        if (burstCapacity == null) {
+            return null;
+        }
+        return new RateLimit(algorithm, replenishRate != null ? replenishRate : burstCapacity, burstCapacity);
+    }
+
+    // One script call per request for all quota levels, sent through the batcher with other exchanges' commands
+    private Mono<Boolean> isAllowed(List<Quota> quotas, int cost) {
+        String key = quotas.get(0).key();
+        RateLimitAlgorithm algorithm = quotas.get(0).limit().algorithm();
+        // Redis is known to be down, don't wait on it
+        if (fallbackService.mode() == RateLimitFallbackService.Mode.LOCAL) {
+            return Mono.just(isAllowedLocally(quotas, cost));
+        }
+        return globalLimiter.tryAcquire(quotas, cost)
+                .timeout(fallbackService.redisTimeout())
+                .map(allowed -> {
+                    fallbackService.recordSuccess();
+                    if (!allowed) {
+                        log.debug("Rate limit exceeded for {} ({})", key, algorithm);
+                    }
+                    return allowed;
+                })
+                .onErrorResume(e -> {
+                    // Slow or unavailable Redis, this node enforces its share of the limit
+                    log.debug("Redis rate limit check failed for {}, limiting locally: {}", key, e.getMessage());
+                    fallbackService.recordFailure(e);
+                    return Mono.just(isAllowedLocally(quotas, cost));
+                });
+    }
+
+    private boolean isAllowedLocally(List<Quota> quotas, int cost) {
+        boolean allowed = fallbackService.tryAcquireLocally(quotas, cost);
+        if (!allowed) {
+            log.debug("Local rate limit exceeded for {}", quotas.get(0).key());
+        }
+        return allowed;
+    }
+
     @Override
     public int getOrder() {
         return 100; // Execute before circuit breaker
@@ -104,6 +189,15 @@ public class RedisRateLimiterGatewayFilterFactory
         private int replenishRate = 1;
         private int burstCapacity = 2;
         private int requestedTokens = 1;
+        private List<CostRule> costRules;
+        private Integer latencyCostMillis;
+        private RateLimitAlgorithm algorithm = RateLimitAlgorithm.FIXED_WINDOW;
+        private String keyResolver = RateLimitKeyResolvers.CLIENT_IP;
+        private String tenantKeyResolver;
+        private Integer tenantReplenishRate;
+        private Integer tenantBurstCapacity;
+        private Integer routeReplenishRate;
+        private Integer routeBurstCapacity;
 
         // Getters and setters
         public int getReplenishRate() {
@@ -129,5 +223,77 @@ public class RedisRateLimiterGatewayFilterFactory
         public void setRequestedTokens(int requestedTokens) {
             this.requestedTokens = requestedTokens;
         }
+
+        public List<CostRule> getCostRules() {
+            return costRules;
+        }
+
+        public void setCostRules(List<CostRule> costRules) {
+            this.costRules = costRules;
+        }
+
+        public Integer getLatencyCostMillis() {
+            return latencyCostMillis;
+        }
+
+        public void setLatencyCostMillis(Integer latencyCostMillis) {
+            this.latencyCostMillis = latencyCostMillis;
+        }
+
+        public RateLimitAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public void setAlgorithm(RateLimitAlgorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public String getKeyResolver() {
+            return keyResolver;
+        }
+
+        public void setKeyResolver(String keyResolver) {
+            this.keyResolver = keyResolver;
+        }
+
+        public String getTenantKeyResolver() {
+            return tenantKeyResolver;
+        }
+
+        public void setTenantKeyResolver(String tenantKeyResolver) {
+            this.tenantKeyResolver = tenantKeyResolver;
+        }
+
+        public Integer getTenantReplenishRate() {
+            return tenantReplenishRate;
+        }
+
+        public void setTenantReplenishRate(Integer tenantReplenishRate) {
+            this.tenantReplenishRate = tenantReplenishRate;
+        }
+
+        public Integer getTenantBurstCapacity() {
+            return tenantBurstCapacity;
+        }
+
+        public void setTenantBurstCapacity(Integer tenantBurstCapacity) {
+            this.tenantBurstCapacity = tenantBurstCapacity;
+        }
+
+        public Integer getRouteReplenishRate() {
+            return routeReplenishRate;
+        }
+
+        public void setRouteReplenishRate(Integer routeReplenishRate) {
+            this.routeReplenishRate = routeReplenishRate;
+        }
+
+        public Integer getRouteBurstCapacity() {
+            return routeBurstCapacity;
+        }
+
+        public void setRouteBurstCapacity(Integer routeBurstCapacity) {
+            this.routeBurstCapacity = routeBurstCapacity;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.gateway.filter;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.MultiValueMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Builds keys that identify equivalent requests, shared by the response cache
+ * and single-flight filters.
+ */
+final class RequestKeys {
+
+    private RequestKeys() {
+    }
+
+    // Key: route, method, path, query sorted by name, then configured vary headers
+    static String of(String routeId, ServerHttpRequest request, List<String> varyHeaders) {
+        StringBuilder key = new StringBuilder(128)
+                .append(routeId).append('|')
+                .append(request.getMethod().name()).append('|')
+                .append(request.getURI().getRawPath());
+
+        MultiValueMap<String, String> queryParams = request.getQueryParams();
+        if (!queryParams.isEmpty()) {
+            char separator = '?';
+            for (Map.Entry<String, List<String>> param : new TreeMap<>(queryParams).entrySet()) {
+                for (String value : param.getValue()) {
+                    key.append(separator).append(param.getKey()).append('=').append(value == null ? "" : value);
+                    separator = '&';
+                }
+            }
+        }
+
+        for (String header : varyHeaders) {
+            List<String> values = request.getHeaders().get(header);
+            key.append('|').append(header.toLowerCase()).append('=');
+            if (values != null) {
+                key.append(String.join(",", values));
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Whether the request carries credentials the key does not vary on. The
+     * response to such a request belongs to its caller and must not be
+     * handed to anyone else.
+     */
+    static boolean hasCredentials(ServerHttpRequest request, List<String> varyHeaders) {
+        return hasUnvaried(request, HttpHeaders.AUTHORIZATION, varyHeaders)
+                || hasUnvaried(request, HttpHeaders.COOKIE, varyHeaders);
+    }
+
+    private static boolean hasUnvaried(ServerHttpRequest request, String header, List<String> varyHeaders) {
+        return request.getHeaders().containsKey(header) && varyHeaders.stream().noneMatch(header::equalsIgnoreCase);
+    }
+
+    /**
+     * Whether the response varies only on headers that are part of the key. A
+     * response negotiated on anything else, such as Accept-Encoding, may not
+     * suit another caller with the same key.
+     */
+    static boolean variesWithinKey(HttpHeaders responseHeaders, List<String> varyHeaders) {
+        return responseHeaders.getOrEmpty(HttpHeaders.VARY).stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .allMatch(name -> varyHeaders.stream().anyMatch(name::equalsIgnoreCase));
+    }
+
+    // Parses a comma-separated header list from route config
+    static List<String> parseHeaderNames(String headers) {
+        if (headers == null) {
+            return List.of();
+        }
+        return Arrays.stream(headers.split(","))
+                .map(String::trim)
+                .filter(h -> !h.isEmpty())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,439 @@
+package com.gateway.filter;
+
+import com.gateway.model.CachedResponse;
+import com.gateway.service.ResponseCacheService;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component("ResponseCache")
+@Slf4j
+public class ResponseCacheGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+
+    private static final String CACHE_STATUS_HEADER = "X-Cache";
+    private static final Set<String> UNCACHED_HEADERS = Set.of(
+            HttpHeaders.CONNECTION.toLowerCase(), HttpHeaders.TRANSFER_ENCODING.toLowerCase(),
+            "keep-alive", HttpHeaders.SET_COOKIE.toLowerCase(), HttpHeaders.CONTENT_LENGTH.toLowerCase(),
+            HttpHeaders.AGE.toLowerCase(), CACHE_STATUS_HEADER.toLowerCase());
+    // A 304 to the client's validators would leave nothing to store
+    private static final List<String> CONDITIONAL_HEADERS = List.of(
+            HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE);
+
+    private final ResponseCacheService responseCacheService;
+
+    public ResponseCacheGatewayFilterFactory(ResponseCacheService responseCacheService) {
+        super(Config.class);
+        this.responseCacheService = responseCacheService;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("ttlSeconds", "staleWhileRevalidateSeconds", "varyHeaders");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        List<String> varyHeaders = RequestKeys.parseHeaderNames(config.getVaryHeaders());
+
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (!isCacheableRequest(request, varyHeaders)) {
+                return chain.filter(exchange);
+            }
+
+            String routeId = routeId(exchange);
+            String key = RequestKeys.of(routeId, request, varyHeaders);
+            boolean useRedis = Boolean.TRUE.equals(config.getUseRedis());
+
+            // Client asked for a fresh copy: skip the lookup but still refresh the entry
+            Mono<CachedResponse> lookup = hasDirective(request.getHeaders(), "no-cache")
+                    ? Mono.empty()
+                    : responseCacheService.get(key, useRedis);
+
+            // Optional wrapper so an empty write does not trigger the miss path
+            return lookup.map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(cached -> cached.isPresent()
+                            ? serveCached(exchange, chain, cached.get(), key, config, routeId)
+                            : fetch(exchange, chain, key, config, routeId));
+        };
+    }
+
+    private Mono<Void> serveCached(ServerWebExchange exchange, GatewayFilterChain chain, CachedResponse cached,
+            String key, Config config, String routeId) {
+        if (cached.isFresh(System.currentTimeMillis())) {
+            responseCacheService.recordLookup(routeId, "hit");
+            return writeCached(exchange, cached, "HIT", routeId);
+        }
+
+        responseCacheService.recordLookup(routeId, "stale");
+        revalidate(exchange, chain, key, config, routeId);
+        return writeCached(exchange, cached, "STALE", routeId);
+    }
+
+    private Mono<Void> fetch(ServerWebExchange exchange, GatewayFilterChain chain, String key, Config config,
+            String routeId) {
+        Sinks.One<CachedResponse> lead = responseCacheService.tryLead(key);
+        if (lead == null) {
+            // Someone else is already fetching this key, wait for their response
+            return responseCacheService.awaitInFlight(key)
+                    .timeout(Duration.ofMillis(config.getCoalesceTimeoutMillis()), Mono.empty())
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(shared -> {
+                        if (shared.isPresent()) {
+                            responseCacheService.recordLookup(routeId, "coalesced");
+                            return writeCached(exchange, shared.get(), "HIT", routeId);
+                        }
+                        responseCacheService.recordLookup(routeId, "miss");
+                        return chain.filter(exchange);
+                    });
+        }
+
+        responseCacheService.recordLookup(routeId, "miss");
+        CachingResponseDecorator response = new CachingResponseDecorator(exchange.getResponse(), config);
+
+        return chain.filter(exchange.mutate().response(response).build())
+                .doFinally(signal -> {
+                    CachedResponse cached = response.getCachedResponse();
+                    if (cached != null) {
+                        responseCacheService.put(key, cached, Boolean.TRUE.equals(config.getUseRedis()));
+                        responseCacheService.recordBytes(routeId, "stored", cached.getBody().length);
+                    }
+                    responseCacheService.completeLead(key, lead, cached);
+                });
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, CachedResponse cached, String cacheStatus,
+            String routeId) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatusCode.valueOf(cached.getStatusCode()));
+        response.getHeaders().putAll(cached.getHeaders());
+        response.getHeaders().setContentLength(cached.getBody().length);
+        response.getHeaders().set(HttpHeaders.AGE,
+                String.valueOf((System.currentTimeMillis() - cached.getStoredAt()) / 1000));
+        response.getHeaders().set(CACHE_STATUS_HEADER, cacheStatus);
+
+        responseCacheService.recordBytes(routeId, "served", cached.getBody().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.getBody())));
+    }
+
+    /**
+     * Refreshes a stale entry in the background by running the rest of the
+     * route's chain again for a copy of the request, with a detached response
+     * that only feeds the cache. The client already has its stale answer, and
+     * filters ahead of this one are not run twice. One refresh per key at a time.
+     */
+    private void revalidate(ServerWebExchange exchange, GatewayFilterChain chain, String key, Config config,
+            String routeId) {
+        if (!responseCacheService.startRevalidation(key)) {
+            return;
+        }
+
+        CachingResponseDecorator response = new CachingResponseDecorator(
+                new DetachedResponse(exchange.getResponse().bufferFactory()), config);
+        chain.filter(new RevalidationExchange(exchange, response))
+                .timeout(Duration.ofMillis(config.getCoalesceTimeoutMillis()))
+                .doFinally(signal -> {
+                    CachedResponse cached = response.getCachedResponse();
+                    if (cached != null) {
+                        responseCacheService.put(key, cached, Boolean.TRUE.equals(config.getUseRedis()));
+                        responseCacheService.recordBytes(routeId, "stored", cached.getBody().length);
+                    }
+                    responseCacheService.endRevalidation(key);
+                })
+                .subscribe(null, error -> log.warn("Revalidation failed for {}: {}", key, error.getMessage()));
+    }
+
+    private boolean isCacheableRequest(ServerHttpRequest request, List<String> varyHeaders) {
+        if (request.getMethod() != HttpMethod.GET || hasDirective(request.getHeaders(), "no-store")) {
+            return false;
+        }
+        // Authorized responses are per user, only share them when the key varies on the credentials
+        return !RequestKeys.hasCredentials(request, varyHeaders);
+    }
+
+    /**
+     * Builds the entry to store, or returns null when the upstream response must
+     * not be cached, including when it varies on a header outside the key. Upstream max-age/s-maxage and stale-while-revalidate win
+     * over the route defaults.
+     */
+    static CachedResponse toCachedResponse(HttpStatusCode status, HttpHeaders headers, byte[] body, Config config) {
+        if (status.value() != HttpStatus.OK.value()
+                || body.length > config.getMaxBodyBytes()
+                || headers.containsKey(HttpHeaders.SET_COOKIE)
+                || !RequestKeys.variesWithinKey(headers, RequestKeys.parseHeaderNames(config.getVaryHeaders()))
+                || hasDirective(headers, "no-store")
+                || hasDirective(headers, "no-cache")
+                || hasDirective(headers, "private")) {
+            return null;
+        }
+
+        long ttlSeconds = directiveSeconds(headers, "s-maxage")
+                .or(() -> directiveSeconds(headers, "max-age"))
+                .orElse((long) config.getTtlSeconds());
+        if (ttlSeconds <= 0) {
+            return null;
+        }
+        long swrSeconds = directiveSeconds(headers, "stale-while-revalidate")
+                .orElse((long) config.getStaleWhileRevalidateSeconds());
+
+        Map<String, List<String>> storedHeaders = new LinkedHashMap<>();
+        headers.forEach((name, values) -> {
+            if (!UNCACHED_HEADERS.contains(name.toLowerCase())) {
+                storedHeaders.put(name, new ArrayList<>(values));
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        long freshUntil = now + ttlSeconds * 1000;
+        return new CachedResponse(status.value(), storedHeaders, body, now, freshUntil,
+                freshUntil + swrSeconds * 1000);
+    }
+
+    private static boolean hasDirective(HttpHeaders headers, String directive) {
+        return headers.getOrEmpty(HttpHeaders.CACHE_CONTROL).stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .anyMatch(part -> part.trim().equalsIgnoreCase(directive));
+    }
+
+    private static Optional<Long> directiveSeconds(HttpHeaders headers, String directive) {
+        String prefix = directive + "=";
+        return headers.getOrEmpty(HttpHeaders.CACHE_CONTROL).stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .filter(part -> part.regionMatches(true, 0, prefix, 0, prefix.length()))
+                .findFirst()
+                .flatMap(part -> {
+                    try {
+                        return Optional.of(Long.parseLong(part.substring(prefix.length()).replace("\"", "")));
+                    } catch (NumberFormatException e) {
+                        return Optional.empty();
+                    }
+                });
+    }
+
+    private String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : "unknown";
+    }
+
+    /**
+     * Streams the upstream body to the client unchanged while keeping a copy
+     * for the cache, up to the configured size.
+     */
+    private static class CachingResponseDecorator extends ServerHttpResponseDecorator {
+        private final Config config;
+        private volatile CachedResponse cachedResponse;
+
+        CachingResponseDecorator(ServerHttpResponse delegate, Config config) {
+            super(delegate);
+            this.config = config;
+        }
+
+        CachedResponse getCachedResponse() {
+            return cachedResponse;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatusCode status = getStatusCode();
+            long contentLength = getHeaders().getContentLength();
+            if (status == null || status.value() != HttpStatus.OK.value()
+                    || contentLength > config.getMaxBodyBytes()) {
+                return super.writeWith(body);
+            }
+
+            ByteArrayOutputStream captured = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 1024);
+            boolean[] overflow = { false };
+
+            Flux<? extends DataBuffer> tee = Flux.from(body)
+                    .doOnNext(buffer -> {
+                        if (overflow[0]) {
+                            return;
+                        }
+                        if (captured.size() + buffer.readableByteCount() > config.getMaxBodyBytes()) {
+                            overflow[0] = true;
+                            captured.reset();
+                            return;
+                        }
+                        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                            while (iterator.hasNext()) {
+                                ByteBuffer byteBuffer = iterator.next();
+                                byte[] chunk = new byte[byteBuffer.remaining()];
+                                byteBuffer.get(chunk);
+                                captured.write(chunk, 0, chunk.length);
+                            }
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (!overflow[0]) {
+                            cachedResponse = toCachedResponse(status, getHeaders(), captured.toByteArray(), config);
+                        }
+                    });
+
+            return super.writeWith(tee);
+        }
+    }
+
+    /**
+     * The stale request with its own response and attributes, so routing the
+     * revalidation leaves the client's exchange alone.
+     */
+    private static class RevalidationExchange extends ServerWebExchangeDecorator {
+        private final ServerHttpRequest request;
+        private final ServerHttpResponse response;
+        private final Map<String, Object> attributes;
+
+        RevalidationExchange(ServerWebExchange exchange, ServerHttpResponse response) {
+            super(exchange);
+            this.request = exchange.getRequest().mutate()
+                    .headers(headers -> CONDITIONAL_HEADERS.forEach(headers::remove))
+                    .build();
+            this.response = response;
+            this.attributes = new ConcurrentHashMap<>(exchange.getAttributes());
+        }
+
+        @Override
+        public ServerHttpRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public ServerHttpResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+    }
+
+    // Discards what is written, the caching decorator in front keeps the copy
+    private static class DetachedResponse extends AbstractServerHttpResponse {
+
+        DetachedResponse(DataBufferFactory bufferFactory) {
+            super(bufferFactory);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getNativeResponse() {
+            return (T) this;
+        }
+
+        @Override
+        protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+            return Flux.from(body).doOnNext(DataBufferUtils::release).then();
+        }
+
+        @Override
+        protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return Flux.from(body).concatMap(Flux::from).doOnNext(DataBufferUtils::release).then();
+        }
+
+        @Override
+        protected void applyStatusCode() {
+        }
+
+        @Override
+        protected void applyHeaders() {
+        }
+
+        @Override
+        protected void applyCookies() {
+        }
+    }
+
+    public static class Config {
+        private Integer ttlSeconds = 60;
+        private Integer staleWhileRevalidateSeconds = 0;
+        private Integer maxBodyBytes = 1048576;
+        private String varyHeaders; // comma-separated request headers that are part of the key
+        private Boolean useRedis = false;
+        private Integer coalesceTimeoutMillis = 5000; // how long waiters wait for an in-flight fetch
+
+        public Integer getTtlSeconds() {
+            return ttlSeconds;
+        }
+
+        public void setTtlSeconds(Integer ttlSeconds) {
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        public Integer getStaleWhileRevalidateSeconds() {
+            return staleWhileRevalidateSeconds;
+        }
+
+        public void setStaleWhileRevalidateSeconds(Integer staleWhileRevalidateSeconds) {
+            this.staleWhileRevalidateSeconds = staleWhileRevalidateSeconds;
+        }
+
+        public Integer getMaxBodyBytes() {
+            return maxBodyBytes;
+        }
+
+        public void setMaxBodyBytes(Integer maxBodyBytes) {
+            this.maxBodyBytes = maxBodyBytes;
+        }
+
+        public String getVaryHeaders() {
+            return varyHeaders;
+        }
+
+        public void setVaryHeaders(String varyHeaders) {
+            this.varyHeaders = varyHeaders;
+        }
+
+        public Boolean getUseRedis() {
+            return useRedis;
+        }
+
+        public void setUseRedis(Boolean useRedis) {
+            this.useRedis = useRedis;
+        }
+
+        public Integer getCoalesceTimeoutMillis() {
+            return coalesceTimeoutMillis;
+        }
+
+        public void setCoalesceTimeoutMillis(Integer coalesceTimeoutMillis) {
+            this.coalesceTimeoutMillis = coalesceTimeoutMillis;
+        }
+    }
+}
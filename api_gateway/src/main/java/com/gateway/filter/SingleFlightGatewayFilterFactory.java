@@ -0,0 +1,334 @@
+package com.gateway.filter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collapses identical concurrent GETs into one upstream exchange. The first
+ * request (the leader) goes upstream; requests arriving while it is in flight
+ * wait and are answered with the leader's response. Response chunks are shared
+ * as retained Netty slices, so waiters do not copy the body.
+ * <p>
+ * Requests with credentials the key does not vary on, and range requests,
+ * never join or lead a flight. Only successful responses without Set-Cookie
+ * that vary on nothing outside the key are shared; waiters on anything else
+ * go upstream themselves.
+ */
+@Component("SingleFlight")
+@Slf4j
+public class SingleFlightGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<SingleFlightGatewayFilterFactory.Config> {
+
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    public SingleFlightGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("maxFanOut", "maxBodyBytes", "varyHeaders");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        List<String> varyHeaders = RequestKeys.parseHeaderNames(config.getVaryHeaders());
+
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (request.getMethod() != HttpMethod.GET || RequestKeys.hasCredentials(request, varyHeaders)
+                    || isRangeRequest(request)) {
+                return chain.filter(exchange);
+            }
+
+            String routeId = routeId(exchange);
+            String key = RequestKeys.of(routeId, request, varyHeaders);
+
+            Flight flight = new Flight();
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                return lead(exchange, chain, key, flight, config);
+            }
+
+            if (!existing.tryJoin(config.getMaxFanOut())) {
+                // Fan-out limit reached or flight already finished, go upstream directly
+                recordFallback(routeId, "fan_out");
+                return chain.filter(exchange);
+            }
+            return follow(exchange, chain, existing, config, routeId);
+        };
+    }
+
+    // The key ignores the requested range, a partial body only answers its own caller
+    private static boolean isRangeRequest(ServerHttpRequest request) {
+        return request.getHeaders().containsKey(HttpHeaders.RANGE)
+                || request.getHeaders().containsKey(HttpHeaders.IF_RANGE);
+    }
+
+    private Mono<Void> lead(ServerWebExchange exchange, GatewayFilterChain chain, String key, Flight flight,
+            Config config) {
+        SharingResponseDecorator response = new SharingResponseDecorator(exchange.getResponse(), flight, config);
+
+        return chain.filter(exchange.mutate().response(response).build())
+                .doFinally(signal -> {
+                    flights.remove(key, flight);
+                    // No-op if the response was already published
+                    flight.abandon();
+                    flight.release();
+                });
+    }
+
+    private Mono<Void> follow(ServerWebExchange exchange, GatewayFilterChain chain, Flight flight, Config config,
+            String routeId) {
+        return flight.response()
+                .timeout(Duration.ofMillis(config.getWaitTimeoutMillis()), Mono.empty())
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(shared -> {
+                    if (shared.isPresent()) {
+                        meterRegistry.counter("gateway.singleflight.saved", "route", routeId).increment();
+                        return writeShared(exchange, shared.get());
+                    }
+                    // Leader failed or its response could not be shared
+                    recordFallback(routeId, "not_shared");
+                    return chain.filter(exchange);
+                })
+                .doFinally(signal -> flight.release());
+    }
+
+    private Mono<Void> writeShared(ServerWebExchange exchange, SharedResponse shared) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(shared.status());
+        response.getHeaders().putAll(shared.headers());
+
+        // Each waiter gets its own retained duplicate, released by the writer
+        return response.writeWith(Flux.fromIterable(shared.chunks()).map(SingleFlightGatewayFilterFactory::duplicate));
+    }
+
+    private void recordFallback(String routeId, String reason) {
+        meterRegistry.counter("gateway.singleflight.fallback", "route", routeId, "reason", reason).increment();
+    }
+
+    private String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : "unknown";
+    }
+
+    // Slice with its own indices, so the leader's write does not move it
+    private static DataBuffer share(DataBuffer buffer) {
+        if (buffer instanceof NettyDataBuffer netty) {
+            return netty.factory().wrap(netty.getNativeBuffer().retainedSlice());
+        }
+        return copy(buffer);
+    }
+
+    private static DataBuffer duplicate(DataBuffer buffer) {
+        if (buffer instanceof NettyDataBuffer netty) {
+            return netty.factory().wrap(netty.getNativeBuffer().retainedDuplicate());
+        }
+        return copy(buffer);
+    }
+
+    private static DataBuffer copy(DataBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        int offset = 0;
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                ByteBuffer byteBuffer = iterator.next();
+                int length = byteBuffer.remaining();
+                byteBuffer.get(bytes, offset, length);
+                offset += length;
+            }
+        }
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+
+    record SharedResponse(HttpStatusCode status, HttpHeaders headers, List<DataBuffer> chunks) {
+    }
+
+    /**
+     * One in-flight upstream exchange. Reference counted by the leader and its
+     * waiters, the shared chunks are released when the last one is done.
+     */
+    static final class Flight {
+        private final Sinks.One<SharedResponse> sink = Sinks.one();
+        private final AtomicInteger followers = new AtomicInteger();
+        private final AtomicInteger refs = new AtomicInteger(1);
+        private volatile SharedResponse published;
+
+        boolean tryJoin(int maxFanOut) {
+            if (followers.incrementAndGet() > maxFanOut) {
+                followers.decrementAndGet();
+                return false;
+            }
+            while (true) {
+                int current = refs.get();
+                if (current == 0) {
+                    followers.decrementAndGet();
+                    return false;
+                }
+                if (refs.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        Mono<SharedResponse> response() {
+            return sink.asMono();
+        }
+
+        void publish(SharedResponse response) {
+            published = response;
+            sink.tryEmitValue(response);
+        }
+
+        void abandon() {
+            sink.tryEmitEmpty();
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0 && published != null) {
+                published.chunks().forEach(DataBufferUtils::release);
+            }
+        }
+    }
+
+    /**
+     * Passes the leader's body through unchanged while keeping a retained slice
+     * of every chunk, published to waiters once the body completes.
+     */
+    private static class SharingResponseDecorator extends ServerHttpResponseDecorator {
+        private final Flight flight;
+        private final Config config;
+
+        private final List<String> varyHeaders;
+
+        SharingResponseDecorator(ServerHttpResponse delegate, Flight flight, Config config) {
+            super(delegate);
+            this.flight = flight;
+            this.config = config;
+            this.varyHeaders = RequestKeys.parseHeaderNames(config.getVaryHeaders());
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatusCode status = getStatusCode();
+            // Errors, per-client sessions and bodies negotiated on headers outside the key
+            // stay with the leader, waiters retry upstream
+            if (status == null || !status.is2xxSuccessful() || getHeaders().containsKey(HttpHeaders.SET_COOKIE)
+                    || !RequestKeys.variesWithinKey(getHeaders(), varyHeaders)
+                    || getHeaders().getContentLength() > config.getMaxBodyBytes()) {
+                return super.writeWith(body);
+            }
+
+            List<DataBuffer> chunks = new ArrayList<>();
+            long[] size = { 0 };
+            boolean[] state = { false, false }; // overflow, published
+
+            Flux<? extends DataBuffer> tee = Flux.from(body)
+                    .doOnNext(buffer -> {
+                        if (state[0]) {
+                            return;
+                        }
+                        size[0] += buffer.readableByteCount();
+                        if (size[0] > config.getMaxBodyBytes()) {
+                            state[0] = true;
+                            chunks.forEach(DataBufferUtils::release);
+                            chunks.clear();
+                            return;
+                        }
+                        chunks.add(share(buffer));
+                    })
+                    .doOnComplete(() -> {
+                        if (!state[0]) {
+                            HttpHeaders headers = new HttpHeaders();
+                            headers.putAll(getHeaders());
+                            headers.remove(HttpHeaders.TRANSFER_ENCODING);
+                            headers.remove(HttpHeaders.CONNECTION);
+                            state[1] = true;
+                            flight.publish(new SharedResponse(status, HttpHeaders.readOnlyHttpHeaders(headers),
+                                    List.copyOf(chunks)));
+                        }
+                    })
+                    .doFinally(signal -> {
+                        if (!state[1]) {
+                            chunks.forEach(DataBufferUtils::release);
+                        }
+                    });
+
+            return super.writeWith(tee);
+        }
+    }
+
+    public static class Config {
+        private Integer maxFanOut = 1000; // waiters per in-flight request
+        private Integer maxBodyBytes = 1048576; // larger responses are not shared
+        private String varyHeaders; // comma-separated request headers that are part of the key
+        private Integer waitTimeoutMillis = 10000; // waiters go upstream themselves after this
+
+        public Integer getMaxFanOut() {
+            return maxFanOut;
+        }
+
+        public void setMaxFanOut(Integer maxFanOut) {
+            this.maxFanOut = maxFanOut;
+        }
+
+        public Integer getMaxBodyBytes() {
+            return maxBodyBytes;
+        }
+
+        public void setMaxBodyBytes(Integer maxBodyBytes) {
+            this.maxBodyBytes = maxBodyBytes;
+        }
+
+        public String getVaryHeaders() {
+            return varyHeaders;
+        }
+
+        public void setVaryHeaders(String varyHeaders) {
+            this.varyHeaders = varyHeaders;
+        }
+
+        public Integer getWaitTimeoutMillis() {
+            return waitTimeoutMillis;
+        }
+
+        public void setWaitTimeoutMillis(Integer waitTimeoutMillis) {
+            this.waitTimeoutMillis = waitTimeoutMillis;
+        }
+    }
+}
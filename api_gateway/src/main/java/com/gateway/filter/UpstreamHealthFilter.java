@@ -0,0 +1,81 @@
+package com.gateway.filter;
+
+import com.gateway.service.UpstreamHealthService;
+import com.gateway.service.Upstreams;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+
+/**
+ * Fails requests to an upstream that health checking reports as down with a
+ * 503, before a connection is attempted. Routes with a target list are already
+ * steered away from down targets by the balancer. Runs inside retries, so every
+ * attempt that reaches an upstream is reported as a passive health signal.
+ */
+@Component
+@Slf4j
+public class UpstreamHealthFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = WeightedTargetRoutingFilter.ORDER + 1;
+
+    private final UpstreamHealthService upstreamHealthService;
+    private final MeterRegistry meterRegistry;
+    private final boolean failFast;
+
+    public UpstreamHealthFilter(UpstreamHealthService upstreamHealthService,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.health-check.fail-fast:true}") boolean failFast) {
+        this.upstreamHealthService = upstreamHealthService;
+        this.meterRegistry = meterRegistry;
+        this.failFast = failFast;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI requestUrl = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (requestUrl == null) {
+            return chain.filter(exchange);
+        }
+        if (!failFast || upstreamHealthService.isHealthy(requestUrl)) {
+            return chain.filter(exchange).doFinally(signalType -> recordPassive(exchange, signalType));
+        }
+
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String upstream = Upstreams.key(requestUrl);
+        log.debug("Rejecting request to unhealthy upstream {}", upstream);
+        meterRegistry.counter("gateway.upstream.health.rejected",
+                "route", route != null ? route.getId() : "unknown", "upstream", upstream).increment();
+
+        exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        return exchange.getResponse().setComplete();
+    }
+
+    // Only for attempts that actually reached an upstream
+    private void recordPassive(ServerWebExchange exchange, SignalType signalType) {
+        URI requestUrl = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (requestUrl == null || !ServerWebExchangeUtils.isAlreadyRouted(exchange) || signalType == SignalType.CANCEL) {
+            return;
+        }
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        boolean success = signalType != SignalType.ON_ERROR && (status == null || !status.is5xxServerError());
+        upstreamHealthService.recordPassive(requestUrl, success);
+    }
+}
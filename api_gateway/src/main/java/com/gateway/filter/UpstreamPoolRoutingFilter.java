@@ -0,0 +1,62 @@
+package com.gateway.filter;
+
+import com.gateway.service.UpstreamPoolService;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.CONNECT_TIMEOUT_ATTR;
+
+/**
+ * Replaces the default NettyRoutingFilter (disabled in application.yml) so that
+ * upstreams with their own connection pool are called through it. The pool is
+ * that of the upstream the request actually goes to, which for a balanced route
+ * is the chosen target. Upstreams without one keep using the shared gateway
+ * HttpClient.
+ */
+@Component
+public class UpstreamPoolRoutingFilter extends NettyRoutingFilter {
+
+    private final UpstreamPoolService upstreamPoolService;
+    private final HttpClientProperties properties;
+
+    public UpstreamPoolRoutingFilter(HttpClient httpClient,
+            ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider,
+            HttpClientProperties properties,
+            UpstreamPoolService upstreamPoolService) {
+        super(httpClient, headersFiltersProvider, properties);
+        this.properties = properties;
+        this.upstreamPoolService = upstreamPoolService;
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        // The balancer may have sent the request to another target than the route URI. An lb://
+        // route resolves to an instance address, its pool stays keyed by the service id
+        URI requestUrl = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        URI upstream = requestUrl != null && !"lb".equalsIgnoreCase(route.getUri().getScheme())
+                ? requestUrl : route.getUri();
+        HttpClient pooled = upstreamPoolService.clientFor(upstream);
+        if (pooled == null) {
+            return super.getHttpClient(route, exchange);
+        }
+
+        // Same per-route connect timeout handling as the shared client
+        Object connectTimeout = route.getMetadata().get(CONNECT_TIMEOUT_ATTR) != null
+                ? route.getMetadata().get(CONNECT_TIMEOUT_ATTR) : properties.getConnectTimeout();
+        if (connectTimeout != null) {
+            return pooled.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.parseInt(connectTimeout.toString()));
+        }
+        return pooled;
+    }
+}
@@ -0,0 +1,76 @@
+package com.gateway.filter;
+
+import com.gateway.service.UpstreamLoadBalancer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+/**
+ * Sends requests of routes with a target list to the instance chosen by the
+ * {@link UpstreamLoadBalancer}, and reports latency and outcome back to it.
+ */
+@Component
+@Slf4j
+public class WeightedTargetRoutingFilter implements GlobalFilter, Ordered {
+
+    // Right after the route URI is resolved, before the routing filters
+    public static final int ORDER = RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 1;
+
+    private final UpstreamLoadBalancer loadBalancer;
+
+    public WeightedTargetRoutingFilter(UpstreamLoadBalancer loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        URI requestUrl = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (route == null || requestUrl == null) {
+            return chain.filter(exchange);
+        }
+
+        UpstreamLoadBalancer.Target target = loadBalancer.choose(route.getId());
+        if (target == null) {
+            return chain.filter(exchange);
+        }
+
+        URI targetUri = target.getUri();
+        URI balancedUrl = UriComponentsBuilder.fromUri(requestUrl)
+                .scheme(targetUri.getScheme())
+                .host(targetUri.getHost())
+                .port(targetUri.getPort())
+                .build(true)
+                .toUri();
+        ServerWebExchangeUtils.addOriginalRequestUrl(exchange, requestUrl);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, balancedUrl);
+        log.trace("Route {} balanced to {}", route.getId(), balancedUrl);
+
+        long start = System.nanoTime();
+        // Recorded before completion reaches the caller, so the next pick already sees the outcome
+        return chain.filter(exchange)
+                .doOnSuccess(v -> {
+                    HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    boolean success = status == null || !status.is5xxServerError();
+                    loadBalancer.record(route.getId(), target, System.nanoTime() - start, success);
+                })
+                .doOnError(e -> loadBalancer.record(route.getId(), target, System.nanoTime() - start, false))
+                .doOnCancel(() -> loadBalancer.release(target));
+    }
+}
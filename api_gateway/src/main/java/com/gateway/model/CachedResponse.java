@@ -0,0 +1,28 @@
+package com.gateway.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedResponse {
+    private int statusCode;
+    private Map<String, List<String>> headers;
+    private byte[] body;
+    private long storedAt; // epoch millis
+    private long freshUntil; // served as a hit until this time
+    private long staleUntil; // served stale (and revalidated) until this time
+
+    public boolean isFresh(long now) {
+        return now < freshUntil;
+    }
+
+    public boolean isUsable(long now) {
+        return now < staleUntil;
+    }
+}
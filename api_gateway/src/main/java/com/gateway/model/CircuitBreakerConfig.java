@@ -17,4 +17,6 @@ public class CircuitBreakerConfig {
     private Integer permittedCallsInHalfOpenState;
     private String fallbackUri;
     private Boolean automaticTransition;
+    private Boolean serveLastGood;
+    private Integer lastGoodMaxBytes;
 }
\ No newline at end of file
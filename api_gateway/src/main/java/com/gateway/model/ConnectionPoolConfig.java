@@ -0,0 +1,26 @@
+package com.gateway.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Upstream connection pool settings, read from the "connectionPool" entry of
+ * {@code Route.metadata}. Unset values fall back to the gateway's httpclient.pool
+ * properties.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConnectionPoolConfig {
+    private Integer maxConnections;
+    private Integer pendingAcquireMaxCount; // -1 for unbounded
+    private Long pendingAcquireTimeoutMillis;
+    private Long maxIdleTimeMillis;
+    private Long maxLifeTimeMillis;
+    private Long evictionIntervalMillis; // background eviction, 0 disables it
+    private Boolean http2;
+    private Long maxConcurrentStreams; // per connection, HTTP/2 only
+}
@@ -0,0 +1,18 @@
+package com.gateway.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CostRule {
+    private String method; // any method when unset
+    private String path; // path pattern matched against the path sent upstream, e.g. /reports/**
+    private Integer cost; // defaults to the route's requestedTokens
+    private Integer costPerQueryParam;
+    private Integer costPerKilobyte; // of the declared Content-Length
+}
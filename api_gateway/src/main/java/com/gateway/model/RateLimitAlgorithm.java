@@ -0,0 +1,17 @@
+package com.gateway.model;
+
+/**
+ * How a route's rate limit is enforced. The window algorithms admit
+ * burstCapacity per second; GCRA admits replenishRate per second with bursts
+ * of up to burstCapacity.
+ */
+public enum RateLimitAlgorithm {
+    // Counter reset every second, up to 2x the limit across a window boundary
+    FIXED_WINDOW,
+    // Timestamp of every admitted request in the last second, exact but one entry per request
+    SLIDING_LOG,
+    // Current and previous second's counters, the previous one weighted by its overlap
+    SLIDING_WINDOW,
+    // Generic cell rate algorithm, one theoretical arrival time per client
+    GCRA
+}
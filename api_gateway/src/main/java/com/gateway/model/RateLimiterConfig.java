@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -12,5 +14,14 @@ import lombok.NoArgsConstructor;
 public class RateLimiterConfig {
     private Integer replenishRate;
     private Integer burstCapacity;
-    private Integer requestedTokens;
+    private Integer requestedTokens; // cost of a request no cost rule matches
+    private List<CostRule> costRules; // first match prices the request
+    private Integer latencyCostMillis; // when set, a path costs at least a token per this much of its upstream latency
+    private RateLimitAlgorithm algorithm; // defaults to FIXED_WINDOW
+    private String keyResolver; // ip (default), apiKey, jwtSubject, serviceName, header:<name> or a KeyResolver bean
+    private String tenantKeyResolver; // same choices, who the tenant quota is counted against
+    private Integer tenantReplenishRate;
+    private Integer tenantBurstCapacity;
+    private Integer routeReplenishRate; // all clients of the route together
+    private Integer routeBurstCapacity;
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.gateway.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResponseCacheConfig {
+    private Integer ttlSeconds;
+    private Integer staleWhileRevalidateSeconds;
+    private Integer maxBodyBytes;
+    private String varyHeaders; // comma-separated request headers that are part of the cache key
+    private Boolean useRedis;
+}
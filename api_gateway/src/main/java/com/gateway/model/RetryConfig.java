@@ -13,4 +13,7 @@ public class RetryConfig {
     private Integer maxAttempts;
     private String backoffDuration;
     private String retryableExceptions;
+    private String methods; // comma-separated, defaults to GET
+    private Boolean cacheBody; // buffer request bodies so non-GET requests can be retried
+    private Integer maxBodyBytes;
 }
\ No newline at end of file
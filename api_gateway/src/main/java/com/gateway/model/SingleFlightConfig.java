@@ -0,0 +1,17 @@
+package com.gateway.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SingleFlightConfig {
+    private Integer maxFanOut;
+    private Integer maxBodyBytes;
+    private String varyHeaders; // comma-separated request headers that are part of the request key
+    private Integer waitTimeoutMillis;
+}
@@ -0,0 +1,15 @@
+package com.gateway.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpstreamTarget {
+    private String uri;
+    private Integer weight; // relative share of traffic, defaults to 1
+}
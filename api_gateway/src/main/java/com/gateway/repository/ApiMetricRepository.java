@@ -48,18 +48,18 @@ public interface ApiMetricRepository extends ReactiveMongoRepository<ApiMetric,
     })
     Mono<Double> getRequestsPerMinute(Instant cutoff);
 
-    // Get top endpoints by usage
+    // Get top endpoints by usage, metrics stored before path templates group by their path
     @Aggregation(pipeline = {
             "{ $match: { 'timestamp': { $gte: ?0 } } }",
-            "{ $group: { _id: '$path', count: { $sum: 1 }, avgDuration: { $avg: '$duration' } } }",
+            "{ $group: { _id: { $ifNull: ['$pathTemplate', '$path'] }, count: { $sum: 1 }, avgDuration: { $avg: '$duration' } } }",
             "{ $sort: { 'count': -1 } }",
             "{ $limit: 10 }"
     })
     Flux<TopEndpointDTO> getTopEndpoints(Instant cutoff);
 
-    // Get endpoint performance stats
+    // Get endpoint performance stats, by path template
     @Aggregation(pipeline = {
-            "{ $match: { 'path': ?0, 'timestamp': { $gte: ?1 } } }",
+            "{ $match: { $or: [ { 'pathTemplate': ?0 }, { 'pathTemplate': null, 'path': ?0 } ], 'timestamp': { $gte: ?1 } } }",
             "{ $group: { _id: null, min: { $min: '$duration' }, max: { $max: '$duration' }, avg: { $avg: '$duration' }, count: { $sum: 1 } } }"
     })
     Mono<EndpointStatsDTO> getEndpointStats(String path, Instant cutoff);
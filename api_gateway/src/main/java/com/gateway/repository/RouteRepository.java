@@ -6,6 +6,8 @@ import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 @Repository
 public interface RouteRepository extends ReactiveMongoRepository<Route, String> {
     Flux<Route> findByEnabled(boolean enabled);
@@ -16,5 +18,7 @@ public interface RouteRepository extends ReactiveMongoRepository<Route, String>
 
     Mono<Route> findByRouteId(String routeId);
 
+    Flux<Route> findByRouteIdIn(Collection<String> routeIds);
+
     Flux<Route> findByPathContainingIgnoreCaseAndMethod(String path, String method);
 }
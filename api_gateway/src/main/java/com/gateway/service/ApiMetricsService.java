@@ -2,6 +2,8 @@ package com.gateway.service;
 
 import com.gateway.entity.ApiMetric;
 import com.gateway.repository.ApiMetricRepository;
+import com.gateway.service.topk.TopKService;
+import com.gateway.service.topk.TopKSummary;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Sort;
@@ -12,10 +14,15 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -25,14 +32,23 @@ public class ApiMetricsService {
     @SuppressWarnings("unchecked")
     private static final Class<Map<String, Object>> OUTPUT_TYPE = (Class<Map<String, Object>>) (Class<?>) Map.class;
 
+    // Where top endpoints are answered from
+    public enum EndpointSource {
+        AUTO, SKETCH, MONGO
+    }
+
     private final ApiMetricRepository apiMetricRepository;
     private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final TopKService topKService;
+    private final UniqueClientsService uniqueClientsService;
 
     public Mono<Void> saveMetric(ApiMetric metric) {
         // Skip saving if it's a health check request
         if (isHealthCheckRequest(metric)) {
             return Mono.empty();
         }
+        topKService.record(metric);
+        uniqueClientsService.record(metric);
         return apiMetricRepository.save(metric).then();
     }
 
@@ -111,14 +127,43 @@ public class ApiMetricsService {
         return reactiveMongoTemplate.aggregate(aggregation, OUTPUT_TYPE);
     }
 
-    public Flux<Map<String, Object>> getTopEndpoints(LocalDateTime startDate, LocalDateTime endDate, int limit) {
+    /**
+     * The most requested endpoints. Every row has the same fields, and
+     * {@code source} tells where it came from: {@code sketch} rows are this
+     * node's traffic only, with {@code errorBound} the most their count may be
+     * too high and no {@code services}; {@code mongo} rows are exact and
+     * gateway-wide. AUTO answers from the sketches when this node holds the
+     * range and from Mongo otherwise.
+     */
+    public Flux<Map<String, Object>> getTopEndpoints(LocalDateTime startDate, LocalDateTime endDate, int limit,
+            EndpointSource source) {
+        if (source != EndpointSource.MONGO) {
+            boolean dated = startDate != null && endDate != null;
+            // Without dates only an explicit sketch request is narrowed to the last hour
+            Optional<TopKService.Range> held = dated
+                    ? topKService.top(TopKService.Dimension.ENDPOINTS, epochMillis(startDate), epochMillis(endDate))
+                    : source == EndpointSource.SKETCH
+                            ? topKService.recent(TopKService.Dimension.ENDPOINTS, 60)
+                            : Optional.empty();
+            if (held.isPresent()) {
+                return Flux.fromIterable(held.get().summary().top(limit)).map(estimate -> topEndpoint(
+                        estimate.item(), estimate.count(), estimate.average(), estimate.error(), null, "sketch"));
+            }
+            if (source == EndpointSource.SKETCH) {
+                return Flux.empty();
+            }
+        }
+
         Criteria timeCriteria = new Criteria();
         if (startDate != null && endDate != null) {
             timeCriteria = Criteria.where("timestamp").gte(startDate).lte(endDate);
         }
 
         AggregationOperation match = Aggregation.match(timeCriteria);
-        AggregationOperation group = Aggregation.group("path")
+        // Grouped by template so ids in paths don't split an endpoint; older metrics have only the path
+        AggregationOperation endpoint = Aggregation.project("duration", "toService")
+                .and(ConditionalOperators.ifNull("pathTemplate").thenValueOf("path")).as("endpoint");
+        AggregationOperation group = Aggregation.group("endpoint")
                 .count().as("count")
                 .avg("duration").as("avgDuration")
                 .addToSet("toService").as("services");
@@ -126,9 +171,23 @@ public class ApiMetricsService {
         AggregationOperation sort = Aggregation.sort(Sort.Direction.DESC, "count");
         AggregationOperation limitOp = Aggregation.limit(limit);
 
-        TypedAggregation<ApiMetric> aggregation = Aggregation.newAggregation(ApiMetric.class, match, group, sort,
-                limitOp);
-        return reactiveMongoTemplate.aggregate(aggregation, OUTPUT_TYPE);
+        TypedAggregation<ApiMetric> aggregation = Aggregation.newAggregation(ApiMetric.class, match, endpoint, group,
+                sort, limitOp);
+        return reactiveMongoTemplate.aggregate(aggregation, OUTPUT_TYPE)
+                .map(row -> topEndpoint(row.get("_id"), row.get("count"), row.get("avgDuration"), 0L,
+                        row.get("services"), "mongo"));
+    }
+
+    private static Map<String, Object> topEndpoint(Object endpoint, Object count, Object avgDuration,
+            long errorBound, Object services, String source) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("_id", endpoint);
+        row.put("count", count);
+        row.put("avgDuration", avgDuration);
+        row.put("errorBound", errorBound);
+        row.put("services", services);
+        row.put("source", source);
+        return row;
     }
 
     public Mono<ApiMetric> getMetricById(String id) {
@@ -142,4 +201,81 @@ public class ApiMetricsService {
     public Flux<ApiMetric> getMetricsByService(String serviceName) {
         return apiMetricRepository.findByFromServiceOrToService(serviceName);
     }
-}
\ No newline at end of file
+
+    /**
+     * The heavy hitters of one dimension between two dates, or over the last
+     * minutes without them, from this node's sketches. Empty when this node
+     * does not hold the range.
+     */
+    public Mono<Map<String, Object>> getTopK(TopKService.Dimension dimension, int minutes,
+            LocalDateTime startDate, LocalDateTime endDate, int limit) {
+        Optional<TopKService.Range> held = startDate != null && endDate != null
+                ? topKService.top(dimension, epochMillis(startDate), epochMillis(endDate))
+                : topKService.recent(dimension, minutes);
+        return Mono.justOrEmpty(held).map(range -> {
+            TopKSummary summary = range.summary();
+            Map<String, Object> top = new LinkedHashMap<>();
+            top.put("dimension", dimension);
+            top.put("from", Instant.ofEpochMilli(range.from()));
+            top.put("to", Instant.ofEpochMilli(range.to()));
+            top.put("total", summary.total());
+            top.put("errorBound", summary.errorBound());
+            top.put("items", summary.top(limit).stream().map(estimate -> {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("item", estimate.item());
+                item.put("count", estimate.count());
+                item.put("error", estimate.error());
+                item.put("avgDuration", estimate.average());
+                return item;
+            }).toList());
+            return top;
+        });
+    }
+
+    /**
+     * Distinct clients or user agents of a route or service, by default
+     * since the start of the UTC day.
+     */
+    public Mono<Map<String, Object>> getUniqueCount(UniqueClientsService.Scope scope, String id,
+            UniqueClientsService.Dimension dimension, LocalDateTime startDate, LocalDateTime endDate) {
+        long now = System.currentTimeMillis();
+        long from = startDate != null ? epochMillis(startDate)
+                : Instant.ofEpochMilli(now).truncatedTo(ChronoUnit.DAYS).toEpochMilli();
+        long to = endDate != null ? epochMillis(endDate) : now;
+        return uniqueClientsService.count(scope, id, dimension, from, to).map(count -> {
+            Map<String, Object> unique = new LinkedHashMap<>();
+            unique.put("scope", scope);
+            unique.put("id", id);
+            unique.put("dimension", dimension);
+            unique.put("from", Instant.ofEpochMilli(count.from()));
+            unique.put("to", Instant.ofEpochMilli(count.to()));
+            unique.put("count", count.count());
+            unique.put("standardError", UniqueClientsService.STANDARD_ERROR);
+            return unique;
+        });
+    }
+
+    /**
+     * Distinct clients or user agents per minute, hour or day, by default
+     * over the last 24 of them.
+     */
+    public Flux<Map<String, Object>> getUniqueSeries(UniqueClientsService.Scope scope, String id,
+            UniqueClientsService.Dimension dimension, UniqueClientsService.Granularity granularity,
+            LocalDateTime startDate, LocalDateTime endDate) {
+        long to = endDate != null ? epochMillis(endDate) : System.currentTimeMillis();
+        long from = startDate != null ? epochMillis(startDate)
+                : to - Duration.ofMinutes(granularity.minutes() * 23).toMillis();
+        return uniqueClientsService.series(scope, id, dimension, granularity, from, to).map(count -> {
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("from", Instant.ofEpochMilli(count.from()));
+            point.put("to", Instant.ofEpochMilli(count.to()));
+            point.put("count", count.count());
+            return point;
+        });
+    }
+
+    private static long epochMillis(LocalDateTime dateTime) {
+        // Metric timestamps are local times of the gateway's zone
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
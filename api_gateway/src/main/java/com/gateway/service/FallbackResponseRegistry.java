@@ -0,0 +1,165 @@
+package com.gateway.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Fallback responses built once and written straight to the response when a
+ * circuit breaker trips, without dispatching to FallbackController. Bodies
+ * live in a shared read-only buffer, each write gets a duplicate of it. Routes
+ * can also opt into serving the last good response for the same request.
+ */
+@Service
+@Slf4j
+public class FallbackResponseRegistry {
+
+    public static final String FALLBACK_PATH_PREFIX = "/fallback/";
+    public static final String FALLBACK_HEADER = "X-Fallback";
+
+    private static final String FORWARD_PREFIX = "forward:";
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, FallbackResponse> fallbacks = new ConcurrentHashMap<>();
+    private final Cache<String, FallbackResponse> lastGood;
+    private final FallbackResponse emptyFallback;
+
+    public FallbackResponseRegistry(ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.fallback.last-good.max-bytes:16777216}") long lastGoodMaxBytes,
+            @Value("${gateway.fallback.last-good.ttl-ms:300000}") long lastGoodTtlMillis) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.lastGood = Caffeine.newBuilder()
+                .maximumWeight(lastGoodMaxBytes)
+                .weigher((String key, FallbackResponse value) -> key.length() + value.length())
+                .expireAfterWrite(Duration.ofMillis(lastGoodTtlMillis))
+                .build();
+        this.emptyFallback = FallbackResponse.of(HttpStatus.SERVICE_UNAVAILABLE, new HttpHeaders(), new byte[0]);
+    }
+
+    /**
+     * The precomputed response for a breaker's fallbackUri. URIs under
+     * /fallback/{service} get the same JSON body FallbackController returns;
+     * without a fallbackUri, or for any other URI, the response is an empty 503.
+     */
+    public FallbackResponse forFallbackUri(String fallbackUri) {
+        if (fallbackUri == null) {
+            return emptyFallback;
+        }
+        String path = fallbackUri.startsWith(FORWARD_PREFIX)
+                ? fallbackUri.substring(FORWARD_PREFIX.length()) : fallbackUri;
+        return fallbacks.computeIfAbsent(path, this::build);
+    }
+
+    /**
+     * Serialized fallback body for a service, shared with FallbackController.
+     * Only services some breaker falls back to are kept, a request for any
+     * other name gets a body built for it alone.
+     */
+    public FallbackResponse forService(String service) {
+        String path = FALLBACK_PATH_PREFIX + service;
+        FallbackResponse configured = fallbacks.get(path);
+        return configured != null ? configured : build(path);
+    }
+
+    public FallbackResponse lastGood(String key) {
+        return lastGood.getIfPresent(key);
+    }
+
+    public void putLastGood(String key, HttpStatusCode status, HttpHeaders headers, byte[] body) {
+        HttpHeaders stored = new HttpHeaders();
+        stored.putAll(headers);
+        stored.remove(HttpHeaders.TRANSFER_ENCODING);
+        stored.remove(HttpHeaders.CONNECTION);
+        stored.set(FALLBACK_HEADER, "last-good");
+        lastGood.put(key, FallbackResponse.of(status, stored, body));
+    }
+
+    public Mono<Void> write(ServerHttpResponse response, FallbackResponse fallback, String routeId, String kind) {
+        meterRegistry.counter("gateway.fallback.responses", "route", routeId, "kind", kind).increment();
+        response.setStatusCode(fallback.status());
+        HttpHeaders headers = response.getHeaders();
+        headers.clear();
+        headers.putAll(fallback.headers());
+        if (fallback.length() == 0) {
+            return response.setComplete();
+        }
+        return response.writeWith(Mono.just(fallback.body(response.bufferFactory())));
+    }
+
+    private FallbackResponse build(String path) {
+        if (!path.startsWith(FALLBACK_PATH_PREFIX) || path.length() == FALLBACK_PATH_PREFIX.length()) {
+            log.warn("Fallback URI {} is not served in-process, responding with an empty 503", path);
+            return emptyFallback;
+        }
+
+        String service = path.substring(FALLBACK_PATH_PREFIX.length());
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", "error");
+        body.put("message", "Service temporarily unavailable");
+        body.put("service", service);
+
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setCacheControl("no-store");
+            headers.set(FALLBACK_HEADER, "static");
+            return FallbackResponse.of(HttpStatus.SERVICE_UNAVAILABLE, headers, objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing fallback body for {}: {}", path, e.getMessage());
+            return emptyFallback;
+        }
+    }
+
+    /**
+     * Status, read-only headers and a body that is never released, so it can
+     * be handed to any number of concurrent responses.
+     */
+    public record FallbackResponse(HttpStatusCode status, HttpHeaders headers, byte[] bytes, ByteBuf shared) {
+
+        static FallbackResponse of(HttpStatusCode status, HttpHeaders headers, byte[] bytes) {
+            HttpHeaders copy = new HttpHeaders();
+            copy.putAll(headers);
+            copy.setContentLength(bytes.length);
+            ByteBuf shared = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(bytes).asReadOnly());
+            return new FallbackResponse(status, HttpHeaders.readOnlyHttpHeaders(copy), bytes, shared);
+        }
+
+        public int length() {
+            return bytes.length;
+        }
+
+        // A duplicate shares the bytes but has its own reader index
+        public DataBuffer body(DataBufferFactory bufferFactory) {
+            if (bufferFactory instanceof NettyDataBufferFactory netty) {
+                return netty.wrap(shared.duplicate());
+            }
+            return bufferFactory.wrap(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.gateway.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Request meters recorded straight from the gateway filters, so Prometheus
+ * sees route traffic without going through Mongo or Redis. Every request
+ * lands in the {@code gateway.requests} timer, tagged with its route,
+ * status class and interaction type; the timer's count is the request
+ * counter and its SLO buckets give latency percentiles.
+ * <p>
+ * Meters are looked up once and then kept per route, so recording is an
+ * array read and a timer update. Only route ids become tags, never paths,
+ * and after {@code gateway.metrics.max-routes} distinct routes further ones
+ * are counted as {@code other}.
+ */
+@Service
+@Slf4j
+public class GatewayMeters {
+
+    public static final String REQUESTS = "gateway.requests";
+    public static final String OTHER_ROUTE = "other";
+
+    public static final String USER_TO_APP = "USER_TO_APP";
+    public static final String APP_TO_APP = "APP_TO_APP";
+
+    // 1xx to 5xx, then exchanges that failed without a status and those the client cancelled
+    private static final String[] STATUS_CLASSES = { "1xx", "2xx", "3xx", "4xx", "5xx", "error", "cancelled" };
+    private static final int ERROR = 5;
+    private static final int CANCELLED = 6;
+    private static final String[] INTERACTIONS = { USER_TO_APP, APP_TO_APP };
+
+    private final MeterRegistry meterRegistry;
+    private final Duration[] slos;
+    private final int maxRoutes;
+    private final ConcurrentMap<String, RouteMeters> routes = new ConcurrentHashMap<>();
+    private volatile boolean overflowLogged;
+
+    @Autowired
+    public GatewayMeters(MeterRegistry meterRegistry,
+            @Value("${gateway.metrics.slo-ms:10,25,50,100,250,500,1000,2500,5000}") long[] sloMillis,
+            @Value("${gateway.metrics.max-routes:500}") int maxRoutes) {
+        this.meterRegistry = meterRegistry;
+        this.slos = Arrays.stream(sloMillis).sorted().mapToObj(Duration::ofMillis).toArray(Duration[]::new);
+        this.maxRoutes = maxRoutes;
+    }
+
+    /**
+     * Records a finished request.
+     *
+     * @param status    null when the exchange failed before a status was set
+     * @param cancelled the client went away before the response completed
+     */
+    public void record(String routeId, HttpStatusCode status, boolean cancelled, boolean appToApp,
+            long latencyNanos) {
+        int statusClass = cancelled ? CANCELLED
+                : status == null ? ERROR
+                : Math.min(Math.max(status.value() / 100, 1), 5) - 1;
+        routeMeters(routeId).timer(statusClass, appToApp ? 1 : 0).record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Drops the meters of routes that no longer exist, making room under
+     * the route cap for new ones.
+     */
+    public void retain(Collection<String> routeIds) {
+        Set<String> keep = Set.copyOf(routeIds);
+        routes.entrySet().removeIf(entry -> {
+            if (keep.contains(entry.getKey()) || OTHER_ROUTE.equals(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().remove();
+            return true;
+        });
+    }
+
+    private RouteMeters routeMeters(String routeId) {
+        RouteMeters meters = routes.get(routeId);
+        if (meters != null) {
+            return meters;
+        }
+        if (routes.size() >= maxRoutes) {
+            if (!overflowLogged) {
+                overflowLogged = true;
+                log.warn("More than {} routes, request meters of further routes are tagged route={}",
+                        maxRoutes, OTHER_ROUTE);
+            }
+            return routes.computeIfAbsent(OTHER_ROUTE, RouteMeters::new);
+        }
+        return routes.computeIfAbsent(routeId, RouteMeters::new);
+    }
+
+    // Timers are registered on a combination's first request
+    private final class RouteMeters {
+        private final String routeId;
+        private final AtomicReferenceArray<Timer> timers =
+                new AtomicReferenceArray<>(STATUS_CLASSES.length * INTERACTIONS.length);
+
+        RouteMeters(String routeId) {
+            this.routeId = routeId;
+        }
+
+        Timer timer(int statusClass, int interaction) {
+            int index = statusClass * INTERACTIONS.length + interaction;
+            Timer timer = timers.get(index);
+            if (timer == null) {
+                // The registry hands every racing caller the same timer
+                timer = Timer.builder(REQUESTS)
+                        .description("Requests through the gateway")
+                        .tag("route", routeId)
+                        .tag("status", STATUS_CLASSES[statusClass])
+                        .tag("interaction", INTERACTIONS[interaction])
+                        .serviceLevelObjectives(slos)
+                        .register(meterRegistry);
+                timers.set(index, timer);
+            }
+            return timer;
+        }
+
+        void remove() {
+            for (int i = 0; i < timers.length(); i++) {
+                Timer timer = timers.get(i);
+                if (timer != null) {
+                    meterRegistry.remove(timer);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.gateway.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-route request rate, error ratio and latency percentiles at one second
+ * resolution, kept on this node's heap for the live dashboard. Requests are
+ * counted into the current second's window; once a second the windows are
+ * swapped out and one snapshot is published to every subscriber.
+ * <p>
+ * The snapshot stream is hot and shared: the work per second is the same
+ * for one viewer or a thousand. Each subscriber gets the latest snapshot
+ * on arrival, and one that cannot keep up skips to the newest snapshot
+ * instead of holding the others back. Snapshots for the whole gateway are
+ * serialized once and the same JSON is sent to every such subscriber.
+ */
+@Service
+@Slf4j
+public class LiveMetricsService {
+
+    // Latency buckets grow by a quarter from 100µs, the last one catches everything past ~80s
+    private static final long FIRST_BUCKET_NANOS = 100_000;
+    private static final double BUCKET_GROWTH = 1.25;
+    private static final int BUCKETS = 62;
+    private static final long[] BUCKET_BOUNDS = bucketBounds();
+
+    private final LongSupplier clock;
+    private final ObjectMapper objectMapper;
+    private final int idleTicks;
+    private final Map<String, RouteWindows> routes = new ConcurrentHashMap<>();
+    private final Sinks.Many<Snapshot> snapshots = Sinks.many().replay().latest();
+    private final Flux<String> sharedJson;
+    // The shared JSON stream is one subscriber to the sink however many viewers it has
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    @Autowired
+    public LiveMetricsService(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+            @Value("${gateway.metrics.live.idle-seconds:60}") int idleSeconds) {
+        this(System::currentTimeMillis, objectMapper, meterRegistry, idleSeconds);
+    }
+
+    LiveMetricsService(LongSupplier clock, ObjectMapper objectMapper, MeterRegistry meterRegistry, int idleTicks) {
+        this.clock = clock;
+        this.objectMapper = objectMapper;
+        this.idleTicks = idleTicks;
+        this.sharedJson = snapshots.asFlux().map(this::toJson).replay(1).refCount();
+        Gauge.builder("gateway.metrics.live.subscribers", subscribers, AtomicInteger::get)
+                .description("Clients streaming live metrics")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts a finished request. Errors are failed exchanges and 5xx
+     * responses.
+     */
+    public void record(String routeId, long latencyNanos, boolean error) {
+        Window window = routes.computeIfAbsent(routeId, id -> new RouteWindows()).current.get();
+        window.latencies.incrementAndGet(bucket(latencyNanos));
+        if (error) {
+            window.errors.increment();
+        }
+    }
+
+    /**
+     * The shared snapshot stream, starting with the latest snapshot.
+     */
+    public Flux<Snapshot> stream() {
+        return snapshots.asFlux().onBackpressureLatest();
+    }
+
+    /**
+     * The snapshot stream as JSON, narrowed to some routes when routeIds is
+     * not empty. Only narrowed streams are serialized per subscriber.
+     */
+    public Flux<String> streamJson(Set<String> routeIds) {
+        Flux<String> json = routeIds == null || routeIds.isEmpty()
+                ? sharedJson.onBackpressureLatest()
+                : stream().map(snapshot -> toJson(new Snapshot(snapshot.timestamp(), snapshot.routes().stream()
+                        .filter(stats -> routeIds.contains(stats.routeId()))
+                        .toList())));
+        return json.doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                .doFinally(signal -> subscribers.decrementAndGet());
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void tick() {
+        // A request that took the window just before the swap but counts into it after it was read
+        // is lost; the dashboard is approximate, and this keeps record() to one increment
+        List<RouteStats> stats = new ArrayList<>(routes.size());
+        routes.forEach((routeId, windows) -> {
+            Window window = windows.current.getAndSet(new Window());
+            RouteStats routeStats = window.stats(routeId);
+            windows.idle = routeStats.requestsPerSecond() == 0 ? windows.idle + 1 : 0;
+            if (windows.idle > idleTicks) {
+                routes.remove(routeId, windows);
+            } else {
+                stats.add(routeStats);
+            }
+        });
+        stats.sort(Comparator.comparing(RouteStats::routeId));
+
+        Sinks.EmitResult result = snapshots.tryEmitNext(new Snapshot(clock.getAsLong(), stats));
+        if (result.isFailure()) {
+            log.debug("Live metrics snapshot dropped: {}", result);
+        }
+    }
+
+    private String toJson(Snapshot snapshot) {
+        try {
+            return objectMapper.writeValueAsString(snapshot);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Live metrics snapshot is not serializable", e);
+        }
+    }
+
+    private static int bucket(long nanos) {
+        int i = Arrays.binarySearch(BUCKET_BOUNDS, nanos);
+        return i >= 0 ? i : Math.min(-i - 1, BUCKETS - 1);
+    }
+
+    private static long[] bucketBounds() {
+        long[] bounds = new long[BUCKETS];
+        double bound = FIRST_BUCKET_NANOS;
+        for (int i = 0; i < BUCKETS; i++) {
+            bounds[i] = (long) bound;
+            bound *= BUCKET_GROWTH;
+        }
+        return bounds;
+    }
+
+    private static final class RouteWindows {
+        private final AtomicReference<Window> current = new AtomicReference<>(new Window());
+        // Only touched by tick
+        private int idle;
+    }
+
+    private static final class Window {
+        private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+        private final LongAdder errors = new LongAdder();
+
+        RouteStats stats(String routeId) {
+            long[] counts = new long[BUCKETS];
+            long requests = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = latencies.get(i);
+                requests += counts[i];
+            }
+            if (requests == 0) {
+                return new RouteStats(routeId, 0, 0, 0, 0, 0);
+            }
+            return new RouteStats(routeId, requests, Math.min(1.0, (double) errors.sum() / requests),
+                    percentile(counts, requests, 0.50), percentile(counts, requests, 0.95),
+                    percentile(counts, requests, 0.99));
+        }
+
+        // Upper bound of the bucket holding the percentile, at most a quarter above the real value
+        private static double percentile(long[] counts, long requests, double percentile) {
+            long rank = (long) Math.ceil(percentile * requests);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return (double) BUCKET_BOUNDS[i] / TimeUnit.MILLISECONDS.toNanos(1);
+                }
+            }
+            return (double) BUCKET_BOUNDS[BUCKETS - 1] / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    public record Snapshot(long timestamp, List<RouteStats> routes) {
+    }
+
+    public record RouteStats(String routeId, long requestsPerSecond, double errorRatio,
+            double p50Millis, double p95Millis, double p99Millis) {
+    }
+}
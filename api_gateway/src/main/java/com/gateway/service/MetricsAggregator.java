@@ -3,12 +3,15 @@ package com.gateway.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.config.RedisKeys;
 import com.gateway.model.MetricPoint;
 import com.gateway.model.TrendAnalysis;
 import com.gateway.model.TrendDirection;
+import io.lettuce.core.KeyValue;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -17,52 +20,76 @@ import java.util.stream.Collectors;
 @Slf4j
 public class MetricsAggregator {
     private static final int DEFAULT_MAX_HISTORY_SIZE = 100;
-    private static final String METRICS_KEY_PREFIX = "metrics:";
 
     private final RedisTemplate<String, String> redisTemplate;
+    private final RedisCommandBatcher commandBatcher;
     private final ObjectMapper objectMapper;
 
     public MetricsAggregator(
             RedisTemplate<String, String> redisTemplate,
+            RedisCommandBatcher commandBatcher,
             ObjectMapper objectMapper) {
         this.redisTemplate = redisTemplate;
+        this.commandBatcher = commandBatcher;
         this.objectMapper = objectMapper;
     }
 
-    public void addMetrics(String serviceId, Map<String, Double> newMetrics) {
-        String redisKey = METRICS_KEY_PREFIX + serviceId;
+    /**
+     * Appends the samples, in order, to the history of each metric they
+     * contain. One HMGET and one HSET per key, pipelined with concurrent
+     * writers' commands.
+     */
+    public Mono<Void> addMetrics(String serviceId, List<Map<String, Double>> samples) {
+        String redisKey = RedisKeys.metrics(serviceId);
         long timestamp = System.currentTimeMillis();
+        String[] fields = samples.stream()
+                .flatMap(sample -> sample.keySet().stream())
+                .distinct()
+                .toArray(String[]::new);
+        if (fields.length == 0) {
+            return Mono.empty();
+        }
 
-        newMetrics.forEach((newMetric, value) -> {
-            try {
-                // Get existing points
-                String jsonPoints = (String) redisTemplate.opsForHash().get(redisKey, newMetric);
-                List<MetricPoint> points = jsonPoints != null
-                        ? objectMapper.readValue(jsonPoints, new TypeReference<List<MetricPoint>>() {
-                        })
-                        : new ArrayList<>();
-
-                // Add new point
-                points.add(new MetricPoint(newMetric, value, timestamp));
-
-                // Keep only the latest points
-                if (points.size() > DEFAULT_MAX_HISTORY_SIZE) {
-                    points = points.subList(points.size() - DEFAULT_MAX_HISTORY_SIZE, points.size());
-                }
-
-                // Store updated points
-                String updatedJson = objectMapper.writeValueAsString(points);
-                redisTemplate.opsForHash().put(redisKey, newMetric, updatedJson);
-            } catch (JsonProcessingException e) {
-                log.error("Error storing new metrics for service {} metric {}: {}",
-                        serviceId, newMetric, e.getMessage());
-            }
-        });
+        return commandBatcher.execute(commands -> commands.hmget(redisKey, fields))
+                .flatMap(existing -> {
+                    Map<String, String> updated = new HashMap<>();
+                    for (KeyValue<String, String> entry : existing) {
+                        String newMetric = entry.getKey();
+                        try {
+                            // Get existing points
+                            List<MetricPoint> points = entry.hasValue()
+                                    ? objectMapper.readValue(entry.getValue(), new TypeReference<List<MetricPoint>>() {
+                                    })
+                                    : new ArrayList<>();
+
+                            // Add new points
+                            for (Map<String, Double> sample : samples) {
+                                Double value = sample.get(newMetric);
+                                if (value != null) {
+                                    points.add(new MetricPoint(newMetric, value, timestamp));
+                                }
+                            }
+
+                            // Keep only the latest points
+                            if (points.size() > DEFAULT_MAX_HISTORY_SIZE) {
+                                points = points.subList(points.size() - DEFAULT_MAX_HISTORY_SIZE, points.size());
+                            }
+
+                            updated.put(newMetric, objectMapper.writeValueAsString(points));
+                        } catch (JsonProcessingException e) {
+                            log.error("Error storing new metrics for service {} metric {}: {}",
+                                    serviceId, newMetric, e.getMessage());
+                        }
+                    }
+                    // Store updated points
+                    return updated.isEmpty() ? Mono.<Void>empty()
+                            : commandBatcher.execute(commands -> commands.hset(redisKey, updated)).then();
+                });
     }
 
     public Map<String, TrendAnalysis> analyzeTrends(String serviceId) {
         Map<String, TrendAnalysis> trends = new HashMap<>();
-        String redisKey = METRICS_KEY_PREFIX + serviceId;
+        String redisKey = RedisKeys.metrics(serviceId);
 
         Map<Object, Object> entries = redisTemplate.opsForHash().entries(redisKey);
         entries.forEach((metric, jsonPoints) -> {
@@ -103,7 +130,7 @@ public class MetricsAggregator {
 
     public Map<String, List<MetricPoint>> getMetricsHistory(String serviceId) {
         Map<String, List<MetricPoint>> history = new HashMap<>();
-        String redisKey = METRICS_KEY_PREFIX + serviceId;
+        String redisKey = RedisKeys.metrics(serviceId);
 
         Map<Object, Object> entries = redisTemplate.opsForHash().entries(redisKey);
         entries.forEach((metric, jsonPoints) -> {
@@ -123,7 +150,7 @@ public class MetricsAggregator {
 
     public void storeTrendAnalysis(String serviceId, Map<String, TrendAnalysis> trends) {
         try {
-            String redisKey = METRICS_KEY_PREFIX + serviceId + ":trends";
+            String redisKey = RedisKeys.metricsTrends(serviceId);
             String jsonTrends = objectMapper.writeValueAsString(trends);
             redisTemplate.opsForValue().set(redisKey, jsonTrends);
         } catch (JsonProcessingException e) {
@@ -143,14 +170,14 @@ public class MetricsAggregator {
         Set<String> keys = new HashSet<>();
 
         try {
-            Set<String> redisKeys = redisTemplate.keys(METRICS_KEY_PREFIX + "*");
+            Set<String> redisKeys = redisTemplate.keys(RedisKeys.metricsPattern());
 
             if (redisKeys != null) {
                 redisKeys.forEach(key -> {
-                    String keyString = key;
-                    // Extract service ID from the key pattern "metrics:serviceId"
-                    if (keyString.startsWith(METRICS_KEY_PREFIX)) {
-                        keys.add(keyString.substring(METRICS_KEY_PREFIX.length()));
+                    // Extract service ID from the key pattern "metrics:{serviceId}"
+                    String serviceId = RedisKeys.metricsServiceId(key);
+                    if (serviceId != null) {
+                        keys.add(serviceId);
                     }
                 });
             }
@@ -0,0 +1,119 @@
+package com.gateway.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Maps concrete request paths to templates, so {@code /users/123} and
+ * {@code /users/456} are stored and aggregated as {@code /users/{id}}.
+ * <ol>
+ * <li>A route pattern without wildcards, like {@code /users/{id}}, is the
+ * template. Otherwise the segments it names are taken from it.</li>
+ * <li>Numeric, UUID and hash segments become {@code {id}}, {@code {uuid}}
+ * and {@code {hash}}.</li>
+ * <li>Past that the normalizer learns: once more than
+ * {@code gateway.metrics.path-templates.max-literals} different values
+ * followed the same template prefix, that position becomes
+ * {@code {param}}, which catches slugs and other ids no rule knows. The
+ * first segment is left out, it tells routes apart.</li>
+ * </ol>
+ * The table of prefixes is bounded by
+ * {@code gateway.metrics.path-templates.max-size}, evicting the least used.
+ */
+@Service
+public class PathNormalizer {
+
+    private static final Pattern NUMERIC = Pattern.compile("\\d+");
+    private static final Pattern UUID = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    // 16 hex digits or more with at least one digit, so long words made of a-f stay words
+    private static final Pattern HASH = Pattern.compile("(?=[a-fA-F]*\\d)[0-9a-fA-F]{16,}");
+
+    private final int maxLiterals;
+    private final Cache<String, Literals> prefixes;
+
+    @Autowired
+    public PathNormalizer(@Value("${gateway.metrics.path-templates.max-size:10000}") int maxSize,
+            @Value("${gateway.metrics.path-templates.max-literals:50}") int maxLiterals) {
+        this.maxLiterals = maxLiterals;
+        this.prefixes = Caffeine.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * @param routePattern the path pattern of the route that matched, null if unknown
+     */
+    public String template(String path, String routePattern) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        if (routePattern != null && !routePattern.contains("*")) {
+            return routePattern;
+        }
+
+        String[] segments = path.split("/", -1);
+        String[] patternSegments = routePattern != null ? routePattern.split("/", -1) : new String[0];
+        StringBuilder template = new StringBuilder(path.length());
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            template.append('/');
+            if (segment.isEmpty()) {
+                continue;
+            }
+            String patternSegment = i < patternSegments.length ? patternSegments[i] : "";
+            if (patternSegment.equals(segment)) {
+                template.append(segment);
+            } else if (patternSegment.startsWith("{") && !patternSegment.startsWith("{*")) {
+                // The route names this variable already
+                template.append(patternSegment);
+            } else {
+                template.append(normalize(template.toString(), segment, i > 1));
+            }
+        }
+        return template.toString();
+    }
+
+    private String normalize(String prefix, String segment, boolean learn) {
+        if (NUMERIC.matcher(segment).matches()) {
+            return "{id}";
+        }
+        if (UUID.matcher(segment).matches()) {
+            return "{uuid}";
+        }
+        if (HASH.matcher(segment).matches()) {
+            return "{hash}";
+        }
+        if (!learn) {
+            return segment;
+        }
+        return prefixes.get(prefix, key -> new Literals()).add(segment) ? segment : "{param}";
+    }
+
+    // The different segments seen after one template prefix, until there are too many to be names
+    private final class Literals {
+        private final Set<String> seen = new HashSet<>();
+        private boolean variable;
+
+        synchronized boolean add(String segment) {
+            if (variable) {
+                return false;
+            }
+            if (seen.contains(segment)) {
+                return true;
+            }
+            if (seen.size() >= maxLiterals) {
+                variable = true;
+                seen.clear();
+                return false;
+            }
+            seen.add(segment);
+            return true;
+        }
+    }
+}
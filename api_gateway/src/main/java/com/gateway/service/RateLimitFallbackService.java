@@ -0,0 +1,164 @@
+package com.gateway.service;
+
+import com.gateway.config.RedisKeys;
+import com.gateway.service.ratelimit.InMemoryRateLimiter;
+import com.gateway.service.ratelimit.Quota;
+import io.lettuce.core.Range;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps rate limiting going when Redis is slow or down. Redis calls on the
+ * request path get a short timeout; after a few failures in a row the circuit
+ * opens and every node limits on its own, each allowing its share of the
+ * global limit (the limit divided by the nodes last seen alive). While open
+ * no request waits on Redis. The node heartbeat doubles as the probe: the
+ * first one that gets through switches back to global limiting.
+ */
+@Service
+@Slf4j
+public class RateLimitFallbackService {
+
+    public enum Mode {
+        GLOBAL, LOCAL
+    }
+
+    private final BiFunction<String, Long, Mono<Long>> heartbeat;
+    private final LongSupplier clock;
+    private final InMemoryRateLimiter localLimiter;
+    private final MeterRegistry meterRegistry;
+    private final Duration redisTimeout;
+    private final int failureThreshold;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile Mode mode = Mode.GLOBAL;
+    private volatile int knownNodes;
+
+    @Autowired
+    public RateLimitFallbackService(RedisCommandBatcher commandBatcher,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.rate-limit.redis-timeout-ms:100}") long redisTimeoutMillis,
+            @Value("${gateway.rate-limit.failure-threshold:3}") int failureThreshold,
+            @Value("${gateway.rate-limit.node-count:1}") int initialNodeCount,
+            @Value("${gateway.rate-limit.heartbeat-ms:1000}") long heartbeatMillis) {
+        this(redisHeartbeat(commandBatcher, heartbeatMillis * 5), System::currentTimeMillis,
+                new InMemoryRateLimiter(), meterRegistry, Duration.ofMillis(redisTimeoutMillis), failureThreshold,
+                initialNodeCount);
+    }
+
+    RateLimitFallbackService(BiFunction<String, Long, Mono<Long>> heartbeat, LongSupplier clock,
+            InMemoryRateLimiter localLimiter, MeterRegistry meterRegistry, Duration redisTimeout,
+            int failureThreshold, int initialNodeCount) {
+        this.heartbeat = heartbeat;
+        this.clock = clock;
+        this.localLimiter = localLimiter;
+        this.meterRegistry = meterRegistry;
+        this.redisTimeout = redisTimeout;
+        this.failureThreshold = failureThreshold;
+        this.knownNodes = Math.max(1, initialNodeCount);
+
+        Gauge.builder("gateway.rate-limit.local", this, service -> service.mode == Mode.LOCAL ? 1 : 0)
+                .description("1 while rate limits are enforced per node because Redis is unavailable")
+                .register(meterRegistry);
+        Gauge.builder("gateway.rate-limit.nodes", this, service -> service.knownNodes)
+                .description("Gateway nodes the global limits are split across in local mode")
+                .register(meterRegistry);
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public int knownNodes() {
+        return knownNodes;
+    }
+
+    /**
+     * How long a request may wait on Redis before it is limited locally.
+     */
+    public Duration redisTimeout() {
+        return redisTimeout;
+    }
+
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    public void recordFailure(Throwable error) {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            switchTo(Mode.LOCAL, error.getMessage());
+        }
+    }
+
+    /**
+     * Takes a request's cost from this node's share of each quota, using
+     * the same algorithm as the global limiter. Like the global cost is capped
+     * at the smallest burst capacity, the cost is capped at the smallest
+     * share, so an expensive request still fits on an idle node.
+     */
+    public boolean tryAcquireLocally(List<Quota> quotas, int cost) {
+        int nodes = knownNodes;
+        List<Quota> shares = quotas.stream()
+                .map(quota -> new Quota(quota.key(), quota.limit().split(nodes)))
+                .toList();
+        int smallestShare = shares.stream().mapToInt(share -> share.limit().burstCapacity()).min().orElse(cost);
+        return localLimiter.tryAcquireNow(shares, Math.min(cost, smallestShare));
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.rate-limit.heartbeat-ms:1000}")
+    public void heartbeat() {
+        heartbeat.apply(nodeId, clock.getAsLong())
+                .timeout(redisTimeout)
+                .subscribe(nodes -> {
+                    knownNodes = Math.max(1, nodes.intValue());
+                    recordSuccess();
+                    switchTo(Mode.GLOBAL, "heartbeat succeeded");
+                }, e -> {
+                    log.debug("Rate limit heartbeat failed: {}", e.getMessage());
+                    if (mode == Mode.GLOBAL) {
+                        recordFailure(e);
+                    }
+                });
+    }
+
+    private synchronized void switchTo(Mode next, String reason) {
+        if (mode == next) {
+            return;
+        }
+        mode = next;
+        if (next == Mode.LOCAL) {
+            log.warn("Redis unavailable ({}), rate limiting locally with limits split across {} nodes",
+                    reason, knownNodes);
+        } else {
+            consecutiveFailures.set(0);
+            log.info("Redis reachable again, back to global rate limiting");
+        }
+        meterRegistry.counter("gateway.rate-limit.mode.switches", "mode", next.name().toLowerCase()).increment();
+    }
+
+    // Registers this node and returns how many nodes sent a heartbeat within staleAfterMillis
+    private static BiFunction<String, Long, Mono<Long>> redisHeartbeat(RedisCommandBatcher commandBatcher,
+            long staleAfterMillis) {
+        // Queued back to back, so the three go out in one pipeline
+        return (nodeId, now) -> Mono.zip(
+                commandBatcher.execute(commands -> commands.zadd(RedisKeys.GATEWAY_NODES, now, nodeId)),
+                commandBatcher.execute(commands -> commands.zremrangebyscore(RedisKeys.GATEWAY_NODES,
+                        Range.create(0L, now - staleAfterMillis))),
+                commandBatcher.execute(commands -> commands.zcard(RedisKeys.GATEWAY_NODES)))
+                .map(replies -> replies.getT3());
+    }
+}
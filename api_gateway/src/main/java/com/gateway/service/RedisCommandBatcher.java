@@ -0,0 +1,225 @@
+package com.gateway.service;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Sends Redis commands from concurrent exchanges as pipelines on one
+ * dedicated connection with auto-flush off. Commands queue up until the
+ * flusher thread drains them, issues them back to back and flushes once, so
+ * a burst of rate limit checks costs one write instead of one per command.
+ * Under light load a command is flushed on its own right away; with a window
+ * configured the flusher waits that long for more commands. Replies complete
+ * in the order the commands were queued.
+ */
+@Service
+@Slf4j
+public class RedisCommandBatcher {
+
+    /**
+     * A connection with auto-flush off and the commands to queue on it.
+     */
+    record Pipeline(StatefulConnection<String, String> connection, RedisClusterAsyncCommands<String, String> commands) {
+    }
+
+    private final Supplier<Pipeline> connector;
+    private final int maxBatchSize;
+    private final long windowMicros;
+    private final Duration timeout;
+    private final DistributionSummary batchSizes;
+    private final Scheduler flusher = Schedulers.newSingle("redis-batch", true);
+
+    private final Queue<Queued<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    // Only touched on the flusher thread
+    private Pipeline pipeline;
+    private boolean connecting;
+    private boolean closed;
+    private long connectRetryAt;
+
+    @Autowired
+    public RedisCommandBatcher(ReactiveRedisConnectionFactory connectionFactory,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.redis.batch.max-size:256}") int maxBatchSize,
+            @Value("${gateway.redis.batch.window-micros:0}") long windowMicros,
+            @Value("${spring.data.redis.timeout:2000}") long timeoutMillis) {
+        this(() -> connect(connectionFactory), meterRegistry, maxBatchSize, windowMicros,
+                Duration.ofMillis(timeoutMillis));
+    }
+
+    RedisCommandBatcher(Supplier<Pipeline> connector, MeterRegistry meterRegistry, int maxBatchSize,
+            long windowMicros, Duration timeout) {
+        this.connector = connector;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMicros = windowMicros;
+        this.timeout = timeout;
+        this.batchSizes = DistributionSummary.builder("gateway.redis.batch.size")
+                .description("Commands sent per pipeline flush")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a command for the next pipeline. The command is issued on the
+     * flusher thread and must only call one method of the given API.
+     */
+    public <T> Mono<T> execute(Function<RedisClusterAsyncCommands<String, String>, RedisFuture<T>> command) {
+        return Mono.defer(() -> {
+            Queued<T> entry = new Queued<>(command, new CompletableFuture<>());
+            queue.add(entry);
+            int pending = queued.incrementAndGet();
+            if (pending >= maxBatchSize) {
+                flusher.schedule(this::drain);
+            } else if (drainScheduled.compareAndSet(false, true)) {
+                if (windowMicros > 0) {
+                    flusher.schedule(this::drain, windowMicros, TimeUnit.MICROSECONDS);
+                } else {
+                    flusher.schedule(this::drain);
+                }
+            }
+            // A timeout cancels the future, so the command is dropped if still queued
+            return Mono.fromFuture(entry.result, false);
+        }).timeout(timeout);
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        Pipeline current = pipeline();
+        if (current == null && connecting) {
+            // Commands wait for the connection, those timing out meanwhile are skipped then
+            return;
+        }
+        int sent = 0;
+        Queued<?> entry;
+        while (sent < maxBatchSize && (entry = queue.poll()) != null) {
+            queued.decrementAndGet();
+            if (entry.result.isDone()) {
+                // Timed out while queued
+                continue;
+            }
+            if (current == null) {
+                entry.result.completeExceptionally(new IllegalStateException("Redis is not reachable"));
+                continue;
+            }
+            entry.issue(current.commands());
+            sent++;
+        }
+        if (sent > 0) {
+            current.connection().flushCommands();
+            batchSizes.record(sent);
+        }
+        // More than one batch was waiting, keep going without waiting for a window
+        if (!queue.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            flusher.schedule(this::drain);
+        }
+    }
+
+    private Pipeline pipeline() {
+        if (pipeline == null && !connecting && !closed && System.currentTimeMillis() >= connectRetryAt) {
+            connecting = true;
+            // Connecting blocks, keep it off the flusher thread
+            Mono.fromCallable(connector::get)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .publishOn(flusher)
+                    .subscribe(this::connected, this::connectFailed);
+        }
+        return pipeline;
+    }
+
+    private void connected(Pipeline connected) {
+        connecting = false;
+        if (closed) {
+            connected.connection().close();
+            return;
+        }
+        try {
+            connected.connection().setAutoFlushCommands(false);
+            pipeline = connected;
+        } catch (RuntimeException e) {
+            connected.connection().close();
+            connectFailed(e);
+            return;
+        }
+        drain();
+    }
+
+    private void connectFailed(Throwable e) {
+        connecting = false;
+        log.warn("Error connecting the Redis pipeline: {}", e.getMessage());
+        connectRetryAt = System.currentTimeMillis() + 1000;
+        // Fails what queued up meanwhile
+        drain();
+    }
+
+    @PreDestroy
+    public void close() {
+        flusher.schedule(() -> {
+            closed = true;
+            if (pipeline != null) {
+                pipeline.connection().close();
+            }
+        });
+        flusher.disposeGracefully().block(Duration.ofSeconds(5));
+    }
+
+    private static Pipeline connect(ReactiveRedisConnectionFactory connectionFactory) {
+        if (!(connectionFactory instanceof LettuceConnectionFactory lettuce)) {
+            throw new IllegalStateException("Command batching needs a Lettuce connection factory");
+        }
+        AbstractRedisClient client = lettuce.getNativeClient();
+        if (client instanceof RedisClusterClient cluster) {
+            StatefulRedisClusterConnection<String, String> connection = cluster.connect(StringCodec.UTF8);
+            return new Pipeline(connection, connection.async());
+        }
+        StatefulRedisConnection<String, String> connection = ((RedisClient) client).connect(StringCodec.UTF8);
+        return new Pipeline(connection, connection.async());
+    }
+
+    private record Queued<T>(Function<RedisClusterAsyncCommands<String, String>, RedisFuture<T>> command,
+            CompletableFuture<T> result) {
+
+        void issue(RedisClusterAsyncCommands<String, String> commands) {
+            try {
+                command.apply(commands).whenComplete((value, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
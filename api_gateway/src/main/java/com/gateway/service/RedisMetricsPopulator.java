@@ -6,11 +6,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -43,14 +47,12 @@ public class RedisMetricsPopulator {
                     log.debug("Processing metrics for service: {}", serviceId);
 
                     return serviceGroup.collectList()
-                            .map(metrics -> {
+                            .flatMap(metrics -> {
                                 // Calculate service metrics
                                 Map<String, Double> serviceMetrics = calculateServiceMetrics(metrics);
 
-                                // Store in Redis
-                                metricsAggregator.addMetrics(serviceId, serviceMetrics);
-
-                                // Also store by route ID
+                                // Also store by route ID, grouped so each route key is written once
+                                Map<String, List<Map<String, Double>>> routeSamples = new LinkedHashMap<>();
                                 metrics.stream()
                                         .filter(m -> m.getRouteId() != null && !m.getRouteId().isEmpty())
                                         .forEach(metric -> {
@@ -59,10 +61,16 @@ public class RedisMetricsPopulator {
                                             routeMetrics.put("statusCode", (double) metric.getStatusCode());
                                             routeMetrics.put("success", metric.isSuccess() ? 1.0 : 0.0);
 
-                                            metricsAggregator.addMetrics("route:" + metric.getRouteId(), routeMetrics);
+                                            routeSamples.computeIfAbsent("route:" + metric.getRouteId(),
+                                                    k -> new ArrayList<>()).add(routeMetrics);
                                         });
 
-                                return serviceMetrics;
+                                // Store in Redis
+                                return Flux.fromIterable(routeSamples.entrySet())
+                                        .flatMap(entry -> metricsAggregator.addMetrics(entry.getKey(),
+                                                entry.getValue()))
+                                        .mergeWith(metricsAggregator.addMetrics(serviceId, List.of(serviceMetrics)))
+                                        .then(Mono.just(serviceMetrics));
                             });
                 })
                 .subscribe(
@@ -0,0 +1,58 @@
+package com.gateway.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global accounting for request bodies held in memory so they can be replayed on
+ * retry. Reservations are made before a body is read and released once the
+ * exchange completes, capping buffered bytes across all in-flight requests.
+ */
+@Service
+@Slf4j
+public class RequestBodyBufferService {
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final long maxTotalBytes;
+
+    public RequestBodyBufferService(MeterRegistry meterRegistry,
+            @Value("${gateway.retry.body.max-total-bytes:67108864}") long maxTotalBytes) {
+        this.meterRegistry = meterRegistry;
+        this.maxTotalBytes = maxTotalBytes;
+
+        Gauge.builder("gateway.retry.body.buffered.bytes", bufferedBytes, AtomicLong::get)
+                .register(meterRegistry);
+    }
+
+    public boolean tryReserve(long bytes) {
+        while (true) {
+            long current = bufferedBytes.get();
+            if (current + bytes > maxTotalBytes) {
+                log.debug("Body buffer cap reached: {} + {} > {}", current, bytes, maxTotalBytes);
+                return false;
+            }
+            if (bufferedBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long bytes) {
+        bufferedBytes.addAndGet(-bytes);
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    // Reasons: disabled, unknown_length, too_large, memory_cap
+    public void recordRetryDisabled(String routeId, String reason) {
+        meterRegistry.counter("gateway.retry.body.skipped", "route", routeId, "reason", reason).increment();
+    }
+}
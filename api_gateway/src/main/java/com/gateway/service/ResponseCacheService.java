@@ -0,0 +1,174 @@
+package com.gateway.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.model.CachedResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two-level response cache. The local level is a Caffeine cache bounded by body
+ * bytes (W-TinyLFU admission), the optional second level lives in Redis so
+ * entries survive restarts and are shared between gateway nodes.
+ */
+@Service
+@Slf4j
+public class ResponseCacheService {
+
+    private static final String REDIS_KEY_PREFIX = "response-cache:";
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, CachedResponse> localCache;
+
+    // One upstream fetch per key at a time, later requests wait on the leader
+    private final ConcurrentMap<String, Sinks.One<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+    // Keys with a background refresh of their stale entry running
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    public ResponseCacheService(ReactiveStringRedisTemplate redisTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.response-cache.max-bytes:67108864}") long maxBytes) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.localCache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedResponse value) -> key.length() + value.getBody().length
+                        + ENTRY_OVERHEAD_BYTES)
+                .expireAfter(new StaleDeadlineExpiry())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, "gateway.response.cache");
+    }
+
+    public Mono<CachedResponse> get(String key, boolean useRedis) {
+        CachedResponse local = localCache.getIfPresent(key);
+        if (local != null || !useRedis) {
+            return Mono.justOrEmpty(local);
+        }
+
+        return redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + key)
+                .flatMap(json -> Mono.justOrEmpty(deserialize(json)))
+                .filter(response -> response.isUsable(System.currentTimeMillis()))
+                .doOnNext(response -> localCache.put(key, response))
+                .onErrorResume(e -> {
+                    log.warn("Error reading response cache from Redis: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    public void put(String key, CachedResponse response, boolean useRedis) {
+        localCache.put(key, response);
+
+        if (useRedis) {
+            long ttlMillis = response.getStaleUntil() - System.currentTimeMillis();
+            String json = serialize(response);
+            if (json != null && ttlMillis > 0) {
+                redisTemplate.opsForValue().set(REDIS_KEY_PREFIX + key, json, Duration.ofMillis(ttlMillis))
+                        .subscribe(null, e -> log.warn("Error writing response cache to Redis: {}", e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Registers the caller as the single upstream fetcher for the key. Returns
+     * the sink to complete when done, or null if another fetch is in flight.
+     */
+    public Sinks.One<CachedResponse> tryLead(String key) {
+        Sinks.One<CachedResponse> sink = Sinks.one();
+        return inFlight.putIfAbsent(key, sink) == null ? sink : null;
+    }
+
+    /**
+     * Waits for the in-flight fetch of the key. Completes empty when there is
+     * none or the fetched response was not cacheable.
+     */
+    public Mono<CachedResponse> awaitInFlight(String key) {
+        Sinks.One<CachedResponse> sink = inFlight.get(key);
+        return sink != null ? sink.asMono() : Mono.empty();
+    }
+
+    public void completeLead(String key, Sinks.One<CachedResponse> sink, CachedResponse response) {
+        inFlight.remove(key, sink);
+        if (response != null) {
+            sink.tryEmitValue(response);
+        } else {
+            sink.tryEmitEmpty();
+        }
+    }
+
+    /**
+     * Claims the background refresh of a stale key, false if one is running.
+     */
+    public boolean startRevalidation(String key) {
+        return revalidating.add(key);
+    }
+
+    public void endRevalidation(String key) {
+        revalidating.remove(key);
+    }
+
+    public void recordLookup(String routeId, String result) {
+        meterRegistry.counter("gateway.response.cache.requests", "route", routeId, "result", result).increment();
+    }
+
+    public void recordBytes(String routeId, String result, long bytes) {
+        meterRegistry.counter("gateway.response.cache.bytes", "route", routeId, "result", result).increment(bytes);
+    }
+
+    private String serialize(CachedResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing cached response: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private CachedResponse deserialize(String json) {
+        try {
+            return objectMapper.readValue(json, CachedResponse.class);
+        } catch (JsonProcessingException e) {
+            log.error("Error deserializing cached response: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Entries are dropped once they are past their stale-while-revalidate window
+    private static class StaleDeadlineExpiry implements Expiry<String, CachedResponse> {
+        @Override
+        public long expireAfterCreate(String key, CachedResponse value, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.getStaleUntil() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedResponse value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedResponse value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
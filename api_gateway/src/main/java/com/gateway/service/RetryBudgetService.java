@@ -0,0 +1,172 @@
+package com.gateway.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+@Service
+@Slf4j
+public class RetryBudgetService {
+
+    private static final String SCOPE_ROUTE = "route";
+    private static final String SCOPE_UPSTREAM = "upstream";
+
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, RetryBudget> routeBudgets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RetryBudget> upstreamBudgets = new ConcurrentHashMap<>();
+
+    // Fraction of live requests that may be retried (0.1 = 10%)
+    private final double ratio;
+    // Retries always allowed per second, so low-traffic routes can still retry
+    private final double minRetriesPerSecond;
+    // Upper bound on banked retry tokens, limits bursts after a quiet period
+    private final double maxTokens;
+
+    @Autowired
+    public RetryBudgetService(MeterRegistry meterRegistry,
+            @Value("${gateway.retry.budget.ratio:0.1}") double ratio,
+            @Value("${gateway.retry.budget.min-retries-per-second:5}") double minRetriesPerSecond,
+            @Value("${gateway.retry.budget.max-tokens:100}") double maxTokens) {
+        this(meterRegistry, ratio, minRetriesPerSecond, maxTokens, System::nanoTime);
+    }
+
+    RetryBudgetService(MeterRegistry meterRegistry, double ratio, double minRetriesPerSecond, double maxTokens,
+            LongSupplier nanoClock) {
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Records a first attempt, earning retry tokens for the route and its upstream.
+     */
+    public void recordRequest(String routeId, String upstream) {
+        routeBudget(routeId).deposit();
+        upstreamBudget(upstream).deposit();
+    }
+
+    /**
+     * Takes one retry token from both the route and the upstream budget.
+     * Returns false (and records the exhaustion) when either budget is empty.
+     */
+    public boolean tryAcquireRetry(String routeId, String upstream) {
+        RetryBudget route = routeBudget(routeId);
+        RetryBudget.Bucket taken = route.tryWithdraw();
+        if (taken == null) {
+            budgetExhausted(routeId, upstream, SCOPE_ROUTE);
+            return false;
+        }
+
+        RetryBudget upstreamBudget = upstreamBudget(upstream);
+        if (upstreamBudget.tryWithdraw() == null) {
+            // Give the route token back where it came from, the retry is not happening
+            route.refund(taken);
+            budgetExhausted(routeId, upstream, SCOPE_UPSTREAM);
+            return false;
+        }
+
+        meterRegistry.counter("gateway.retry.attempts", "route", routeId, "upstream", upstream).increment();
+        return true;
+    }
+
+    private void budgetExhausted(String routeId, String upstream, String scope) {
+        log.debug("Retry budget exhausted for route {} upstream {} (scope: {})", routeId, upstream, scope);
+        meterRegistry.counter("gateway.retry.budget.exhausted",
+                "route", routeId, "upstream", upstream, "scope", scope).increment();
+    }
+
+    private RetryBudget routeBudget(String routeId) {
+        return routeBudgets.computeIfAbsent(routeId, id -> newBudget(SCOPE_ROUTE, id));
+    }
+
+    private RetryBudget upstreamBudget(String upstream) {
+        return upstreamBudgets.computeIfAbsent(upstream, id -> newBudget(SCOPE_UPSTREAM, id));
+    }
+
+    private RetryBudget newBudget(String scope, String id) {
+        RetryBudget budget = new RetryBudget(ratio, minRetriesPerSecond, maxTokens, nanoClock);
+        Gauge.builder("gateway.retry.budget.tokens", budget, RetryBudget::available)
+                .tag("scope", scope)
+                .tag("id", id)
+                .register(meterRegistry);
+        return budget;
+    }
+
+    /**
+     * Token bucket where each live request deposits {@code ratio} tokens and each
+     * retry withdraws one. A small time-based reserve guarantees
+     * {@code minPerSecond} retries regardless of traffic.
+     */
+    static final class RetryBudget {
+        enum Bucket {
+            RESERVE, TOKENS
+        }
+
+        private final double ratio;
+        private final double minPerSecond;
+        private final double maxTokens;
+        private final LongSupplier nanoClock;
+
+        private double tokens;
+        private double reserve;
+        private long lastRefillNanos;
+
+        RetryBudget(double ratio, double minPerSecond, double maxTokens, LongSupplier nanoClock) {
+            this.ratio = ratio;
+            this.minPerSecond = minPerSecond;
+            this.maxTokens = maxTokens;
+            this.nanoClock = nanoClock;
+            this.reserve = minPerSecond;
+            this.lastRefillNanos = nanoClock.getAsLong();
+        }
+
+        synchronized void deposit() {
+            tokens = Math.min(maxTokens, tokens + ratio);
+        }
+
+        // The bucket the token came from, or null when both are empty
+        synchronized Bucket tryWithdraw() {
+            refillReserve();
+            if (reserve >= 1) {
+                reserve -= 1;
+                return Bucket.RESERVE;
+            }
+            if (tokens >= 1) {
+                tokens -= 1;
+                return Bucket.TOKENS;
+            }
+            return null;
+        }
+
+        // A reserve token credited to the banked tokens would outlive the reserve's refill
+        synchronized void refund(Bucket bucket) {
+            if (bucket == Bucket.RESERVE) {
+                reserve = Math.min(minPerSecond, reserve + 1);
+            } else {
+                tokens = Math.min(maxTokens, tokens + 1);
+            }
+        }
+
+        synchronized double available() {
+            refillReserve();
+            return tokens + reserve;
+        }
+
+        private void refillReserve() {
+            long now = nanoClock.getAsLong();
+            double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000.0;
+            lastRefillNanos = now;
+            reserve = Math.min(minPerSecond, reserve + elapsedSeconds * minPerSecond);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.gateway.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.config.RouteTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Propagates route changes between gateway nodes over Redis pub/sub. A node
+ * that applied a change of its own publishes the changed routeIds together
+ * with its resulting route table version; the other nodes reload just those
+ * routes. The latest version is also kept under a Redis key, and a periodic
+ * anti-entropy check reloads every route on a node whose version differs,
+ * which catches messages missed while disconnected.
+ */
+@Service
+@Slf4j
+public class RouteChangeBus {
+
+    static final String CHANNEL = "gateway:routes:changes";
+    static final String VERSION_KEY = "gateway:routes:version";
+
+    /**
+     * How messages and the shared version travel between nodes.
+     */
+    interface Transport {
+        Mono<Void> publish(String message);
+
+        Flux<String> messages();
+
+        Mono<Void> setVersion(String version);
+
+        Mono<String> version();
+    }
+
+    /**
+     * A change applied on one node. Null routeIds mean every route.
+     */
+    record RouteChange(String node, long version, List<String> routeIds, long publishedAt) {
+    }
+
+    private final Transport transport;
+    private final RouteRefreshCoordinator refreshCoordinator;
+    private final LongSupplier localVersion;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    @Autowired
+    public RouteChangeBus(ReactiveStringRedisTemplate redisTemplate,
+            RouteRefreshCoordinator refreshCoordinator,
+            RouteTable routeTable,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.routes.propagation.enabled:true}") boolean enabled) {
+        this(new RedisTransport(redisTemplate), refreshCoordinator, routeTable::version, objectMapper, meterRegistry,
+                enabled);
+    }
+
+    RouteChangeBus(Transport transport, RouteRefreshCoordinator refreshCoordinator, LongSupplier localVersion,
+            ObjectMapper objectMapper, MeterRegistry meterRegistry, boolean enabled) {
+        this.transport = transport;
+        this.refreshCoordinator = refreshCoordinator;
+        this.localVersion = localVersion;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        subscriptions.add(refreshCoordinator.localChanges()
+                .concatMap(this::publish)
+                .subscribe());
+        // Subscribing connects to Redis, keep that off the startup thread
+        subscriptions.add(Flux.defer(transport::messages)
+                .subscribeOn(Schedulers.boundedElastic())
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Route change subscription lost, resubscribing: {}",
+                                signal.failure().getMessage())))
+                .flatMap(this::receive)
+                .subscribe());
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.routes.propagation.anti-entropy-ms:30000}",
+            initialDelayString = "${gateway.routes.propagation.anti-entropy-ms:30000}")
+    public void checkVersion() {
+        if (!enabled) {
+            return;
+        }
+        transport.version()
+                .filter(version -> !version.equals(String.valueOf(localVersion.getAsLong())))
+                .flatMap(version -> {
+                    log.info("Route table version {} differs from cluster version {}, reloading all routes",
+                            localVersion.getAsLong(), version);
+                    return refreshCoordinator.applyRemote(null)
+                            .filter(outcome -> outcome != RouteRefreshCoordinator.Outcome.FAILED)
+                            .flatMap(outcome -> {
+                                // Only a reload that changed this node's routes repaired anything
+                                if (outcome == RouteRefreshCoordinator.Outcome.REFRESHED) {
+                                    meterRegistry.counter("gateway.routes.propagation.repairs").increment();
+                                }
+                                // A full reload is what Mongo holds now, the cluster version follows it
+                                String reloaded = String.valueOf(localVersion.getAsLong());
+                                return reloaded.equals(version) ? Mono.empty() : transport.setVersion(reloaded);
+                            });
+                })
+                .subscribe(null, e -> log.warn("Error checking route table version: {}", e.getMessage()));
+    }
+
+    private Mono<Void> publish(RouteRefreshCoordinator.Changes changes) {
+        long version = localVersion.getAsLong();
+        RouteChange change = new RouteChange(nodeId, version,
+                changes.full() ? null : List.copyOf(changes.routeIds()), System.currentTimeMillis());
+        try {
+            String message = objectMapper.writeValueAsString(change);
+            return transport.publish(message)
+                    .then(transport.setVersion(String.valueOf(version)))
+                    .doOnSuccess(v -> meterRegistry.counter("gateway.routes.propagation.published").increment())
+                    .onErrorResume(e -> {
+                        log.warn("Error publishing route change: {}", e.getMessage());
+                        return Mono.empty();
+                    });
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing route change: {}", e.getMessage());
+            return Mono.empty();
+        }
+    }
+
+    private Mono<Void> receive(String message) {
+        RouteChange change;
+        try {
+            change = objectMapper.readValue(message, RouteChange.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed route change: {}", e.getMessage());
+            return Mono.empty();
+        }
+        if (nodeId.equals(change.node())) {
+            return Mono.empty();
+        }
+        if (change.version() == localVersion.getAsLong()) {
+            meterRegistry.counter("gateway.routes.propagation.received", "outcome", "current").increment();
+            return Mono.empty();
+        }
+
+        return refreshCoordinator.applyRemote(change.routeIds())
+                .doOnNext(outcome -> {
+                    String result = outcome.name().toLowerCase();
+                    meterRegistry.counter("gateway.routes.propagation.received", "outcome", result).increment();
+                    // Wall clock across nodes, as good as their clock sync
+                    meterRegistry.timer("gateway.routes.propagation", "outcome", result)
+                            .record(Math.max(0, System.currentTimeMillis() - change.publishedAt()),
+                                    TimeUnit.MILLISECONDS);
+                })
+                .then();
+    }
+
+    private record RedisTransport(ReactiveStringRedisTemplate redisTemplate) implements Transport {
+
+        @Override
+        public Mono<Void> publish(String message) {
+            return redisTemplate.convertAndSend(CHANNEL, message).then();
+        }
+
+        @Override
+        public Flux<String> messages() {
+            return redisTemplate.listenToChannel(CHANNEL).map(ReactiveSubscription.Message::getMessage);
+        }
+
+        @Override
+        public Mono<Void> setVersion(String version) {
+            return redisTemplate.opsForValue().set(VERSION_KEY, version).then();
+        }
+
+        @Override
+        public Mono<String> version() {
+            return redisTemplate.opsForValue().get(VERSION_KEY);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.gateway.service;
+
+import com.gateway.config.RouteTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Single entry point for route refreshes. Requests arriving within the
+ * debounce window share one refresh, requests arriving while a refresh runs
+ * share the next one, and a refresh whose stored routes have the same version
+ * as the current table does not reload the gateway at all.
+ *
+ * <p>Requests naming the routes they changed reload only those routes; a
+ * request without route ids reloads the whole table. Refreshes caused by
+ * this node, as opposed to changes received from other nodes, are emitted
+ * on {@link #localChanges()} once applied.
+ */
+@Service
+@Slf4j
+public class RouteRefreshCoordinator {
+
+    public enum Outcome {
+        REFRESHED, UNCHANGED, FAILED
+    }
+
+    /**
+     * Routes to reload, every stored route when full.
+     */
+    public record Changes(Set<String> routeIds, boolean full) {
+    }
+
+    private final Function<Changes, Mono<Boolean>> refresher;
+    private final MeterRegistry meterRegistry;
+    private final Duration debounce;
+    private final Sinks.Many<Changes> localChanges = Sinks.many().multicast().directBestEffort();
+
+    private final Object lock = new Object();
+    // Requests waiting for the debounce window to close
+    private Batch pending;
+    private boolean refreshing;
+    // The window closed while a refresh was running, start the next one when it ends
+    private boolean deferred;
+
+    @Autowired
+    public RouteRefreshCoordinator(RouteTable routeTable,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.routes.refresh.debounce-ms:200}") long debounceMillis) {
+        this(changes -> changes.full() ? routeTable.refresh() : routeTable.refresh(changes.routeIds()),
+                meterRegistry, Duration.ofMillis(debounceMillis));
+    }
+
+    public RouteRefreshCoordinator(Function<Changes, Mono<Boolean>> refresher, MeterRegistry meterRegistry,
+            Duration debounce) {
+        this.refresher = refresher;
+        this.meterRegistry = meterRegistry;
+        this.debounce = debounce;
+    }
+
+    /**
+     * Asks for a full refresh; completes with the outcome of the refresh this
+     * request was folded into.
+     */
+    public Mono<Outcome> requestRefresh(String source) {
+        return request(source, null, true);
+    }
+
+    /**
+     * Asks for the given routes to be reloaded after they were written.
+     */
+    public Mono<Outcome> requestRefresh(String source, Collection<String> routeIds) {
+        return request(source, routeIds, true);
+    }
+
+    /**
+     * Applies routes changed on another node; null route ids reload the
+     * whole table. Not emitted on {@link #localChanges()}.
+     */
+    public Mono<Outcome> applyRemote(Collection<String> routeIds) {
+        return request("cluster", routeIds, false);
+    }
+
+    public Flux<Changes> localChanges() {
+        return localChanges.asFlux();
+    }
+
+    private Mono<Outcome> request(String source, Collection<String> routeIds, boolean local) {
+        meterRegistry.counter("gateway.routes.refresh.requests", "source", source).increment();
+        synchronized (lock) {
+            if (pending == null) {
+                pending = new Batch();
+                Mono.delay(debounce).subscribe(tick -> windowClosed());
+            }
+            pending.add(routeIds, local);
+            return pending.result.asMono();
+        }
+    }
+
+    private void windowClosed() {
+        Batch batch;
+        synchronized (lock) {
+            if (refreshing) {
+                deferred = true;
+                return;
+            }
+            batch = pending;
+            pending = null;
+            refreshing = true;
+        }
+
+        if (batch.requests > 1) {
+            meterRegistry.counter("gateway.routes.refresh.coalesced").increment(batch.requests - 1);
+        }
+        Changes changes = new Changes(batch.full ? Set.of() : Set.copyOf(batch.routeIds), batch.full);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Mono.defer(() -> refresher.apply(changes))
+                .map(refreshed -> refreshed ? Outcome.REFRESHED : Outcome.UNCHANGED)
+                .onErrorResume(e -> {
+                    log.error("Error refreshing routes: {}", e.getMessage());
+                    return Mono.just(Outcome.FAILED);
+                })
+                .defaultIfEmpty(Outcome.FAILED)
+                .subscribe(outcome -> {
+                    sample.stop(meterRegistry.timer("gateway.routes.refresh",
+                            "outcome", outcome.name().toLowerCase()));
+                    log.info("Route refresh for {} request(s), {}: {}", batch.requests,
+                            changes.full() ? "all routes" : changes.routeIds().size() + " route(s)", outcome);
+                    if (outcome == Outcome.REFRESHED && batch.local) {
+                        localChanges.tryEmitNext(changes);
+                    }
+                    finished();
+                    batch.result.tryEmitValue(outcome);
+                });
+    }
+
+    private void finished() {
+        boolean next;
+        synchronized (lock) {
+            refreshing = false;
+            next = deferred;
+            deferred = false;
+        }
+        if (next) {
+            windowClosed();
+        }
+    }
+
+    private static class Batch {
+        private final Sinks.One<Outcome> result = Sinks.one();
+        private final Set<String> routeIds = new HashSet<>();
+        private int requests;
+        private boolean full;
+        private boolean local;
+
+        void add(Collection<String> changed, boolean fromLocal) {
+            requests++;
+            local |= fromLocal;
+            if (changed == null) {
+                full = true;
+            } else if (!full) {
+                routeIds.addAll(changed);
+            }
+        }
+    }
+}
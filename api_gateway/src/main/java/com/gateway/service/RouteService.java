@@ -1,10 +1,13 @@
 package com.gateway.service;
 
+import com.gateway.dto.BulkRouteResult;
 import com.gateway.dto.RouteDTO;
 import com.gateway.entity.Route;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface RouteService {
     Flux<RouteDTO> getAllRoutes();
 
@@ -24,5 +27,9 @@ public interface RouteService {
 
     Flux<RouteDTO> searchRoutes(String path, String method);
 
+    Mono<BulkRouteResult> upsertRoutes(Flux<Route> routes);
+
+    Mono<BulkRouteResult> deleteRoutes(List<String> routeIds);
+
     Mono<Void> refreshRoutes();
 }
@@ -0,0 +1,60 @@
+package com.gateway.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cold start milestones, in milliseconds since JVM start: when the first
+ * route table was ready and when the first request was routed.
+ */
+@Service
+@Slf4j
+public class StartupMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong routesReadyMillis = new AtomicLong(-1);
+    private final AtomicLong firstRoutedRequestMillis = new AtomicLong(-1);
+    private volatile boolean firstRequestRecorded;
+
+    public StartupMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        TimeGauge.builder("gateway.startup.first.routed.request", firstRoutedRequestMillis, TimeUnit.MILLISECONDS,
+                AtomicLong::doubleValue)
+                .description("Time from JVM start to the first routed request completing")
+                .register(meterRegistry);
+    }
+
+    public void routesReady(String source, int routes) {
+        long uptime = uptimeMillis();
+        if (routesReadyMillis.compareAndSet(-1, uptime)) {
+            TimeGauge.builder("gateway.startup.routes.ready", routesReadyMillis, TimeUnit.MILLISECONDS,
+                    AtomicLong::doubleValue)
+                    .description("Time from JVM start to the first route table being available")
+                    .tag("source", source)
+                    .register(meterRegistry);
+            log.info("{} routes ready from {} {} ms after JVM start", routes, source, uptime);
+        }
+    }
+
+    public boolean isFirstRequestRecorded() {
+        return firstRequestRecorded;
+    }
+
+    public void firstRoutedRequest(String routeId) {
+        long uptime = uptimeMillis();
+        if (firstRoutedRequestMillis.compareAndSet(-1, uptime)) {
+            firstRequestRecorded = true;
+            log.info("First request routed ({}) {} ms after JVM start", routeId, uptime);
+        }
+    }
+
+    private long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
@@ -0,0 +1,269 @@
+package com.gateway.service;
+
+import com.gateway.config.RedisKeys;
+import com.gateway.entity.ApiMetric;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Distinct client addresses and user agents per route and per upstream
+ * service, counted gateway-wide in Redis HyperLogLogs.
+ * <p>
+ * Requests only add to a local set per route and service; the sets are
+ * swapped out and sent once per {@code gateway.metrics.unique.flush-ms} as
+ * one PFADD per HyperLogLog, so a client sending a hundred requests a
+ * second costs Redis nothing extra. Every value goes into the minute's,
+ * the hour's and the (UTC) day's HyperLogLog, each expiring after its own
+ * retention. A range is counted with one PFCOUNT over the coarsest keys
+ * that cover it, which Redis merges on the fly.
+ */
+@Service
+@Slf4j
+public class UniqueClientsService {
+
+    public enum Scope {
+        ROUTE, SERVICE
+    }
+
+    public enum Dimension {
+        CLIENTS, USER_AGENTS
+    }
+
+    public enum Granularity {
+        MINUTE("m", 1), HOUR("h", 60), DAY("d", 24 * 60);
+
+        private final String suffix;
+        private final long minutes;
+
+        Granularity(String suffix, long minutes) {
+            this.suffix = suffix;
+            this.minutes = minutes;
+        }
+
+        public long minutes() {
+            return minutes;
+        }
+    }
+
+    // Relative standard error of PFCOUNT with Redis' 16384 registers
+    public static final double STANDARD_ERROR = 0.0081;
+
+    private static final long MINUTE_MILLIS = 60_000;
+    private static final Granularity[] GRANULARITIES = Granularity.values();
+
+    private final RedisCommandBatcher commandBatcher;
+    private final LongSupplier clock;
+    private final int maxPending;
+    // Per granularity, in minutes
+    private final long[] retention;
+    private final Counter dropped;
+    private final AtomicReference<Pending> pending;
+
+    @Autowired
+    public UniqueClientsService(RedisCommandBatcher commandBatcher, MeterRegistry meterRegistry,
+            @Value("${gateway.metrics.unique.max-pending:100000}") int maxPending,
+            @Value("${gateway.metrics.unique.minute-retention-hours:2}") int minuteRetentionHours,
+            @Value("${gateway.metrics.unique.hour-retention-days:7}") int hourRetentionDays,
+            @Value("${gateway.metrics.unique.day-retention-days:90}") int dayRetentionDays) {
+        this(commandBatcher, meterRegistry, System::currentTimeMillis, maxPending,
+                TimeUnit.HOURS.toMinutes(minuteRetentionHours), TimeUnit.DAYS.toMinutes(hourRetentionDays),
+                TimeUnit.DAYS.toMinutes(dayRetentionDays));
+    }
+
+    UniqueClientsService(RedisCommandBatcher commandBatcher, MeterRegistry meterRegistry, LongSupplier clock,
+            int maxPending, long minuteRetention, long hourRetention, long dayRetention) {
+        this.commandBatcher = commandBatcher;
+        this.clock = clock;
+        this.maxPending = maxPending;
+        this.retention = new long[] { minuteRetention, hourRetention, dayRetention };
+        this.dropped = Counter.builder("gateway.metrics.unique.dropped")
+                .description("Values not counted because too many were waiting for Redis")
+                .register(meterRegistry);
+        this.pending = new AtomicReference<>(new Pending(minute()));
+    }
+
+    public void record(ApiMetric metric) {
+        Pending current = pending.get();
+        if (metric.getRouteId() != null) {
+            current.add(Scope.ROUTE, metric.getRouteId(), metric);
+        }
+        if (metric.getToService() != null) {
+            current.add(Scope.SERVICE, metric.getToService(), metric);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.metrics.unique.flush-ms:1000}")
+    public void flush() {
+        write().subscribe(null, e -> log.debug("Distinct counts not written to Redis: {}", e.getMessage()));
+    }
+
+    // A value added while the sets are swapped out can miss this flush and the next
+    Mono<Void> write() {
+        Pending flushed = pending.getAndSet(new Pending(minute()));
+        List<Mono<?>> commands = new ArrayList<>();
+        flushed.subjects.forEach((subject, values) -> {
+            for (Dimension dimension : Dimension.values()) {
+                Set<String> set = values.get(dimension);
+                if (set.isEmpty()) {
+                    continue;
+                }
+                String[] members = set.toArray(String[]::new);
+                String base = RedisKeys.unique(key(subject.scope()), subject.id(), key(dimension));
+                // Set aside at the start of the flush interval, so counted in the minute it began
+                for (Granularity granularity : GRANULARITIES) {
+                    String key = key(base, granularity, Math.floorDiv(flushed.minute, granularity.minutes));
+                    long ttlSeconds = TimeUnit.MINUTES.toSeconds(retention[granularity.ordinal()]
+                            + granularity.minutes);
+                    commands.add(commandBatcher.execute(c -> c.pfadd(key, members)));
+                    commands.add(commandBatcher.execute(c -> c.expire(key, ttlSeconds)));
+                }
+            }
+        });
+        return Mono.when(commands);
+    }
+
+    /**
+     * Distinct values seen between two instants. Whole days and hours are
+     * read from their roll-ups; minutes older than their retention are
+     * widened to their hour, and hours to their day, so the counted span
+     * may be wider than asked.
+     */
+    public Mono<Count> count(Scope scope, String id, Dimension dimension, long fromMillis, long toMillis) {
+        long first = Math.floorDiv(fromMillis, MINUTE_MILLIS);
+        long last = Math.floorDiv(toMillis, MINUTE_MILLIS);
+        if (last < first) {
+            return Mono.just(new Count(fromMillis, toMillis, 0));
+        }
+        String base = RedisKeys.unique(key(scope), id, key(dimension));
+        long now = minute();
+        List<String> keys = new ArrayList<>();
+        long coveredFrom = first;
+        long minute = first;
+        while (minute <= last) {
+            Granularity granularity = coarsestFitting(minute, last, now);
+            long bucket = Math.floorDiv(minute, granularity.minutes);
+            keys.add(key(base, granularity, bucket));
+            coveredFrom = Math.min(coveredFrom, bucket * granularity.minutes);
+            minute = (bucket + 1) * granularity.minutes;
+        }
+        long from = coveredFrom * MINUTE_MILLIS;
+        long to = minute * MINUTE_MILLIS;
+        String[] keyArray = keys.toArray(String[]::new);
+        return commandBatcher.execute(c -> c.pfcount(keyArray))
+                .map(count -> new Count(from, to, count));
+    }
+
+    /**
+     * One distinct count per minute, hour or day between two instants, at
+     * most 10000 of them.
+     */
+    public Flux<Count> series(Scope scope, String id, Dimension dimension, Granularity granularity,
+            long fromMillis, long toMillis) {
+        String base = RedisKeys.unique(key(scope), id, key(dimension));
+        long unitMillis = granularity.minutes * MINUTE_MILLIS;
+        long first = Math.floorDiv(fromMillis, unitMillis);
+        long last = Math.floorDiv(toMillis, unitMillis);
+        return Flux.range(0, (int) Math.max(0, Math.min(last - first + 1, 10_000)))
+                .flatMapSequential(i -> {
+                    long bucket = first + i;
+                    return commandBatcher.execute(c -> c.pfcount(key(base, granularity, bucket)))
+                            .map(count -> new Count(bucket * unitMillis, (bucket + 1) * unitMillis, count));
+                });
+    }
+
+    // The largest unit starting at minute that ends by last, or the smallest still kept around it
+    private Granularity coarsestFitting(long minute, long last, long now) {
+        for (int i = GRANULARITIES.length - 1; i > 0; i--) {
+            Granularity granularity = GRANULARITIES[i];
+            if (Math.floorMod(minute, granularity.minutes) == 0 && minute + granularity.minutes - 1 <= last) {
+                return granularity;
+            }
+        }
+        for (Granularity granularity : GRANULARITIES) {
+            long start = Math.floorDiv(minute, granularity.minutes) * granularity.minutes;
+            if (start >= now - retention[granularity.ordinal()]) {
+                return granularity;
+            }
+        }
+        return Granularity.DAY;
+    }
+
+    private long minute() {
+        return Math.floorDiv(clock.getAsLong(), MINUTE_MILLIS);
+    }
+
+    private static String key(Enum<?> value) {
+        return value.name().toLowerCase().replace('_', '-');
+    }
+
+    private static String key(String base, Granularity granularity, long bucket) {
+        return base + ":" + granularity.suffix + ":" + bucket;
+    }
+
+    /**
+     * @param from  start of the counted span, epoch millis inclusive
+     * @param to    end of the counted span, epoch millis exclusive
+     * @param count distinct values, within about {@link #STANDARD_ERROR} of the real number
+     */
+    public record Count(long from, long to, long count) {
+    }
+
+    private record Subject(Scope scope, String id) {
+    }
+
+    // The distinct values of one flush interval
+    private final class Pending {
+        private final long minute;
+        private final ConcurrentMap<Subject, Values> subjects = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        Pending(long minute) {
+            this.minute = minute;
+        }
+
+        void add(Scope scope, String id, ApiMetric metric) {
+            Values values = subjects.computeIfAbsent(new Subject(scope, id), subject -> new Values());
+            add(values.clients, metric.getClientIp());
+            add(values.userAgents, metric.getUserAgent());
+        }
+
+        private void add(Set<String> set, String value) {
+            if (value == null || set.contains(value)) {
+                return;
+            }
+            if (size.get() >= maxPending) {
+                dropped.increment();
+                return;
+            }
+            if (set.add(value)) {
+                size.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class Values {
+        private final Set<String> clients = ConcurrentHashMap.newKeySet();
+        private final Set<String> userAgents = ConcurrentHashMap.newKeySet();
+
+        Set<String> get(Dimension dimension) {
+            return dimension == Dimension.CLIENTS ? clients : userAgents;
+        }
+    }
+}
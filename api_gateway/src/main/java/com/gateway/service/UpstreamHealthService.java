@@ -0,0 +1,317 @@
+package com.gateway.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Health of every distinct upstream referenced by a route (its uri and its
+ * targets). Active probes run on a fixed delay with per-probe jitter and a
+ * bounded number of probes in flight; passive signals come from completed
+ * gateway requests. An upstream goes DOWN after consecutive probe failures or
+ * consecutive failed requests, and only comes back UP through probes.
+ */
+@Service
+@Slf4j
+public class UpstreamHealthService {
+
+    public static final String PATH_METADATA_KEY = "healthCheckPath";
+
+    public enum Status {
+        UNKNOWN, UP, DOWN
+    }
+
+    private final WebClient webClient;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, UpstreamHealth> upstreams = new ConcurrentHashMap<>();
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    private final boolean enabled;
+    // Each probe starts after a random delay up to this, spreading probes over the interval
+    private final long jitterMillis;
+    private final Duration timeout;
+    private final int maxConcurrentProbes;
+    private final int unhealthyThreshold;
+    private final int healthyThreshold;
+    private final int passiveFailureThreshold;
+    private final String defaultPath;
+
+    public UpstreamHealthService(WebClient.Builder webClientBuilder,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.health-check.enabled:true}") boolean enabled,
+            @Value("${gateway.health-check.jitter-ms:2000}") long jitterMillis,
+            @Value("${gateway.health-check.timeout-ms:2000}") long timeoutMillis,
+            @Value("${gateway.health-check.max-concurrent-probes:8}") int maxConcurrentProbes,
+            @Value("${gateway.health-check.unhealthy-threshold:3}") int unhealthyThreshold,
+            @Value("${gateway.health-check.healthy-threshold:2}") int healthyThreshold,
+            @Value("${gateway.health-check.passive-failure-threshold:5}") int passiveFailureThreshold,
+            @Value("${gateway.health-check.path:/}") String defaultPath) {
+        this.webClient = webClientBuilder.build();
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.jitterMillis = jitterMillis;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.maxConcurrentProbes = maxConcurrentProbes;
+        this.unhealthyThreshold = unhealthyThreshold;
+        this.healthyThreshold = healthyThreshold;
+        this.passiveFailureThreshold = passiveFailureThreshold;
+        this.defaultPath = defaultPath;
+    }
+
+    /**
+     * False only for upstreams known to be down; unknown upstreams are
+     * assumed healthy.
+     */
+    public boolean isHealthy(URI uri) {
+        if (upstreams.isEmpty()) {
+            return true;
+        }
+        UpstreamHealth health = upstreams.get(Upstreams.key(uri));
+        return health == null || health.status != Status.DOWN;
+    }
+
+    public void recordPassive(URI uri, boolean success) {
+        // Without probes nothing would bring a passively failed upstream back
+        if (!enabled) {
+            return;
+        }
+        UpstreamHealth health = upstreams.get(Upstreams.key(uri));
+        if (health != null) {
+            transition(health, health.recordPassive(success, passiveFailureThreshold));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.health-check.interval-ms:10000}",
+            initialDelayString = "${gateway.health-check.initial-delay-ms:5000}")
+    public void probeAll() {
+        if (!enabled || upstreams.isEmpty() || !probing.compareAndSet(false, true)) {
+            return;
+        }
+
+        probeUpstreams()
+                .doFinally(signal -> probing.set(false))
+                .subscribe(null, e -> log.error("Error probing upstreams: {}", e.getMessage()));
+    }
+
+    // One round of probes over every known upstream
+    Mono<Void> probeUpstreams() {
+        return Flux.fromIterable(List.copyOf(upstreams.values()))
+                .flatMap(health -> Mono.delay(Duration.ofMillis(jitter())).then(probe(health)), maxConcurrentProbes)
+                .then();
+    }
+
+    Mono<Void> probe(UpstreamHealth health) {
+        return webClient.get()
+                .uri(health.probeUri)
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))
+                .timeout(timeout)
+                .map(status -> {
+                    // Any answer short of a server error means the upstream is serving
+                    if (status.is5xxServerError()) {
+                        health.lastError = "HTTP " + status.value();
+                        return false;
+                    }
+                    return true;
+                })
+                .onErrorResume(e -> {
+                    health.lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+                    return Mono.just(false);
+                })
+                .doOnNext(success -> transition(health,
+                        health.recordProbe(success, unhealthyThreshold, healthyThreshold)))
+                .then();
+    }
+
+    @EventListener
+    public void onRoutesRefreshed(RefreshRoutesResultEvent event) {
+        if (event.isSuccess() && event.getSource() instanceof RouteLocator routeLocator) {
+            routeLocator.getRoutes()
+                    .collectList()
+                    .subscribe(this::reconcile, e -> log.error("Error loading upstreams for health checks: {}",
+                            e.getMessage()));
+        }
+    }
+
+    public synchronized void reconcile(List<Route> routes) {
+        Map<String, URI> probeUris = new HashMap<>();
+        Map<String, Set<String>> routeIds = new HashMap<>();
+        for (Route route : routes) {
+            Object pathValue = route.getMetadata().get(PATH_METADATA_KEY);
+            String path = pathValue != null ? pathValue.toString() : defaultPath;
+            for (URI uri : upstreamUris(route)) {
+                if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+                    continue;
+                }
+                String key = Upstreams.key(uri);
+                probeUris.putIfAbsent(key, uri.resolve(path));
+                routeIds.computeIfAbsent(key, k -> new TreeSet<>()).add(route.getId());
+            }
+        }
+
+        probeUris.forEach((key, probeUri) -> {
+            UpstreamHealth health = upstreams.computeIfAbsent(key, this::newHealth);
+            health.probeUri = probeUri;
+            health.routeIds = routeIds.get(key);
+        });
+
+        upstreams.entrySet().removeIf(entry -> {
+            if (probeUris.containsKey(entry.getKey())) {
+                return false;
+            }
+            meterRegistry.remove(entry.getValue().gauge);
+            return true;
+        });
+    }
+
+    /**
+     * Current state of every upstream, for the actuator endpoint.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new TreeMap<>();
+        upstreams.forEach((key, health) -> result.put(key, health.toMap()));
+        return result;
+    }
+
+    private List<URI> upstreamUris(Route route) {
+        List<URI> uris = new ArrayList<>();
+        uris.add(route.getUri());
+        if (route.getMetadata().get(UpstreamLoadBalancer.TARGETS_KEY) instanceof List<?> targets) {
+            for (Object target : targets) {
+                if (target instanceof Map<?, ?> map && map.get("uri") != null) {
+                    uris.add(URI.create(map.get("uri").toString()));
+                }
+            }
+        }
+        return uris;
+    }
+
+    private UpstreamHealth newHealth(String key) {
+        UpstreamHealth health = new UpstreamHealth(key);
+        health.gauge = Gauge.builder("gateway.upstream.health", health, h -> h.status == Status.DOWN ? 0 : 1)
+                .tag("upstream", key)
+                .register(meterRegistry);
+        return health;
+    }
+
+    private void transition(UpstreamHealth health, Status newStatus) {
+        if (newStatus == null) {
+            return;
+        }
+        if (newStatus == Status.DOWN) {
+            log.warn("Upstream {} is DOWN ({}): {}", health.key, health.downReason, health.lastError);
+        } else {
+            log.info("Upstream {} is {}", health.key, newStatus);
+        }
+        meterRegistry.counter("gateway.upstream.health.transitions", "upstream", health.key,
+                "status", newStatus.name()).increment();
+    }
+
+    private long jitter() {
+        return jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis) : 0;
+    }
+
+    static final class UpstreamHealth {
+        private final String key;
+        private volatile URI probeUri;
+        private volatile Set<String> routeIds;
+        private volatile Status status = Status.UNKNOWN;
+        private volatile String downReason;
+        private volatile String lastError;
+        private volatile LocalDateTime lastProbeAt;
+        private volatile LocalDateTime lastChangeAt;
+        private Gauge gauge;
+
+        private int probeFailures;
+        private int probeSuccesses;
+        private int passiveFailures;
+
+        UpstreamHealth(String key) {
+            this.key = key;
+        }
+
+        // Returns the new status when it changed, null otherwise
+        synchronized Status recordProbe(boolean success, int unhealthyThreshold, int healthyThreshold) {
+            lastProbeAt = LocalDateTime.now();
+            if (success) {
+                probeFailures = 0;
+                probeSuccesses++;
+                if (status != Status.UP && (status == Status.UNKNOWN || probeSuccesses >= healthyThreshold)) {
+                    passiveFailures = 0;
+                    downReason = null;
+                    return changeTo(Status.UP);
+                }
+            } else {
+                probeSuccesses = 0;
+                probeFailures++;
+                if (status != Status.DOWN && probeFailures >= unhealthyThreshold) {
+                    downReason = "active";
+                    return changeTo(Status.DOWN);
+                }
+            }
+            return null;
+        }
+
+        synchronized Status recordPassive(boolean success, int failureThreshold) {
+            if (success) {
+                passiveFailures = 0;
+                return null;
+            }
+            passiveFailures++;
+            if (status != Status.DOWN && passiveFailures >= failureThreshold) {
+                downReason = "passive";
+                lastError = passiveFailures + " consecutive failed requests";
+                probeSuccesses = 0;
+                return changeTo(Status.DOWN);
+            }
+            return null;
+        }
+
+        private Status changeTo(Status newStatus) {
+            status = newStatus;
+            lastChangeAt = LocalDateTime.now();
+            return newStatus;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("status", status);
+            map.put("probeUri", String.valueOf(probeUri));
+            map.put("routes", routeIds);
+            map.put("lastProbeAt", lastProbeAt);
+            map.put("lastChangeAt", lastChangeAt);
+            if (status == Status.DOWN) {
+                map.put("reason", downReason);
+            }
+            if (lastError != null) {
+                map.put("lastError", lastError);
+            }
+            return map;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.gateway.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.model.UpstreamTarget;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client-side balancer for routes with a weighted target list. Picks two
+ * targets at random (weighted) and sends the request to the cheaper one, where
+ * cost is the peak EWMA latency times the in-flight count divided by weight.
+ * Targets whose recent error rate crosses the threshold are ejected for a
+ * growing period, but never more than a share of the route's targets. Targets
+ * that health checking reports as down are skipped.
+ */
+@Service
+@Slf4j
+public class UpstreamLoadBalancer {
+
+    public static final String TARGETS_KEY = "targets";
+
+    private static final TypeReference<List<UpstreamTarget>> TARGET_LIST = new TypeReference<>() {
+    };
+    private static final int MAX_EJECTION_MULTIPLIER = 10;
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final UpstreamHealthService upstreamHealthService;
+    private final ConcurrentMap<String, List<Target>> routeTargets = new ConcurrentHashMap<>();
+
+    // Decay time of the latency average, older samples weigh e^-1 after this long
+    private final long decayNanos;
+    // Error rate over the window that ejects a target (0.5 = 50%)
+    private final double errorRateThreshold;
+    // Requests needed in the window before the error rate is trusted
+    private final int minRequests;
+    private final long windowNanos;
+    // First ejection length, grows with each consecutive ejection
+    private final long baseEjectionNanos;
+    // Share of a route's targets that may be ejected at once (0.5 = 50%)
+    private final double maxEjectionRatio;
+
+    public UpstreamLoadBalancer(ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            UpstreamHealthService upstreamHealthService,
+            @Value("${gateway.loadbalancer.ewma-decay-ms:10000}") long decayMillis,
+            @Value("${gateway.loadbalancer.outlier.error-rate:0.5}") double errorRateThreshold,
+            @Value("${gateway.loadbalancer.outlier.min-requests:10}") int minRequests,
+            @Value("${gateway.loadbalancer.outlier.window-ms:10000}") long windowMillis,
+            @Value("${gateway.loadbalancer.outlier.base-ejection-ms:30000}") long baseEjectionMillis,
+            @Value("${gateway.loadbalancer.outlier.max-ejection-ratio:0.5}") double maxEjectionRatio) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.upstreamHealthService = upstreamHealthService;
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMillis);
+        this.errorRateThreshold = errorRateThreshold;
+        this.minRequests = minRequests;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.baseEjectionNanos = TimeUnit.MILLISECONDS.toNanos(baseEjectionMillis);
+        this.maxEjectionRatio = maxEjectionRatio;
+    }
+
+    /**
+     * Picks the target for the next request of the route, or null when the
+     * route has no target list. The caller must report the outcome through
+     * {@link #record} or {@link #release}.
+     */
+    public Target choose(String routeId) {
+        List<Target> targets = routeTargets.get(routeId);
+        if (targets == null) {
+            return null;
+        }
+
+        long now = System.nanoTime();
+        Target chosen;
+        if (targets.size() == 1) {
+            chosen = targets.get(0);
+        } else {
+            Target first = pickWeighted(targets, now, null);
+            if (first == null) {
+                // Everything is ejected or down, better to try than to fail outright
+                first = targets.get(ThreadLocalRandom.current().nextInt(targets.size()));
+            }
+            Target second = pickWeighted(targets, now, first);
+            chosen = second == null || first.cost(now, decayNanos) <= second.cost(now, decayNanos) ? first : second;
+        }
+        chosen.inFlight.incrementAndGet();
+        return chosen;
+    }
+
+    public void record(String routeId, Target target, long latencyNanos, boolean success) {
+        target.inFlight.decrementAndGet();
+        long now = System.nanoTime();
+        target.observeLatency(latencyNanos, now, decayNanos);
+
+        if (target.observeOutcome(success, now, windowNanos, minRequests, errorRateThreshold)
+                && mayEject(routeId, now)) {
+            long ejectionNanos = target.eject(now, baseEjectionNanos, MAX_EJECTION_MULTIPLIER);
+            log.warn("Ejecting upstream {} of route {} for {} ms after error rate above {}", target.uri, routeId,
+                    TimeUnit.NANOSECONDS.toMillis(ejectionNanos), errorRateThreshold);
+            meterRegistry.counter("gateway.loadbalancer.ejections", "route", routeId,
+                    "target", target.uri.toString()).increment();
+        }
+    }
+
+    // Request was cancelled before an outcome, only the in-flight slot is returned
+    public void release(Target target) {
+        target.inFlight.decrementAndGet();
+    }
+
+    @EventListener
+    public void onRoutesRefreshed(RefreshRoutesResultEvent event) {
+        if (event.isSuccess() && event.getSource() instanceof RouteLocator routeLocator) {
+            routeLocator.getRoutes()
+                    .collectList()
+                    .subscribe(this::reconcile, e -> log.error("Error loading upstream targets: {}", e.getMessage()));
+        }
+    }
+
+    public synchronized void reconcile(List<Route> routes) {
+        Map<String, List<Target>> updated = new HashMap<>();
+        for (Route route : routes) {
+            List<UpstreamTarget> targets = parseTargets(route);
+            if (targets.isEmpty()) {
+                continue;
+            }
+
+            // Keep latency and ejection state of targets that are still there
+            Map<URI, Target> previous = new HashMap<>();
+            routeTargets.getOrDefault(route.getId(), List.of()).forEach(t -> previous.put(t.uri, t));
+
+            updated.put(route.getId(), targets.stream()
+                    .map(t -> {
+                        URI uri = URI.create(t.getUri());
+                        int weight = t.getWeight() != null && t.getWeight() > 0 ? t.getWeight() : 1;
+                        Target existing = previous.get(uri);
+                        return existing != null && existing.weight == weight ? existing : new Target(uri, weight);
+                    })
+                    .toList());
+        }
+
+        routeTargets.keySet().retainAll(updated.keySet());
+        routeTargets.putAll(updated);
+        log.info("Loaded upstream targets for {} routes", updated.size());
+    }
+
+    private List<UpstreamTarget> parseTargets(Route route) {
+        Object value = route.getMetadata().get(TARGETS_KEY);
+        if (!(value instanceof List)) {
+            return List.of();
+        }
+        try {
+            return objectMapper.convertValue(value, TARGET_LIST).stream()
+                    .filter(t -> t.getUri() != null)
+                    .toList();
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid upstream targets on route {}: {}", route.getId(), e.getMessage());
+            return List.of();
+        }
+    }
+
+    private boolean mayEject(String routeId, long now) {
+        List<Target> targets = routeTargets.get(routeId);
+        if (targets == null) {
+            return false;
+        }
+        long ejected = targets.stream().filter(t -> t.isEjected(now)).count();
+        return ejected + 1 <= Math.floor(targets.size() * maxEjectionRatio);
+    }
+
+    private Target pickWeighted(List<Target> targets, long now, Target exclude) {
+        int total = 0;
+        for (Target target : targets) {
+            if (target != exclude && isAvailable(target, now)) {
+                total += target.weight;
+            }
+        }
+        if (total == 0) {
+            return null;
+        }
+
+        int point = ThreadLocalRandom.current().nextInt(total);
+        for (Target target : targets) {
+            if (target != exclude && isAvailable(target, now)) {
+                point -= target.weight;
+                if (point < 0) {
+                    return target;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isAvailable(Target target, long now) {
+        return !target.isEjected(now) && upstreamHealthService.isHealthy(target.uri);
+    }
+
+    /**
+     * One upstream of a route with its balancing state.
+     */
+    public static final class Target {
+        // Cost floor so unmeasured targets still account for in-flight requests
+        private static final double MIN_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private final URI uri;
+        private final int weight;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private double ewmaNanos;
+        private long lastObservedNanos;
+
+        private long windowStartNanos;
+        private int windowRequests;
+        private int windowErrors;
+
+        private volatile long ejectedUntilNanos;
+        private int consecutiveEjections;
+
+        Target(URI uri, int weight) {
+            this.uri = uri;
+            this.weight = weight;
+            this.lastObservedNanos = System.nanoTime();
+            this.windowStartNanos = lastObservedNanos;
+            this.ejectedUntilNanos = lastObservedNanos;
+        }
+
+        public URI getUri() {
+            return uri;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        // Decays with idle time too, so a target that had one slow response gets picked again
+        synchronized double cost(long now, long decayNanos) {
+            double decayed = ewmaNanos * Math.exp(-(double) (now - lastObservedNanos) / decayNanos);
+            return Math.max(decayed, MIN_LATENCY_NANOS) * (inFlight.get() + 1) / weight;
+        }
+
+        // Peak EWMA: jumps up to a slow sample right away, decays back by elapsed time
+        synchronized void observeLatency(long latencyNanos, long now, long decayNanos) {
+            if (latencyNanos > ewmaNanos) {
+                ewmaNanos = latencyNanos;
+            } else {
+                double w = Math.exp(-(double) (now - lastObservedNanos) / decayNanos);
+                ewmaNanos = ewmaNanos * w + latencyNanos * (1 - w);
+            }
+            lastObservedNanos = now;
+        }
+
+        /**
+         * Counts the outcome in the current window and returns true when the
+         * window's error rate calls for an ejection.
+         */
+        synchronized boolean observeOutcome(boolean success, long now, long windowNanos, int minRequests,
+                double errorRateThreshold) {
+            if (now - windowStartNanos > windowNanos) {
+                if (windowErrors == 0) {
+                    consecutiveEjections = 0;
+                }
+                windowStartNanos = now;
+                windowRequests = 0;
+                windowErrors = 0;
+            }
+            windowRequests++;
+            if (!success) {
+                windowErrors++;
+            }
+            return !isEjected(now) && windowRequests >= minRequests
+                    && (double) windowErrors / windowRequests >= errorRateThreshold;
+        }
+
+        synchronized long eject(long now, long baseEjectionNanos, int maxMultiplier) {
+            consecutiveEjections = Math.min(consecutiveEjections + 1, maxMultiplier);
+            long ejectionNanos = baseEjectionNanos * consecutiveEjections;
+            ejectedUntilNanos = now + ejectionNanos;
+            windowStartNanos = now;
+            windowRequests = 0;
+            windowErrors = 0;
+            return ejectionNanos;
+        }
+
+        boolean isEjected(long now) {
+            return now - ejectedUntilNanos < 0;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.model.ConnectionPoolConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps one connection pool per upstream (Route.uri host and port) for routes
+ * that configure one in their metadata, so a slow upstream can only exhaust its
+ * own pool. Pools are reconciled after every route refresh; a pool whose
+ * settings changed is replaced and the old one is disposed after a drain period
+ * so in-flight requests finish on their connection.
+ */
+@Service
+@Slf4j
+public class UpstreamPoolService {
+
+    public static final String METADATA_KEY = "connectionPool";
+
+    private static final long DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+    private final HttpClientProperties properties;
+    private final ServerProperties serverProperties;
+    private final HttpClientSslConfigurer sslConfigurer;
+    private final ObjectProvider<HttpClientCustomizer> customizers;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, UpstreamPool> pools = new ConcurrentHashMap<>();
+
+    // How long a replaced pool keeps serving connections already handed out
+    private final Duration drainTimeout;
+
+    public UpstreamPoolService(HttpClientProperties properties,
+            ServerProperties serverProperties,
+            HttpClientSslConfigurer sslConfigurer,
+            ObjectProvider<HttpClientCustomizer> customizers,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.upstream.pool.drain-timeout-ms:60000}") long drainTimeoutMillis) {
+        this.properties = properties;
+        this.serverProperties = serverProperties;
+        this.sslConfigurer = sslConfigurer;
+        this.customizers = customizers;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.drainTimeout = Duration.ofMillis(drainTimeoutMillis);
+    }
+
+    /**
+     * Returns the pooled client for the upstream a request is sent to, or null
+     * when that upstream has no dedicated pool.
+     */
+    public HttpClient clientFor(URI requestUrl) {
+        if (pools.isEmpty()) {
+            return null;
+        }
+        UpstreamPool pool = pools.get(Upstreams.key(requestUrl));
+        return pool != null ? pool.httpClient() : null;
+    }
+
+    @EventListener
+    public void onRoutesRefreshed(RefreshRoutesResultEvent event) {
+        if (event.isSuccess() && event.getSource() instanceof RouteLocator routeLocator) {
+            routeLocator.getRoutes()
+                    .collectList()
+                    .subscribe(this::reconcile, e -> log.error("Error reconciling upstream pools: {}", e.getMessage()));
+        }
+    }
+
+    synchronized void reconcile(List<Route> routes) {
+        // Routes sharing an upstream should agree; the first by route order wins
+        Map<String, ConnectionPoolConfig> desired = new HashMap<>();
+        routes.stream()
+                .sorted(Comparator.comparingInt(Route::getOrder))
+                .forEach(route -> {
+                    ConnectionPoolConfig config = poolConfig(route);
+                    if (config == null) {
+                        return;
+                    }
+                    // Every target of a balanced route gets the route's settings
+                    for (URI uri : upstreamUris(route)) {
+                        String key = Upstreams.key(uri);
+                        ConnectionPoolConfig existing = desired.putIfAbsent(key, config);
+                        if (existing != null && !existing.equals(config)) {
+                            log.warn("Route {} defines different pool settings for upstream {}, keeping the earlier ones",
+                                    route.getId(), key);
+                        }
+                    }
+                });
+
+        desired.forEach((key, config) -> {
+            UpstreamPool current = pools.get(key);
+            if (current != null && current.config().equals(config)) {
+                return;
+            }
+            pools.put(key, createPool(key, config));
+            if (current != null) {
+                log.info("Connection pool settings changed for upstream {}, replacing pool", key);
+                meterRegistry.counter("gateway.upstream.pool.reloads", "upstream", key).increment();
+                retire(key, current);
+            } else {
+                log.info("Created connection pool for upstream {}: {}", key, config);
+            }
+        });
+
+        new ArrayList<>(pools.keySet()).stream()
+                .filter(key -> !desired.containsKey(key))
+                .forEach(key -> {
+                    UpstreamPool removed = pools.remove(key);
+                    if (removed != null) {
+                        log.info("No route configures a pool for upstream {} anymore, removing it", key);
+                        retire(key, removed);
+                    }
+                });
+    }
+
+    private static Set<URI> upstreamUris(Route route) {
+        Set<URI> uris = new LinkedHashSet<>();
+        uris.add(route.getUri());
+        if (route.getMetadata().get(UpstreamLoadBalancer.TARGETS_KEY) instanceof List<?> targets) {
+            for (Object target : targets) {
+                if (target instanceof Map<?, ?> map && map.get("uri") != null) {
+                    uris.add(URI.create(map.get("uri").toString()));
+                }
+            }
+        }
+        return uris;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.values().forEach(pool -> pool.connectionProvider().dispose());
+        pools.clear();
+    }
+
+    private ConnectionPoolConfig poolConfig(Route route) {
+        Object value = route.getMetadata().get(METADATA_KEY);
+        if (!(value instanceof Map)) {
+            return null;
+        }
+        try {
+            return objectMapper.convertValue(value, ConnectionPoolConfig.class);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid connection pool settings on route {}: {}", route.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private UpstreamPool createPool(String key, ConnectionPoolConfig config) {
+        HttpClientProperties.Pool defaults = properties.getPool();
+        int maxConnections = config.getMaxConnections() != null
+                ? config.getMaxConnections() : defaults.getMaxConnections();
+
+        ConnectionProvider.Builder builder = ConnectionProvider.builder("upstream-" + key)
+                .maxConnections(maxConnections)
+                // Bounded by default, unlike the shared pool, so waiters fail fast
+                .pendingAcquireMaxCount(config.getPendingAcquireMaxCount() != null
+                        ? config.getPendingAcquireMaxCount() : maxConnections * 2)
+                .pendingAcquireTimeout(Duration.ofMillis(config.getPendingAcquireTimeoutMillis() != null
+                        ? config.getPendingAcquireTimeoutMillis() : defaults.getAcquireTimeout()))
+                .evictInBackground(config.getEvictionIntervalMillis() != null
+                        ? Duration.ofMillis(config.getEvictionIntervalMillis()) : defaults.getEvictionInterval())
+                // Exports active, idle, pending and acquire time meters tagged with the pool name
+                .metrics(true);
+
+        if (config.getMaxIdleTimeMillis() != null) {
+            builder.maxIdleTime(Duration.ofMillis(config.getMaxIdleTimeMillis()));
+        } else if (defaults.getMaxIdleTime() != null) {
+            builder.maxIdleTime(defaults.getMaxIdleTime());
+        }
+        if (config.getMaxLifeTimeMillis() != null) {
+            builder.maxLifeTime(Duration.ofMillis(config.getMaxLifeTimeMillis()));
+        } else if (defaults.getMaxLifeTime() != null) {
+            builder.maxLifeTime(defaults.getMaxLifeTime());
+        }
+
+        boolean http2 = Boolean.TRUE.equals(config.getHttp2());
+        if (http2) {
+            builder.allocationStrategy(Http2AllocationStrategy.builder()
+                    .maxConnections(maxConnections)
+                    .maxConcurrentStreams(config.getMaxConcurrentStreams() != null
+                            ? config.getMaxConcurrentStreams() : DEFAULT_MAX_CONCURRENT_STREAMS)
+                    .build());
+        }
+
+        ConnectionProvider connectionProvider = builder.build();
+        HttpClient httpClient = new UpstreamHttpClientFactory(properties, serverProperties, sslConfigurer,
+                new ArrayList<>(customizers.orderedStream().toList()), connectionProvider).create();
+        if (http2) {
+            // H2 over TLS, H2C for plain text upstreams, HTTP/1.1 as fallback
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+        return new UpstreamPool(config, connectionProvider, httpClient);
+    }
+
+    private void retire(String key, UpstreamPool pool) {
+        Mono.delay(drainTimeout)
+                .then(pool.connectionProvider().disposeLater())
+                .subscribe(null, e -> log.warn("Error disposing connection pool for upstream {}: {}", key,
+                        e.getMessage()));
+    }
+
+    record UpstreamPool(ConnectionPoolConfig config, ConnectionProvider connectionProvider, HttpClient httpClient) {
+    }
+
+    // Builds the client like the shared gateway client (SSL, proxy, customizers) on top of the upstream pool
+    private static class UpstreamHttpClientFactory extends HttpClientFactory {
+        private final ConnectionProvider connectionProvider;
+
+        UpstreamHttpClientFactory(HttpClientProperties properties, ServerProperties serverProperties,
+                HttpClientSslConfigurer sslConfigurer, List<HttpClientCustomizer> customizers,
+                ConnectionProvider connectionProvider) {
+            super(properties, serverProperties, sslConfigurer, customizers);
+            this.connectionProvider = connectionProvider;
+        }
+
+        @Override
+        protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+            return connectionProvider;
+        }
+
+        HttpClient create() {
+            return createInstance();
+        }
+    }
+}
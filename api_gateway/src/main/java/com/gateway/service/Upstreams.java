@@ -0,0 +1,28 @@
+package com.gateway.service;
+
+import java.net.URI;
+
+/**
+ * Identifies an upstream by host and port, the key shared by the pools,
+ * the balancer and health checking.
+ */
+public final class Upstreams {
+
+    private Upstreams() {
+    }
+
+    public static String key(URI uri) {
+        int port = uri.getPort();
+        if (port == -1) {
+            if ("https".equalsIgnoreCase(uri.getScheme())) {
+                port = 443;
+            } else if ("http".equalsIgnoreCase(uri.getScheme())) {
+                port = 80;
+            } else {
+                // lb:// and other logical schemes, the host is the service id
+                return uri.getHost();
+            }
+        }
+        return uri.getHost() + ":" + port;
+    }
+}
@@ -1,27 +1,67 @@
 package com.gateway.service.impl;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import com.gateway.config.RouteCompiler;
+import com.gateway.dto.BulkRouteResult;
 import com.gateway.dto.RouteDTO;
 import com.gateway.entity.Route;
 import com.gateway.repository.RouteRepository;
+import com.gateway.service.RouteRefreshCoordinator;
 import com.gateway.service.RouteService;
-import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
-import org.springframework.context.ApplicationEventPublisher;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class RouteServiceImpl implements RouteService {
 
     private final RouteRepository routeRepository;
-    private final ApplicationEventPublisher eventPublisher;
+    private final RouteRefreshCoordinator refreshCoordinator;
+    private final RouteCompiler routeCompiler;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final TransactionalOperator transactionalOperator;
+    // Routes per bulk write, each batch is validated and written as a unit
+    private final int bulkBatchSize;
+    // Batches run in a transaction, which needs a replica set or sharded cluster; off for a standalone server
+    private final boolean bulkTransactional;
+
+    public RouteServiceImpl(RouteRepository routeRepository,
+            RouteRefreshCoordinator refreshCoordinator,
+            RouteCompiler routeCompiler,
+            ReactiveMongoTemplate mongoTemplate,
+            TransactionalOperator transactionalOperator,
+            @Value("${gateway.routes.bulk.batch-size:500}") int bulkBatchSize,
+            @Value("${gateway.routes.bulk.transactional:false}") boolean bulkTransactional) {
+        this.routeRepository = routeRepository;
+        this.refreshCoordinator = refreshCoordinator;
+        this.routeCompiler = routeCompiler;
+        this.mongoTemplate = mongoTemplate;
+        this.transactionalOperator = transactionalOperator;
+        this.bulkBatchSize = bulkBatchSize;
+        this.bulkTransactional = bulkTransactional;
+    }
 
     @Override
     public Flux<RouteDTO> getAllRoutes() {
@@ -57,23 +97,30 @@ public class RouteServiceImpl implements RouteService {
             route.setUpdatedAt(LocalDateTime.now());
         }
 
-        return routeRepository.save(route)
-                .map(this::convertToDTO)
-                .doOnSuccess(r -> refreshRoutes().subscribe())
-                .doOnError(e -> log.error("Error creating route: {}", e.getMessage(), e))
-                .onErrorResume(e -> {
-                    log.error("Failed to create route: {}", e.getMessage());
-                    return Mono.error(new RuntimeException("Failed to create route: " + e.getMessage()));
-                });
+        return validated(route)
+                .flatMap(valid -> routeRepository.save(valid)
+                        .map(this::convertToDTO)
+                        .doOnSuccess(r -> refreshRoutes(List.of(r.getRouteId())).subscribe())
+                        .doOnError(e -> log.error("Error creating route: {}", e.getMessage(), e))
+                        .onErrorResume(e -> {
+                            log.error("Failed to create route: {}", e.getMessage());
+                            return Mono.error(new RuntimeException("Failed to create route: " + e.getMessage()));
+                        }));
     }
 
     @Override
     public Mono<RouteDTO> updateRoute(String id, Route route) {
         return routeRepository.findById(id)
+                .flatMap(existingRoute -> {
+                    // routeId doesn't change on update, validate under the stored one
+                    route.setRouteId(existingRoute.getRouteId());
+                    return validated(route).thenReturn(existingRoute);
+                })
                 .flatMap(existingRoute -> {
                     existingRoute.setPath(route.getPath());
                     existingRoute.setMethod(route.getMethod());
                     existingRoute.setUri(route.getUri());
+                    existingRoute.setTargets(route.getTargets());
                     existingRoute.setOrder(route.getOrder());
                     existingRoute.setFilters(route.getFilters());
                     existingRoute.setMetadata(route.getMetadata());
@@ -81,19 +128,22 @@ public class RouteServiceImpl implements RouteService {
                     existingRoute.setRateLimiter(route.getRateLimiter());
                     existingRoute.setTimeout(route.getTimeout());
                     existingRoute.setRetry(route.getRetry());
+                    existingRoute.setResponseCache(route.getResponseCache());
+                    existingRoute.setSingleFlight(route.getSingleFlight());
                     existingRoute.setUpdatedAt(LocalDateTime.now());
                     existingRoute.setUpdatedBy(route.getUpdatedBy());
 
                     return routeRepository.save(existingRoute);
                 })
                 .map(this::convertToDTO)
-                .doOnSuccess(r -> refreshRoutes().subscribe());
+                .doOnSuccess(r -> refreshRouteOf(r));
     }
 
     @Override
     public Mono<Void> deleteRoute(String id) {
-        return routeRepository.deleteById(id)
-                .then(refreshRoutes());
+        return routeRepository.findById(id)
+                .flatMap(existingRoute -> routeRepository.delete(existingRoute)
+                        .then(refreshRoutes(List.of(existingRoute.getRouteId()))));
     }
 
     @Override
@@ -105,7 +155,7 @@ public class RouteServiceImpl implements RouteService {
                     return routeRepository.save(existingRoute);
                 })
                 .map(this::convertToDTO)
-                .doOnSuccess(r -> refreshRoutes().subscribe());
+                .doOnSuccess(r -> refreshRouteOf(r));
     }
 
     @Override
@@ -123,11 +173,168 @@ public class RouteServiceImpl implements RouteService {
         return getAllRoutes();
     }
 
+    @Override
+    public Mono<BulkRouteResult> upsertRoutes(Flux<Route> routes) {
+        BulkRouteResult result = new BulkRouteResult();
+        Set<String> writtenRouteIds = new HashSet<>();
+        return routes
+                // A body that stops parsing ends the import like a failed batch, the routes before it still count
+                .onErrorResume(e -> {
+                    log.error("Bulk upsert body unreadable: {}", e.getMessage());
+                    result.getErrors().add("request body: " + e.getMessage());
+                    return Flux.empty();
+                })
+                .buffer(bulkBatchSize)
+                .concatMap(batch -> upsertBatch(batch, result, writtenRouteIds))
+                .takeUntil(written -> !written)
+                .then(Mono.defer(() -> {
+                    result.setPartial(!result.getErrors().isEmpty() && !writtenRouteIds.isEmpty());
+                    log.info("Bulk upsert: {} batches, {} inserted, {} updated, {} errors", result.getBatches(),
+                            result.getInserted(), result.getUpdated(), result.getErrors().size());
+                    // One refresh for the whole import, including what was written before a failure
+                    return !writtenRouteIds.isEmpty()
+                            ? refreshRoutes(writtenRouteIds).thenReturn(result)
+                            : Mono.just(result);
+                }));
+    }
+
+    @Override
+    public Mono<BulkRouteResult> deleteRoutes(List<String> routeIds) {
+        BulkRouteResult result = new BulkRouteResult();
+        return Flux.fromIterable(routeIds)
+                .buffer(bulkBatchSize)
+                .concatMap(batch -> inBatchTransaction(Mono.defer(() -> mongoTemplate.remove(
+                        Query.query(Criteria.where("routeId").in(batch)), Route.class)))
+                        .map(deleted -> {
+                            result.setBatches(result.getBatches() + 1);
+                            result.setDeleted(result.getDeleted() + (int) deleted.getDeletedCount());
+                            return true;
+                        })
+                        .onErrorResume(e -> {
+                            log.error("Bulk delete batch failed: {}", e.getMessage());
+                            result.getErrors().add("delete failed: " + e.getMessage());
+                            return Mono.just(false);
+                        }))
+                .takeUntil(deleted -> !deleted)
+                .then(Mono.defer(() -> {
+                    result.setPartial(!result.getErrors().isEmpty() && result.getDeleted() > 0);
+                    log.info("Bulk delete: {} routes deleted", result.getDeleted());
+                    return result.getDeleted() > 0 ? refreshRoutes(routeIds).thenReturn(result) : Mono.just(result);
+                }));
+    }
+
+    // Emits false when the batch was rejected or failed, which ends the import
+    private Mono<Boolean> upsertBatch(List<Route> batch, BulkRouteResult result, Set<String> writtenRouteIds) {
+        List<String> errors = validateBatch(batch);
+        if (!errors.isEmpty()) {
+            result.getErrors().addAll(errors);
+            return Mono.just(false);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Mono<BulkWriteResult> write = Mono.defer(() -> {
+            ReactiveBulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Route.class);
+            for (Route route : batch) {
+                operations.upsert(Query.query(Criteria.where("routeId").is(route.getRouteId())), toUpsert(route, now));
+            }
+            return operations.execute();
+        });
+
+        return inBatchTransaction(write)
+                .map(written -> {
+                    result.setBatches(result.getBatches() + 1);
+                    count(written, result);
+                    batch.forEach(route -> writtenRouteIds.add(route.getRouteId()));
+                    return true;
+                })
+                .onErrorResume(e -> {
+                    log.error("Bulk upsert batch failed: {}", e.getMessage());
+                    // Outside a transaction an ordered write keeps the routes before the failing one
+                    if (!bulkTransactional && e instanceof MongoBulkWriteException bulk
+                            && !bulk.getWriteErrors().isEmpty()) {
+                        int failedAt = bulk.getWriteErrors().get(0).getIndex();
+                        count(bulk.getWriteResult(), result);
+                        batch.subList(0, failedAt).forEach(route -> writtenRouteIds.add(route.getRouteId()));
+                        result.getErrors().add(batch.get(failedAt).getRouteId() + ": "
+                                + bulk.getWriteErrors().get(0).getMessage());
+                    } else {
+                        result.getErrors().add("batch " + (result.getBatches() + 1) + " not written: "
+                                + e.getMessage());
+                    }
+                    return Mono.just(false);
+                });
+    }
+
+    private static void count(BulkWriteResult written, BulkRouteResult result) {
+        result.setInserted(result.getInserted() + written.getUpserts().size());
+        result.setUpdated(result.getUpdated() + written.getMatchedCount());
+    }
+
+    private List<String> validateBatch(List<Route> batch) {
+        List<String> errors = new ArrayList<>();
+        Set<String> routeIds = new HashSet<>();
+        for (Route route : batch) {
+            String routeId = route.getRouteId();
+            if (routeId != null && !routeIds.add(routeId)) {
+                errors.add(routeId + ": appears more than once in the batch");
+                continue;
+            }
+            try {
+                routeCompiler.validate(route);
+            } catch (IllegalArgumentException e) {
+                errors.add(routeId + ": " + e.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    // Every field of the route except identity and creation info, which only an insert sets
+    private Update toUpsert(Route route, LocalDateTime now) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(route, document);
+        document.remove("_id");
+        document.remove("createdAt");
+        document.remove("createdBy");
+
+        Update update = new Update();
+        document.forEach(update::set);
+        update.set("updatedAt", now);
+        update.setOnInsert("createdAt", now);
+        if (route.getCreatedBy() != null) {
+            update.setOnInsert("createdBy", route.getCreatedBy());
+        }
+        return update;
+    }
+
+    private <T> Mono<T> inBatchTransaction(Mono<T> write) {
+        return bulkTransactional ? transactionalOperator.transactional(write) : write;
+    }
+
     @Override
     public Mono<Void> refreshRoutes() {
-        log.info("Refreshing routes");
-        eventPublisher.publishEvent(new RefreshRoutesEvent(this));
-        return Mono.empty();
+        return refreshCoordinator.requestRefresh("api").then();
+    }
+
+    // Reloads only the written routes, here and on the other nodes
+    private Mono<Void> refreshRoutes(Collection<String> routeIds) {
+        return refreshCoordinator.requestRefresh("api", routeIds).then();
+    }
+
+    private void refreshRouteOf(RouteDTO route) {
+        if (route != null) {
+            refreshRoutes(List.of(route.getRouteId())).subscribe();
+        }
+    }
+
+    // Builds the route's pipeline once so a bad config fails the write, not the next refresh
+    private Mono<Route> validated(Route route) {
+        try {
+            routeCompiler.validate(route);
+            return Mono.just(route);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected route {}: {}", route.getRouteId(), e.getMessage());
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
     }
 
     private RouteDTO convertToDTO(Route route) {
@@ -137,6 +344,7 @@ public class RouteServiceImpl implements RouteService {
                 .path(route.getPath())
                 .method(route.getMethod())
                 .uri(route.getUri())
+                .targets(route.getTargets())
                 .order(route.getOrder())
                 .metadata(route.getMetadata())
                 .filters(route.getFilters())
@@ -145,6 +353,8 @@ public class RouteServiceImpl implements RouteService {
                 .rateLimiter(route.getRateLimiter())
                 .timeout(route.getTimeout())
                 .retry(route.getRetry())
+                .responseCache(route.getResponseCache())
+                .singleFlight(route.getSingleFlight())
                 .createdAt(route.getCreatedAt())
                 .updatedAt(route.getUpdatedAt())
                 .createdBy(route.getCreatedBy())
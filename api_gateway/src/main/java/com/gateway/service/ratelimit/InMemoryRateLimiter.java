@@ -0,0 +1,203 @@
+package com.gateway.service.ratelimit;
+
+import com.gateway.model.RateLimitAlgorithm;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import static com.gateway.service.ratelimit.RateLimit.WINDOW_MICROS;
+
+/**
+ * The rate limit algorithms on this node's heap, each key's state updated
+ * under its own lock. Mirrors {@link ScriptedRateLimiter} step for step, so
+ * a route limits the same way whether Redis or this node keeps the count.
+ * Hierarchical quotas lock their keys in the order given, which is always
+ * client, tenant, route for one route.
+ */
+public class InMemoryRateLimiter implements KeyedRateLimiter {
+
+    private final LongSupplier microClock;
+
+    // Idle keys go after a minute, longer than any window or GCRA backlog that still matters
+    private final Cache<String, State> states = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofMinutes(1))
+            .maximumSize(100_000)
+            .build();
+
+    public InMemoryRateLimiter() {
+        this(() -> System.nanoTime() / 1000);
+    }
+
+    public InMemoryRateLimiter(LongSupplier microClock) {
+        this.microClock = microClock;
+    }
+
+    @Override
+    public Mono<Boolean> tryAcquire(List<Quota> quotas, int cost) {
+        return Mono.fromSupplier(() -> tryAcquireNow(quotas, cost));
+    }
+
+    public boolean tryAcquireNow(String key, RateLimit limit, int cost) {
+        return tryAcquireNow(List.of(new Quota(key, limit)), cost);
+    }
+
+    public boolean tryAcquireNow(List<Quota> quotas, int cost) {
+        State[] locked = new State[quotas.size()];
+        for (int i = 0; i < locked.length; i++) {
+            Quota quota = quotas.get(i);
+            // A route that changed algorithm starts over with fresh state
+            locked[i] = states.asMap().compute(quota.key(),
+                    (k, current) -> current != null && current.algorithm() == quota.limit().algorithm()
+                            ? current : newState(quota.limit().algorithm()));
+        }
+        return acquire(quotas, locked, 0, cost);
+    }
+
+    private boolean acquire(List<Quota> quotas, State[] locked, int level, int cost) {
+        if (level < locked.length) {
+            synchronized (locked[level]) {
+                return acquire(quotas, locked, level + 1, cost);
+            }
+        }
+        long now = microClock.getAsLong();
+        for (int i = 0; i < locked.length; i++) {
+            if (!locked[i].fits(now, quotas.get(i).limit(), cost)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < locked.length; i++) {
+            locked[i].take(now, cost);
+        }
+        return true;
+    }
+
+    private static State newState(RateLimitAlgorithm algorithm) {
+        return switch (algorithm) {
+            case FIXED_WINDOW -> new FixedWindow();
+            case SLIDING_LOG -> new SlidingLog();
+            case SLIDING_WINDOW -> new SlidingWindow();
+            case GCRA -> new Gcra();
+        };
+    }
+
+    /**
+     * A key's state. take only follows a fits for the same request, so it
+     * can reuse what fits worked out.
+     */
+    private interface State {
+
+        RateLimitAlgorithm algorithm();
+
+        boolean fits(long now, RateLimit limit, int cost);
+
+        void take(long now, int cost);
+    }
+
+    // The window opens with the first admitted request, like a Redis counter with a TTL
+    private static final class FixedWindow implements State {
+        private long windowEnd = Long.MIN_VALUE;
+        private long count;
+
+        @Override
+        public RateLimitAlgorithm algorithm() {
+            return RateLimitAlgorithm.FIXED_WINDOW;
+        }
+
+        @Override
+        public boolean fits(long now, RateLimit limit, int cost) {
+            if (now >= windowEnd) {
+                count = 0;
+            }
+            return count + cost <= limit.burstCapacity();
+        }
+
+        @Override
+        public void take(long now, int cost) {
+            if (count == 0) {
+                windowEnd = now + WINDOW_MICROS;
+            }
+            count += cost;
+        }
+    }
+
+    private static final class SlidingLog implements State {
+        private final ArrayDeque<Long> admitted = new ArrayDeque<>();
+
+        @Override
+        public RateLimitAlgorithm algorithm() {
+            return RateLimitAlgorithm.SLIDING_LOG;
+        }
+
+        @Override
+        public boolean fits(long now, RateLimit limit, int cost) {
+            while (!admitted.isEmpty() && admitted.peekFirst() <= now - WINDOW_MICROS) {
+                admitted.pollFirst();
+            }
+            return admitted.size() + cost <= limit.burstCapacity();
+        }
+
+        @Override
+        public void take(long now, int cost) {
+            for (int i = 0; i < cost; i++) {
+                admitted.addLast(now);
+            }
+        }
+    }
+
+    // Windows aligned on the clock, the previous one counted by how much of it is still in the last second
+    private static final class SlidingWindow implements State {
+        private long window = Long.MIN_VALUE;
+        private long current;
+        private long previous;
+
+        @Override
+        public RateLimitAlgorithm algorithm() {
+            return RateLimitAlgorithm.SLIDING_WINDOW;
+        }
+
+        @Override
+        public boolean fits(long now, RateLimit limit, int cost) {
+            long index = Math.floorDiv(now, WINDOW_MICROS);
+            if (index != window) {
+                previous = index - 1 == window ? current : 0;
+                current = 0;
+                window = index;
+            }
+            double elapsed = (double) (now - index * WINDOW_MICROS) / WINDOW_MICROS;
+            return previous * (1 - elapsed) + current + cost <= limit.burstCapacity();
+        }
+
+        @Override
+        public void take(long now, int cost) {
+            current += cost;
+        }
+    }
+
+    // Theoretical arrival time: admitted while it stays within burstCapacity intervals of now
+    private static final class Gcra implements State {
+        private long tat = Long.MIN_VALUE;
+        private long next;
+
+        @Override
+        public RateLimitAlgorithm algorithm() {
+            return RateLimitAlgorithm.GCRA;
+        }
+
+        @Override
+        public boolean fits(long now, RateLimit limit, int cost) {
+            long interval = WINDOW_MICROS / limit.replenishRate();
+            next = Math.max(tat, now) + cost * interval;
+            return next - now <= limit.burstCapacity() * interval;
+        }
+
+        @Override
+        public void take(long now, int cost) {
+            tat = next;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.gateway.service.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Admits or rejects requests per key. A rejected request takes nothing
+ * from the key's allowance.
+ */
+public interface KeyedRateLimiter {
+
+    /**
+     * True when cost more units fit every one of the quotas, in which case
+     * they are taken from all of them at once. When any quota is exhausted
+     * none is charged.
+     */
+    Mono<Boolean> tryAcquire(List<Quota> quotas, int cost);
+
+    default Mono<Boolean> tryAcquire(String key, RateLimit limit, int cost) {
+        return tryAcquire(List.of(new Quota(key, limit)), cost);
+    }
+}
@@ -0,0 +1,7 @@
+package com.gateway.service.ratelimit;
+
+/**
+ * One level of a hierarchical limit: the key whose state it keeps and the limit on it.
+ */
+public record Quota(String key, RateLimit limit) {
+}
@@ -0,0 +1,24 @@
+package com.gateway.service.ratelimit;
+
+import com.gateway.model.RateLimitAlgorithm;
+
+/**
+ * One route's limit. Window algorithms admit burstCapacity per window,
+ * GCRA admits replenishRate per second with bursts of up to burstCapacity.
+ */
+public record RateLimit(RateLimitAlgorithm algorithm, int replenishRate, int burstCapacity) {
+
+    public static final long WINDOW_MICROS = 1_000_000;
+
+    /**
+     * This node's share when the limit is enforced on each of the given
+     * number of nodes independently, rounded up so no node gets zero.
+     */
+    public RateLimit split(int nodes) {
+        if (nodes <= 1) {
+            return this;
+        }
+        return new RateLimit(algorithm, Math.max(1, (replenishRate + nodes - 1) / nodes),
+                Math.max(1, (burstCapacity + nodes - 1) / nodes));
+    }
+}
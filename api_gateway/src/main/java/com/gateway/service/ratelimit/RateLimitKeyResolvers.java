@@ -0,0 +1,135 @@
+package com.gateway.service.ratelimit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.support.ipresolver.RemoteAddressResolver;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Who a request is counted against. A route names its resolver:
+ * <ul>
+ * <li>{@code ip}: the client address, read from X-Forwarded-For behind
+ * {@code gateway.rate-limit.trusted-proxies} proxies</li>
+ * <li>{@code apiKey}: the X-API-Key header</li>
+ * <li>{@code header:<name>}: any request header</li>
+ * <li>{@code jwtSubject}: the sub claim of the bearer token. The token is
+ * not verified here, so only use it behind something that does.</li>
+ * <li>{@code serviceName}: the X-Service-Name header apps calling through
+ * the gateway send</li>
+ * <li>the name of any {@link KeyResolver} bean</li>
+ * </ul>
+ * A resolver that finds nothing resolves empty.
+ */
+@Component
+@Slf4j
+public class RateLimitKeyResolvers {
+
+    public static final String CLIENT_IP = "ip";
+    public static final String API_KEY = "apiKey";
+    public static final String HEADER_PREFIX = "header:";
+    public static final String JWT_SUBJECT = "jwtSubject";
+    public static final String SERVICE_NAME = "serviceName";
+
+    static final String API_KEY_HEADER = "X-API-Key";
+    static final String SERVICE_NAME_HEADER = "X-Service-Name";
+
+    private final Map<String, KeyResolver> beans;
+    private final ObjectMapper objectMapper;
+    private final RemoteAddressResolver addressResolver;
+
+    // Clients send the same token for its whole lifetime, decode it once
+    private final Cache<String, Optional<String>> jwtSubjects = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .build();
+
+    @Autowired
+    public RateLimitKeyResolvers(Map<String, KeyResolver> beans, ObjectMapper objectMapper,
+            @Value("${gateway.rate-limit.trusted-proxies:0}") int trustedProxies) {
+        this.beans = beans;
+        this.objectMapper = objectMapper;
+        this.addressResolver = trustedProxies > 0
+                ? XForwardedRemoteAddressResolver.maxTrustedIndex(trustedProxies)
+                : new RemoteAddressResolver() {
+                };
+    }
+
+    /**
+     * The resolver a route names, see the class comment.
+     *
+     * @throws IllegalArgumentException for a name that is none of these
+     */
+    public KeyResolver get(String name) {
+        if (name == null || name.isBlank() || CLIENT_IP.equals(name)) {
+            return exchange -> Mono.justOrEmpty(clientIp(exchange));
+        }
+        if (API_KEY.equals(name)) {
+            return header(API_KEY_HEADER);
+        }
+        if (SERVICE_NAME.equals(name)) {
+            return header(SERVICE_NAME_HEADER);
+        }
+        if (JWT_SUBJECT.equals(name)) {
+            return exchange -> Mono.justOrEmpty(jwtSubject(exchange));
+        }
+        if (name.startsWith(HEADER_PREFIX) && name.length() > HEADER_PREFIX.length()) {
+            return header(name.substring(HEADER_PREFIX.length()));
+        }
+        KeyResolver bean = beans.get(name);
+        if (bean == null) {
+            throw new IllegalArgumentException("unknown key resolver " + name);
+        }
+        return bean;
+    }
+
+    public String clientIp(ServerWebExchange exchange) {
+        InetSocketAddress address = addressResolver.resolve(exchange);
+        if (address == null) {
+            return null;
+        }
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+
+    private static KeyResolver header(String header) {
+        return exchange -> Mono.justOrEmpty(exchange.getRequest().getHeaders().getFirst(header));
+    }
+
+    private String jwtSubject(ServerWebExchange exchange) {
+        String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        return jwtSubjects.get(authorization.substring(7).trim(), this::decodeSubject).orElse(null);
+    }
+
+    private Optional<String> decodeSubject(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length < 2) {
+            return Optional.empty();
+        }
+        try {
+            JsonNode claims = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[1]));
+            JsonNode subject = claims.get("sub");
+            return subject != null && subject.isTextual() ? Optional.of(subject.asText()) : Optional.empty();
+        } catch (Exception e) {
+            log.debug("Ignoring unreadable bearer token: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
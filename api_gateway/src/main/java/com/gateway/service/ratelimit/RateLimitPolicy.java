@@ -0,0 +1,79 @@
+package com.gateway.service.ratelimit;
+
+import com.gateway.config.RedisKeys;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A route's quotas: per client, and optionally per tenant and for the whole
+ * route. Key prefixes are built once per route and tenant keys are cached,
+ * so a request only concatenates its client id.
+ * <p>
+ * With a single level the key is tagged per client,
+ * {@code rate-limit:{routeId:client}:algorithm}, which spreads a route's
+ * clients over the cluster. With tenant or route quotas every key of the
+ * route shares the route's tag, {@code rate-limit:{routeId}:algorithm:...},
+ * so one script can check and charge all levels together.
+ */
+public class RateLimitPolicy {
+
+    private final RateLimit clientLimit;
+    private final RateLimit tenantLimit;
+    private final RateLimit routeLimit;
+
+    private final String clientHead;
+    private final String clientTail;
+    private final String tenantPrefix;
+    private final String routeKey;
+    private final Cache<String, String> tenantKeys;
+
+    /**
+     * @param tenantLimit null for no per-tenant quota
+     * @param routeLimit  null for no quota on the whole route
+     */
+    public RateLimitPolicy(String routeId, RateLimit clientLimit, RateLimit tenantLimit, RateLimit routeLimit) {
+        this.clientLimit = clientLimit;
+        this.tenantLimit = tenantLimit;
+        this.routeLimit = routeLimit;
+
+        String algorithm = clientLimit.algorithm().name().toLowerCase();
+        if (tenantLimit == null && routeLimit == null) {
+            clientHead = RedisKeys.RATE_LIMIT_PREFIX + "{" + routeId + ":";
+            clientTail = "}:" + algorithm;
+            tenantPrefix = null;
+            routeKey = null;
+            tenantKeys = null;
+        } else {
+            String prefix = RedisKeys.rateLimitQuotas(routeId) + algorithm + ":";
+            clientHead = prefix + "client:";
+            clientTail = "";
+            tenantPrefix = prefix + "tenant:";
+            routeKey = prefix + "route";
+            tenantKeys = Caffeine.newBuilder().maximumSize(50_000).build();
+        }
+    }
+
+    /**
+     * The quotas a request is checked against, client first.
+     *
+     * @param tenant null when the request has no tenant, it then skips the tenant quota
+     */
+    public List<Quota> quotas(String client, String tenant) {
+        Quota clientQuota = new Quota(clientHead + client + clientTail, clientLimit);
+        if (tenantKeys == null) {
+            return List.of(clientQuota);
+        }
+        List<Quota> quotas = new ArrayList<>(3);
+        quotas.add(clientQuota);
+        if (tenantLimit != null && tenant != null) {
+            quotas.add(new Quota(tenantKeys.get(tenant, tenantPrefix::concat), tenantLimit));
+        }
+        if (routeLimit != null) {
+            quotas.add(new Quota(routeKey, routeLimit));
+        }
+        return quotas;
+    }
+}
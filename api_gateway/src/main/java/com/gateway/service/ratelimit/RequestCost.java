@@ -0,0 +1,139 @@
+package com.gateway.service.ratelimit;
+
+import com.gateway.model.CostRule;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * What one request takes from a route's quotas. The first cost rule that
+ * matches the method and path prices the request from its query parameter
+ * count and declared body size; requests no rule matches cost the route's
+ * requestedTokens. With latency learning on, a path costs at least one
+ * token per latencyCostMillis of its average upstream latency, so slow
+ * endpoints get expensive without anyone listing them.
+ * <p>
+ * A cost never exceeds maxCost, the smallest burst capacity of the route's
+ * quotas, so every request can be admitted eventually.
+ */
+public class RequestCost {
+
+    // Weight of the newest latency sample in a path's average
+    private static final double LATENCY_WEIGHT = 0.1;
+
+    private final List<Rule> rules;
+    private final int defaultCost;
+    private final long latencyCostNanos;
+    private final int maxCost;
+
+    // Keyed by the matching rule's pattern, or the path when no rule matched
+    private final Cache<String, Latency> latencies;
+
+    /**
+     * @param latencyCostMillis null to price requests by the rules alone
+     * @throws IllegalArgumentException for a rule whose method or path does not parse
+     */
+    public RequestCost(List<CostRule> rules, int defaultCost, Integer latencyCostMillis, int maxCost) {
+        this.rules = rules != null ? rules.stream().map(rule -> new Rule(rule, defaultCost)).toList() : List.of();
+        this.defaultCost = defaultCost;
+        this.latencyCostNanos = latencyCostMillis != null ? Duration.ofMillis(latencyCostMillis).toNanos() : 0;
+        this.maxCost = maxCost;
+        this.latencies = latencyCostMillis != null
+                ? Caffeine.newBuilder().maximumSize(10_000).expireAfterAccess(Duration.ofMinutes(10)).build()
+                : null;
+    }
+
+    public boolean learnsFromLatency() {
+        return latencies != null;
+    }
+
+    public int cost(ServerHttpRequest request) {
+        Rule rule = match(request);
+        long cost = rule != null ? rule.price(request) : defaultCost;
+        if (latencies != null) {
+            Latency latency = latencies.getIfPresent(latencyKey(rule, request));
+            if (latency != null) {
+                cost = Math.max(cost, (long) Math.ceil(latency.nanos() / latencyCostNanos));
+            }
+        }
+        return (int) Math.max(1, Math.min(cost, maxCost));
+    }
+
+    // Only called when learning from latency
+    public void recordLatency(ServerHttpRequest request, long nanos) {
+        latencies.get(latencyKey(match(request), request), key -> new Latency(nanos)).record(nanos);
+    }
+
+    private Rule match(ServerHttpRequest request) {
+        for (Rule rule : rules) {
+            if (rule.matches(request)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private static String latencyKey(Rule rule, ServerHttpRequest request) {
+        return rule != null ? rule.key : request.getPath().pathWithinApplication().value();
+    }
+
+    private static final class Rule {
+        private final HttpMethod method;
+        private final PathPattern pattern;
+        private final String key;
+        private final int cost;
+        private final int costPerQueryParam;
+        private final int costPerKilobyte;
+
+        Rule(CostRule rule, int defaultCost) {
+            this.method = rule.getMethod() != null && !rule.getMethod().isBlank()
+                    ? HttpMethod.valueOf(rule.getMethod().trim().toUpperCase()) : null;
+            String path = rule.getPath() != null && !rule.getPath().isBlank() ? rule.getPath() : "/**";
+            this.pattern = PathPatternParser.defaultInstance.parse(path);
+            this.key = (method != null ? method.name() + " " : "") + path;
+            this.cost = rule.getCost() != null ? rule.getCost() : defaultCost;
+            this.costPerQueryParam = rule.getCostPerQueryParam() != null ? rule.getCostPerQueryParam() : 0;
+            this.costPerKilobyte = rule.getCostPerKilobyte() != null ? rule.getCostPerKilobyte() : 0;
+        }
+
+        boolean matches(ServerHttpRequest request) {
+            return (method == null || method.equals(request.getMethod()))
+                    && pattern.matches(request.getPath().pathWithinApplication());
+        }
+
+        long price(ServerHttpRequest request) {
+            long price = cost;
+            if (costPerQueryParam > 0) {
+                price += (long) costPerQueryParam * request.getQueryParams().size();
+            }
+            long length = request.getHeaders().getContentLength();
+            if (costPerKilobyte > 0 && length > 0) {
+                price += costPerKilobyte * ((length + 1023) / 1024);
+            }
+            return price;
+        }
+    }
+
+    // Exponentially weighted average, the first sample taken as is
+    private static final class Latency {
+        private double nanos;
+
+        Latency(long first) {
+            this.nanos = first;
+        }
+
+        synchronized double nanos() {
+            return nanos;
+        }
+
+        synchronized void record(long sample) {
+            nanos += LATENCY_WEIGHT * (sample - nanos);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.gateway.service.ratelimit;
+
+import com.gateway.model.RateLimitAlgorithm;
+import com.gateway.service.RedisCommandBatcher;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The rate limit algorithms as Lua scripts, one atomic EVALSHA per request
+ * through the command batcher. Scripts read the time from Redis so every
+ * gateway node counts on the same clock (needs Redis 5+ for effects
+ * replication).
+ * <p>
+ * A script takes one key per quota level and checks all of them before
+ * charging any, so hierarchical quotas cost one call. In cluster mode the
+ * keys of one call must share a hash tag. ARGV is cost, window in
+ * microseconds and a value unique to the call, followed by replenishRate
+ * and burstCapacity for each key.
+ */
+@Component
+public class ScriptedRateLimiter implements KeyedRateLimiter {
+
+    private static final String ARGS = """
+            local cost = tonumber(ARGV[1])
+            local window = tonumber(ARGV[2])
+            """;
+
+    private static final String NOW = """
+            local time = redis.call('time')
+            local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+            """;
+
+    static final Map<RateLimitAlgorithm, Script> SCRIPTS = new EnumMap<>(Map.of(
+            RateLimitAlgorithm.FIXED_WINDOW, new Script(ARGS + """
+                    local counts = {}
+                    for i = 1, #KEYS do
+                      counts[i] = tonumber(redis.call('get', KEYS[i]) or '0')
+                      if counts[i] + cost > tonumber(ARGV[3 + 2 * i]) then
+                        return 0
+                      end
+                    end
+                    for i = 1, #KEYS do
+                      redis.call('incrby', KEYS[i], cost)
+                      if counts[i] == 0 then
+                        redis.call('pexpire', KEYS[i], math.floor(window / 1000))
+                      end
+                    end
+                    return 1
+                    """),
+            RateLimitAlgorithm.SLIDING_LOG, new Script(ARGS + NOW + """
+                    for i = 1, #KEYS do
+                      redis.call('zremrangebyscore', KEYS[i], '-inf', string.format('%.0f', now - window))
+                      if redis.call('zcard', KEYS[i]) + cost > tonumber(ARGV[3 + 2 * i]) then
+                        return 0
+                      end
+                    end
+                    for i = 1, #KEYS do
+                      for j = 1, cost do
+                        redis.call('zadd', KEYS[i], string.format('%.0f', now), ARGV[3] .. ':' .. j)
+                      end
+                      redis.call('pexpire', KEYS[i], math.floor(window / 1000))
+                    end
+                    return 1
+                    """),
+            RateLimitAlgorithm.SLIDING_WINDOW, new Script(ARGS + NOW + """
+                    local index = math.floor(now / window)
+                    local elapsed = (now - index * window) / window
+                    local current = {}
+                    local previous = {}
+                    for i = 1, #KEYS do
+                      local state = redis.call('hmget', KEYS[i], 'window', 'current', 'previous')
+                      current[i] = tonumber(state[2]) or 0
+                      previous[i] = tonumber(state[3]) or 0
+                      if tonumber(state[1]) ~= index then
+                        if tonumber(state[1]) == index - 1 then
+                          previous[i] = current[i]
+                        else
+                          previous[i] = 0
+                        end
+                        current[i] = 0
+                      end
+                      if previous[i] * (1 - elapsed) + current[i] + cost > tonumber(ARGV[3 + 2 * i]) then
+                        return 0
+                      end
+                    end
+                    for i = 1, #KEYS do
+                      redis.call('hset', KEYS[i], 'window', string.format('%.0f', index),
+                        'current', current[i] + cost, 'previous', previous[i])
+                      redis.call('pexpire', KEYS[i], math.floor(2 * window / 1000))
+                    end
+                    return 1
+                    """),
+            RateLimitAlgorithm.GCRA, new Script(ARGS + NOW + """
+                    local tats = {}
+                    for i = 1, #KEYS do
+                      local interval = math.floor(window / tonumber(ARGV[2 + 2 * i]))
+                      local tat = tonumber(redis.call('get', KEYS[i]) or '0')
+                      if tat < now then
+                        tat = now
+                      end
+                      tats[i] = tat + cost * interval
+                      if tats[i] - now > tonumber(ARGV[3 + 2 * i]) * interval then
+                        return 0
+                      end
+                    end
+                    for i = 1, #KEYS do
+                      local ttl = math.ceil((tats[i] - now) / 1000)
+                      redis.call('set', KEYS[i], string.format('%.0f', tats[i]), 'px', ttl)
+                    end
+                    return 1
+                    """)));
+
+    private final RedisCommandBatcher commandBatcher;
+    private static final String WINDOW_ARG = String.valueOf(RateLimit.WINDOW_MICROS);
+
+    private final String callPrefix = UUID.randomUUID() + ":";
+    private final AtomicLong calls = new AtomicLong();
+
+    public ScriptedRateLimiter(RedisCommandBatcher commandBatcher) {
+        this.commandBatcher = commandBatcher;
+    }
+
+    @Override
+    public Mono<Boolean> tryAcquire(List<Quota> quotas, int cost) {
+        RateLimitAlgorithm algorithm = quotas.get(0).limit().algorithm();
+        String[] keys = new String[quotas.size()];
+        String[] args = new String[3 + 2 * quotas.size()];
+        args[0] = String.valueOf(cost);
+        args[1] = WINDOW_ARG;
+        args[2] = callPrefix + calls.incrementAndGet();
+        for (int i = 0; i < keys.length; i++) {
+            RateLimit limit = quotas.get(i).limit();
+            if (limit.algorithm() != algorithm) {
+                throw new IllegalArgumentException("All quotas of one call must use the same algorithm");
+            }
+            keys[i] = quotas.get(i).key();
+            args[3 + 2 * i] = String.valueOf(limit.replenishRate());
+            args[4 + 2 * i] = String.valueOf(limit.burstCapacity());
+        }
+        Script script = SCRIPTS.get(algorithm);
+        return commandBatcher.execute(commands -> commands.<Long>evalsha(script.sha(), ScriptOutputType.INTEGER,
+                        keys, args))
+                // Not cached on this server yet (first call, restart, failover), EVAL loads it
+                .onErrorResume(RedisNoScriptException.class, e -> commandBatcher.execute(
+                        commands -> commands.<Long>eval(script.source(), ScriptOutputType.INTEGER, keys, args)))
+                .map(admitted -> admitted == 1L);
+    }
+
+    record Script(String source, String sha) {
+
+        Script(String source) {
+            this(source, sha1(source));
+        }
+
+        private static String sha1(String source) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.gateway.service.topk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving stream summary: the most frequent items of a stream in a
+ * fixed number of counters. An item without a counter takes over the one
+ * with the lowest count and inherits that count as its error, so a count
+ * is never below the item's true frequency and at most its error above
+ * it, and every item seen more than total / capacity times holds a
+ * counter.
+ * <p>
+ * Counters of equal count share a bucket and buckets are linked in
+ * ascending order, so an offer moves one counter to the neighbouring
+ * bucket and costs O(1) whatever the capacity. Not thread safe.
+ */
+final class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private Bucket lowest;
+    private long total;
+    private boolean evicted;
+
+    SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.counters = HashMap.newHashMap(capacity);
+    }
+
+    /**
+     * Counts one occurrence of item.
+     *
+     * @param value added to the item's sum, e.g. the request duration
+     */
+    void offer(String item, long value) {
+        total++;
+        Counter counter = counters.get(item);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter(item, value);
+                counters.put(item, counter);
+                if (lowest == null || lowest.count != 1) {
+                    lowest = insertAfter(null, 1);
+                }
+                lowest.add(counter);
+                return;
+            }
+            // Evict the least counted item, the newcomer may have occurred that often before
+            counter = lowest.head;
+            evicted = true;
+            counters.remove(counter.item);
+            counter.item = item;
+            counter.error = lowest.count;
+            counter.sum = 0;
+            counters.put(item, counter);
+        }
+        counter.sum += value;
+        increment(counter);
+    }
+
+    long total() {
+        return total;
+    }
+
+    TopKSummary summary() {
+        List<TopKSummary.Estimate> estimates = new ArrayList<>(counters.size());
+        for (Bucket bucket = lowest; bucket != null; bucket = bucket.next) {
+            for (Counter counter = bucket.head; counter != null; counter = counter.next) {
+                estimates.add(new TopKSummary.Estimate(counter.item, bucket.count, counter.error, counter.sum));
+            }
+        }
+        // Until the first eviction an item without a counter was never seen
+        long missingBound = evicted ? lowest.count : 0;
+        return TopKSummary.of(estimates, total, missingBound);
+    }
+
+    private void increment(Counter counter) {
+        Bucket bucket = counter.bucket;
+        Bucket next = bucket.next;
+        if (next == null || next.count != bucket.count + 1) {
+            next = insertAfter(bucket, bucket.count + 1);
+        }
+        bucket.remove(counter);
+        if (bucket.head == null) {
+            unlink(bucket);
+        }
+        next.add(counter);
+    }
+
+    // After null is in front of the lowest bucket
+    private Bucket insertAfter(Bucket previous, long count) {
+        Bucket bucket = new Bucket(count);
+        bucket.prev = previous;
+        bucket.next = previous != null ? previous.next : lowest;
+        if (bucket.next != null) {
+            bucket.next.prev = bucket;
+        }
+        if (previous != null) {
+            previous.next = bucket;
+        }
+        return bucket;
+    }
+
+    private void unlink(Bucket bucket) {
+        if (bucket.prev != null) {
+            bucket.prev.next = bucket.next;
+        } else {
+            lowest = bucket.next;
+        }
+        if (bucket.next != null) {
+            bucket.next.prev = bucket.prev;
+        }
+    }
+
+    private static final class Counter {
+        private String item;
+        private long error;
+        private long sum;
+        private Bucket bucket;
+        private Counter prev;
+        private Counter next;
+
+        Counter(String item, long sum) {
+            this.item = item;
+            this.sum = sum;
+        }
+    }
+
+    private static final class Bucket {
+        private final long count;
+        private Counter head;
+        private Bucket prev;
+        private Bucket next;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+
+        void add(Counter counter) {
+            counter.bucket = this;
+            counter.prev = null;
+            counter.next = head;
+            if (head != null) {
+                head.prev = counter;
+            }
+            head = counter;
+        }
+
+        void remove(Counter counter) {
+            if (counter.prev != null) {
+                counter.prev.next = counter.next;
+            } else {
+                head = counter.next;
+            }
+            if (counter.next != null) {
+                counter.next.prev = counter.prev;
+            }
+        }
+    }
+}
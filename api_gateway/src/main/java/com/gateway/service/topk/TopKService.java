@@ -0,0 +1,234 @@
+package com.gateway.service.topk;
+
+import com.gateway.entity.ApiMetric;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The heaviest endpoints, clients, user agents and service pairs of this
+ * node's traffic, kept on the heap so top-N questions need no Mongo scan.
+ * <p>
+ * Every request is offered to a {@link SpaceSaving} sketch per dimension,
+ * O(1) in a fixed number of counters. The sketches are striped by thread
+ * so event loops rarely share a lock. Each minute they are summarized into
+ * one {@link TopKSummary} per dimension and started over; minute summaries
+ * are kept for {@code gateway.metrics.top-k.retention-minutes}, and each
+ * complete hour is merged into an hour summary kept for
+ * {@code gateway.metrics.top-k.retention-hours}. A time range is answered
+ * by merging the summaries that cover it.
+ */
+@Service
+@Slf4j
+public class TopKService {
+
+    public enum Dimension {
+        ENDPOINTS, CLIENTS, USER_AGENTS, SERVICE_PAIRS
+    }
+
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+    private static final long MINUTE_MILLIS = 60_000;
+    private static final int MINUTES_PER_HOUR = 60;
+
+    private final LongSupplier clock;
+    private final int capacity;
+    private final int retentionMinutes;
+    private final int retentionHours;
+    private final Stripe[] stripes;
+    // Keyed by minutes and hours since the epoch
+    private final ConcurrentNavigableMap<Long, Map<Dimension, TopKSummary>> minutes = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<Long, Map<Dimension, TopKSummary>> hours = new ConcurrentSkipListMap<>();
+    // The minute the stripes are counting, only moved by roll
+    private volatile long currentMinute;
+
+    @Autowired
+    public TopKService(@Value("${gateway.metrics.top-k.capacity:200}") int capacity,
+            @Value("${gateway.metrics.top-k.retention-minutes:60}") int retentionMinutes,
+            @Value("${gateway.metrics.top-k.retention-hours:24}") int retentionHours) {
+        this(System::currentTimeMillis, capacity, retentionMinutes, retentionHours,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    TopKService(LongSupplier clock, int capacity, int retentionMinutes, int retentionHours, int stripes) {
+        this.clock = clock;
+        this.capacity = capacity;
+        // Hours are merged from their minutes, so those have to last an hour
+        this.retentionMinutes = Math.max(retentionMinutes, MINUTES_PER_HOUR);
+        this.retentionHours = retentionHours;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(capacity);
+        }
+        this.currentMinute = Math.floorDiv(clock.getAsLong(), MINUTE_MILLIS);
+    }
+
+    public void record(ApiMetric metric) {
+        String endpoint = metric.getPathTemplate() != null ? metric.getPathTemplate() : metric.getPath();
+        String servicePair = (metric.getFromService() != null ? metric.getFromService() : "client")
+                + " -> " + (metric.getToService() != null ? metric.getToService() : "unknown");
+        stripes[(int) (Thread.currentThread().threadId() % stripes.length)].record(
+                orUnknown(endpoint), orUnknown(metric.getClientIp()), orUnknown(metric.getUserAgent()), servicePair,
+                metric.getDuration());
+    }
+
+    /**
+     * Closes the minute: the stripes' sketches become that minute's
+     * summaries and counting starts over.
+     */
+    @Scheduled(cron = "0 * * * * *")
+    public void roll() {
+        long now = Math.floorDiv(clock.getAsLong(), MINUTE_MILLIS);
+        long minute = currentMinute;
+        if (now <= minute) {
+            return;
+        }
+        currentMinute = now;
+        // Requests recorded while the stripes are swapped may land in the new minute
+        List<EnumMap<Dimension, TopKSummary>> parts = new ArrayList<>(stripes.length);
+        for (Stripe stripe : stripes) {
+            parts.add(stripe.swap(capacity));
+        }
+        Map<Dimension, TopKSummary> summaries = new EnumMap<>(Dimension.class);
+        for (Dimension dimension : DIMENSIONS) {
+            summaries.put(dimension, TopKSummary.merge(parts.stream().map(part -> part.get(dimension)).toList(),
+                    capacity));
+        }
+        minutes.put(minute, summaries);
+        // A skipped minute, e.g. the scheduler stalled, has no summary and stops ranges over it
+        if (Math.floorMod(minute + 1, MINUTES_PER_HOUR) == 0) {
+            closeHour(Math.floorDiv(minute, MINUTES_PER_HOUR));
+        }
+        minutes.headMap(now - retentionMinutes).clear();
+        hours.headMap(Math.floorDiv(now, MINUTES_PER_HOUR) - retentionHours).clear();
+    }
+
+    private void closeHour(long hour) {
+        long first = hour * MINUTES_PER_HOUR;
+        Map<Long, Map<Dimension, TopKSummary>> hourMinutes = minutes.subMap(first, first + MINUTES_PER_HOUR);
+        if (hourMinutes.size() < MINUTES_PER_HOUR) {
+            // Started during the hour, its ranges fall back to the minutes while they last
+            return;
+        }
+        Map<Dimension, TopKSummary> summaries = new EnumMap<>(Dimension.class);
+        for (Dimension dimension : DIMENSIONS) {
+            summaries.put(dimension, TopKSummary.merge(hourMinutes.values().stream()
+                    .map(minute -> minute.get(dimension))
+                    .toList(), capacity));
+        }
+        hours.put(hour, summaries);
+        log.debug("Top-k summaries of hour {} merged", hour);
+    }
+
+    /**
+     * The heavy hitters between two instants, to whole minutes. Minutes
+     * no longer kept are taken from their hour, which may widen the range;
+     * the minute in progress is left out. Empty when this node does not
+     * hold all of the range.
+     */
+    public Optional<Range> top(Dimension dimension, long fromMillis, long toMillis) {
+        long first = Math.floorDiv(fromMillis, MINUTE_MILLIS);
+        long last = Math.min(Math.floorDiv(toMillis, MINUTE_MILLIS), currentMinute - 1);
+        if (last < first) {
+            return Optional.empty();
+        }
+        List<TopKSummary> summaries = new ArrayList<>();
+        long coveredFrom = first;
+        long minute = first;
+        while (minute <= last) {
+            Map<Dimension, TopKSummary> summary = minutes.get(minute);
+            if (summary != null) {
+                summaries.add(summary.get(dimension));
+                minute++;
+                continue;
+            }
+            long hour = Math.floorDiv(minute, MINUTES_PER_HOUR);
+            summary = hours.get(hour);
+            if (summary == null) {
+                return Optional.empty();
+            }
+            summaries.add(summary.get(dimension));
+            coveredFrom = Math.min(coveredFrom, hour * MINUTES_PER_HOUR);
+            // Minutes of this hour still kept are in the hour summary already
+            minute = (hour + 1) * MINUTES_PER_HOUR;
+        }
+        return Optional.of(new Range(coveredFrom * MINUTE_MILLIS, minute * MINUTE_MILLIS,
+                TopKSummary.merge(summaries, capacity)));
+    }
+
+    /**
+     * The heavy hitters of the last minutes that have been closed, or of
+     * as many of them as are kept, e.g. since startup.
+     */
+    public Optional<Range> recent(Dimension dimension, int minuteCount) {
+        long last = currentMinute - 1;
+        long first = last - minuteCount + 1;
+        Long firstMinute = minutes.isEmpty() ? null : minutes.firstKey();
+        Long firstHour = hours.isEmpty() ? null : hours.firstKey();
+        if (firstHour != null) {
+            first = Math.max(first, firstHour * MINUTES_PER_HOUR);
+        } else if (firstMinute != null) {
+            first = Math.max(first, firstMinute);
+        } else {
+            return Optional.empty();
+        }
+        return top(dimension, first * MINUTE_MILLIS, (last + 1) * MINUTE_MILLIS - 1);
+    }
+
+    private static String orUnknown(String value) {
+        return value != null && !value.isEmpty() ? value : "unknown";
+    }
+
+    /**
+     * @param from start of the covered span, epoch millis inclusive
+     * @param to   end of the covered span, epoch millis exclusive
+     */
+    public record Range(long from, long to, TopKSummary summary) {
+    }
+
+    private static final class Stripe {
+        private final SpaceSaving[] sketches = new SpaceSaving[DIMENSIONS.length];
+
+        Stripe(int capacity) {
+            reset(capacity);
+        }
+
+        synchronized void record(String endpoint, String client, String userAgent, String servicePair,
+                long duration) {
+            sketches[Dimension.ENDPOINTS.ordinal()].offer(endpoint, duration);
+            sketches[Dimension.CLIENTS.ordinal()].offer(client, duration);
+            sketches[Dimension.USER_AGENTS.ordinal()].offer(userAgent, duration);
+            sketches[Dimension.SERVICE_PAIRS.ordinal()].offer(servicePair, duration);
+        }
+
+        // Summarizing happens outside the lock, the old sketches are no longer shared
+        EnumMap<Dimension, TopKSummary> swap(int capacity) {
+            SpaceSaving[] old;
+            synchronized (this) {
+                old = sketches.clone();
+                reset(capacity);
+            }
+            EnumMap<Dimension, TopKSummary> summaries = new EnumMap<>(Dimension.class);
+            for (Dimension dimension : DIMENSIONS) {
+                summaries.put(dimension, old[dimension.ordinal()].summary());
+            }
+            return summaries;
+        }
+
+        private void reset(int capacity) {
+            for (int i = 0; i < sketches.length; i++) {
+                sketches[i] = new SpaceSaving(capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.gateway.service.topk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The heavy hitters of some span of traffic, largest count first. Each
+ * count is an upper bound, at most the estimate's error above the real
+ * one, and no item left out occurred more than {@link #errorBound()}
+ * times. Summaries of adjacent spans or of different stripes merge into
+ * one with the same guarantees.
+ */
+public final class TopKSummary {
+
+    public static final TopKSummary EMPTY = new TopKSummary(List.of(), 0, 0);
+
+    private static final Comparator<Estimate> BY_COUNT = Comparator.comparingLong(Estimate::count).reversed()
+            .thenComparing(Estimate::item);
+
+    private final List<Estimate> estimates;
+    private final long total;
+    private final long missingBound;
+
+    private TopKSummary(List<Estimate> estimates, long total, long missingBound) {
+        this.estimates = estimates;
+        this.total = total;
+        this.missingBound = missingBound;
+    }
+
+    static TopKSummary of(List<Estimate> estimates, long total, long missingBound) {
+        List<Estimate> sorted = new ArrayList<>(estimates);
+        sorted.sort(BY_COUNT);
+        return new TopKSummary(List.copyOf(sorted), total, missingBound);
+    }
+
+    /**
+     * Adds up summaries, keeping the capacity largest counts. An item
+     * missing from one summary may have occurred up to that summary's
+     * bound there, which goes into both its count and its error.
+     */
+    public static TopKSummary merge(Collection<TopKSummary> summaries, int capacity) {
+        if (summaries.size() == 1) {
+            return summaries.iterator().next();
+        }
+        long total = 0;
+        long missingBound = 0;
+        Map<String, long[]> merged = new HashMap<>();
+        for (TopKSummary summary : summaries) {
+            total += summary.total;
+            missingBound += summary.missingBound;
+            for (Estimate estimate : summary.estimates) {
+                // count, error and sum where present, and the bounds of the summaries it is present in
+                long[] sums = merged.computeIfAbsent(estimate.item(), item -> new long[4]);
+                sums[0] += estimate.count();
+                sums[1] += estimate.error();
+                sums[2] += estimate.sum();
+                sums[3] += summary.missingBound;
+            }
+        }
+        List<Estimate> estimates = new ArrayList<>(merged.size());
+        for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+            long[] sums = entry.getValue();
+            long absent = missingBound - sums[3];
+            estimates.add(new Estimate(entry.getKey(), sums[0] + absent, sums[1] + absent, sums[2]));
+        }
+        estimates.sort(BY_COUNT);
+        if (estimates.size() > capacity) {
+            // What is dropped counted at most as much as the first one dropped
+            missingBound = Math.max(missingBound, estimates.get(capacity).count());
+            estimates = estimates.subList(0, capacity);
+        }
+        return new TopKSummary(List.copyOf(estimates), total, missingBound);
+    }
+
+    public List<Estimate> top(int limit) {
+        return estimates.size() <= limit ? estimates : estimates.subList(0, limit);
+    }
+
+    /**
+     * Occurrences of all items, heavy or not.
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * The most any item not listed can have occurred.
+     */
+    public long errorBound() {
+        return missingBound;
+    }
+
+    /**
+     * @param count an upper bound of the item's occurrences
+     * @param error how far count may be above the real number
+     * @param sum   the values of the count - error occurrences known to be this item's
+     */
+    public record Estimate(String item, long count, long error, long sum) {
+
+        public long guaranteed() {
+            return count - error;
+        }
+
+        public double average() {
+            return guaranteed() > 0 ? (double) sum / guaranteed() : 0;
+        }
+    }
+}
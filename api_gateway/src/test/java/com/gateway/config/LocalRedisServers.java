@@ -0,0 +1,127 @@
+package com.gateway.config;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Starts real redis-server processes on free loopback ports for tests that
+ * need Redis itself, e.g. to run Lua. Uses redis-server and redis-cli from
+ * the PATH, or -Dredis.server / -Dredis.cli. Without them it runs the same
+ * commands in the -Dredis.image container (default redis:7.2-alpine) on the
+ * host network when Docker is there. Tests call {@link #assumeAvailable()},
+ * which skips them without either, unless -Dredis.required=true (set by the
+ * redis profile, active on CI) makes that a failure.
+ */
+public class LocalRedisServers implements AutoCloseable {
+
+	public static final String REDIS_SERVER = System.getProperty("redis.server", "redis-server");
+
+	public static final String REDIS_CLI = System.getProperty("redis.cli", "redis-cli");
+
+	public static final String REDIS_IMAGE = System.getProperty("redis.image", "redis:7.2-alpine");
+
+	private static final boolean INSTALLED = installed(REDIS_SERVER) && installed(REDIS_CLI);
+
+	private static final boolean DOCKER = !INSTALLED && installed("docker");
+
+	public static final String HOST = InetAddress.getLoopbackAddress().getHostAddress();
+
+	private final Path dir;
+
+	private final List<Process> processes = new ArrayList<>();
+
+	public LocalRedisServers(Path dir) {
+		this.dir = dir;
+	}
+
+	public static boolean available() {
+		return INSTALLED || DOCKER;
+	}
+
+	/**
+	 * Skips the calling test without Redis, or fails it when Redis is required.
+	 */
+	public static void assumeAvailable() {
+		if (Boolean.getBoolean("redis.required")) {
+			assertThat(available()).as("redis-server and redis-cli on the PATH, or Docker").isTrue();
+		}
+		assumeThat(available()).as("redis-server and redis-cli on the PATH, or Docker").isTrue();
+	}
+
+	/**
+	 * A redis-cli command line with the given arguments.
+	 */
+	public static List<String> cli(String... args) {
+		List<String> command = new ArrayList<>(DOCKER
+				? List.of("docker", "run", "--rm", "--network", "host", REDIS_IMAGE, "redis-cli")
+				: List.of(REDIS_CLI));
+		command.addAll(List.of(args));
+		return command;
+	}
+
+	/**
+	 * Starts a server without persistence and returns its port once it accepts connections.
+	 */
+	public int start(boolean cluster) throws Exception {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		// In a container the client forwards destroy() to the server, and --rm cleans up after it
+		List<String> command = new ArrayList<>(DOCKER
+				? List.of("docker", "run", "--rm", "--network", "host", REDIS_IMAGE, "redis-server")
+				: List.of(REDIS_SERVER));
+		command.addAll(List.of("--port", String.valueOf(port), "--bind", HOST,
+				"--dir", DOCKER ? "/data" : dir.toString(), "--save", "", "--appendonly", "no"));
+		if (cluster) {
+			command.addAll(List.of("--cluster-enabled", "yes", "--cluster-node-timeout", "2000",
+					"--cluster-config-file", "nodes-" + port + ".conf"));
+		}
+		processes.add(new ProcessBuilder(command)
+				.redirectErrorStream(true)
+				.redirectOutput(dir.resolve("redis-" + port + ".log").toFile())
+				.start());
+
+		int listening = port;
+		// A first docker run may pull the image
+		await().atMost(DOCKER ? 120 : 10, TimeUnit.SECONDS).ignoreExceptions().until(() -> {
+			try (Socket socket = new Socket(HOST, listening)) {
+				return true;
+			}
+		});
+		return port;
+	}
+
+	@Override
+	public void close() {
+		processes.forEach(Process::destroy);
+	}
+
+	public static String run(List<String> command) throws IOException, InterruptedException {
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+		process.waitFor(30, TimeUnit.SECONDS);
+		return output;
+	}
+
+	private static boolean installed(String binary) {
+		try {
+			Process process = new ProcessBuilder(binary, "--version").redirectErrorStream(true).start();
+			process.getInputStream().readAllBytes();
+			return process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0;
+		} catch (IOException | InterruptedException e) {
+			return false;
+		}
+	}
+}
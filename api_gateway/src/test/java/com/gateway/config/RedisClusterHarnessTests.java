@@ -0,0 +1,144 @@
+package com.gateway.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.service.MetricsAggregator;
+import com.gateway.service.RedisCommandBatcher;
+import io.lettuce.core.ScriptOutputType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Runs the gateway's Redis traffic against real local Redis processes: a
+ * single node, and a three shard cluster with one replica per shard.
+ * Skipped without Redis, see {@link LocalRedisServers}.
+ */
+class RedisClusterHarnessTests {
+
+	private static final String HOST = LocalRedisServers.HOST;
+
+	@TempDir
+	Path dir;
+
+	private LocalRedisServers servers;
+
+	private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+	private RedisCommandBatcher batcher;
+
+	@BeforeEach
+	void requireRedis() {
+		LocalRedisServers.assumeAvailable();
+		servers = new LocalRedisServers(dir);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (batcher != null) {
+			batcher.close();
+		}
+		connectionFactories.forEach(LettuceConnectionFactory::destroy);
+		if (servers != null) {
+			servers.close();
+		}
+	}
+
+	@Test
+	void singleNode() throws Exception {
+		int port = servers.start(false);
+
+		exercise(redisConfig(List.of(), port));
+	}
+
+	@Test
+	void clusterWithReplicas() throws Exception {
+		List<String> nodes = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			nodes.add(HOST + ":" + servers.start(true));
+		}
+		List<String> create = LocalRedisServers.cli("--cluster", "create");
+		create.addAll(nodes);
+		create.addAll(List.of("--cluster-replicas", "1", "--cluster-yes"));
+		assertThat(LocalRedisServers.run(create)).contains("All 16384 slots covered");
+		for (String node : nodes) {
+			String port = node.substring(node.indexOf(':') + 1);
+			await().atMost(30, TimeUnit.SECONDS)
+					.until(() -> LocalRedisServers.run(LocalRedisServers.cli("-h", HOST, "-p", port, "cluster", "info"))
+						.contains("cluster_state:ok"));
+		}
+
+		exercise(redisConfig(nodes, 0));
+	}
+
+	// Rate limit counters, a multi-key script on one hash tag, metrics read back through the read factory
+	private void exercise(RedisConfig redisConfig) {
+		LettuceConnectionFactory primary = start((LettuceConnectionFactory) redisConfig.reactiveRedisConnectionFactory());
+		LettuceConnectionFactory metricsRead = start(redisConfig.metricsReadConnectionFactory());
+		batcher = new RedisCommandBatcher(primary, new SimpleMeterRegistry(), 256, 0, 5000);
+
+		Flux.range(0, 2000)
+				.map(i -> RedisKeys.rateLimit("orders", "10.0.0." + (i % 200)))
+				.flatMap(key -> batcher.execute(commands -> commands.incr(key)), 128)
+				.blockLast(Duration.ofSeconds(30));
+		for (int i = 0; i < 200; i++) {
+			String key = RedisKeys.rateLimit("orders", "10.0.0." + i);
+			assertThat(batcher.execute(commands -> commands.get(key)).block(Duration.ofSeconds(5))).isEqualTo("10");
+		}
+
+		String key = RedisKeys.rateLimit("orders", "10.0.0.1");
+		Long count = batcher.execute(commands -> commands.<Long>eval(
+				"redis.call('set', KEYS[2], ARGV[1]) return redis.call('incr', KEYS[1])",
+				ScriptOutputType.INTEGER, new String[] { key, key + ":ts" }, "1700000000"))
+				.block(Duration.ofSeconds(5));
+		assertThat(count).isEqualTo(11);
+
+		RedisTemplate<String, String> readTemplate = new RedisTemplate<>();
+		readTemplate.setConnectionFactory(metricsRead);
+		readTemplate.setDefaultSerializer(new StringRedisSerializer());
+		readTemplate.afterPropertiesSet();
+		MetricsAggregator aggregator = new MetricsAggregator(readTemplate, batcher, new ObjectMapper());
+		aggregator.addMetrics("orders", List.of(Map.of("duration", 12.0), Map.of("duration", 14.0)))
+				.block(Duration.ofSeconds(5));
+
+		// Replicas catch up asynchronously
+		await().atMost(10, TimeUnit.SECONDS)
+				.until(() -> aggregator.getMetricsHistory("orders").getOrDefault("duration", List.of()).size() == 2);
+		assertThat(aggregator.getAllMetricsKeys()).contains("orders");
+	}
+
+	private RedisConfig redisConfig(List<String> clusterNodes, int port) {
+		RedisConfig redisConfig = new RedisConfig();
+		ReflectionTestUtils.setField(redisConfig, "host", HOST);
+		ReflectionTestUtils.setField(redisConfig, "port", port);
+		ReflectionTestUtils.setField(redisConfig, "timeout", 5000);
+		ReflectionTestUtils.setField(redisConfig, "clusterNodes", clusterNodes);
+		ReflectionTestUtils.setField(redisConfig, "maxRedirects", 3);
+		ReflectionTestUtils.setField(redisConfig, "topologyRefreshMillis", 1000L);
+		ReflectionTestUtils.setField(redisConfig, "metricsReadFrom", "replicaPreferred");
+		return redisConfig;
+	}
+
+	private LettuceConnectionFactory start(LettuceConnectionFactory connectionFactory) {
+		connectionFactory.afterPropertiesSet();
+		connectionFactory.start();
+		connectionFactories.add(connectionFactory);
+		return connectionFactory;
+	}
+}
@@ -0,0 +1,39 @@
+package com.gateway.config;
+
+import io.lettuce.core.cluster.SlotHash;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedisKeysTests {
+
+	@Test
+	void keepsAllKeysOfOneLimiterOnOneSlot() {
+		String key = RedisKeys.rateLimit("orders", "10.0.0.7");
+
+		assertThat(key).isEqualTo("rate-limit:{orders:10.0.0.7}");
+		assertThat(SlotHash.getSlot(key + ":ts")).isEqualTo(SlotHash.getSlot(key));
+	}
+
+	@Test
+	void spreadsLimitersOverTheCluster() {
+		Set<Integer> slots = new HashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			slots.add(SlotHash.getSlot(RedisKeys.rateLimit("orders", "10.0." + (i / 256) + "." + (i % 256))));
+		}
+
+		assertThat(slots).hasSizeGreaterThan(900);
+	}
+
+	@Test
+	void keepsMetricsAndTrendsTogether() {
+		assertThat(SlotHash.getSlot(RedisKeys.metricsTrends("orders")))
+				.isEqualTo(SlotHash.getSlot(RedisKeys.metrics("orders")));
+		assertThat(RedisKeys.metricsServiceId(RedisKeys.metrics("route:orders"))).isEqualTo("route:orders");
+		assertThat(RedisKeys.metricsServiceId(RedisKeys.metricsTrends("orders"))).isNull();
+		assertThat(RedisKeys.metricsServiceId("rate-limit:{orders:10.0.0.7}")).isNull();
+	}
+}
@@ -0,0 +1,150 @@
+package com.gateway.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.entity.Route;
+import com.gateway.filter.PathRewriteGatewayFilterFactory;
+import com.gateway.filter.ResponseCacheGatewayFilterFactory;
+import com.gateway.filter.SingleFlightGatewayFilterFactory;
+import com.gateway.model.CostRule;
+import com.gateway.model.RateLimiterConfig;
+import com.gateway.model.ResponseCacheConfig;
+import com.gateway.model.SingleFlightConfig;
+import com.gateway.model.UpstreamTarget;
+import com.gateway.service.ResponseCacheService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.handler.predicate.MethodRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class RouteCompilerTests {
+
+	private static final LocalDateTime UPDATED = LocalDateTime.of(2026, 1, 5, 10, 0);
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private RouteCompiler compiler;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		ResponseCacheService cacheService = new ResponseCacheService(null, new ObjectMapper(), meterRegistry, 1024);
+		// Factories of filters these routes do not configure are never used
+		compiler = new RouteCompiler(new PathRoutePredicateFactory(), new MethodRoutePredicateFactory(),
+				new PathRewriteGatewayFilterFactory(), null, null, null, null,
+				new ResponseCacheGatewayFilterFactory(cacheService),
+				new SingleFlightGatewayFilterFactory(meterRegistry), meterRegistry);
+	}
+
+	@Test
+	void compilesPredicatesAndFilterPipeline() {
+		Route route = route("orders", UPDATED);
+		route.setMethod("get");
+		route.setResponseCache(ResponseCacheConfig.builder().ttlSeconds(30).build());
+		route.setSingleFlight(SingleFlightConfig.builder().maxFanOut(10).build());
+
+		org.springframework.cloud.gateway.route.Route compiled = compiler.compile(route).route();
+
+		assertThat(compiled.getId()).isEqualTo("orders");
+		assertThat(compiled.getUri()).hasToString("http://orders:8080");
+		// Prefix strip, response cache, single flight
+		assertThat(compiled.getFilters()).hasSize(3);
+		assertThat(matches(compiled, MockServerHttpRequest.get("/orders/1"))).isTrue();
+		assertThat(matches(compiled, MockServerHttpRequest.post("/orders/1"))).isFalse();
+		assertThat(matches(compiled, MockServerHttpRequest.get("/users/1"))).isFalse();
+		assertThat(meterRegistry.get("gateway.route.compile").tag("route", "orders").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	void validationReportsEveryProblemAtOnce() {
+		Route route = new Route();
+		route.setPath("orders/**");
+		route.setMethod("FETCH");
+		route.setTargets(List.of(UpstreamTarget.builder().uri("//orders:8080").weight(-1).build()));
+
+		assertThatIllegalArgumentException().isThrownBy(() -> compiler.validate(route))
+				.withMessageContaining("routeId is required")
+				.withMessageContaining("path must start with /")
+				.withMessageContaining("method FETCH is not an HTTP method")
+				.withMessageContaining("target uri //orders:8080 has no scheme")
+				.withMessageContaining("target weight must not be negative");
+	}
+
+	@Test
+	void validationChecksFilterSettings() {
+		Route route = route("orders", UPDATED);
+		route.setRateLimiter(RateLimiterConfig.builder()
+				.burstCapacity(10)
+				.requestedTokens(20)
+				.costRules(List.of(CostRule.builder().path("orders").cost(50).build()))
+				.tenantBurstCapacity(5)
+				.build());
+		route.setResponseCache(ResponseCacheConfig.builder().ttlSeconds(0).build());
+
+		assertThatIllegalArgumentException().isThrownBy(() -> compiler.compile(route))
+				.withMessageContaining("rateLimiter.requestedTokens must not exceed burstCapacity")
+				.withMessageContaining("rateLimiter.costRules path must start with /")
+				.withMessageContaining("rateLimiter.costRules.cost must not exceed burstCapacity")
+				.withMessageContaining("rateLimiter.tenantKeyResolver and tenantBurstCapacity must be set together")
+				.withMessageContaining("responseCache.ttlSeconds must be positive");
+	}
+
+	@Test
+	void versionIsCompiledOnceUntilUpdatedAtChanges() {
+		RouteCompiler.CompiledRoute first = compiler.compile(route("orders", UPDATED));
+
+		assertThat(compiler.compile(route("orders", UPDATED))).isSameAs(first);
+
+		RouteCompiler.CompiledRoute edited = compiler.compile(route("orders", UPDATED.plusSeconds(1)));
+		assertThat(edited).isNotSameAs(first);
+		assertThat(compiler.compile(route("orders", UPDATED.plusSeconds(1)))).isSameAs(edited);
+	}
+
+	@Test
+	void routesWithoutUpdatedAtAreReusedWhileTheirContentIsUnchanged() {
+		RouteCompiler.CompiledRoute first = compiler.compile(route("orders", null));
+
+		assertThat(compiler.compile(route("orders", null))).isSameAs(first);
+
+		Route moved = route("orders", null);
+		moved.setUri("http://orders-v2:8080");
+		RouteCompiler.CompiledRoute recompiled = compiler.compile(moved);
+		assertThat(recompiled).isNotSameAs(first);
+		assertThat(recompiled.route().getUri()).hasToString("http://orders-v2:8080");
+	}
+
+	@Test
+	void retainDropsRoutesThatAreGone() {
+		RouteCompiler.CompiledRoute orders = compiler.compile(route("orders", UPDATED));
+		RouteCompiler.CompiledRoute users = compiler.compile(route("users", UPDATED));
+
+		compiler.retain(List.of("users"));
+
+		assertThat(compiler.compile(route("users", UPDATED))).isSameAs(users);
+		assertThat(compiler.compile(route("orders", UPDATED))).isNotSameAs(orders);
+	}
+
+	private static boolean matches(org.springframework.cloud.gateway.route.Route route,
+			MockServerHttpRequest.BaseBuilder<?> request) {
+		return Boolean.TRUE.equals(Mono.from(route.getPredicate().apply(MockServerWebExchange.from(request))).block());
+	}
+
+	private static Route route(String routeId, LocalDateTime updatedAt) {
+		Route route = new Route();
+		route.setRouteId(routeId);
+		route.setPath("/" + routeId + "/**");
+		route.setUri("http://" + routeId + ":8080");
+		route.setEnabled(true);
+		route.setUpdatedAt(updatedAt);
+		return route;
+	}
+}
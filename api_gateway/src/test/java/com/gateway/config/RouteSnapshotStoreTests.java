@@ -0,0 +1,107 @@
+package com.gateway.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.gateway.entity.Route;
+import com.gateway.model.CircuitBreakerConfig;
+import com.gateway.model.UpstreamTarget;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteSnapshotStoreTests {
+
+	@TempDir
+	Path dir;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private RouteSnapshotStore store;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		store = newStore();
+	}
+
+	@Test
+	void roundTripsRoutes() {
+		List<Route> routes = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			routes.add(route("route-" + i));
+		}
+
+		store.save(routes);
+		List<Route> loaded = newStore().load().orElseThrow();
+
+		assertThat(loaded).hasSize(2000);
+		assertThat(loaded.get(7)).isEqualTo(routes.get(7));
+		assertThat(loaded.get(1999).getTargets()).extracting(UpstreamTarget::getUri).containsExactly("http://b:8080");
+	}
+
+	@Test
+	void treatsChecksumMismatchAsMissing() throws Exception {
+		store.save(List.of(route("orders"), route("users")));
+		byte[] bytes = Files.readAllBytes(store.getPath());
+		bytes[bytes.length - 5] ^= 0x20;
+		Files.write(store.getPath(), bytes);
+
+		assertThat(newStore().load()).isEmpty();
+		assertThat(meterRegistry.counter("gateway.routes.snapshot.corrupt").count()).isEqualTo(1);
+	}
+
+	@Test
+	void treatsTruncatedAndForeignFilesAsMissing() throws Exception {
+		store.save(List.of(route("orders")));
+		byte[] bytes = Files.readAllBytes(store.getPath());
+		Files.write(store.getPath(), Arrays.copyOf(bytes, bytes.length - 10));
+		assertThat(newStore().load()).isEmpty();
+
+		Files.writeString(store.getPath(), "[{\"routeId\":\"orders\"}]");
+		assertThat(newStore().load()).isEmpty();
+	}
+
+	@Test
+	void skipsRewritingAnUnchangedTable() throws Exception {
+		List<Route> routes = List.of(route("orders"));
+		store.save(routes);
+		Files.setLastModifiedTime(store.getPath(), FileTime.fromMillis(0));
+
+		store.save(routes);
+		assertThat(Files.getLastModifiedTime(store.getPath()).toMillis()).isZero();
+
+		store.save(List.of(route("orders"), route("users")));
+		assertThat(newStore().load().orElseThrow()).hasSize(2);
+	}
+
+	private RouteSnapshotStore newStore() {
+		ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+				.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		return new RouteSnapshotStore(objectMapper, meterRegistry, dir.resolve("routes.snapshot").toString());
+	}
+
+	private Route route(String routeId) {
+		return Route.builder()
+				.id("id-" + routeId)
+				.routeId(routeId)
+				.path("/" + routeId + "/**")
+				.method("GET")
+				.targets(List.of(new UpstreamTarget("http://b:8080", 2)))
+				.enabled(true)
+				.circuitBreaker(CircuitBreakerConfig.builder().name(routeId).fallbackUri("/fallback/" + routeId).build())
+				.updatedAt(LocalDateTime.of(2025, 1, 1, 12, 0))
+				.build();
+	}
+}
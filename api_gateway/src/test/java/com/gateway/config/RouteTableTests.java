@@ -0,0 +1,59 @@
+package com.gateway.config;
+
+import com.gateway.entity.Route;
+import com.gateway.model.RateLimitAlgorithm;
+import com.gateway.model.RateLimiterConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteTableTests {
+
+	private static final LocalDateTime UPDATED = LocalDateTime.of(2026, 1, 5, 10, 0);
+
+	@Test
+	void versionDependsOnContentNotOrder() {
+		long version = RouteTable.versionOf(List.of(route("orders"), route("users")));
+
+		assertThat(RouteTable.versionOf(List.of(route("users"), route("orders")))).isEqualTo(version);
+
+		Route moved = route("users");
+		moved.setUri("http://users-v2:8080");
+		assertThat(RouteTable.versionOf(List.of(route("orders"), moved))).isNotEqualTo(version);
+		assertThat(RouteTable.versionOf(List.of(route("orders")))).isNotEqualTo(version);
+	}
+
+	@Test
+	void versionIsTheSameOnEveryNode() {
+		// Enums and maps hash by identity or insertion order in memory, the version must not
+		Route route = route("orders");
+		route.setRateLimiter(RateLimiterConfig.builder().algorithm(RateLimitAlgorithm.SLIDING_WINDOW).build());
+		Map<String, Object> metadata = new LinkedHashMap<>();
+		metadata.put("team", "checkout");
+		metadata.put("tier", 1);
+		route.setMetadata(metadata);
+
+		Route reordered = route("orders");
+		reordered.setRateLimiter(RateLimiterConfig.builder().algorithm(RateLimitAlgorithm.SLIDING_WINDOW).build());
+		reordered.setMetadata(new LinkedHashMap<>(Map.of("tier", 1, "team", "checkout")));
+
+		assertThat(RouteTable.versionOf(List.of(reordered))).isEqualTo(RouteTable.versionOf(List.of(route)));
+		// Pinned: changing how versions are computed makes old and new nodes disagree during a rollout
+		assertThat(RouteTable.versionOf(List.of(route))).isEqualTo(212253653207118409L);
+	}
+
+	private static Route route(String routeId) {
+		Route route = new Route();
+		route.setRouteId(routeId);
+		route.setPath("/" + routeId + "/**");
+		route.setUri("http://" + routeId + ":8080");
+		route.setEnabled(true);
+		route.setUpdatedAt(UPDATED);
+		return route;
+	}
+}
@@ -0,0 +1,284 @@
+package com.gateway.controller;
+
+import com.gateway.config.RouteCompiler;
+import com.gateway.dto.BulkRouteResult;
+import com.gateway.filter.PathRewriteGatewayFilterFactory;
+import com.gateway.service.RouteRefreshCoordinator;
+import com.gateway.service.impl.RouteServiceImpl;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.handler.predicate.MethodRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteControllerTests {
+
+	private MongoClient mongoClient;
+
+	private InMemoryRoutes routes;
+
+	private final List<Set<String>> refreshes = new CopyOnWriteArrayList<>();
+
+	private WebTestClient client;
+
+	@BeforeEach
+	void setUp() {
+		// Never connected to, the template only converts routes into documents here
+		mongoClient = MongoClients.create("mongodb://127.0.0.1:1");
+		routes = new InMemoryRoutes(mongoClient);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		RouteCompiler compiler = new RouteCompiler(new PathRoutePredicateFactory(), new MethodRoutePredicateFactory(),
+				new PathRewriteGatewayFilterFactory(), null, null, null, null, null, null, meterRegistry);
+		RouteRefreshCoordinator coordinator = new RouteRefreshCoordinator(changes -> {
+			refreshes.add(changes.routeIds());
+			return Mono.just(true);
+		}, meterRegistry, Duration.ofMillis(1));
+		RouteServiceImpl service = new RouteServiceImpl(null, coordinator, compiler, routes, null, 2, false);
+		client = WebTestClient.bindToController(new RouteController(service)).build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		mongoClient.close();
+	}
+
+	@Test
+	void upsertsInBatchesAndRefreshesOnce() {
+		BulkRouteResult first = upsert(MediaType.APPLICATION_JSON, json(route("a"), route("b"), route("c")), 200);
+
+		assertThat(first.getBatches()).isEqualTo(2);
+		assertThat(first.getInserted()).isEqualTo(3);
+		assertThat(first.isPartial()).isFalse();
+		assertThat(routes.stored).containsOnlyKeys("a", "b", "c");
+		assertThat(refreshes).containsExactly(Set.of("a", "b", "c"));
+
+		BulkRouteResult second = upsert(MediaType.APPLICATION_JSON, json(route("a"), route("d")), 200);
+		assertThat(second.getInserted()).isEqualTo(1);
+		assertThat(second.getUpdated()).isEqualTo(1);
+	}
+
+	@Test
+	void acceptsNdjsonStreams() {
+		String body = route("a") + "\n" + route("b") + "\n" + route("c") + "\n";
+
+		BulkRouteResult result = upsert(MediaType.APPLICATION_NDJSON, body, 200);
+
+		assertThat(result.getInserted()).isEqualTo(3);
+		assertThat(routes.stored).containsOnlyKeys("a", "b", "c");
+	}
+
+	@Test
+	void rejectsTheRequestWhenNothingWasWritten() {
+		BulkRouteResult result = upsert(MediaType.APPLICATION_JSON,
+				json(route("a"), "{\"routeId\":\"b\",\"path\":\"b\",\"uri\":\"http://b:8080\"}"), 400);
+
+		assertThat(result.getErrors()).singleElement().asString().startsWith("b: path must start with /");
+		assertThat(result.isPartial()).isFalse();
+		assertThat(routes.stored).isEmpty();
+		assertThat(refreshes).isEmpty();
+	}
+
+	@Test
+	void reportsBatchesWrittenBeforeAnInvalidOne() {
+		BulkRouteResult result = upsert(MediaType.APPLICATION_JSON, json(route("a"), route("b"), route("c"),
+				"{\"routeId\":\"d\",\"path\":\"/d/**\"}", route("e")), 200);
+
+		assertThat(result.isPartial()).isTrue();
+		assertThat(result.getBatches()).isEqualTo(1);
+		assertThat(result.getErrors()).singleElement().asString().contains("d: uri or targets is required");
+		assertThat(routes.stored).containsOnlyKeys("a", "b");
+		assertThat(refreshes).containsExactly(Set.of("a", "b"));
+	}
+
+	@Test
+	void reportsRoutesWrittenBeforeAFailedWrite() {
+		routes.failOn = "c";
+
+		BulkRouteResult result = upsert(MediaType.APPLICATION_JSON, json(route("a"), route("b"), route("c"),
+				route("d"), route("e")), 200);
+
+		// The ordered write of the second batch stopped at c, after b's batch and before d
+		assertThat(result.isPartial()).isTrue();
+		assertThat(result.getInserted()).isEqualTo(2);
+		assertThat(result.getErrors()).containsExactly("c: duplicate key");
+		assertThat(routes.stored).containsOnlyKeys("a", "b");
+		assertThat(refreshes).containsExactly(Set.of("a", "b"));
+	}
+
+	@Test
+	void reportsBatchesWrittenBeforeAnUnreadableLine() {
+		String body = route("a") + "\n" + route("b") + "\n" + route("c") + "\n{\"routeId\": \n" + route("e") + "\n";
+
+		BulkRouteResult result = upsert(MediaType.APPLICATION_NDJSON, body, 200);
+
+		// The full first batch and c, read before the broken line, are written and refreshed
+		assertThat(result.isPartial()).isTrue();
+		assertThat(result.getErrors()).singleElement().asString().startsWith("request body: ");
+		assertThat(routes.stored).containsOnlyKeys("a", "b", "c");
+		assertThat(refreshes).containsExactly(Set.of("a", "b", "c"));
+	}
+
+	@Test
+	void deletesInBatches() {
+		upsert(MediaType.APPLICATION_JSON, json(route("a"), route("b"), route("c")), 200);
+		refreshes.clear();
+
+		BulkRouteResult result = client.method(HttpMethod.DELETE).uri("/api/routes/bulk")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("[\"a\", \"c\", \"x\"]")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody(BulkRouteResult.class)
+				.returnResult()
+				.getResponseBody();
+
+		assertThat(result.getBatches()).isEqualTo(2);
+		assertThat(result.getDeleted()).isEqualTo(2);
+		assertThat(routes.stored).containsOnlyKeys("b");
+		assertThat(refreshes).containsExactly(Set.of("a", "c", "x"));
+	}
+
+	private BulkRouteResult upsert(MediaType contentType, String body, int status) {
+		return client.post().uri("/api/routes/bulk")
+				.contentType(contentType)
+				.bodyValue(body)
+				.exchange()
+				.expectStatus().isEqualTo(status)
+				.expectBody(BulkRouteResult.class)
+				.returnResult()
+				.getResponseBody();
+	}
+
+	private static String route(String routeId) {
+		return "{\"routeId\":\"" + routeId + "\",\"path\":\"/" + routeId + "/**\",\"uri\":\"http://" + routeId
+				+ ":8080\",\"enabled\":true}";
+	}
+
+	private static String json(String... routes) {
+		return "[" + String.join(",", routes) + "]";
+	}
+
+	// Applies bulk upserts and deletes to a map keyed by routeId, failing a write like Mongo would
+	private static final class InMemoryRoutes extends ReactiveMongoTemplate {
+
+		private final Map<String, Document> stored = new ConcurrentHashMap<>();
+
+		private volatile String failOn;
+
+		InMemoryRoutes(MongoClient mongoClient) {
+			super(mongoClient, "gateway");
+		}
+
+		@Override
+		public ReactiveBulkOperations bulkOps(BulkOperations.BulkMode mode, Class<?> entityClass) {
+			List<Map.Entry<String, Document>> upserts = new ArrayList<>();
+			return new ReactiveBulkOperations() {
+				@Override
+				public ReactiveBulkOperations upsert(Query query, UpdateDefinition update) {
+					upserts.add(Map.entry(query.getQueryObject().getString("routeId"), update.getUpdateObject()));
+					return this;
+				}
+
+				@Override
+				public Mono<BulkWriteResult> execute() {
+					return Mono.fromCallable(() -> {
+						List<BulkWriteUpsert> inserted = new ArrayList<>();
+						int matched = 0;
+						for (int i = 0; i < upserts.size(); i++) {
+							String routeId = upserts.get(i).getKey();
+							if (routeId.equals(failOn)) {
+								throw new MongoBulkWriteException(
+										BulkWriteResult.acknowledged(0, matched, 0, matched, inserted, List.of()),
+										List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), i)),
+										null, new ServerAddress(), Set.of());
+							}
+							if (stored.put(routeId, upserts.get(i).getValue()) == null) {
+								inserted.add(new BulkWriteUpsert(i, new BsonString(routeId)));
+							} else {
+								matched++;
+							}
+						}
+						return BulkWriteResult.acknowledged(0, matched, 0, matched, inserted, List.of());
+					});
+				}
+
+				@Override
+				public ReactiveBulkOperations insert(Object document) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public ReactiveBulkOperations insert(List<? extends Object> documents) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public ReactiveBulkOperations updateOne(Query query, UpdateDefinition update) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public ReactiveBulkOperations updateMulti(Query query, UpdateDefinition update) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public ReactiveBulkOperations remove(Query query) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public ReactiveBulkOperations remove(List<Query> removes) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public ReactiveBulkOperations replaceOne(Query query, Object replacement,
+						FindAndReplaceOptions options) {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public Mono<DeleteResult> remove(Query query, Class<?> entityClass) {
+			return Mono.fromCallable(() -> {
+				List<?> routeIds = query.getQueryObject().get("routeId", Document.class).getList("$in", Object.class);
+				long deleted = routeIds.stream().filter(routeId -> stored.remove(routeId) != null).count();
+				return DeleteResult.acknowledged(deleted);
+			});
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.gateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.service.FallbackResponseRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigurationProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerGatewayFilterFactoryTests {
+
+	private CircuitBreakerRegistry circuitBreakerRegistry;
+
+	private CircuitBreakerGatewayFilterFactory factory;
+
+	private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() {
+		circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+		ReactiveResilience4JCircuitBreakerFactory circuitBreakerFactory = new ReactiveResilience4JCircuitBreakerFactory(
+				circuitBreakerRegistry, TimeLimiterRegistry.ofDefaults(), new Resilience4JConfigurationProperties());
+		FallbackResponseRegistry fallbackRegistry = new FallbackResponseRegistry(new ObjectMapper(),
+				new SimpleMeterRegistry(), 1024 * 1024, 60000);
+		factory = new CircuitBreakerGatewayFilterFactory(circuitBreakerFactory, circuitBreakerRegistry,
+				fallbackRegistry);
+	}
+
+	@Test
+	void openBreakerWritesPrecomputedFallbackWithoutDispatch() {
+		GatewayFilter filter = factory.apply(config("/fallback/orders", false));
+		circuitBreakerRegistry.circuitBreaker("orders").transitionToForcedOpenState();
+
+		MockServerWebExchange exchange = run(filter, "/orders/1");
+
+		assertThat(upstreamCalls).hasValue(0);
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(exchange.getResponse().getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+		assertThat(exchange.getResponse().getHeaders().getFirst(FallbackResponseRegistry.FALLBACK_HEADER))
+				.isEqualTo("static");
+		assertThat(exchange.getResponse().getBodyAsString().block())
+				.isEqualTo("{\"status\":\"error\",\"message\":\"Service temporarily unavailable\",\"service\":\"orders\"}");
+	}
+
+	@Test
+	void openBreakerWithoutFallbackUriRespondsWithEmpty503() {
+		GatewayFilter filter = factory.apply(config(null, false));
+		circuitBreakerRegistry.circuitBreaker("orders").transitionToForcedOpenState();
+
+		MockServerWebExchange exchange = run(filter, "/orders/1");
+
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(exchange.getResponse().getHeaders().getContentLength()).isZero();
+	}
+
+	@Test
+	void openBreakerServesLastGoodResponseForTheSameRequest() {
+		GatewayFilter filter = factory.apply(config("/fallback/orders", true));
+
+		MockServerWebExchange first = run(filter, "/orders/1");
+		assertThat(first.getResponse().getBodyAsString().block()).isEqualTo("order 1");
+
+		circuitBreakerRegistry.circuitBreaker("orders").transitionToForcedOpenState();
+		MockServerWebExchange cached = run(filter, "/orders/1");
+		MockServerWebExchange uncached = run(filter, "/orders/2");
+
+		assertThat(upstreamCalls).hasValue(1);
+		assertThat(cached.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(cached.getResponse().getHeaders().getFirst(FallbackResponseRegistry.FALLBACK_HEADER))
+				.isEqualTo("last-good");
+		assertThat(cached.getResponse().getBodyAsString().block()).isEqualTo("order 1");
+		assertThat(uncached.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@Test
+	void lastGoodResponsesAreNeitherRecordedNorServedForRequestsWithCredentials() {
+		GatewayFilter filter = factory.apply(config("/fallback/orders", true));
+
+		run(filter, MockServerHttpRequest.get("/orders/1").header(HttpHeaders.AUTHORIZATION, "Bearer a"));
+		run(filter, MockServerHttpRequest.get("/orders/2"));
+
+		circuitBreakerRegistry.circuitBreaker("orders").transitionToForcedOpenState();
+		MockServerWebExchange unrecorded = run(filter, MockServerHttpRequest.get("/orders/1"));
+		MockServerWebExchange withCookie = run(filter,
+				MockServerHttpRequest.get("/orders/2").header(HttpHeaders.COOKIE, "session=b"));
+
+		assertThat(unrecorded.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(withCookie.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(run(filter, "/orders/2").getResponse().getBodyAsString().block()).isEqualTo("order 2");
+	}
+
+	private CircuitBreakerGatewayFilterFactory.Config config(String fallbackUri, boolean serveLastGood) {
+		CircuitBreakerGatewayFilterFactory.Config config = new CircuitBreakerGatewayFilterFactory.Config();
+		config.setName("orders");
+		config.setFallbackUri(fallbackUri);
+		config.setServeLastGood(serveLastGood);
+		return config;
+	}
+
+	private MockServerWebExchange run(GatewayFilter filter, String path) {
+		return run(filter, MockServerHttpRequest.get(path));
+	}
+
+	private MockServerWebExchange run(GatewayFilter filter, MockServerHttpRequest.BaseBuilder<?> request) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(request);
+		String path = exchange.getRequest().getURI().getPath();
+		exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+				.id("orders")
+				.uri(URI.create("http://orders:8080"))
+				.predicate(e -> true)
+				.build());
+
+		GatewayFilterChain chain = routed -> {
+			upstreamCalls.incrementAndGet();
+			routed.getResponse().setStatusCode(HttpStatus.OK);
+			byte[] body = ("order " + path.substring(path.lastIndexOf('/') + 1)).getBytes(StandardCharsets.UTF_8);
+			return routed.getResponse().writeWith(Mono.just(routed.getResponse().bufferFactory().wrap(body)));
+		};
+
+		filter.filter(exchange, chain).block(Duration.ofSeconds(5));
+		return exchange;
+	}
+}
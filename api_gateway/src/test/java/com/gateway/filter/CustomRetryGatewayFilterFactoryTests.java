@@ -0,0 +1,179 @@
+package com.gateway.filter;
+
+import com.gateway.service.RequestBodyBufferService;
+import com.gateway.service.RetryBudgetService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.retry.Backoff;
+import reactor.retry.IterationContext;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomRetryGatewayFilterFactoryTests {
+
+	private static ResourceLeakDetector.Level previousLevel;
+
+	private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+	private RequestBodyBufferService bodyBufferService;
+
+	private CustomRetryGatewayFilterFactory factory;
+
+	@BeforeAll
+	static void enableParanoidLeakDetection() {
+		previousLevel = ResourceLeakDetector.getLevel();
+		ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+	}
+
+	@AfterAll
+	static void restoreLeakDetection() {
+		ResourceLeakDetector.setLevel(previousLevel);
+	}
+
+	@BeforeEach
+	void setUp() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		bodyBufferService = new RequestBodyBufferService(meterRegistry, 1024);
+		factory = new CustomRetryGatewayFilterFactory(
+				new RetryBudgetService(meterRegistry, 1.0, 100, 100), bodyBufferService);
+	}
+
+	@Test
+	void replaysCachedBodyOnRetryAndReleasesIt() {
+		NettyDataBuffer body = nettyBody("hello");
+		List<String> seenBodies = new CopyOnWriteArrayList<>();
+
+		run(config(256), body, 5, seenBodies, 3);
+
+		assertThat(seenBodies).containsExactly("hello", "hello", "hello");
+		assertThat(body.getNativeBuffer().refCnt()).isZero();
+		assertThat(bodyBufferService.getBufferedBytes()).isZero();
+	}
+
+	@Test
+	void disablesRetryForBodiesOverTheLimit() {
+		NettyDataBuffer body = nettyBody("a body that is too large");
+		List<String> seenBodies = new CopyOnWriteArrayList<>();
+
+		run(config(8), body, 24, seenBodies, 3);
+
+		assertThat(seenBodies).containsExactly("a body that is too large");
+		assertThat(body.getNativeBuffer().refCnt()).isZero();
+		assertThat(bodyBufferService.getBufferedBytes()).isZero();
+	}
+
+	@Test
+	void disablesRetryWhenGlobalBufferCapIsReached() {
+		assertThat(bodyBufferService.tryReserve(1020)).isTrue();
+		NettyDataBuffer body = nettyBody("hello");
+		List<String> seenBodies = new CopyOnWriteArrayList<>();
+
+		run(config(256), body, 5, seenBodies, 3);
+
+		assertThat(seenBodies).containsExactly("hello");
+		assertThat(body.getNativeBuffer().refCnt()).isZero();
+		bodyBufferService.release(1020);
+		assertThat(bodyBufferService.getBufferedBytes()).isZero();
+	}
+
+	private CustomRetryGatewayFilterFactory.Config config(int maxBodyBytes) {
+		CustomRetryGatewayFilterFactory.Config config = new CustomRetryGatewayFilterFactory.Config();
+		config.setRetries(2);
+		config.setBackoff("1,1,1");
+		config.setMethods("POST");
+		config.setStatuses("503");
+		config.setCacheBody(true);
+		config.setMaxBodyBytes(maxBodyBytes);
+		return config;
+	}
+
+	// Upstream fails with 503 until the given attempt, recording the body it saw
+	@Test
+	void decorrelatedJitterStaysBetweenTheFirstBackoffAndTheCap() {
+		Backoff backoff = CustomRetryGatewayFilterFactory.decorrelatedJitterBackoff("10,3,100");
+
+		Duration previous = Duration.ZERO;
+		for (int i = 0; i < 1000; i++) {
+			Duration delay = backoff.apply(context(previous)).delay();
+			long upper = Math.min(100, (previous.isZero() ? 10 : previous.toMillis()) * 3);
+			assertThat(delay.toMillis()).isBetween(10L, upper);
+			// Start over now and then, so early and capped delays are both covered
+			previous = i % 10 == 9 ? Duration.ZERO : delay;
+		}
+	}
+
+	private static IterationContext<Object> context(Duration previous) {
+		return new IterationContext<>() {
+			@Override
+			public Object applicationContext() {
+				return null;
+			}
+
+			@Override
+			public long iteration() {
+				return 1;
+			}
+
+			@Override
+			public Duration backoff() {
+				return previous;
+			}
+		};
+	}
+
+	private void run(CustomRetryGatewayFilterFactory.Config config, NettyDataBuffer body, long contentLength,
+			List<String> seenBodies, int succeedOnAttempt) {
+		GatewayFilter filter = factory.apply(config);
+
+		MockServerHttpRequest request = MockServerHttpRequest.post("/orders")
+				.contentLength(contentLength)
+				.body(Flux.just(body));
+		MockServerWebExchange exchange = MockServerWebExchange.from(request);
+		exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+				.id("orders")
+				.uri(URI.create("http://orders:8080"))
+				.predicate(e -> true)
+				.build());
+
+		GatewayFilterChain chain = attemptExchange -> DataBufferUtils.join(attemptExchange.getRequest().getBody())
+				.map(buffer -> {
+					String content = buffer.toString(StandardCharsets.UTF_8);
+					DataBufferUtils.release(buffer);
+					return content;
+				})
+				.doOnNext(seenBodies::add)
+				.then(Mono.fromRunnable(() -> attemptExchange.getResponse().setStatusCode(
+						seenBodies.size() >= succeedOnAttempt ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)));
+
+		filter.filter(exchange, chain).block(Duration.ofSeconds(5));
+	}
+
+	private NettyDataBuffer nettyBody(String content) {
+		NettyDataBuffer buffer = bufferFactory.allocateBuffer(content.length());
+		buffer.write(content, StandardCharsets.UTF_8);
+		return buffer;
+	}
+}
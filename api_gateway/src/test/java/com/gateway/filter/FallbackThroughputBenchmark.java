@@ -0,0 +1,159 @@
+package com.gateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.service.FallbackResponseRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigurationProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fallback throughput with the breaker forced open: the precomputed in-process
+ * fallback against building the FallbackController body per request. Not part
+ * of the regular test run, start it with
+ * {@code mvn test -Dtest=FallbackThroughputBenchmark}.
+ */
+class FallbackThroughputBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 200_000;
+
+	private static final int MEASURED_ITERATIONS = 1_000_000;
+
+	private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Route route = Route.async()
+			.id("orders")
+			.uri(URI.create("http://orders:8080"))
+			.predicate(e -> true)
+			.build();
+
+	@Test
+	void fallbackThroughputWithOpenBreaker() throws Exception {
+		CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+		ReactiveResilience4JCircuitBreakerFactory circuitBreakerFactory = new ReactiveResilience4JCircuitBreakerFactory(
+				circuitBreakerRegistry, TimeLimiterRegistry.ofDefaults(), new Resilience4JConfigurationProperties());
+		CircuitBreakerGatewayFilterFactory factory = new CircuitBreakerGatewayFilterFactory(circuitBreakerFactory,
+				circuitBreakerRegistry,
+				new FallbackResponseRegistry(objectMapper, new SimpleMeterRegistry(), 1024 * 1024, 60000));
+		CircuitBreakerGatewayFilterFactory.Config config = new CircuitBreakerGatewayFilterFactory.Config();
+		config.setName("orders");
+		config.setFallbackUri("/fallback/orders");
+		GatewayFilter filter = factory.apply(config);
+		circuitBreakerRegistry.circuitBreaker("orders").transitionToForcedOpenState();
+
+		GatewayFilterChain unreachable = exchange -> Mono.error(new IllegalStateException("breaker is open"));
+
+		// Baseline: the call goes through the reactive breaker and the fallback
+		// builds the controller's HashMap body and serializes it per request
+		GatewayFilter perRequestBody = (exchange, chain) -> circuitBreakerFactory.create("orders")
+				.run(chain.filter(exchange), throwable -> {
+					Map<String, Object> body = new HashMap<>();
+					body.put("status", "error");
+					body.put("message", "Service temporarily unavailable");
+					body.put("service", "orders");
+					try {
+						byte[] bytes = objectMapper.writeValueAsBytes(body);
+						ServerHttpResponse response = exchange.getResponse();
+						response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+						response.getHeaders().setContentLength(bytes.length);
+						return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
+					} catch (Exception e) {
+						return Mono.error(e);
+					}
+				});
+
+		double precomputed = measure("precomputed in-process fallback", filter, unreachable);
+		double perRequest = measure("per-request body (controller style)", perRequestBody, unreachable);
+
+		System.out.printf("precomputed / per-request: %.2fx%n", precomputed / perRequest);
+		assertThat(precomputed).isPositive();
+	}
+
+	private double measure(String name, GatewayFilter filter, GatewayFilterChain chain) {
+		run(filter, chain, WARMUP_ITERATIONS);
+		long start = System.nanoTime();
+		run(filter, chain, MEASURED_ITERATIONS);
+		long elapsed = System.nanoTime() - start;
+		double opsPerSecond = MEASURED_ITERATIONS / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+		System.out.printf("%-40s %,12.0f ops/s %8.0f ns/op%n", name, opsPerSecond,
+				elapsed / (double) MEASURED_ITERATIONS);
+		return opsPerSecond;
+	}
+
+	private void run(GatewayFilter filter, GatewayFilterChain chain, int iterations) {
+		MockServerHttpRequest request = MockServerHttpRequest.get("/orders/1").build();
+		for (int i = 0; i < iterations; i++) {
+			ServerWebExchange exchange = new DefaultServerWebExchange(request, new DiscardingResponse(bufferFactory),
+					new DefaultWebSessionManager(), ServerCodecConfigurer.create(),
+					new AcceptHeaderLocaleContextResolver());
+			exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+			filter.filter(exchange, chain).block();
+		}
+	}
+
+	// Releases written buffers right away, like a connection flushing them
+	private static class DiscardingResponse extends AbstractServerHttpResponse {
+
+		DiscardingResponse(NettyDataBufferFactory bufferFactory) {
+			super(bufferFactory);
+		}
+
+		@Override
+		public <T> T getNativeResponse() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+			return Flux.from(body).doOnNext(DataBufferUtils::release).then();
+		}
+
+		@Override
+		protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+			return Flux.from(body).flatMap(this::writeWithInternal).then();
+		}
+
+		@Override
+		protected void applyStatusCode() {
+		}
+
+		@Override
+		protected void applyHeaders() {
+		}
+
+		@Override
+		protected void applyCookies() {
+		}
+	}
+}
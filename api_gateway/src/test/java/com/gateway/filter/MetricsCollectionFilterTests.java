@@ -0,0 +1,115 @@
+package com.gateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.entity.ApiMetric;
+import com.gateway.service.ApiMetricsService;
+import com.gateway.service.GatewayMeters;
+import com.gateway.service.LiveMetricsService;
+import com.gateway.service.PathNormalizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetricsCollectionFilterTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final List<ApiMetric> saved = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+	private final MetricsCollectionFilter filter = new MetricsCollectionFilter(
+			new ApiMetricsService(null, null, null, null) {
+				@Override
+				public Mono<Void> saveMetric(ApiMetric metric) {
+					saved.add(metric);
+					return Mono.empty();
+				}
+			},
+			new LiveMetricsService(new ObjectMapper(), registry, 60),
+			new GatewayMeters(registry, new long[] { 100 }, 10),
+			new PathNormalizer(100, 10));
+
+	@Test
+	void requestsAnsweredBeforeRoutingAreCounted() {
+		// A limiter in front of the upstream answers with a 429
+		GatewayFilter limiter = (exchange, chain) -> {
+			exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+			return exchange.getResponse().setComplete();
+		};
+
+		handle(new OrderedGatewayFilter(limiter, 1));
+
+		assertThat(upstreamCalls).hasValue(0);
+		assertThat(requests("4xx")).isEqualTo(1);
+		assertThat(saved).singleElement().extracting(ApiMetric::getStatusCode).isEqualTo(429);
+	}
+
+	@Test
+	void retriedRequestsAreCountedOnce() {
+		GatewayFilter retry = (exchange, chain) -> chain.filter(exchange).retry(2);
+
+		handle(new OrderedGatewayFilter(retry, 1));
+
+		assertThat(upstreamCalls).hasValue(3);
+		assertThat(requests("2xx")).isEqualTo(1);
+		assertThat(registry.find(GatewayMeters.REQUESTS).timers()).hasSize(1);
+		assertThat(saved).hasSize(1);
+	}
+
+	private void handle(GatewayFilter routeFilter) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/orders/1")
+				.remoteAddress(new InetSocketAddress("10.0.0.1", 40000)));
+		exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+				.id("orders")
+				.uri(URI.create("http://orders:8080"))
+				.predicate(e -> true)
+				.filters(routeFilter)
+				.build());
+
+		new FilteringWebHandler(List.of(filter, new Upstream())).handle(exchange).block(Duration.ofSeconds(5));
+	}
+
+	private long requests(String status) {
+		return registry.find(GatewayMeters.REQUESTS).tag("route", "orders").tag("status", status).timer().count();
+	}
+
+	// Stands in for routing: the third attempt succeeds, earlier ones fail like a refused connection
+	private final class Upstream implements GlobalFilter, Ordered {
+
+		@Override
+		public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+			if (upstreamCalls.incrementAndGet() < 3) {
+				return Mono.error(new IllegalStateException("connection refused"));
+			}
+			exchange.getResponse().setStatusCode(HttpStatus.OK);
+			return exchange.getResponse().setComplete();
+		}
+
+		@Override
+		public int getOrder() {
+			return Ordered.LOWEST_PRECEDENCE;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.gateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.model.CachedResponse;
+import com.gateway.service.ResponseCacheService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class ResponseCacheGatewayFilterFactoryTests {
+
+	private ResponseCacheService cacheService;
+
+	private ResponseCacheGatewayFilterFactory factory;
+
+	private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+	private final List<ServerHttpRequest> upstreamRequests = new CopyOnWriteArrayList<>();
+
+	private String upstreamCacheControl;
+
+	private String upstreamVary;
+
+	@BeforeEach
+	void setUp() {
+		cacheService = new ResponseCacheService(null, new ObjectMapper(), new SimpleMeterRegistry(), 1024 * 1024);
+		factory = new ResponseCacheGatewayFilterFactory(cacheService);
+	}
+
+	@Test
+	void missIsStoredAndServedAsHit() {
+		GatewayFilter filter = factory.apply(config());
+
+		MockServerWebExchange miss = run(filter, MockServerHttpRequest.get("/orders/1"));
+		MockServerWebExchange hit = run(filter, MockServerHttpRequest.get("/orders/1"));
+
+		assertThat(upstreamCalls).hasValue(1);
+		assertThat(miss.getResponse().getHeaders().getFirst("X-Cache")).isNull();
+		assertThat(hit.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("HIT");
+		assertThat(hit.getResponse().getBodyAsString().block()).isEqualTo("order 1");
+	}
+
+	@Test
+	void noStoreIsNeitherServedNorStored() {
+		GatewayFilter filter = factory.apply(config());
+		run(filter, MockServerHttpRequest.get("/orders/1"));
+
+		MockServerWebExchange bypassed = run(filter,
+				MockServerHttpRequest.get("/orders/1").header(HttpHeaders.CACHE_CONTROL, "no-store"));
+		assertThat(upstreamCalls).hasValue(2);
+		assertThat(bypassed.getResponse().getHeaders().getFirst("X-Cache")).isNull();
+
+		upstreamCacheControl = "no-store";
+		run(filter, MockServerHttpRequest.get("/orders/2"));
+		MockServerWebExchange again = run(filter, MockServerHttpRequest.get("/orders/2"));
+		assertThat(upstreamCalls).hasValue(4);
+		assertThat(again.getResponse().getHeaders().getFirst("X-Cache")).isNull();
+	}
+
+	@Test
+	void requestsWithCredentialsBypassTheCache() {
+		GatewayFilter filter = factory.apply(config());
+		run(filter, MockServerHttpRequest.get("/orders/1"));
+
+		run(filter, MockServerHttpRequest.get("/orders/1").header(HttpHeaders.AUTHORIZATION, "Bearer a"));
+		run(filter, MockServerHttpRequest.get("/orders/1").header(HttpHeaders.COOKIE, "session=b"));
+
+		assertThat(upstreamCalls).hasValue(3);
+	}
+
+	@Test
+	void responsesVaryingOutsideTheKeyAreNotStored() {
+		ResponseCacheGatewayFilterFactory.Config config = config();
+		config.setVaryHeaders("X-Tenant");
+		GatewayFilter filter = factory.apply(config);
+
+		// A gzip body for one client must not reach another without Accept-Encoding
+		upstreamVary = "Accept-Encoding";
+		run(filter, MockServerHttpRequest.get("/orders/1"));
+		run(filter, MockServerHttpRequest.get("/orders/1"));
+		assertThat(upstreamCalls).hasValue(2);
+
+		upstreamVary = "x-tenant";
+		run(filter, MockServerHttpRequest.get("/orders/2"));
+		MockServerWebExchange hit = run(filter, MockServerHttpRequest.get("/orders/2"));
+		assertThat(upstreamCalls).hasValue(3);
+		assertThat(hit.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("HIT");
+	}
+
+	@Test
+	void staleEntryIsServedAndRevalidatedThroughTheChain() {
+		ResponseCacheGatewayFilterFactory.Config config = config();
+		config.setStaleWhileRevalidateSeconds(60);
+		GatewayFilter filter = factory.apply(config);
+		MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/orders/1?expand=items")
+				.header("X-Tenant", "acme")
+				.header(HttpHeaders.IF_NONE_MATCH, "\"v1\"");
+		long now = System.currentTimeMillis();
+		cacheService.put(RequestKeys.of("orders", request.build(), List.of()), new CachedResponse(200, Map.of(),
+				"old order 1".getBytes(StandardCharsets.UTF_8), now - 120_000, now - 60_000, now + 60_000), false);
+
+		MockServerWebExchange stale = run(filter, request);
+
+		assertThat(stale.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("STALE");
+		assertThat(stale.getResponse().getBodyAsString().block()).isEqualTo("old order 1");
+		await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(
+				run(filter, MockServerHttpRequest.get("/orders/1?expand=items")).getResponse().getBodyAsString().block())
+				.isEqualTo("order 1"));
+
+		// The refresh ran in process with the client's headers minus its validators
+		HttpHeaders revalidation = upstreamRequests.get(0).getHeaders();
+		assertThat(upstreamRequests).hasSize(1);
+		assertThat(upstreamRequests.get(0).getURI()).hasToString("/orders/1?expand=items");
+		assertThat(revalidation.getFirst("X-Tenant")).isEqualTo("acme");
+		assertThat(revalidation.containsKey(HttpHeaders.IF_NONE_MATCH)).isFalse();
+		assertThat(stale.getResponse().getHeaders().getFirst("X-Upstream")).isNull();
+	}
+
+	private ResponseCacheGatewayFilterFactory.Config config() {
+		return new ResponseCacheGatewayFilterFactory.Config();
+	}
+
+	private MockServerWebExchange run(GatewayFilter filter, MockServerHttpRequest.BaseBuilder<?> request) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(request);
+		exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+				.id("orders")
+				.uri(URI.create("http://orders:8080"))
+				.predicate(e -> true)
+				.build());
+
+		GatewayFilterChain chain = routed -> {
+			upstreamCalls.incrementAndGet();
+			upstreamRequests.add(routed.getRequest());
+			String path = routed.getRequest().getURI().getPath();
+			routed.getResponse().setStatusCode(HttpStatus.OK);
+			if (upstreamCacheControl != null) {
+				routed.getResponse().getHeaders().setCacheControl(upstreamCacheControl);
+			}
+			if (upstreamVary != null) {
+				routed.getResponse().getHeaders().setVary(List.of(upstreamVary));
+			}
+			routed.getResponse().getHeaders().set("X-Upstream", "orders");
+			byte[] body = ("order " + path.substring(path.lastIndexOf('/') + 1)).getBytes(StandardCharsets.UTF_8);
+			return routed.getResponse().writeWith(Mono.just(routed.getResponse().bufferFactory().wrap(body)));
+		};
+
+		filter.filter(exchange, chain).block(Duration.ofSeconds(5));
+		return exchange;
+	}
+}
@@ -0,0 +1,188 @@
+package com.gateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightGatewayFilterFactoryTests {
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private GatewayFilter filter;
+
+	private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+	// Holds upstream responses back until every request has arrived
+	private final Sinks.Empty<Void> gate = Sinks.empty();
+
+	private HttpStatus upstreamStatus = HttpStatus.OK;
+
+	private String upstreamCookie;
+
+	private String upstreamVary;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		filter = new SingleFlightGatewayFilterFactory(meterRegistry)
+				.apply(new SingleFlightGatewayFilterFactory.Config());
+	}
+
+	@Test
+	void followerIsAnsweredWithTheLeadersResponse() {
+		MockServerWebExchange leader = exchange(MockServerHttpRequest.get("/orders/1"));
+		MockServerWebExchange follower = exchange(MockServerHttpRequest.get("/orders/1"));
+
+		runConcurrently(leader, follower);
+
+		assertThat(upstreamCalls).hasValue(1);
+		assertThat(follower.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(follower.getResponse().getBodyAsString().block()).isEqualTo("response 1");
+		assertThat(leader.getResponse().getBodyAsString().block()).isEqualTo("response 1");
+		assertThat(meterRegistry.counter("gateway.singleflight.saved", "route", "orders").count()).isEqualTo(1);
+	}
+
+	@Test
+	void requestsWithCredentialsNeitherJoinNorLead() {
+		MockServerWebExchange leader = exchange(MockServerHttpRequest.get("/orders/1"));
+		MockServerWebExchange authorized = exchange(
+				MockServerHttpRequest.get("/orders/1").header(HttpHeaders.AUTHORIZATION, "Bearer a"));
+		MockServerWebExchange withCookie = exchange(
+				MockServerHttpRequest.get("/orders/1").header(HttpHeaders.COOKIE, "session=b"));
+
+		runConcurrently(leader, authorized, withCookie);
+
+		assertThat(upstreamCalls).hasValue(3);
+		assertThat(authorized.getResponse().getBodyAsString().block()).isNotEqualTo("response 1");
+		assertThat(withCookie.getResponse().getBodyAsString().block()).isNotEqualTo("response 1");
+	}
+
+	@Test
+	void errorResponsesAreNotShared() {
+		upstreamStatus = HttpStatus.SERVICE_UNAVAILABLE;
+		MockServerWebExchange leader = exchange(MockServerHttpRequest.get("/orders/1"));
+		MockServerWebExchange follower = exchange(MockServerHttpRequest.get("/orders/1"));
+
+		runConcurrently(leader, follower);
+
+		// The follower went upstream itself and got its own answer
+		assertThat(upstreamCalls).hasValue(2);
+		assertThat(follower.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(follower.getResponse().getBodyAsString().block()).isEqualTo("response 2");
+		assertThat(meterRegistry.counter("gateway.singleflight.fallback", "route", "orders", "reason", "not_shared")
+				.count()).isEqualTo(1);
+	}
+
+	@Test
+	void responsesSettingCookiesAreNotShared() {
+		upstreamCookie = "session=leader";
+		MockServerWebExchange leader = exchange(MockServerHttpRequest.get("/orders/1"));
+		MockServerWebExchange follower = exchange(MockServerHttpRequest.get("/orders/1"));
+
+		runConcurrently(leader, follower);
+
+		assertThat(upstreamCalls).hasValue(2);
+		assertThat(follower.getResponse().getBodyAsString().block()).isEqualTo("response 2");
+	}
+
+	@Test
+	void rangeRequestsNeitherJoinNorLead() {
+		MockServerWebExchange leader = exchange(MockServerHttpRequest.get("/orders/1"));
+		MockServerWebExchange range = exchange(
+				MockServerHttpRequest.get("/orders/1").header(HttpHeaders.RANGE, "bytes=0-3"));
+		MockServerWebExchange ifRange = exchange(MockServerHttpRequest.get("/orders/1")
+				.header(HttpHeaders.RANGE, "bytes=4-").header(HttpHeaders.IF_RANGE, "\"v1\""));
+
+		runConcurrently(leader, range, ifRange);
+
+		assertThat(upstreamCalls).hasValue(3);
+		assertThat(range.getResponse().getBodyAsString().block()).isNotEqualTo("response 1");
+		assertThat(ifRange.getResponse().getBodyAsString().block()).isNotEqualTo("response 1");
+	}
+
+	@Test
+	void responsesVaryingOutsideTheKeyAreNotShared() {
+		// A gzip body negotiated by the leader must not reach a client without Accept-Encoding
+		upstreamVary = "Accept-Encoding";
+		MockServerWebExchange leader = exchange(
+				MockServerHttpRequest.get("/orders/1").header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+		MockServerWebExchange follower = exchange(MockServerHttpRequest.get("/orders/1"));
+
+		runConcurrently(leader, follower);
+
+		assertThat(upstreamCalls).hasValue(2);
+		assertThat(follower.getResponse().getBodyAsString().block()).isEqualTo("response 2");
+	}
+
+	@Test
+	void responsesVaryingOnKeyHeadersAreShared() {
+		filter = new SingleFlightGatewayFilterFactory(meterRegistry).apply(config("X-Tenant"));
+		upstreamVary = "x-tenant";
+		MockServerWebExchange leader = exchange(MockServerHttpRequest.get("/orders/1").header("X-Tenant", "acme"));
+		MockServerWebExchange follower = exchange(MockServerHttpRequest.get("/orders/1").header("X-Tenant", "acme"));
+
+		runConcurrently(leader, follower);
+
+		assertThat(upstreamCalls).hasValue(1);
+		assertThat(follower.getResponse().getBodyAsString().block()).isEqualTo("response 1");
+	}
+
+	private static SingleFlightGatewayFilterFactory.Config config(String varyHeaders) {
+		SingleFlightGatewayFilterFactory.Config config = new SingleFlightGatewayFilterFactory.Config();
+		config.setVaryHeaders(varyHeaders);
+		return config;
+	}
+
+	private void runConcurrently(MockServerWebExchange... exchanges) {
+		GatewayFilterChain chain = routed -> {
+			int call = upstreamCalls.incrementAndGet();
+			return gate.asMono().then(Mono.defer(() -> {
+				routed.getResponse().setStatusCode(upstreamStatus);
+				if (upstreamCookie != null) {
+					routed.getResponse().getHeaders().add(HttpHeaders.SET_COOKIE, upstreamCookie);
+				}
+				if (upstreamVary != null) {
+					routed.getResponse().getHeaders().setVary(List.of(upstreamVary));
+				}
+				byte[] body = ("response " + call).getBytes(StandardCharsets.UTF_8);
+				return routed.getResponse().writeWith(Mono.just(routed.getResponse().bufferFactory().wrap(body)));
+			}));
+		};
+
+		Mono<?>[] requests = new Mono<?>[exchanges.length + 1];
+		for (int i = 0; i < exchanges.length; i++) {
+			requests[i] = filter.filter(exchanges[i], chain);
+		}
+		// Subscribed in order, so the gate opens once all requests are waiting
+		requests[exchanges.length] = Mono.fromRunnable(gate::tryEmitEmpty);
+		Mono.when(requests).block(Duration.ofSeconds(5));
+	}
+
+	private MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(request);
+		exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+				.id("orders")
+				.uri(URI.create("http://orders:8080"))
+				.predicate(e -> true)
+				.build());
+		return exchange;
+	}
+}
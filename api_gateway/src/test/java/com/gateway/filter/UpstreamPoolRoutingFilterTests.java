@@ -0,0 +1,150 @@
+package com.gateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.service.UpstreamPoolService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.ssl.DefaultSslBundleRegistry;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.ResolvableType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.CONNECT_TIMEOUT_ATTR;
+
+class UpstreamPoolRoutingFilterTests {
+
+	private final HttpClient sharedClient = HttpClient.create();
+
+	private UpstreamPoolService poolService;
+
+	private UpstreamPoolRoutingFilter filter;
+
+	private final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+
+	@BeforeEach
+	void setUp() {
+		HttpClientProperties properties = new HttpClientProperties();
+		ServerProperties serverProperties = new ServerProperties();
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		poolService = new UpstreamPoolService(properties, serverProperties,
+				new HttpClientSslConfigurer(properties.getSsl(), serverProperties, new DefaultSslBundleRegistry()),
+				beanFactory.getBeanProvider(HttpClientCustomizer.class), new ObjectMapper(), new SimpleMeterRegistry(),
+				0);
+		filter = new UpstreamPoolRoutingFilter(sharedClient,
+				beanFactory.getBeanProvider(ResolvableType.forClassWithGenerics(List.class, HttpHeadersFilter.class)),
+				properties, poolService);
+	}
+
+	@AfterEach
+	void tearDown() {
+		poolService.shutdown();
+	}
+
+	@Test
+	void routesToAnUpstreamWithAPoolUseThatPool() {
+		Route orders = route("orders", "http://orders:8080", Map.of("connectionPool", Map.of("maxConnections", 5)));
+		// Same upstream, no pool settings of its own
+		Route ordersAdmin = route("orders-admin", "http://orders:8080/admin", Map.of());
+		Route users = route("users", "http://users:8080", Map.of());
+		refresh(orders, ordersAdmin, users);
+
+		HttpClient pooled = filter.getHttpClient(orders, exchange);
+		assertThat(pooled).isNotSameAs(sharedClient).isSameAs(poolService.clientFor(orders.getUri()));
+		assertThat(filter.getHttpClient(ordersAdmin, exchange)).isSameAs(pooled);
+		assertThat(filter.getHttpClient(users, exchange)).isSameAs(sharedClient);
+	}
+
+	@Test
+	void balancedRequestsUseThePoolOfTheChosenTarget() {
+		// orders-b also serves a route of its own, which comes first and sets a bigger pool
+		Route reports = Route.async()
+				.id("reports")
+				.uri(URI.create("http://orders-b:8080"))
+				.order(-1)
+				.predicate(e -> true)
+				.metadata(Map.of("connectionPool", Map.of("maxConnections", 20)))
+				.build();
+		Route orders = route("orders", "http://orders-a:8080", Map.of(
+				"connectionPool", Map.of("maxConnections", 5),
+				"targets", List.of(Map.of("uri", "http://orders-a:8080", "weight", 1),
+						Map.of("uri", "http://orders-b:8080", "weight", 1))));
+		refresh(orders, reports);
+
+		HttpClient toA = filter.getHttpClient(orders, balancedTo("http://orders-a:8080/orders/1"));
+		HttpClient toB = filter.getHttpClient(orders, balancedTo("http://orders-b:8080/orders/1"));
+
+		assertThat(toA.configuration().connectionProvider().maxConnections()).isEqualTo(5);
+		assertThat(toB).isSameAs(poolService.clientFor(reports.getUri()));
+		assertThat(toB.configuration().connectionProvider().maxConnections()).isEqualTo(20);
+	}
+
+	@Test
+	void pooledClientKeepsTheRoutesConnectTimeout() {
+		Route orders = route("orders", "http://orders:8080", Map.of(
+				"connectionPool", Map.of("maxConnections", 5), CONNECT_TIMEOUT_ATTR, 250));
+		refresh(orders);
+
+		HttpClient client = filter.getHttpClient(orders, exchange);
+
+		assertThat(client.configuration().options().get(ChannelOption.CONNECT_TIMEOUT_MILLIS)).isEqualTo(250);
+	}
+
+	@Test
+	void changedSettingsReplaceThePoolAndRemovedOnesFallBackToTheSharedClient() {
+		Route orders = route("orders", "http://orders:8080", Map.of("connectionPool", Map.of("maxConnections", 5)));
+		refresh(orders);
+		HttpClient before = filter.getHttpClient(orders, exchange);
+
+		refresh(orders);
+		assertThat(filter.getHttpClient(orders, exchange)).isSameAs(before);
+
+		Route resized = route("orders", "http://orders:8080", Map.of("connectionPool", Map.of("maxConnections", 10)));
+		refresh(resized);
+		assertThat(filter.getHttpClient(resized, exchange)).isNotSameAs(before).isNotSameAs(sharedClient);
+
+		Route unpooled = route("orders", "http://orders:8080", Map.of());
+		refresh(unpooled);
+		assertThat(filter.getHttpClient(unpooled, exchange)).isSameAs(sharedClient);
+	}
+
+	// As left by WeightedTargetRoutingFilter after picking a target
+	private static MockServerWebExchange balancedTo(String url) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/orders/1"));
+		exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, URI.create(url));
+		return exchange;
+	}
+
+	private void refresh(Route... routes) {
+		RouteLocator locator = () -> Flux.just(routes);
+		poolService.onRoutesRefreshed(new RefreshRoutesResultEvent(locator));
+	}
+
+	private static Route route(String id, String uri, Map<String, Object> metadata) {
+		return Route.async()
+				.id(id)
+				.uri(URI.create(uri))
+				.predicate(e -> true)
+				.metadata(metadata)
+				.build();
+	}
+}
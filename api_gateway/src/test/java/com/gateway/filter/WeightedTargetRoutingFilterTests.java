@@ -0,0 +1,206 @@
+package com.gateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.service.UpstreamHealthService;
+import com.gateway.service.UpstreamLoadBalancer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WeightedTargetRoutingFilterTests {
+
+	private final List<DisposableServer> servers = new ArrayList<>();
+
+	private final HttpClient httpClient = HttpClient.create();
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private UpstreamHealthService healthService;
+
+	private UpstreamLoadBalancer loadBalancer;
+
+	private WeightedTargetRoutingFilter filter;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		healthService = new UpstreamHealthService(WebClient.builder(), meterRegistry, true, 0, 1000, 4, 1, 1, 3, "/");
+		useLatencyDecay(10000);
+	}
+
+	// A short decay makes picking close to weighted random, independent of timing
+	private void useLatencyDecay(long decayMillis) {
+		loadBalancer = new UpstreamLoadBalancer(new ObjectMapper(), meterRegistry, healthService, decayMillis, 0.5, 5,
+				60000, 60000, 0.5);
+		filter = new WeightedTargetRoutingFilter(loadBalancer);
+	}
+
+	@AfterEach
+	void tearDown() {
+		servers.forEach(DisposableServer::disposeNow);
+	}
+
+	@Test
+	void prefersTheFasterTargets() {
+		StubServer fast1 = stub(HttpStatus.OK, Duration.ZERO);
+		StubServer fast2 = stub(HttpStatus.OK, Duration.ZERO);
+		StubServer slow = stub(HttpStatus.OK, Duration.ofMillis(80));
+		Route route = route(target(fast1, 1), target(fast2, 1), target(slow, 1));
+		warmUp(fast1, fast2, slow);
+
+		send(route, 90, 4);
+
+		assertThat(fast1.hits.get() + fast2.hits.get() + slow.hits.get()).isEqualTo(90);
+		assertThat(slow.hits.get()).isLessThan(15);
+	}
+
+	@Test
+	void sendsMoreTrafficToHeavierTargets() {
+		StubServer heavy = stub(HttpStatus.OK, Duration.ZERO);
+		StubServer light = stub(HttpStatus.OK, Duration.ZERO);
+		Route route = route(target(heavy, 3), target(light, 1));
+		// Connection setup would otherwise show up as a latency peak on the first target
+		warmUp(heavy, light);
+
+		send(route, 100, 1);
+
+		assertThat(heavy.hits.get() + light.hits.get()).isEqualTo(100);
+		assertThat(heavy.hits.get()).isGreaterThan(light.hits.get());
+	}
+
+	@Test
+	void ejectsTargetWithHighErrorRate() {
+		useLatencyDecay(1);
+		StubServer healthy1 = stub(HttpStatus.OK, Duration.ZERO);
+		StubServer healthy2 = stub(HttpStatus.OK, Duration.ZERO);
+		StubServer failing = stub(HttpStatus.INTERNAL_SERVER_ERROR, Duration.ZERO);
+		Route route = route(target(healthy1, 1), target(healthy2, 1), target(failing, 1));
+
+		send(route, 60, 1);
+
+		// Ejected after the minimum number of requests in the window, all failures
+		assertThat(failing.hits.get()).isEqualTo(5);
+		assertThat(healthy1.hits.get() + healthy2.hits.get()).isEqualTo(55);
+		assertThat(meterRegistry.counter("gateway.loadbalancer.ejections", "route", "items",
+				"target", "http://localhost:" + failing.server.port()).count()).isEqualTo(1);
+	}
+
+	@Test
+	void neverEjectsMoreThanTheAllowedShare() {
+		useLatencyDecay(1);
+		StubServer healthy = stub(HttpStatus.OK, Duration.ZERO);
+		StubServer failing1 = stub(HttpStatus.INTERNAL_SERVER_ERROR, Duration.ZERO);
+		StubServer failing2 = stub(HttpStatus.INTERNAL_SERVER_ERROR, Duration.ZERO);
+		Route route = route(target(healthy, 1), target(failing1, 1), target(failing2, 1));
+
+		send(route, 60, 1);
+
+		// With three targets at most one may be out at a time
+		assertThat(failing1.hits.get() > 5 || failing2.hits.get() > 5).isTrue();
+		assertThat(meterRegistry.get("gateway.loadbalancer.ejections").counters()).hasSize(1);
+	}
+
+	@Test
+	void skipsTargetsReportedDownByHealthChecks() {
+		StubServer up = stub(HttpStatus.OK, Duration.ZERO);
+		StubServer down = stub(HttpStatus.OK, Duration.ZERO);
+		Route route = route(target(up, 1), target(down, 1));
+		healthService.reconcile(List.of(route));
+		URI downUri = URI.create("http://localhost:" + down.server.port());
+		for (int i = 0; i < 3; i++) {
+			healthService.recordPassive(downUri, false);
+		}
+
+		send(route, 20, 1);
+
+		assertThat(healthService.isHealthy(downUri)).isFalse();
+		assertThat(up.hits.get()).isEqualTo(20);
+		assertThat(down.hits.get()).isZero();
+	}
+
+	// Sends requests through the filter, the chain forwards to the balanced URL
+	private void send(Route route, int requests, int concurrency) {
+		loadBalancer.reconcile(List.of(route));
+
+		GatewayFilterChain chain = exchange -> {
+			URI url = exchange.getRequiredAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+			return httpClient.get()
+					.uri(url)
+					.responseSingle((response, body) -> body.then(Mono.fromRunnable(() -> exchange.getResponse()
+							.setStatusCode(HttpStatus.valueOf(response.status().code())))))
+					.then();
+		};
+
+		Flux.range(0, requests)
+				.flatMap(i -> {
+					MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/items/" + i));
+					exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+					exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+							URI.create("http://placeholder/items/" + i));
+					return filter.filter(exchange, chain);
+				}, concurrency)
+				.blockLast(Duration.ofSeconds(30));
+	}
+
+	private void warmUp(StubServer... stubs) {
+		for (StubServer stub : stubs) {
+			httpClient.get()
+					.uri("http://localhost:" + stub.server.port())
+					.responseSingle((response, body) -> body)
+					.block(Duration.ofSeconds(5));
+			stub.hits.set(0);
+		}
+	}
+
+	private Route route(Map<?, ?>... targets) {
+		return Route.async()
+				.id("items")
+				.uri(URI.create("http://placeholder"))
+				.predicate(exchange -> true)
+				.metadata(UpstreamLoadBalancer.TARGETS_KEY, List.of(targets))
+				.build();
+	}
+
+	private Map<String, Object> target(StubServer stub, int weight) {
+		return Map.of("uri", "http://localhost:" + stub.server.port(), "weight", weight);
+	}
+
+	private StubServer stub(HttpStatus status, Duration delay) {
+		AtomicInteger hits = new AtomicInteger();
+		DisposableServer server = HttpServer.create()
+				.host("localhost")
+				.port(0)
+				.handle((request, response) -> {
+					hits.incrementAndGet();
+					return Mono.delay(delay).then(response.status(status.value()).sendString(Mono.just("ok")).then());
+				})
+				.bindNow();
+		servers.add(server);
+		return new StubServer(server, hits);
+	}
+
+	private record StubServer(DisposableServer server, AtomicInteger hits) {
+	}
+}
@@ -0,0 +1,220 @@
+package com.gateway.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Just enough of a RESP2 server over loopback for Lettuce to talk to: PING,
+ * GET, SET, INCR, EXPIRE, DEL, HMGET, HSET, and PFADD and PFCOUNT counting
+ * exactly, on an in-memory keyspace.
+ * Replies to pipelined commands go out in one write, like Redis does, and
+ * the number of reads that carried commands is counted.
+ */
+class FakeRedisServer implements AutoCloseable {
+
+	private final ServerSocket serverSocket;
+
+	private final Map<String, Object> keyspace = new HashMap<>();
+
+	private final List<Socket> clients = new ArrayList<>();
+
+	final AtomicLong commands = new AtomicLong();
+
+	final AtomicLong flushes = new AtomicLong();
+
+	FakeRedisServer() throws IOException {
+		serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(this::accept, "fake-redis-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	int port() {
+		return serverSocket.getLocalPort();
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		synchronized (clients) {
+			for (Socket client : clients) {
+				client.close();
+			}
+		}
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				synchronized (clients) {
+					clients.add(socket);
+				}
+				Thread worker = new Thread(() -> serve(socket), "fake-redis-client");
+				worker.setDaemon(true);
+				worker.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (socket) {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+			while (true) {
+				List<String> command = readCommand(in);
+				commands.incrementAndGet();
+				reply(command, out);
+				// Everything the client pipelined has been answered, send it in one go
+				if (in.available() == 0) {
+					out.flush();
+					flushes.incrementAndGet();
+				}
+			}
+		} catch (IOException e) {
+			// client went away
+		}
+	}
+
+	private void reply(List<String> command, OutputStream out) throws IOException {
+		String name = command.get(0).toUpperCase();
+		synchronized (keyspace) {
+			switch (name) {
+				case "PING" -> simple(out, "PONG");
+				case "GET" -> bulk(out, (String) keyspace.get(command.get(1)));
+				case "SET" -> {
+					keyspace.put(command.get(1), command.get(2));
+					simple(out, "OK");
+				}
+				case "INCR" -> {
+					long value = Long.parseLong((String) keyspace.getOrDefault(command.get(1), "0")) + 1;
+					keyspace.put(command.get(1), Long.toString(value));
+					integer(out, value);
+				}
+				case "EXPIRE" -> integer(out, keyspace.containsKey(command.get(1)) ? 1 : 0);
+				case "DEL" -> {
+					long removed = command.stream().skip(1).filter(key -> keyspace.remove(key) != null).count();
+					integer(out, removed);
+				}
+				case "HMGET" -> {
+					Map<String, String> hash = hash(command.get(1));
+					out.write(("*" + (command.size() - 2) + "\r\n").getBytes(StandardCharsets.UTF_8));
+					for (String field : command.subList(2, command.size())) {
+						bulk(out, hash.get(field));
+					}
+				}
+				case "HSET" -> {
+					Map<String, String> hash = hash(command.get(1));
+					long added = 0;
+					for (int i = 2; i + 1 < command.size(); i += 2) {
+						if (hash.put(command.get(i), command.get(i + 1)) == null) {
+							added++;
+						}
+					}
+					integer(out, added);
+				}
+				case "PFADD" -> {
+					Set<String> set = set(command.get(1));
+					long changed = 0;
+					for (String member : command.subList(2, command.size())) {
+						if (set.add(member)) {
+							changed = 1;
+						}
+					}
+					integer(out, changed);
+				}
+				case "PFCOUNT" -> {
+					Set<String> union = new HashSet<>();
+					for (String key : command.subList(1, command.size())) {
+						union.addAll(set(key));
+					}
+					integer(out, union.size());
+				}
+				case "CLIENT", "SELECT" -> simple(out, "OK");
+				default -> out.write(("-ERR unknown command '" + name + "'\r\n").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, String> hash(String key) {
+		return (Map<String, String>) keyspace.computeIfAbsent(key, k -> new HashMap<String, String>());
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<String> set(String key) {
+		return (Set<String>) keyspace.computeIfAbsent(key, k -> new HashSet<String>());
+	}
+
+	Set<String> keys() {
+		synchronized (keyspace) {
+			return Set.copyOf(keyspace.keySet());
+		}
+	}
+
+	private static List<String> readCommand(InputStream in) throws IOException {
+		String header = readLine(in);
+		if (!header.startsWith("*")) {
+			return List.of(header.trim().split("\\s+"));
+		}
+		int count = Integer.parseInt(header.substring(1));
+		List<String> args = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int length = Integer.parseInt(readLine(in).substring(1));
+			byte[] bytes = in.readNBytes(length);
+			in.readNBytes(2);
+			args.add(new String(bytes, StandardCharsets.UTF_8));
+		}
+		return args;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int b;
+		while ((b = in.read()) != '\r') {
+			if (b == -1) {
+				throw new EOFException();
+			}
+			line.append((char) b);
+		}
+		in.read();
+		return line.toString();
+	}
+
+	private static void simple(OutputStream out, String value) throws IOException {
+		out.write(("+" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void integer(OutputStream out, long value) throws IOException {
+		out.write((":" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void bulk(OutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+		out.write(bytes);
+		out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+	}
+}
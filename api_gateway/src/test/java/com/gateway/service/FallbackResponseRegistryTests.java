@@ -0,0 +1,35 @@
+package com.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FallbackResponseRegistryTests {
+
+	private final FallbackResponseRegistry registry = new FallbackResponseRegistry(new ObjectMapper(),
+			new SimpleMeterRegistry(), 1024, 60000);
+
+	@Test
+	void configuredFallbacksAreBuiltOnceAndSharedWithTheController() {
+		FallbackResponseRegistry.FallbackResponse configured = registry.forFallbackUri("forward:/fallback/orders");
+
+		assertThat(registry.forFallbackUri("/fallback/orders")).isSameAs(configured);
+		assertThat(registry.forService("orders")).isSameAs(configured);
+		assertThat(configured.status()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(new String(configured.bytes(), StandardCharsets.UTF_8)).contains("\"service\":\"orders\"");
+	}
+
+	@Test
+	void unknownServicesAreAnsweredWithoutBeingKept() {
+		FallbackResponseRegistry.FallbackResponse first = registry.forService("no-such-service");
+
+		assertThat(new String(first.bytes(), StandardCharsets.UTF_8)).contains("\"service\":\"no-such-service\"");
+		// Built again for the next request, so arbitrary names cannot fill the registry
+		assertThat(registry.forService("no-such-service")).isNotSameAs(first);
+	}
+}
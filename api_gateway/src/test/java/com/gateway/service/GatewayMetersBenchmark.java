@@ -0,0 +1,87 @@
+package com.gateway.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Nanoseconds per request spent updating the request meters on a Prometheus
+ * registry, over 50 routes: through {@link GatewayMeters}, which keeps its
+ * timers per route, against building and registering the timer on every
+ * request the way ad hoc meter code does. Not part of the regular test
+ * run, start it with {@code mvn test -Dtest=GatewayMetersBenchmark}.
+ */
+class GatewayMetersBenchmark {
+
+	private static final int ROUTES = 50;
+
+	private static final int WARMUP = 1_000_000;
+
+	private static final int MEASURED = 5_000_000;
+
+	private static final Duration[] SLOS = { Duration.ofMillis(10), Duration.ofMillis(25), Duration.ofMillis(50),
+			Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1),
+			Duration.ofMillis(2500), Duration.ofSeconds(5) };
+
+	private static final String[] ROUTE_IDS = new String[ROUTES];
+
+	static {
+		for (int i = 0; i < ROUTES; i++) {
+			ROUTE_IDS[i] = "route-" + i;
+		}
+	}
+
+	@Test
+	void meterUpdateCostPerRequest() {
+		PrometheusMeterRegistry cachedRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+		GatewayMeters meters = new GatewayMeters(cachedRegistry,
+				new long[] { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000 }, 500);
+		double cached = measure(i -> meters.record(ROUTE_IDS[i % ROUTES], HttpStatus.OK, false, false, latency(i)));
+
+		PrometheusMeterRegistry lookupRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+		double lookedUp = measure(i -> lookup(lookupRegistry, ROUTE_IDS[i % ROUTES])
+				.record(latency(i), TimeUnit.NANOSECONDS));
+
+		System.out.printf("%-28s %10.1f ns/request%n", "GatewayMeters", cached);
+		System.out.printf("%-28s %10.1f ns/request%n", "Timer.builder per request", lookedUp);
+		assertThat(cachedRegistry.scrape()).contains("gateway_requests_seconds_bucket");
+	}
+
+	private static Timer lookup(MeterRegistry registry, String routeId) {
+		return Timer.builder(GatewayMeters.REQUESTS)
+				.tag("route", routeId)
+				.tag("status", "2xx")
+				.tag("interaction", GatewayMeters.USER_TO_APP)
+				.serviceLevelObjectives(SLOS)
+				.register(registry);
+	}
+
+	private static long latency(int i) {
+		return (i % 1000) * 100_000L;
+	}
+
+	private static double measure(Request request) {
+		run(request, WARMUP);
+		long start = System.nanoTime();
+		run(request, MEASURED);
+		return (double) (System.nanoTime() - start) / MEASURED;
+	}
+
+	private static void run(Request request, int requests) {
+		for (int i = 0; i < requests; i++) {
+			request.record(i);
+		}
+	}
+
+	private interface Request {
+		void record(int i);
+	}
+}
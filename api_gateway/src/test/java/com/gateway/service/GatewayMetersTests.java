@@ -0,0 +1,77 @@
+package com.gateway.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GatewayMetersTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final GatewayMeters meters = new GatewayMeters(registry, new long[] { 100, 10, 50 }, 2);
+
+	@Test
+	void tagsByRouteStatusClassAndInteraction() {
+		meters.record("orders", HttpStatus.OK, false, false, millis(5));
+		meters.record("orders", HttpStatus.CREATED, false, false, millis(70));
+		meters.record("orders", HttpStatus.SERVICE_UNAVAILABLE, false, true, millis(5));
+		meters.record("orders", null, false, false, millis(5));
+		meters.record("orders", HttpStatus.OK, true, false, millis(5));
+
+		assertThat(timer("orders", "2xx", GatewayMeters.USER_TO_APP).count()).isEqualTo(2);
+		assertThat(timer("orders", "5xx", GatewayMeters.APP_TO_APP).count()).isEqualTo(1);
+		assertThat(timer("orders", "error", GatewayMeters.USER_TO_APP).count()).isEqualTo(1);
+		assertThat(timer("orders", "cancelled", GatewayMeters.USER_TO_APP).count()).isEqualTo(1);
+
+		CountAtBucket[] buckets = timer("orders", "2xx", GatewayMeters.USER_TO_APP).takeSnapshot().histogramCounts();
+		assertThat(buckets).extracting(bucket -> bucket.bucket(TimeUnit.MILLISECONDS))
+				.containsExactly(10.0, 50.0, 100.0);
+		assertThat(buckets).extracting(CountAtBucket::count).containsExactly(1.0, 1.0, 2.0);
+	}
+
+	@Test
+	void routesPastTheCapAreCountedAsOther() {
+		meters.record("a", HttpStatus.OK, false, false, millis(1));
+		meters.record("b", HttpStatus.OK, false, false, millis(1));
+		meters.record("c", HttpStatus.OK, false, false, millis(1));
+		meters.record("d", HttpStatus.OK, false, false, millis(1));
+
+		assertThat(registry.find(GatewayMeters.REQUESTS).timers())
+				.extracting(timer -> timer.getId().getTag("route"))
+				.containsExactlyInAnyOrder("a", "b", GatewayMeters.OTHER_ROUTE);
+		assertThat(timer(GatewayMeters.OTHER_ROUTE, "2xx", GatewayMeters.USER_TO_APP).count()).isEqualTo(2);
+	}
+
+	@Test
+	void removedRoutesFreeTheirMeters() {
+		meters.record("a", HttpStatus.OK, false, false, millis(1));
+		meters.record("b", HttpStatus.OK, false, false, millis(1));
+
+		meters.retain(List.of("b"));
+		meters.record("c", HttpStatus.OK, false, false, millis(1));
+
+		assertThat(registry.find(GatewayMeters.REQUESTS).timers())
+				.extracting(timer -> timer.getId().getTag("route"))
+				.containsExactlyInAnyOrder("b", "c");
+	}
+
+	private Timer timer(String route, String status, String interaction) {
+		return registry.get(GatewayMeters.REQUESTS)
+				.tag("route", route)
+				.tag("status", status)
+				.tag("interaction", interaction)
+				.timer();
+	}
+
+	private static long millis(long millis) {
+		return Duration.ofMillis(millis).toNanos();
+	}
+}
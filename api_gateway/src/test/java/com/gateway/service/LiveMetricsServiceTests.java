@@ -0,0 +1,124 @@
+package com.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LiveMetricsServiceTests {
+
+	private final long[] now = { 1_000 };
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final LiveMetricsService service = new LiveMetricsService(() -> now[0], new ObjectMapper(), registry, 2);
+
+	@Test
+	void snapshotsCarryRatesErrorsAndPercentiles() {
+		for (int i = 1; i <= 100; i++) {
+			service.record("orders", Duration.ofMillis(i).toNanos(), i > 90);
+		}
+		service.record("users", Duration.ofMillis(3).toNanos(), false);
+		service.tick();
+
+		LiveMetricsService.Snapshot snapshot = service.stream().blockFirst(Duration.ofSeconds(1));
+
+		assertThat(snapshot.timestamp()).isEqualTo(1_000);
+		assertThat(snapshot.routes()).extracting(LiveMetricsService.RouteStats::routeId)
+				.containsExactly("orders", "users");
+		LiveMetricsService.RouteStats orders = snapshot.routes().get(0);
+		assertThat(orders.requestsPerSecond()).isEqualTo(100);
+		assertThat(orders.errorRatio()).isEqualTo(0.1);
+		// Bucket bounds are at most a quarter above the real latency
+		assertThat(orders.p50Millis()).isBetween(50.0, 62.5);
+		assertThat(orders.p95Millis()).isBetween(95.0, 118.75);
+		assertThat(orders.p99Millis()).isBetween(99.0, 123.75);
+	}
+
+	@Test
+	void idleRoutesReportZeroThenDisappear() {
+		service.record("orders", 1_000_000, false);
+		service.tick();
+		service.tick();
+		service.tick();
+		assertThat(service.stream().blockFirst().routes()).singleElement()
+				.satisfies(stats -> assertThat(stats.requestsPerSecond()).isZero());
+
+		service.tick();
+		assertThat(service.stream().blockFirst().routes()).isEmpty();
+	}
+
+	@Test
+	void slowSubscribersSkipToTheLatestWithoutHoldingUpOthers() {
+		List<String> fast = new CopyOnWriteArrayList<>();
+		Disposable fastSubscription = service.streamJson(null).subscribe(fast::add);
+		List<String> slow = new CopyOnWriteArrayList<>();
+		BaseSubscriber<String> slowSubscriber = new BaseSubscriber<>() {
+			@Override
+			protected void hookOnSubscribe(Subscription subscription) {
+				request(1);
+			}
+
+			@Override
+			protected void hookOnNext(String json) {
+				slow.add(json);
+			}
+		};
+		service.streamJson(null).subscribe(slowSubscriber);
+
+		for (int i = 0; i < 5; i++) {
+			now[0] += 1_000;
+			service.tick();
+		}
+		assertThat(fast).hasSize(5);
+		assertThat(slow).hasSize(1);
+
+		slowSubscriber.request(1);
+		// Everything in between was conflated away, and both got the very same serialized snapshot
+		assertThat(slow).hasSize(2);
+		assertThat(slow.get(1)).isSameAs(fast.get(4)).contains("\"timestamp\":6000");
+		fastSubscription.dispose();
+		slowSubscriber.dispose();
+	}
+
+	@Test
+	void narrowedStreamsOnlyCarryTheirRoutes() {
+		service.record("orders", 1_000_000, false);
+		service.record("users", 1_000_000, true);
+		service.tick();
+
+		StepVerifier.create(service.streamJson(Set.of("users")).take(1))
+				.assertNext(json -> assertThat(json).contains("\"users\"").doesNotContain("orders"))
+				.verifyComplete();
+	}
+
+	@Test
+	void subscriberGaugeCountsEveryViewer() {
+		Disposable first = service.streamJson(null).subscribe();
+		Disposable second = service.streamJson(null).subscribe();
+		Disposable narrowed = service.streamJson(Set.of("orders")).subscribe();
+
+		// The two unfiltered viewers share one subscription to the snapshots
+		assertThat(subscribers()).isEqualTo(3);
+
+		first.dispose();
+		narrowed.dispose();
+		assertThat(subscribers()).isEqualTo(1);
+		second.dispose();
+		assertThat(subscribers()).isZero();
+	}
+
+	private double subscribers() {
+		return registry.get("gateway.metrics.live.subscribers").gauge().value();
+	}
+}
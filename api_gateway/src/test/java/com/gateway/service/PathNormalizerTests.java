@@ -0,0 +1,50 @@
+package com.gateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathNormalizerTests {
+
+	private final PathNormalizer normalizer = new PathNormalizer(1000, 3);
+
+	@Test
+	void routePatternWithoutWildcardsIsTheTemplate() {
+		assertThat(normalizer.template("/users/123/orders", "/users/{userId}/orders"))
+				.isEqualTo("/users/{userId}/orders");
+	}
+
+	@Test
+	void keepsWhatTheRoutePatternNames() {
+		assertThat(normalizer.template("/api/2024/users/42", "/api/2024/**")).isEqualTo("/api/2024/users/{id}");
+		assertThat(normalizer.template("/shops/7/items/9", "/shops/{shop}/**")).isEqualTo("/shops/{shop}/items/{id}");
+	}
+
+	@Test
+	void detectsNumericUuidAndHashSegments() {
+		assertThat(normalizer.template("/users/123", null)).isEqualTo("/users/{id}");
+		assertThat(normalizer.template("/orders/3f2b8c1e-9a4d-4e2f-8b7a-1c2d3e4f5a6b/items", null))
+				.isEqualTo("/orders/{uuid}/items");
+		assertThat(normalizer.template("/blobs/9e107d9d372bb6826bd81d3542a419d6", null)).isEqualTo("/blobs/{hash}");
+		// Long words of hex letters only are not hashes
+		assertThat(normalizer.template("/feeds/deadbeefcafebabefade", null)).isEqualTo("/feeds/deadbeefcafebabefade");
+		assertThat(normalizer.template("/", null)).isEqualTo("/");
+		assertThat(normalizer.template("/users/", null)).isEqualTo("/users/");
+	}
+
+	@Test
+	void learnsPositionsWithTooManyValues() {
+		assertThat(normalizer.template("/articles/first-post", null)).isEqualTo("/articles/first-post");
+		assertThat(normalizer.template("/articles/second-post", null)).isEqualTo("/articles/second-post");
+		assertThat(normalizer.template("/articles/third-post", null)).isEqualTo("/articles/third-post");
+		assertThat(normalizer.template("/articles/first-post", null)).isEqualTo("/articles/first-post");
+
+		assertThat(normalizer.template("/articles/fourth-post/comments", null)).isEqualTo("/articles/{param}/comments");
+		assertThat(normalizer.template("/articles/first-post", null)).isEqualTo("/articles/{param}");
+		// Other prefixes learn on their own, and first segments tell routes apart so they never turn into params
+		assertThat(normalizer.template("/authors/jane", null)).isEqualTo("/authors/jane");
+		for (String service : new String[] { "billing", "search", "inventory", "shipping" }) {
+			assertThat(normalizer.template("/" + service + "/status", null)).isEqualTo("/" + service + "/status");
+		}
+	}
+}
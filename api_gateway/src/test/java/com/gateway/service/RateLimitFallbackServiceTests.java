@@ -0,0 +1,201 @@
+package com.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.filter.RedisRateLimiterGatewayFilterFactory;
+import com.gateway.model.RateLimitAlgorithm;
+import com.gateway.service.ratelimit.InMemoryRateLimiter;
+import com.gateway.service.ratelimit.Quota;
+import com.gateway.service.ratelimit.RateLimit;
+import com.gateway.service.ratelimit.RateLimitKeyResolvers;
+import com.gateway.service.ratelimit.ScriptedRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class RateLimitFallbackServiceTests {
+
+	private final AtomicReference<Mono<Long>> heartbeatReply = new AtomicReference<>(Mono.just(1L));
+
+	private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private RateLimitFallbackService service;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		service = new RateLimitFallbackService((nodeId, time) -> heartbeatReply.get(), now::get,
+				new InMemoryRateLimiter(() -> now.get() * 1000), meterRegistry, Duration.ofMillis(100), 3, 1);
+	}
+
+	@Test
+	void switchesToLocalAfterConsecutiveFailures() {
+		RuntimeException timeout = new RuntimeException("timeout");
+
+		service.recordFailure(timeout);
+		service.recordFailure(timeout);
+		service.recordSuccess();
+		service.recordFailure(timeout);
+		service.recordFailure(timeout);
+		assertThat(service.mode()).isEqualTo(RateLimitFallbackService.Mode.GLOBAL);
+
+		service.recordFailure(timeout);
+		assertThat(service.mode()).isEqualTo(RateLimitFallbackService.Mode.LOCAL);
+		assertThat(meterRegistry.counter("gateway.rate-limit.mode.switches", "mode", "local").count()).isEqualTo(1);
+	}
+
+	@Test
+	void splitsTheGlobalLimitAcrossKnownNodes() {
+		heartbeatReply.set(Mono.just(4L));
+		service.heartbeat();
+		assertThat(service.knownNodes()).isEqualTo(4);
+
+		List<Quota> tenPerSecond = List.of(new Quota("rate-limit:{orders:10.0.0.1}",
+				new RateLimit(RateLimitAlgorithm.FIXED_WINDOW, 10, 10)));
+		List<Quota> twoPerSecond = List.of(new Quota("rate-limit:{orders:10.0.0.2}",
+				new RateLimit(RateLimitAlgorithm.FIXED_WINDOW, 2, 2)));
+		int allowed = 0;
+		for (int i = 0; i < 20; i++) {
+			if (service.tryAcquireLocally(tenPerSecond, 1)) {
+				allowed++;
+			}
+		}
+		assertThat(allowed).isEqualTo(3);
+
+		// A new second opens a new window
+		now.addAndGet(1000);
+		assertThat(service.tryAcquireLocally(tenPerSecond, 1)).isTrue();
+		// Never less than one request per second per node
+		assertThat(service.tryAcquireLocally(twoPerSecond, 1)).isTrue();
+		assertThat(service.tryAcquireLocally(twoPerSecond, 1)).isFalse();
+	}
+
+	@Test
+	void costIsCappedAtThisNodesShare() {
+		heartbeatReply.set(Mono.just(4L));
+		service.heartbeat();
+		// 20 across four nodes leaves 5 here, a request costing the full 20 takes all of them
+		List<Quota> twentyPerSecond = List.of(new Quota("rate-limit:{reports:10.0.0.1}",
+				new RateLimit(RateLimitAlgorithm.SLIDING_LOG, 20, 20)));
+
+		assertThat(service.tryAcquireLocally(twentyPerSecond, 20)).isTrue();
+		assertThat(service.tryAcquireLocally(twentyPerSecond, 1)).isFalse();
+
+		now.addAndGet(1000);
+		assertThat(service.tryAcquireLocally(twentyPerSecond, 3)).isTrue();
+		assertThat(service.tryAcquireLocally(twentyPerSecond, 3)).isFalse();
+		assertThat(service.tryAcquireLocally(twentyPerSecond, 2)).isTrue();
+	}
+
+	@Test
+	void heartbeatTakesFailuresAndBringsGlobalModeBack() {
+		heartbeatReply.set(Mono.error(new IllegalStateException("Redis is not reachable")));
+		for (int i = 0; i < 3; i++) {
+			service.heartbeat();
+		}
+		assertThat(service.mode()).isEqualTo(RateLimitFallbackService.Mode.LOCAL);
+
+		// Still down, stays local without counting more switches
+		service.heartbeat();
+		assertThat(service.mode()).isEqualTo(RateLimitFallbackService.Mode.LOCAL);
+
+		heartbeatReply.set(Mono.just(2L));
+		service.heartbeat();
+		assertThat(service.mode()).isEqualTo(RateLimitFallbackService.Mode.GLOBAL);
+		assertThat(service.knownNodes()).isEqualTo(2);
+		assertThat(meterRegistry.counter("gateway.rate-limit.mode.switches", "mode", "local").count()).isEqualTo(1);
+		assertThat(meterRegistry.counter("gateway.rate-limit.mode.switches", "mode", "global").count()).isEqualTo(1);
+	}
+
+	@Test
+	void slowHeartbeatCountsAsFailure() {
+		heartbeatReply.set(Mono.delay(Duration.ofSeconds(5)).thenReturn(1L));
+		for (int i = 0; i < 3; i++) {
+			service.heartbeat();
+		}
+
+		await().atMost(Duration.ofSeconds(2))
+				.until(() -> service.mode() == RateLimitFallbackService.Mode.LOCAL);
+	}
+
+	@Test
+	void localModeDropsNoErrorsWhileRedisHangs() throws Exception {
+		List<Throwable> dropped = new CopyOnWriteArrayList<>();
+		Hooks.onErrorDropped(dropped::add);
+		// Connecting hangs until the test lets it fail, like a connect timeout
+		CountDownLatch connectTimesOut = new CountDownLatch(1);
+		RedisCommandBatcher batcher = new RedisCommandBatcher(() -> {
+			try {
+				connectTimesOut.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw new IllegalStateException("connect timed out");
+		}, meterRegistry, 256, 0, Duration.ofSeconds(5));
+		try {
+			RateLimitFallbackService fallback = new RateLimitFallbackService(batcher, new SimpleMeterRegistry(), 50,
+					2, 1, 1000);
+			RedisRateLimiterGatewayFilterFactory.Config config = new RedisRateLimiterGatewayFilterFactory.Config();
+			config.setReplenishRate(3);
+			config.setBurstCapacity(3);
+			GatewayFilter filter = new RedisRateLimiterGatewayFilterFactory(new ScriptedRateLimiter(batcher),
+					fallback, new RateLimitKeyResolvers(Map.of(), new ObjectMapper(), 0), new SimpleMeterRegistry())
+					.apply(config);
+
+			// Two requests time out on Redis and are limited locally, then Redis is skipped
+			assertThat(rateLimited(filter)).isFalse();
+			assertThat(rateLimited(filter)).isFalse();
+			assertThat(fallback.mode()).isEqualTo(RateLimitFallbackService.Mode.LOCAL);
+			// The heartbeat probing Redis times out too and leaves it local
+			fallback.heartbeat();
+			await().pollDelay(Duration.ofMillis(200)).atMost(Duration.ofSeconds(2))
+					.until(() -> fallback.mode() == RateLimitFallbackService.Mode.LOCAL);
+			assertThat(rateLimited(filter)).isFalse();
+			assertThat(rateLimited(filter)).isTrue();
+
+			// The failed connect fails what is still queued, nothing that timed out before
+			connectTimesOut.countDown();
+			assertThatThrownBy(() -> batcher.execute(commands -> commands.ping()).block(Duration.ofSeconds(5)))
+					.hasMessageContaining("not reachable");
+			assertThat(dropped).isEmpty();
+		} finally {
+			Hooks.resetOnErrorDropped();
+			batcher.close();
+		}
+	}
+
+	private static boolean rateLimited(GatewayFilter filter) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/orders/1")
+				.remoteAddress(new InetSocketAddress("10.0.0.1", 40000)));
+		exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+				.id("orders")
+				.uri(URI.create("http://orders:8080"))
+				.predicate(e -> true)
+				.build());
+		filter.filter(exchange, routed -> Mono.empty()).block(Duration.ofSeconds(5));
+		return exchange.getResponse().getStatusCode() == HttpStatus.TOO_MANY_REQUESTS;
+	}
+}
@@ -0,0 +1,91 @@
+package com.gateway.service;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.StringCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Redis commands per second at increasing concurrency, each command an INCR
+ * on one of 1000 rate limit keys: one command per flush through
+ * ReactiveStringRedisTemplate, as the gateway used to send them, against
+ * {@link RedisCommandBatcher}. Runs against {@link FakeRedisServer} over
+ * loopback, so absolute numbers are low; the ratio is what to look at. Not
+ * part of the regular test run, start it with
+ * {@code mvn test -Dtest=RedisBatchingBenchmark}.
+ */
+class RedisBatchingBenchmark {
+
+	private static final int[] CONCURRENCY = { 1, 8, 64, 256 };
+
+	private static final int WARMUP_COMMANDS = 20_000;
+
+	private static final int MEASURED_COMMANDS = 100_000;
+
+	@Test
+	void commandsPerSecondByConcurrency() throws Exception {
+		try (FakeRedisServer server = new FakeRedisServer()) {
+			String host = InetAddress.getLoopbackAddress().getHostAddress();
+
+			LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(
+					new RedisStandaloneConfiguration(host, server.port()),
+					LettuceClientConfiguration.builder().commandTimeout(Duration.ofSeconds(5)).build());
+			connectionFactory.afterPropertiesSet();
+			connectionFactory.start();
+			ReactiveStringRedisTemplate template = new ReactiveStringRedisTemplate(connectionFactory,
+					RedisSerializationContext.string());
+
+			RedisClient client = RedisClient.create(RedisURI.create(host, server.port()));
+			RedisCommandBatcher batcher = new RedisCommandBatcher(() -> {
+				StatefulRedisConnection<String, String> connection = client.connect(StringCodec.UTF8);
+				return new RedisCommandBatcher.Pipeline(connection, connection.async());
+			}, new SimpleMeterRegistry(), 256, 0, Duration.ofSeconds(5));
+
+			try {
+				System.out.printf("%-12s %16s %16s %8s%n", "concurrency", "template cmd/s", "batched cmd/s", "ratio");
+				double ratioAtMax = 0;
+				for (int concurrency : CONCURRENCY) {
+					double unbatched = measure(concurrency,
+							i -> template.opsForValue().increment("rate-limit:" + (i % 1000)));
+					double batched = measure(concurrency,
+							i -> batcher.execute(commands -> commands.incr("rate-limit:" + (i % 1000))));
+					ratioAtMax = batched / unbatched;
+					System.out.printf("%-12d %,16.0f %,16.0f %7.2fx%n", concurrency, unbatched, batched, ratioAtMax);
+				}
+				assertThat(ratioAtMax).isPositive();
+			} finally {
+				batcher.close();
+				client.shutdown();
+				connectionFactory.destroy();
+			}
+		}
+	}
+
+	private double measure(int concurrency, IntFunction<Mono<Long>> command) {
+		run(concurrency, command, WARMUP_COMMANDS);
+		long start = System.nanoTime();
+		run(concurrency, command, MEASURED_COMMANDS);
+		return MEASURED_COMMANDS / ((System.nanoTime() - start) / 1e9);
+	}
+
+	private void run(int concurrency, IntFunction<Mono<Long>> command, int commands) {
+		Flux.range(0, commands)
+				.flatMap(command::apply, concurrency)
+				.blockLast(Duration.ofMinutes(2));
+	}
+}
@@ -0,0 +1,131 @@
+package com.gateway.service;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.StringCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Hooks;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RedisCommandBatcherTests {
+
+	private FakeRedisServer server;
+
+	private RedisClient client;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private RedisCommandBatcher batcher;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		server = new FakeRedisServer();
+		client = RedisClient.create(RedisURI.create(InetAddress.getLoopbackAddress().getHostAddress(), server.port()));
+		meterRegistry = new SimpleMeterRegistry();
+		batcher = new RedisCommandBatcher(() -> {
+			StatefulRedisConnection<String, String> connection = client.connect(StringCodec.UTF8);
+			return new RedisCommandBatcher.Pipeline(connection, connection.async());
+		}, meterRegistry, 256, 0, Duration.ofSeconds(5));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		batcher.close();
+		client.shutdown();
+		server.close();
+	}
+
+	@Test
+	void completesRepliesInTheOrderCommandsWereQueued() {
+		List<Long> counts = Flux.range(0, 2000)
+				.flatMapSequential(i -> batcher.execute(commands -> commands.incr("counter")), 512)
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+		assertThat(counts).hasSize(2000);
+		for (int i = 0; i < counts.size(); i++) {
+			assertThat(counts.get(i)).isEqualTo(i + 1);
+		}
+	}
+
+	@Test
+	void sendsConcurrentCommandsAsFewerPipelines() {
+		Flux.range(0, 5000)
+				.flatMap(i -> batcher.execute(commands -> commands.incr("key-" + (i % 50))), 256)
+				.blockLast(Duration.ofSeconds(10));
+
+		assertThat(meterRegistry.summary("gateway.redis.batch.size").totalAmount()).isEqualTo(5000);
+		assertThat(meterRegistry.summary("gateway.redis.batch.size").max()).isGreaterThan(1);
+		assertThat(meterRegistry.summary("gateway.redis.batch.size").count()).isLessThan(5000);
+	}
+
+	@Test
+	void runsHashCommandsForTheMetricsWriters() {
+		batcher.execute(commands -> commands.hset("metrics:orders", Map.of("duration", "12", "success", "1")))
+				.block(Duration.ofSeconds(5));
+
+		assertThat(batcher.execute(commands -> commands.hmget("metrics:orders", "duration", "missing"))
+				.block(Duration.ofSeconds(5)))
+				.extracting(keyValue -> keyValue.getValueOrElse(null))
+				.containsExactly("12", null);
+		assertThat(batcher.execute(commands -> commands.get("absent")).blockOptional()).isEmpty();
+	}
+
+	@Test
+	void commandsTimingOutBeforeTheConnectionAreDropped() throws Exception {
+		CountDownLatch connecting = new CountDownLatch(1);
+		List<Throwable> dropped = new CopyOnWriteArrayList<>();
+		Hooks.onErrorDropped(dropped::add);
+		RedisCommandBatcher slow = new RedisCommandBatcher(() -> {
+			try {
+				connecting.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			StatefulRedisConnection<String, String> connection = client.connect(StringCodec.UTF8);
+			return new RedisCommandBatcher.Pipeline(connection, connection.async());
+		}, meterRegistry, 256, 0, Duration.ofMillis(200));
+		try {
+			assertThatThrownBy(() -> slow.execute(commands -> commands.incr("counter")).block())
+					.hasCauseInstanceOf(TimeoutException.class);
+
+			connecting.countDown();
+			// The timed out increment never reached Redis
+			assertThat(slow.execute(commands -> commands.incr("counter")).block(Duration.ofSeconds(5)))
+					.isEqualTo(1);
+			assertThat(dropped).isEmpty();
+		} finally {
+			Hooks.resetOnErrorDropped();
+			slow.close();
+		}
+	}
+
+	@Test
+	void failsCommandsWhileRedisIsUnreachable() {
+		RedisCommandBatcher unreachable = new RedisCommandBatcher(() -> {
+			throw new IllegalStateException("connection refused");
+		}, meterRegistry, 256, 0, Duration.ofSeconds(5));
+		try {
+			assertThatThrownBy(() -> unreachable.execute(commands -> commands.incr("counter"))
+					.block(Duration.ofSeconds(5)))
+					.hasMessageContaining("not reachable");
+		} finally {
+			unreachable.close();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryBudgetServiceTests {
+
+	private final long[] now = { 0 };
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	void requestsEarnRetriesAtTheRatio() {
+		RetryBudgetService service = budget(0.25, 0, 3);
+
+		for (int i = 0; i < 4; i++) {
+			service.recordRequest("orders", "orders:8080");
+		}
+		assertThat(service.tryAcquireRetry("orders", "orders:8080")).isTrue();
+		assertThat(service.tryAcquireRetry("orders", "orders:8080")).isFalse();
+
+		// Banked tokens stop at the cap however long traffic runs without failures
+		for (int i = 0; i < 1000; i++) {
+			service.recordRequest("orders", "orders:8080");
+		}
+		assertThat(tokens("route", "orders")).isEqualTo(3);
+	}
+
+	@Test
+	void exhaustedBudgetsAreCountedByScope() {
+		RetryBudgetService service = budget(0.25, 0, 100);
+		for (int i = 0; i < 4; i++) {
+			service.recordRequest("orders", "orders-a:8080");
+		}
+
+		// The route has a token, the upstream it was balanced to has none
+		assertThat(service.tryAcquireRetry("orders", "orders-b:8080")).isFalse();
+		assertThat(exhausted("orders", "orders-b:8080", "upstream")).isEqualTo(1);
+		// The route token was given back
+		assertThat(service.tryAcquireRetry("orders", "orders-a:8080")).isTrue();
+		assertThat(service.tryAcquireRetry("orders", "orders-a:8080")).isFalse();
+		assertThat(exhausted("orders", "orders-a:8080", "route")).isEqualTo(1);
+		assertThat(registry.get("gateway.retry.attempts").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void reserveAllowsRetriesWithoutTraffic() {
+		RetryBudgetService service = budget(0.1, 5, 100);
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(service.tryAcquireRetry("orders", "orders:8080")).isTrue();
+		}
+		assertThat(service.tryAcquireRetry("orders", "orders:8080")).isFalse();
+
+		advance(Duration.ofMillis(200));
+		assertThat(service.tryAcquireRetry("orders", "orders:8080")).isTrue();
+		assertThat(service.tryAcquireRetry("orders", "orders:8080")).isFalse();
+
+		// The reserve refills up to one second's worth, not more
+		advance(Duration.ofSeconds(10));
+		assertThat(tokens("route", "orders")).isEqualTo(5);
+	}
+
+	@Test
+	void refundedReserveTokensGoBackToTheReserve() {
+		RetryBudgetService service = budget(0.1, 2, 100);
+		// Another route drains the upstream's reserve
+		service.tryAcquireRetry("users", "shared:8080");
+		service.tryAcquireRetry("users", "shared:8080");
+
+		assertThat(service.tryAcquireRetry("orders", "shared:8080")).isFalse();
+
+		// Credited to the banked tokens, the refund would add a third retry once the reserve refilled
+		advance(Duration.ofSeconds(1));
+		assertThat(tokens("route", "orders")).isEqualTo(2);
+	}
+
+	private RetryBudgetService budget(double ratio, double minRetriesPerSecond, double maxTokens) {
+		return new RetryBudgetService(registry, ratio, minRetriesPerSecond, maxTokens, () -> now[0]);
+	}
+
+	private void advance(Duration duration) {
+		now[0] += duration.toNanos();
+	}
+
+	private double tokens(String scope, String id) {
+		return registry.get("gateway.retry.budget.tokens").tag("scope", scope).tag("id", id).gauge().value();
+	}
+
+	private double exhausted(String routeId, String upstream, String scope) {
+		return registry.get("gateway.retry.budget.exhausted")
+				.tag("route", routeId)
+				.tag("upstream", upstream)
+				.tag("scope", scope)
+				.counter()
+				.count();
+	}
+}
@@ -0,0 +1,210 @@
+package com.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.config.RouteTable;
+import com.gateway.entity.Route;
+import com.gateway.model.RateLimitAlgorithm;
+import com.gateway.model.RateLimiterConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Several gateway nodes in one JVM, sharing an in-memory channel in place of
+ * Redis and a map in place of Mongo. Each node reads its own copies of the
+ * stored routes and versions them like {@link RouteTable} does.
+ */
+class RouteChangeBusTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Map<String, Route> store = new ConcurrentHashMap<>();
+
+	private final Sinks.Many<String> channel = Sinks.many().multicast().directBestEffort();
+
+	private final AtomicReference<String> clusterVersion = new AtomicReference<>();
+
+	private final List<Node> nodes = new ArrayList<>();
+
+	private volatile boolean dropMessages;
+
+	private final RouteChangeBus.Transport transport = new RouteChangeBus.Transport() {
+
+		@Override
+		public Mono<Void> publish(String message) {
+			return Mono.fromRunnable(() -> {
+				if (!dropMessages) {
+					channel.emitNext(message, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+				}
+			});
+		}
+
+		@Override
+		public Flux<String> messages() {
+			return channel.asFlux();
+		}
+
+		@Override
+		public Mono<Void> setVersion(String version) {
+			return Mono.fromRunnable(() -> clusterVersion.set(version));
+		}
+
+		@Override
+		public Mono<String> version() {
+			return Mono.fromSupplier(clusterVersion::get);
+		}
+	};
+
+	@AfterEach
+	void tearDown() {
+		nodes.forEach(node -> node.bus.stop());
+	}
+
+	@Test
+	void propagatesChangedRoutesToTheOtherNodes() {
+		Node a = node();
+		Node b = node();
+		Node c = node();
+		store.put("orders", route("orders", "http://orders:8080"));
+		store.put("users", route("users", "http://users:8080"));
+		a.coordinator.requestRefresh("api").block(Duration.ofSeconds(5));
+		await().atMost(5, TimeUnit.SECONDS).until(() -> b.routes.equals(store) && c.routes.equals(store));
+
+		store.put("orders", route("orders", "http://orders-v2:8080"));
+		a.coordinator.requestRefresh("api", List.of("orders")).block(Duration.ofSeconds(5));
+		await().atMost(5, TimeUnit.SECONDS).until(() -> b.routes.equals(store) && c.routes.equals(store));
+
+		// The first change reloaded everything, the second only the changed route
+		assertThat(b.reloads).containsExactly(new RouteRefreshCoordinator.Changes(Set.of(), true),
+				new RouteRefreshCoordinator.Changes(Set.of("orders"), false));
+		assertThat(c.meterRegistry.timer("gateway.routes.propagation", "outcome", "refreshed").count())
+				.isEqualTo(2);
+		assertThat(a.reloads).hasSize(2);
+		assertThat(clusterVersion.get()).isEqualTo(String.valueOf(a.version()))
+				.isEqualTo(String.valueOf(b.version()))
+				.isEqualTo(String.valueOf(c.version()));
+	}
+
+	@Test
+	void nodesHoldingTheSameRoutesAgree() {
+		Node a = node();
+		Node b = node();
+		store.put("orders", route("orders", "http://orders:8080"));
+		// b read the same routes on its own before a's change arrives
+		b.coordinator.requestRefresh("startup").block(Duration.ofSeconds(5));
+		a.coordinator.requestRefresh("api", List.of("orders")).block(Duration.ofSeconds(5));
+
+		await().atMost(5, TimeUnit.SECONDS).until(() -> b.meterRegistry
+				.counter("gateway.routes.propagation.received", "outcome", "current").count() == 1);
+		assertThat(b.reloads).hasSize(1);
+
+		a.bus.checkVersion();
+		b.bus.checkVersion();
+		assertThat(a.reloads).hasSize(1);
+		assertThat(b.reloads).hasSize(1);
+		assertThat(b.meterRegistry.counter("gateway.routes.propagation.repairs").count()).isZero();
+	}
+
+	@Test
+	void antiEntropyRepairsMissedChanges() {
+		Node a = node();
+		Node b = node();
+		dropMessages = true;
+		store.put("orders", route("orders", "http://orders:8080"));
+		a.coordinator.requestRefresh("api", List.of("orders")).block(Duration.ofSeconds(5));
+
+		assertThat(b.routes).isEmpty();
+		b.bus.checkVersion();
+		await().atMost(5, TimeUnit.SECONDS).until(() -> b.routes.equals(store));
+
+		assertThat(b.reloads).containsExactly(new RouteRefreshCoordinator.Changes(Set.of(), true));
+		assertThat(b.meterRegistry.counter("gateway.routes.propagation.repairs").count()).isEqualTo(1);
+
+		assertThat(clusterVersion.get()).isEqualTo(String.valueOf(a.version()));
+
+		// Back in step, the next checks do nothing on either node
+		a.bus.checkVersion();
+		b.bus.checkVersion();
+		assertThat(a.reloads).hasSize(1);
+		assertThat(b.reloads).hasSize(1);
+		assertThat(b.meterRegistry.counter("gateway.routes.propagation.repairs").count()).isEqualTo(1);
+	}
+
+	private Node node() {
+		Node node = new Node();
+		node.bus.start();
+		nodes.add(node);
+		return node;
+	}
+
+	private class Node {
+
+		final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+		final List<RouteRefreshCoordinator.Changes> reloads = new CopyOnWriteArrayList<>();
+
+		final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+		final RouteRefreshCoordinator coordinator = new RouteRefreshCoordinator(this::reload, meterRegistry,
+				Duration.ofMillis(20));
+
+		final RouteChangeBus bus = new RouteChangeBus(transport, coordinator, this::version, objectMapper,
+				meterRegistry, true);
+
+		Mono<Boolean> reload(RouteRefreshCoordinator.Changes changes) {
+			return Mono.fromSupplier(() -> {
+				reloads.add(changes);
+				long before = version();
+				if (changes.full()) {
+					routes.clear();
+					store.forEach((routeId, route) -> routes.put(routeId, read(route)));
+				} else {
+					for (String routeId : changes.routeIds()) {
+						Route route = store.get(routeId);
+						if (route == null) {
+							routes.remove(routeId);
+						} else {
+							routes.put(routeId, read(route));
+						}
+					}
+				}
+				return version() != before;
+			});
+		}
+
+		long version() {
+			return RouteTable.versionOf(List.copyOf(routes.values()));
+		}
+	}
+
+	// A fresh copy, as every node reads its own from Mongo
+	private Route read(Route stored) {
+		return objectMapper.convertValue(stored, Route.class);
+	}
+
+	private static Route route(String routeId, String uri) {
+		Route route = new Route();
+		route.setRouteId(routeId);
+		route.setPath("/" + routeId + "/**");
+		route.setUri(uri);
+		route.setEnabled(true);
+		route.setRateLimiter(RateLimiterConfig.builder().algorithm(RateLimitAlgorithm.SLIDING_WINDOW).build());
+		return route;
+	}
+}
@@ -0,0 +1,84 @@
+package com.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteRefreshCoordinatorTests {
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private AtomicInteger refreshes;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		refreshes = new AtomicInteger();
+	}
+
+	@Test
+	void coalescesABurstIntoOneRefresh() {
+		RouteRefreshCoordinator coordinator = coordinator(Mono.fromSupplier(() -> {
+			refreshes.incrementAndGet();
+			return true;
+		}));
+
+		List<RouteRefreshCoordinator.Outcome> outcomes = Flux.range(0, 20)
+				.flatMap(i -> coordinator.requestRefresh("api"))
+				.collectList()
+				.block(Duration.ofSeconds(5));
+
+		assertThat(outcomes).hasSize(20).containsOnly(RouteRefreshCoordinator.Outcome.REFRESHED);
+		assertThat(refreshes).hasValue(1);
+		assertThat(meterRegistry.counter("gateway.routes.refresh.coalesced").count()).isEqualTo(19);
+		assertThat(meterRegistry.timer("gateway.routes.refresh", "outcome", "refreshed").count()).isEqualTo(1);
+	}
+
+	@Test
+	void requestsDuringARefreshShareTheNextOne() {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		RouteRefreshCoordinator coordinator = coordinator(Mono.defer(() -> {
+			refreshes.incrementAndGet();
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			return Mono.delay(Duration.ofMillis(200)).thenReturn(true).doOnSuccess(r -> running.decrementAndGet());
+		}));
+
+		Mono<RouteRefreshCoordinator.Outcome> first = coordinator.requestRefresh("api").cache();
+		first.subscribe();
+		Mono.delay(Duration.ofMillis(100)).block();
+		List<RouteRefreshCoordinator.Outcome> later = Flux.range(0, 5)
+				.flatMap(i -> coordinator.requestRefresh("actuator"))
+				.collectList()
+				.block(Duration.ofSeconds(5));
+
+		assertThat(first.block(Duration.ofSeconds(5))).isEqualTo(RouteRefreshCoordinator.Outcome.REFRESHED);
+		assertThat(later).hasSize(5);
+		assertThat(refreshes).hasValue(2);
+		assertThat(maxRunning).hasValue(1);
+	}
+
+	@Test
+	void reportsUnchangedAndFailedRefreshes() {
+		RouteRefreshCoordinator unchanged = coordinator(Mono.just(false));
+		RouteRefreshCoordinator failing = coordinator(Mono.error(new IllegalStateException("mongo down")));
+
+		assertThat(unchanged.requestRefresh("api").block(Duration.ofSeconds(5)))
+				.isEqualTo(RouteRefreshCoordinator.Outcome.UNCHANGED);
+		assertThat(failing.requestRefresh("api").block(Duration.ofSeconds(5)))
+				.isEqualTo(RouteRefreshCoordinator.Outcome.FAILED);
+		assertThat(meterRegistry.timer("gateway.routes.refresh", "outcome", "failed").count()).isEqualTo(1);
+	}
+
+	private RouteRefreshCoordinator coordinator(Mono<Boolean> refresh) {
+		return new RouteRefreshCoordinator(changes -> refresh, meterRegistry, Duration.ofMillis(50));
+	}
+}
@@ -0,0 +1,141 @@
+package com.gateway.service;
+
+import com.gateway.entity.ApiMetric;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.StringCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UniqueClientsServiceTests {
+
+	private static final long MINUTE = 60_000;
+
+	private static final long DAY = 24 * 60 * MINUTE;
+
+	private final long start = 20_000 * DAY;
+
+	private final long[] now = { start };
+
+	private FakeRedisServer server;
+
+	private RedisClient client;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private RedisCommandBatcher batcher;
+
+	private UniqueClientsService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		server = new FakeRedisServer();
+		client = RedisClient.create(RedisURI.create(InetAddress.getLoopbackAddress().getHostAddress(), server.port()));
+		meterRegistry = new SimpleMeterRegistry();
+		batcher = new RedisCommandBatcher(() -> {
+			StatefulRedisConnection<String, String> connection = client.connect(StringCodec.UTF8);
+			return new RedisCommandBatcher.Pipeline(connection, connection.async());
+		}, meterRegistry, 256, 0, Duration.ofSeconds(5));
+		// Minutes are kept for half an hour, hours and days for a week
+		service = new UniqueClientsService(batcher, meterRegistry, () -> now[0], 1_000, 30, 7 * 24 * 60,
+				7 * 24 * 60);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		batcher.close();
+		client.shutdown();
+		server.close();
+	}
+
+	@Test
+	void repeatedClientsCostOnePfaddPerHyperLogLog() {
+		record(1, 3, 100);
+		service.write().block(Duration.ofSeconds(5));
+
+		assertThat(server.keys()).contains(
+				"unique:{route:orders:clients}:m:" + start / MINUTE,
+				"unique:{route:orders:clients}:h:" + start / (60 * MINUTE),
+				"unique:{route:orders:clients}:d:" + start / DAY,
+				"unique:{service:orders-service:user-agents}:d:" + start / DAY);
+
+		long before = server.commands.get();
+		record(1, 3, 100);
+		service.write().block(Duration.ofSeconds(5));
+		// Routes and services, two dimensions, three granularities, PFADD and EXPIRE each
+		assertThat(server.commands.get() - before).isEqualTo(2 * 2 * 3 * 2);
+	}
+
+	@Test
+	void rangesAreCountedFromTheCoarsestKeysThatFit() {
+		record(1, 3, 5);
+		service.write().block(Duration.ofSeconds(5));
+		now[0] = start + 90 * MINUTE;
+		// A flush sets aside the buffer for the next interval, counted in the minute it starts
+		service.write().block(Duration.ofSeconds(5));
+		record(3, 5, 5);
+		service.write().block(Duration.ofSeconds(5));
+
+		UniqueClientsService.Count twoHours = count(start, start + 120 * MINUTE - 1);
+		assertThat(twoHours.count()).isEqualTo(5);
+		assertThat(twoHours.from()).isEqualTo(start);
+		assertThat(twoHours.to()).isEqualTo(start + 120 * MINUTE);
+
+		UniqueClientsService.Count oneMinute = count(start + 90 * MINUTE, start + 90 * MINUTE);
+		assertThat(oneMinute.count()).isEqualTo(3);
+		assertThat(oneMinute.to() - oneMinute.from()).isEqualTo(MINUTE);
+
+		// Those minutes are gone, their hour answers instead
+		UniqueClientsService.Count expired = count(start + 10 * MINUTE, start + 20 * MINUTE);
+		assertThat(expired.count()).isEqualTo(3);
+		assertThat(expired.from()).isEqualTo(start);
+		assertThat(expired.to()).isEqualTo(start + 60 * MINUTE);
+
+		assertThat(service.series(UniqueClientsService.Scope.SERVICE, "orders-service",
+				UniqueClientsService.Dimension.CLIENTS, UniqueClientsService.Granularity.HOUR, start,
+				start + 120 * MINUTE - 1).collectList().block(Duration.ofSeconds(5)))
+				.extracting(UniqueClientsService.Count::count)
+				.containsExactly(3L, 3L);
+		assertThat(service.count(UniqueClientsService.Scope.ROUTE, "orders",
+				UniqueClientsService.Dimension.USER_AGENTS, start, start + DAY - 1)
+				.block(Duration.ofSeconds(5)).count()).isEqualTo(2);
+	}
+
+	@Test
+	void valuesPastTheBufferLimitAreDroppedAndCounted() {
+		service = new UniqueClientsService(batcher, meterRegistry, () -> now[0], 4, 30, 60, 60);
+		record(1, 10, 1);
+		service.write().block(Duration.ofSeconds(5));
+
+		// The first client takes all four slots, every new value after it is dropped
+		assertThat(count(start, start).count()).isEqualTo(1);
+		assertThat(meterRegistry.counter("gateway.metrics.unique.dropped").count()).isEqualTo(28);
+	}
+
+	private UniqueClientsService.Count count(long from, long to) {
+		return service.count(UniqueClientsService.Scope.ROUTE, "orders", UniqueClientsService.Dimension.CLIENTS,
+				from, to).block(Duration.ofSeconds(5));
+	}
+
+	// Clients first..last, each sending some requests with one of two user agents
+	private void record(int first, int last, int requests) {
+		for (int i = 0; i < requests; i++) {
+			for (int c = first; c <= last; c++) {
+				ApiMetric metric = new ApiMetric();
+				metric.setRouteId("orders");
+				metric.setToService("orders-service");
+				metric.setClientIp("10.0.0." + c);
+				metric.setUserAgent(c % 2 == 0 ? "curl/8.0" : "okhttp/4.12");
+				service.record(metric);
+			}
+		}
+	}
+}
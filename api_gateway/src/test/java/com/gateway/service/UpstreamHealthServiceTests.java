@@ -0,0 +1,143 @@
+package com.gateway.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamHealthServiceTests {
+
+	private HttpServer upstream;
+
+	private volatile int probeStatus = 200;
+
+	private final List<String> probedPaths = new CopyOnWriteArrayList<>();
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private UpstreamHealthService service;
+
+	private URI upstreamUri;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		upstream.createContext("/", http -> {
+			probedPaths.add(http.getRequestURI().getPath());
+			http.sendResponseHeaders(probeStatus, -1);
+			http.close();
+		});
+		upstream.start();
+		upstreamUri = URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+				+ upstream.getAddress().getPort());
+
+		meterRegistry = new SimpleMeterRegistry();
+		// Down after two failed probes or three failed requests, back up after two good probes
+		service = new UpstreamHealthService(WebClient.builder(), meterRegistry, true, 0, 2000, 4, 2, 2, 3, "/");
+	}
+
+	@AfterEach
+	void tearDown() {
+		upstream.stop(0);
+	}
+
+	@Test
+	void failingProbesEjectAndPassingProbesReadmit() {
+		service.reconcile(List.of(route(Map.of())));
+		probe();
+		assertThat(status()).isEqualTo("UP");
+
+		probeStatus = 503;
+		probe();
+		assertThat(service.isHealthy(upstreamUri)).isTrue();
+		probe();
+		assertThat(service.isHealthy(upstreamUri)).isFalse();
+		assertThat(health()).containsEntry("reason", "active").containsEntry("lastError", "HTTP 503");
+
+		probeStatus = 200;
+		probe();
+		assertThat(service.isHealthy(upstreamUri)).isFalse();
+		probe();
+		assertThat(service.isHealthy(upstreamUri)).isTrue();
+		assertThat(meterRegistry.counter("gateway.upstream.health.transitions", "upstream", key(), "status", "DOWN")
+				.count()).isEqualTo(1);
+	}
+
+	@Test
+	void defaultPathCountsAnyAnswerBelow500AsHealthy() {
+		service.reconcile(List.of(route(Map.of())));
+		probeStatus = 404;
+
+		probe();
+		probe();
+
+		assertThat(probedPaths).containsOnly("/");
+		assertThat(status()).isEqualTo("UP");
+	}
+
+	@Test
+	void routeHealthCheckPathIsProbed() {
+		service.reconcile(List.of(route(Map.of(UpstreamHealthService.PATH_METADATA_KEY, "/actuator/health"))));
+
+		probe();
+
+		assertThat(probedPaths).containsExactly("/actuator/health");
+	}
+
+	@Test
+	void failedRequestsEjectAndOnlyProbesReadmit() {
+		service.reconcile(List.of(route(Map.of())));
+		probe();
+
+		for (int i = 0; i < 3; i++) {
+			service.recordPassive(upstreamUri, false);
+		}
+		assertThat(service.isHealthy(upstreamUri)).isFalse();
+
+		// Requests succeeding again do not bring it back, the next two probes do
+		service.recordPassive(upstreamUri, true);
+		assertThat(service.isHealthy(upstreamUri)).isFalse();
+		probe();
+		probe();
+		assertThat(service.isHealthy(upstreamUri)).isTrue();
+	}
+
+	private void probe() {
+		service.probeUpstreams().block(Duration.ofSeconds(5));
+	}
+
+	private String status() {
+		return String.valueOf(health().get("status"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> health() {
+		return (Map<String, Object>) service.snapshot().get(key());
+	}
+
+	private String key() {
+		return Upstreams.key(upstreamUri);
+	}
+
+	private Route route(Map<String, Object> metadata) {
+		return Route.async()
+				.id("orders")
+				.uri(upstreamUri)
+				.predicate(e -> true)
+				.metadata(metadata)
+				.build();
+	}
+}
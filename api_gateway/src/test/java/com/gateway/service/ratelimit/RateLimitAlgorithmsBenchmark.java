@@ -0,0 +1,87 @@
+package com.gateway.service.ratelimit;
+
+import com.gateway.config.LocalRedisServers;
+import com.gateway.model.RateLimitAlgorithm;
+import com.gateway.service.RedisCommandBatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Decisions per second for each algorithm over 10,000 client keys with a
+ * limit of 25 a second each, so at full speed most decisions are
+ * rejections: in memory, and as Redis scripts through the command batcher
+ * when redis-server is installed. Not part of the regular test run,
+ * start it with {@code mvn test -Dtest=RateLimitAlgorithmsBenchmark}.
+ */
+class RateLimitAlgorithmsBenchmark {
+
+	private static final int KEYS = 10_000;
+
+	private static final int CONCURRENCY = 256;
+
+	private static final int WARMUP_DECISIONS = 50_000;
+
+	private static final int MEASURED_DECISIONS = 500_000;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void decisionsPerSecondByAlgorithm() throws Exception {
+		InMemoryRateLimiter inMemory = new InMemoryRateLimiter();
+		LocalRedisServers servers = null;
+		LettuceConnectionFactory connectionFactory = null;
+		RedisCommandBatcher batcher = null;
+		ScriptedRateLimiter scripted = null;
+		if (LocalRedisServers.available()) {
+			servers = new LocalRedisServers(dir);
+			connectionFactory = new LettuceConnectionFactory(
+					new RedisStandaloneConfiguration(LocalRedisServers.HOST, servers.start(false)),
+					LettuceClientConfiguration.builder().commandTimeout(Duration.ofSeconds(5)).build());
+			connectionFactory.afterPropertiesSet();
+			connectionFactory.start();
+			batcher = new RedisCommandBatcher(connectionFactory, new SimpleMeterRegistry(), 256, 0, 5000);
+			scripted = new ScriptedRateLimiter(batcher);
+		}
+
+		try {
+			System.out.printf("%-16s %18s %18s%n", "algorithm", "in memory/s", "redis script/s");
+			for (RateLimitAlgorithm algorithm : RateLimitAlgorithm.values()) {
+				RateLimit limit = new RateLimit(algorithm, 25, 25);
+				double local = measure(inMemory, limit);
+				String redis = scripted != null ? String.format("%,.0f", measure(scripted, limit)) : "no redis-server";
+				System.out.printf("%-16s %,18.0f %18s%n", algorithm, local, redis);
+				assertThat(local).isPositive();
+			}
+		} finally {
+			if (batcher != null) {
+				batcher.close();
+				connectionFactory.destroy();
+				servers.close();
+			}
+		}
+	}
+
+	private double measure(KeyedRateLimiter limiter, RateLimit limit) {
+		run(limiter, limit, WARMUP_DECISIONS);
+		long start = System.nanoTime();
+		run(limiter, limit, MEASURED_DECISIONS);
+		return MEASURED_DECISIONS / ((System.nanoTime() - start) / 1e9);
+	}
+
+	private void run(KeyedRateLimiter limiter, RateLimit limit, int decisions) {
+		Flux.range(0, decisions)
+				.flatMap(i -> limiter.tryAcquire("rate-limit:{bench:" + (i % KEYS) + "}", limit, 1), CONCURRENCY)
+				.blockLast(Duration.ofMinutes(5));
+	}
+}
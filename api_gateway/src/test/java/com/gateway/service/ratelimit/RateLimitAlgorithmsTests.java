@@ -0,0 +1,263 @@
+package com.gateway.service.ratelimit;
+
+import com.gateway.config.LocalRedisServers;
+import com.gateway.model.RateLimitAlgorithm;
+import com.gateway.service.RedisCommandBatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Many clients hammer one limiter from several threads for a few seconds;
+ * every admission is recorded with the time before and after the call. The
+ * checks only count admissions known to lie inside an interval, so they
+ * hold however the limiter's own clock fell between the two:
+ * <ul>
+ * <li>sliding log: never more than the limit in any one second</li>
+ * <li>GCRA: never more than burstCapacity plus replenishRate per second of
+ * the interval</li>
+ * <li>sliding window: close to the limit in any one second once running</li>
+ * <li>fixed window: at most twice the limit across a window boundary</li>
+ * </ul>
+ * and every algorithm has to admit close to its sustained rate. The Redis
+ * scripts run through the same suite against a real Redis, see
+ * {@link LocalRedisServers}.
+ */
+class RateLimitAlgorithmsTests {
+
+	private static final int CLIENTS = 25;
+
+	private static final int THREADS = 16;
+
+	private static final long RUN_MICROS = 2_500_000;
+
+	private static final long WINDOW = RateLimit.WINDOW_MICROS;
+
+	@TempDir
+	static Path dir;
+
+	private static LocalRedisServers servers;
+
+	private static LettuceConnectionFactory connectionFactory;
+
+	private static RedisCommandBatcher batcher;
+
+	@AfterAll
+	static void stopRedis() {
+		if (batcher != null) {
+			batcher.close();
+			connectionFactory.destroy();
+			servers.close();
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(RateLimitAlgorithm.class)
+	void inMemoryStaysWithinTheLimit(RateLimitAlgorithm algorithm) throws Exception {
+		check(new InMemoryRateLimiter(), limitFor(algorithm));
+	}
+
+	@ParameterizedTest
+	@EnumSource(RateLimitAlgorithm.class)
+	void redisScriptsStayWithinTheLimit(RateLimitAlgorithm algorithm) throws Exception {
+		LocalRedisServers.assumeAvailable();
+
+		check(new ScriptedRateLimiter(redisBatcher()), limitFor(algorithm));
+	}
+
+	@Test
+	void rejectedRequestsTakeNothing() {
+		long[] now = { 0 };
+		InMemoryRateLimiter limiter = new InMemoryRateLimiter(() -> now[0]);
+		RateLimit gcra = new RateLimit(RateLimitAlgorithm.GCRA, 10, 2);
+
+		assertThat(limiter.tryAcquireNow("client", gcra, 1)).isTrue();
+		assertThat(limiter.tryAcquireNow("client", gcra, 1)).isTrue();
+		for (int i = 0; i < 100; i++) {
+			assertThat(limiter.tryAcquireNow("client", gcra, 1)).isFalse();
+		}
+		// One interval later exactly one more fits, the rejections did not push it back
+		now[0] = WINDOW / 10;
+		assertThat(limiter.tryAcquireNow("client", gcra, 1)).isTrue();
+		assertThat(limiter.tryAcquireNow("client", gcra, 1)).isFalse();
+
+		// A cost larger than the window limit never fits
+		RateLimit slidingLog = new RateLimit(RateLimitAlgorithm.SLIDING_LOG, 5, 5);
+		assertThat(limiter.tryAcquireNow("bulk", slidingLog, 6)).isFalse();
+		assertThat(limiter.tryAcquireNow("bulk", slidingLog, 5)).isTrue();
+	}
+
+	@ParameterizedTest
+	@EnumSource(RateLimitAlgorithm.class)
+	void hierarchicalQuotasChargeAllLevelsOrNone(RateLimitAlgorithm algorithm) {
+		InMemoryRateLimiter limiter = new InMemoryRateLimiter(() -> 0L);
+		RateLimitPolicy policy = new RateLimitPolicy("orders", new RateLimit(algorithm, 3, 3),
+				new RateLimit(algorithm, 5, 5), new RateLimit(algorithm, 8, 8));
+
+		// Each client may have 3, the tenant 5 between its clients
+		int first = admitted(limiter, policy, "client-1", "acme", 10);
+		int second = admitted(limiter, policy, "client-2", "acme", 10);
+		assertThat(first).isEqualTo(3);
+		assertThat(second).isEqualTo(2);
+		// The route has 3 left for everyone, client-1 is still out of its own
+		assertThat(admitted(limiter, policy, "client-1", "globex", 10)).isZero();
+		assertThat(admitted(limiter, policy, "client-3", "globex", 10)).isEqualTo(3);
+		assertThat(admitted(limiter, policy, "client-4", "initech", 10)).isZero();
+	}
+
+	private static int admitted(InMemoryRateLimiter limiter, RateLimitPolicy policy, String client, String tenant,
+			int attempts) {
+		int admitted = 0;
+		for (int i = 0; i < attempts; i++) {
+			if (limiter.tryAcquireNow(policy.quotas(client, tenant), 1)) {
+				admitted++;
+			}
+		}
+		return admitted;
+	}
+
+	private static RateLimit limitFor(RateLimitAlgorithm algorithm) {
+		// GCRA spreads 40 a second with bursts of 10, the windows allow 40 per second
+		return algorithm == RateLimitAlgorithm.GCRA
+				? new RateLimit(algorithm, 40, 10)
+				: new RateLimit(algorithm, 40, 40);
+	}
+
+	private void check(KeyedRateLimiter limiter, RateLimit limit) throws Exception {
+		Map<String, List<Admission>> admissions = run(limiter, limit);
+		long runStart = admissions.values().stream()
+				.flatMap(List::stream)
+				.mapToLong(Admission::before)
+				.min()
+				.orElseThrow();
+
+		int total = 0;
+		for (Map.Entry<String, List<Admission>> client : admissions.entrySet()) {
+			List<Admission> admitted = client.getValue();
+			admitted.sort((a, b) -> Long.compare(a.before(), b.before()));
+			total += admitted.size();
+			String description = limit.algorithm() + " " + client.getKey();
+			switch (limit.algorithm()) {
+				case SLIDING_LOG -> assertThat(maxInAnyWindow(admitted, runStart))
+						.as(description).isLessThanOrEqualTo(limit.burstCapacity());
+				case FIXED_WINDOW -> assertThat(maxInAnyWindow(admitted, runStart))
+						.as(description).isLessThanOrEqualTo(2 * limit.burstCapacity());
+				// The previous window is assumed evenly spread, which the opening burst is not
+				case SLIDING_WINDOW -> assertThat(maxInAnyWindow(admitted, runStart + 100_000))
+						.as(description).isLessThanOrEqualTo((int) Math.ceil(limit.burstCapacity() * 1.1));
+				case GCRA -> assertGcraBound(admitted, limit, description);
+			}
+		}
+
+		double seconds = (double) RUN_MICROS / WINDOW;
+		double sustained = limit.algorithm() == RateLimitAlgorithm.GCRA
+				? limit.replenishRate() * seconds
+				: limit.burstCapacity() * seconds;
+		assertThat(total / (double) CLIENTS)
+				.as(limit.algorithm() + " admitted per client")
+				.isGreaterThanOrEqualTo(sustained * 0.9);
+	}
+
+	private Map<String, List<Admission>> run(KeyedRateLimiter limiter, RateLimit limit) throws Exception {
+		Map<String, List<Admission>> admissions = new ConcurrentHashMap<>();
+		for (int i = 0; i < CLIENTS; i++) {
+			admissions.put("rate-limit:{test:client-" + i + "}", Collections.synchronizedList(new ArrayList<>()));
+		}
+		List<String> clients = List.copyOf(admissions.keySet());
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		long deadline = micros() + RUN_MICROS;
+		for (int t = 0; t < THREADS; t++) {
+			executor.execute(() -> {
+				while (micros() < deadline) {
+					String client = clients.get(ThreadLocalRandom.current().nextInt(clients.size()));
+					long before = micros();
+					Boolean allowed = limiter.tryAcquire(client, limit, 1).block(Duration.ofSeconds(5));
+					long after = micros();
+					if (Boolean.TRUE.equals(allowed)) {
+						admissions.get(client).add(new Admission(before, after));
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+		return admissions;
+	}
+
+	// Most admissions certainly inside one window, over windows starting at an admission after from
+	private static int maxInAnyWindow(List<Admission> admitted, long from) {
+		int max = 0;
+		for (Admission start : admitted) {
+			if (start.before() < from) {
+				continue;
+			}
+			long end = start.before() + WINDOW;
+			int inside = 0;
+			for (Admission other : admitted) {
+				if (other.before() >= start.before() && other.after() < end) {
+					inside++;
+				}
+			}
+			max = Math.max(max, inside);
+		}
+		return max;
+	}
+
+	private static void assertGcraBound(List<Admission> admitted, RateLimit limit, String description) {
+		for (Admission start : admitted) {
+			for (Admission end : admitted) {
+				if (end.after() < start.before()) {
+					continue;
+				}
+				long inside = admitted.stream()
+						.filter(a -> a.before() >= start.before() && a.after() <= end.after())
+						.count();
+				double allowed = limit.burstCapacity()
+						+ (double) (end.after() - start.before()) * limit.replenishRate() / WINDOW;
+				assertThat((double) inside).as(description).isLessThanOrEqualTo(allowed);
+			}
+		}
+	}
+
+	private static RedisCommandBatcher redisBatcher() throws Exception {
+		if (batcher == null) {
+			servers = new LocalRedisServers(dir);
+			int port = servers.start(false);
+			connectionFactory = new LettuceConnectionFactory(
+					new RedisStandaloneConfiguration(LocalRedisServers.HOST, port),
+					LettuceClientConfiguration.builder().commandTimeout(Duration.ofSeconds(5)).build());
+			connectionFactory.afterPropertiesSet();
+			connectionFactory.start();
+			batcher = new RedisCommandBatcher(connectionFactory, new SimpleMeterRegistry(), 256, 0, 5000);
+		}
+		return batcher;
+	}
+
+	private static long micros() {
+		return System.nanoTime() / 1000;
+	}
+
+	private record Admission(long before, long after) {
+	}
+}
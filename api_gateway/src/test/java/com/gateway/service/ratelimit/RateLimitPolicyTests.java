@@ -0,0 +1,49 @@
+package com.gateway.service.ratelimit;
+
+import com.gateway.model.RateLimitAlgorithm;
+import io.lettuce.core.cluster.SlotHash;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitPolicyTests {
+
+	private static final RateLimit CLIENT = new RateLimit(RateLimitAlgorithm.GCRA, 10, 20);
+
+	private static final RateLimit TENANT = new RateLimit(RateLimitAlgorithm.GCRA, 100, 200);
+
+	private static final RateLimit ROUTE = new RateLimit(RateLimitAlgorithm.GCRA, 1000, 2000);
+
+	@Test
+	void singleLevelKeysAreTaggedPerClient() {
+		RateLimitPolicy policy = new RateLimitPolicy("orders", CLIENT, null, null);
+
+		List<Quota> quotas = policy.quotas("10.0.0.7", "acme");
+
+		assertThat(quotas).containsExactly(new Quota("rate-limit:{orders:10.0.0.7}:gcra", CLIENT));
+	}
+
+	@Test
+	void allLevelsShareTheRouteSlot() {
+		RateLimitPolicy policy = new RateLimitPolicy("orders", CLIENT, TENANT, ROUTE);
+
+		List<Quota> quotas = policy.quotas("10.0.0.7", "acme");
+
+		assertThat(quotas).containsExactly(
+				new Quota("rate-limit:{orders}:gcra:client:10.0.0.7", CLIENT),
+				new Quota("rate-limit:{orders}:gcra:tenant:acme", TENANT),
+				new Quota("rate-limit:{orders}:gcra:route", ROUTE));
+		assertThat(quotas).extracting(quota -> SlotHash.getSlot(quota.key())).containsOnly(SlotHash.getSlot("orders"));
+		// Tenant keys are built once
+		assertThat(policy.quotas("10.0.0.8", "acme").get(1).key()).isSameAs(quotas.get(1).key());
+	}
+
+	@Test
+	void requestsWithoutTenantSkipTheTenantQuota() {
+		RateLimitPolicy policy = new RateLimitPolicy("orders", CLIENT, TENANT, ROUTE);
+
+		assertThat(policy.quotas("10.0.0.7", null)).extracting(Quota::limit).containsExactly(CLIENT, ROUTE);
+	}
+}
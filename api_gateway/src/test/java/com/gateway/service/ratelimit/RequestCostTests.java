@@ -0,0 +1,57 @@
+package com.gateway.service.ratelimit;
+
+import com.gateway.model.CostRule;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestCostTests {
+
+	private static final List<CostRule> RULES = List.of(
+			CostRule.builder().method("POST").path("/reports/**").cost(50).costPerKilobyte(1).build(),
+			CostRule.builder().path("/search").cost(2).costPerQueryParam(3).build(),
+			CostRule.builder().path("/reports/**").cost(10).build());
+
+	@Test
+	void firstMatchingRulePricesTheRequest() {
+		RequestCost cost = new RequestCost(RULES, 1, null, 100);
+
+		assertThat(cost.cost(MockServerHttpRequest.get("/orders/7").build())).isEqualTo(1);
+		assertThat(cost.cost(MockServerHttpRequest.get("/reports/daily").build())).isEqualTo(10);
+		assertThat(cost.cost(MockServerHttpRequest.post("/reports/daily").build())).isEqualTo(50);
+		// 2.5 KB declared body rounds up to 3
+		assertThat(cost.cost(MockServerHttpRequest.post("/reports/daily").contentLength(2560).build())).isEqualTo(53);
+		assertThat(cost.cost(MockServerHttpRequest.get("/search?q=shoes&size=10").build())).isEqualTo(8);
+	}
+
+	@Test
+	void costNeverExceedsTheSmallestBurst() {
+		RequestCost cost = new RequestCost(RULES, 1, null, 20);
+
+		assertThat(cost.cost(MockServerHttpRequest.post("/reports/daily").build())).isEqualTo(20);
+	}
+
+	@Test
+	void slowPathsGetExpensive() {
+		RequestCost cost = new RequestCost(RULES, 1, 100, 100);
+		MockServerHttpRequest slow = MockServerHttpRequest.get("/orders/export").build();
+		MockServerHttpRequest fast = MockServerHttpRequest.get("/orders/7").build();
+
+		assertThat(cost.learnsFromLatency()).isTrue();
+		assertThat(cost.cost(slow)).isEqualTo(1);
+		cost.recordLatency(slow, Duration.ofMillis(950).toNanos());
+		cost.recordLatency(fast, Duration.ofMillis(20).toNanos());
+
+		assertThat(cost.cost(slow)).isEqualTo(10);
+		assertThat(cost.cost(fast)).isEqualTo(1);
+		// A rule's price is the floor, and paths under one rule share its average
+		cost.recordLatency(MockServerHttpRequest.get("/reports/a").build(), Duration.ofMillis(300).toNanos());
+		assertThat(cost.cost(MockServerHttpRequest.get("/reports/b").build())).isEqualTo(10);
+		cost.recordLatency(MockServerHttpRequest.get("/reports/a").build(), Duration.ofSeconds(20).toNanos());
+		assertThat(cost.cost(MockServerHttpRequest.get("/reports/b").build())).isEqualTo(23);
+	}
+}
@@ -0,0 +1,83 @@
+package com.gateway.service.topk;
+
+import com.gateway.entity.ApiMetric;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * What the heavy-hitter sketches cost: nanoseconds per recorded request,
+ * over Zipf-like traffic of 20000 paths and 50000 clients, and
+ * microseconds to answer a top-10 over the last hour and over the last
+ * 23 hours. Not part of the regular test run, start it with
+ * {@code mvn test -Dtest=TopKBenchmark}.
+ */
+class TopKBenchmark {
+
+	private static final long MINUTE = 60_000;
+
+	private static final int REQUESTS_PER_MINUTE = 20_000;
+
+	private static final int QUERIES = 2_000;
+
+	private final long[] now = { 500_000 * 60 * MINUTE };
+
+	@Test
+	void recordAndQueryCost() {
+		TopKService service = new TopKService(() -> now[0], 200, 60, 24, 4);
+		ApiMetric[] metrics = metrics(100_000);
+
+		// A day of minutes, the last ones timed
+		long recordNanos = 0;
+		long recorded = 0;
+		for (int minute = 0; minute < 25 * 60; minute++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < REQUESTS_PER_MINUTE; i++) {
+				service.record(metrics[(minute * REQUESTS_PER_MINUTE + i) % metrics.length]);
+			}
+			if (minute >= 24 * 60) {
+				recordNanos += System.nanoTime() - start;
+				recorded += REQUESTS_PER_MINUTE;
+			}
+			now[0] += MINUTE;
+			service.roll();
+		}
+
+		double hour = query(() -> service.recent(TopKService.Dimension.ENDPOINTS, 60).orElseThrow());
+		double day = query(() -> service.recent(TopKService.Dimension.CLIENTS, 23 * 60).orElseThrow());
+
+		System.out.printf("%-28s %10.1f ns/request%n", "record", (double) recordNanos / recorded);
+		System.out.printf("%-28s %10.1f us/query%n", "top endpoints, last hour", hour);
+		System.out.printf("%-28s %10.1f us/query%n", "top clients, last 23 hours", day);
+		assertThat(service.recent(TopKService.Dimension.ENDPOINTS, 60).orElseThrow().summary().top(1))
+				.extracting(TopKSummary.Estimate::item).containsExactly("/api/0");
+	}
+
+	private static double query(Runnable query) {
+		for (int i = 0; i < QUERIES; i++) {
+			query.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < QUERIES; i++) {
+			query.run();
+		}
+		return (System.nanoTime() - start) / 1_000.0 / QUERIES;
+	}
+
+	private static ApiMetric[] metrics(int count) {
+		Random random = new Random(42);
+		ApiMetric[] metrics = new ApiMetric[count];
+		for (int i = 0; i < count; i++) {
+			ApiMetric metric = new ApiMetric();
+			metric.setPathTemplate("/api/" + (int) Math.floor(Math.pow(20_000, random.nextDouble()) - 1));
+			metric.setClientIp("10.0." + (int) Math.floor(Math.pow(50_000, random.nextDouble())));
+			metric.setUserAgent("agent-" + random.nextInt(20));
+			metric.setToService("service-" + random.nextInt(10));
+			metric.setDuration(random.nextInt(200));
+			metrics[i] = metric;
+		}
+		return metrics;
+	}
+}
@@ -0,0 +1,122 @@
+package com.gateway.service.topk;
+
+import com.gateway.entity.ApiMetric;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopKServiceTests {
+
+	private static final long MINUTE = 60_000;
+
+	private final long[] now = { 1_000 * 60 * MINUTE };
+
+	@Test
+	void spaceSavingBoundsEveryCount() {
+		// Zipf-like traffic over 5000 paths, the sketch has 100 counters
+		Random random = new Random(7);
+		SpaceSaving sketch = new SpaceSaving(100);
+		Map<String, Long> exact = new HashMap<>();
+		for (int i = 0; i < 200_000; i++) {
+			String path = "/items/" + (int) Math.floor(Math.pow(5000, random.nextDouble()));
+			sketch.offer(path, 10);
+			exact.merge(path, 1L, Long::sum);
+		}
+		TopKSummary summary = sketch.summary();
+
+		assertThat(summary.total()).isEqualTo(200_000);
+		assertThat(summary.errorBound()).isLessThanOrEqualTo(200_000 / 100);
+		for (TopKSummary.Estimate estimate : summary.top(100)) {
+			long real = exact.get(estimate.item());
+			assertThat(estimate.count()).isGreaterThanOrEqualTo(real);
+			assertThat(estimate.guaranteed()).isLessThanOrEqualTo(real);
+			assertThat(estimate.average()).isEqualTo(10.0);
+		}
+		// Whatever is left out occurred at most errorBound times
+		List<String> listed = summary.top(100).stream().map(TopKSummary.Estimate::item).toList();
+		exact.forEach((path, count) -> {
+			if (!listed.contains(path)) {
+				assertThat(count).isLessThanOrEqualTo(summary.errorBound());
+			}
+		});
+		assertThat(summary.top(3)).extracting(TopKSummary.Estimate::item)
+				.containsExactly("/items/1", "/items/2", "/items/3");
+	}
+
+	@Test
+	void mergeChargesMissingItemsTheOtherSummarysBound() {
+		SpaceSaving first = new SpaceSaving(2);
+		offer(first, "a", 5);
+		offer(first, "b", 3);
+		offer(first, "c", 1);
+		SpaceSaving second = new SpaceSaving(2);
+		offer(second, "b", 4);
+		offer(second, "d", 2);
+
+		TopKSummary merged = TopKSummary.merge(List.of(first.summary(), second.summary()), 2);
+
+		// first: a=5, c=4 (error 3), bound 4; second evicted nothing, bound 0
+		assertThat(merged.total()).isEqualTo(15);
+		assertThat(merged.top(2)).containsExactly(
+				new TopKSummary.Estimate("b", 8, 4, 0),
+				new TopKSummary.Estimate("d", 6, 4, 0));
+		// a was dropped with a count of 5
+		assertThat(merged.errorBound()).isEqualTo(5);
+	}
+
+	@Test
+	void minutesRollIntoHoursAndRangesMergeThem() {
+		TopKService service = new TopKService(() -> now[0], 10, 60, 24, 2);
+		long start = now[0];
+		for (int minute = 0; minute < 90; minute++) {
+			service.record(metric(minute % 2 == 0 ? "/orders/{id}" : "/users/{id}", 20));
+			service.record(metric("/orders/{id}", 40));
+			now[0] += MINUTE;
+			service.roll();
+		}
+
+		TopKService.Range lastTen = service.recent(TopKService.Dimension.ENDPOINTS, 10).orElseThrow();
+		assertThat(lastTen.to() - lastTen.from()).isEqualTo(10 * MINUTE);
+		assertThat(lastTen.summary().top(2)).containsExactly(
+				new TopKSummary.Estimate("/orders/{id}", 15, 0, 5 * (20 + 40) + 5 * 40),
+				new TopKSummary.Estimate("/users/{id}", 5, 0, 5 * 20));
+
+		// The first hour's minutes are gone, its hour summary widens the range to the whole hour
+		service.roll();
+		for (int minute = 0; minute < 60; minute++) {
+			now[0] += MINUTE;
+			service.roll();
+		}
+		TopKService.Range firstHour = service.top(TopKService.Dimension.ENDPOINTS, start + 10 * MINUTE,
+				start + 20 * MINUTE).orElseThrow();
+		assertThat(firstHour.from()).isEqualTo(start);
+		assertThat(firstHour.to()).isEqualTo(start + 60 * MINUTE);
+		assertThat(firstHour.summary().total()).isEqualTo(120);
+		assertThat(firstHour.summary().top(1).get(0).average()).isEqualTo((30 * (20 + 40) + 30 * 40) / 90.0);
+
+		// Before the first minute nothing is known, Mongo has to answer
+		assertThat(service.top(TopKService.Dimension.ENDPOINTS, start - MINUTE, start + MINUTE)).isEmpty();
+		assertThat(service.top(TopKService.Dimension.SERVICE_PAIRS, start, start + MINUTE).orElseThrow()
+				.summary().top(1)).extracting(TopKSummary.Estimate::item).containsExactly("client -> orders");
+	}
+
+	private static void offer(SpaceSaving sketch, String item, int times) {
+		for (int i = 0; i < times; i++) {
+			sketch.offer(item, 0);
+		}
+	}
+
+	private static ApiMetric metric(String pathTemplate, long duration) {
+		ApiMetric metric = new ApiMetric();
+		metric.setPathTemplate(pathTemplate);
+		metric.setDuration(duration);
+		metric.setClientIp("10.0.0.1");
+		metric.setToService("orders");
+		return metric;
+	}
+}